@@ -0,0 +1,312 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.ResumableSHA256;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class hashes an append-only file keeping a checkpoint of the SHA-256 state in a state file,
+ * so that hashing the file again after more bytes have been appended mostly costs the new bytes.
+ * <p>
+ * The hash signed for a file of L bytes is SHA-256(0x03 || L || SHA-256(file)), where L is a big endian long,
+ * so that a signature binds the exact prefix of the file it was computed on, and remains valid while the file grows.
+ * <p>
+ * The state file consists of {@link #STATE_MAGIC} and {@link #STATE_VERSION} as ints, the identity of the hashed file
+ * as an unsigned short length followed by its UTF-8 bytes, the SHA-256 digest of the hashed prefix,
+ * the number of complete chunks of {@link #CHUNK_SIZE} bytes in the prefix as an int, the SHA-256 digest of each of them
+ * and of the last incomplete chunk, possibly empty, and the state exported by {@link ResumableSHA256}.
+ * The identity is the file key of the file system, such as the device and inode numbers, or the real path where there is none.
+ * <p>
+ * A checkpoint is only resumed on the file it was taken on, whose prefix is still the hashed one: the identity must match,
+ * the file must not be shorter than the checkpoint and the state must give back the recorded digest.
+ * The prefix of the file is then checked against the chunk digests: the last incomplete chunk and up to {@link #SAMPLE}
+ * complete chunks, chosen at random, are read and hashed again. Thus a prefix of at most {@link #SAMPLE} complete chunks
+ * is checked in full, while on a longer one a rewrite confined to k of its c complete chunks goes unnoticed with probability
+ * about (1 - k/c)<sup>{@link #SAMPLE}</sup> at each resume; the file is never read in full, as that would defeat the checkpoint.
+ * If the checks fail, hashing fails rather than signing content the file does not hold;
+ * the state file has to be removed to hash the file from the start.
+ */
+public class AppendHash {
+
+    /**
+     * The first four bytes of a state file, "RBST".
+     */
+    public static final int STATE_MAGIC = 0x52425354;
+    /**
+     * The version of the format of the state file.
+     */
+    public static final int STATE_VERSION = 3;
+    /**
+     * The number of bytes of a chunk, the unit in which the hashed prefix is checked on resume.
+     */
+    public static final int CHUNK_SIZE = 1 << 20;
+    /**
+     * The number of complete chunks hashed again on resume.
+     */
+    public static final int SAMPLE = 16;
+
+    private static final byte TARGET = 3;
+    private static final int DIGEST_SIZE = 32;
+
+    private final String statePath;
+    private final SecureRandom random = new SecureRandom();
+    private long length;
+
+    /**
+     * The SHA-256 state of the whole prefix, the digests of its complete chunks and the SHA-256 state of its last incomplete chunk.
+     */
+    private ResumableSHA256 sha, chunk;
+    private List<byte[]> chunks;
+
+    /**
+     * Constructor, sets the state file.
+     *
+     * @param statePath the path of the state file, which is created if it does not exist
+     */
+    public AppendHash(String statePath) {
+        this.statePath = statePath;
+    }
+
+    /**
+     * Hashes a file resuming from the checkpoint, then saves the new checkpoint.
+     *
+     * @param fileName the path of the file
+     * @return the length bound hash of the file
+     * @throws IOException if the file cannot be read, the state cannot be written, or the state was taken on another file
+     *                     or on a prefix the file no longer has
+     */
+    public byte[] hash(String fileName) throws IOException {
+        Path file = Paths.get(fileName);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            String identity = identity(file);
+            resume(fileName, identity, channel, size);
+
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long position = sha.getLength();
+
+            while (position < size) {
+                // a read never crosses the end of a chunk, so that the digest of each chunk is taken as it is completed
+                buffer.clear();
+                buffer.limit((int) Math.min(CHUNK_SIZE - position % CHUNK_SIZE, size - position));
+
+                int read = channel.read(buffer, position);
+                if (read < 0) break;
+
+                position += read;
+                buffer.flip();
+                sha.update(buffer.duplicate());
+                chunk.update(buffer);
+
+                if (position % CHUNK_SIZE == 0) {
+                    chunks.add(chunk.digest());
+                    chunk = new ResumableSHA256();
+                }
+            }
+
+            byte[] digest = sha.digest();
+            save(identity, digest);
+            length = sha.getLength();
+
+            return target(length, digest);
+        }
+    }
+
+    /**
+     * Returns the number of bytes hashed by the last call to {@link #hash(String)}.
+     *
+     * @return the length of the hashed prefix
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Binds the digest of a file to its length.
+     *
+     * @param length the number of bytes hashed
+     * @param digest the SHA-256 digest of those bytes
+     * @return the hash to be signed
+     */
+    public static byte[] target(long length, byte[] digest) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        sha.update(TARGET);
+        sha.update(ByteBuffer.allocate(Long.BYTES).putLong(0, length));
+        sha.update(digest);
+
+        return sha.digest();
+    }
+
+    /**
+     * Returns the identity of a file, its file key if the file system has one, otherwise its real path.
+     */
+    private static String identity(Path file) throws IOException {
+        Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+
+        return key != null ? key.toString() : file.toRealPath().toString();
+    }
+
+    /**
+     * Loads the checkpoint, or starts from the empty input if there is none.
+     *
+     * @throws IOException if the checkpoint is not consistent with the file
+     */
+    private void resume(String fileName, String identity, FileChannel channel, long size) throws IOException {
+        sha = new ResumableSHA256();
+        chunk = new ResumableSHA256();
+        chunks = new ArrayList<>();
+
+        Path path = Paths.get(statePath);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        byte[] data = Files.readAllBytes(path);
+        String recorded;
+        byte[] digest = new byte[DIGEST_SIZE];
+        byte[] last = new byte[DIGEST_SIZE];
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (data.length < 2 * Integer.BYTES || in.getInt() != STATE_MAGIC || in.getInt() != STATE_VERSION) {
+                throw new IllegalArgumentException("Wrong state file!");
+            }
+
+            byte[] key = new byte[in.getShort() & 0xffff];
+            in.get(key);
+            recorded = new String(key, StandardCharsets.UTF_8);
+            in.get(digest);
+
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / DIGEST_SIZE) {
+                throw new IllegalArgumentException("Wrong state file!");
+            }
+            for (int i = 0; i < count; i++) {
+                byte[] d = new byte[DIGEST_SIZE];
+                in.get(d);
+                chunks.add(d);
+            }
+            in.get(last);
+
+            sha = ResumableSHA256.importState(Arrays.copyOfRange(data, in.position(), data.length));
+        } catch (IllegalArgumentException | BufferUnderflowException ex) {
+            throw new IOException(statePath + " is not a valid state file!");
+        }
+
+        if (!recorded.equals(identity)) {
+            throw new IOException(statePath + " is the state of another file than " + fileName + "!");
+        }
+        if (!Arrays.equals(sha.digest(), digest) || sha.getLength() / CHUNK_SIZE != chunks.size()) {
+            throw new IOException(statePath + " is not a valid state file!");
+        }
+
+        long complete = (long) chunks.size() * CHUNK_SIZE;
+        boolean same = sha.getLength() <= size;
+
+        // the last incomplete chunk is always read, as the hash of the appended bytes resumes from it
+        if (same) {
+            chunk = hashRange(channel, complete, sha.getLength() - complete);
+            same = Arrays.equals(chunk.digest(), last);
+        }
+
+        for (int i : sample(chunks.size())) {
+            if (!same) break;
+            same = Arrays.equals(hashRange(channel, (long) i * CHUNK_SIZE, CHUNK_SIZE).digest(), chunks.get(i));
+        }
+
+        if (!same) {
+            throw new IOException(fileName + " no longer starts with the prefix hashed in " + statePath
+                    + ", remove " + statePath + " to hash the file from the start!");
+        }
+    }
+
+    /**
+     * Returns the indices of the complete chunks to be checked, all of them if there are at most {@link #SAMPLE},
+     * otherwise {@link #SAMPLE} distinct ones chosen at random.
+     */
+    private int[] sample(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+
+        // partial Fisher-Yates shuffle
+        int taken = Math.min(count, SAMPLE);
+        for (int i = 0; i < taken; i++) {
+            int j = i + random.nextInt(count - i);
+            int t = indices[i];
+            indices[i] = indices[j];
+            indices[j] = t;
+        }
+
+        return Arrays.copyOf(indices, taken);
+    }
+
+    /**
+     * Hashes len bytes of the file from a position.
+     */
+    private static ResumableSHA256 hashRange(FileChannel channel, long position, long len) throws IOException {
+        ResumableSHA256 res = new ResumableSHA256();
+        ByteBuffer buffer = ByteBuffer.allocate((int) len);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file!");
+            }
+        }
+        buffer.flip();
+        res.update(buffer);
+
+        return res;
+    }
+
+    /**
+     * Writes the checkpoint on a temporary file which then replaces the state file, so that it is never left half written.
+     */
+    private void save(String identity, byte[] digest) throws IOException {
+        Path path = Paths.get(statePath).toAbsolutePath();
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+            byte[] key = identity.getBytes(StandardCharsets.UTF_8);
+            byte[] exported = sha.exportState();
+            ByteBuffer out = ByteBuffer.allocate(3 * Integer.BYTES + Short.BYTES + key.length
+                    + (chunks.size() + 2) * DIGEST_SIZE + exported.length);
+
+            out.putInt(STATE_MAGIC).putInt(STATE_VERSION).putShort((short) key.length).put(key).put(digest);
+            out.putInt(chunks.size());
+            for (byte[] d : chunks) {
+                out.put(d);
+            }
+            out.put(chunk.digest()).put(exported);
+
+            Files.write(tmp, out.array());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+import sc1819.rainbow.util.GF16;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs many operations listed in a script within a single process, on a pool of threads,
+ * so that each key is loaded only once however many operations use it.
+ * <p>
+ * Each line of the script is an operation followed by its arguments, separated by blanks:
+ * <ul>
+ * <li>
+ * {@code keygen pk sk}, generates a key pair;
+ * </li>
+ * <li>
+ * {@code sign sk file signature}, signs a file with SHA-256, refusing to overwrite an existing signature;
+ * </li>
+ * <li>
+ * {@code verify pk file signature}, verifies a signature of a file, hashed in the way recorded in the signature;
+ * </li>
+ * <li>
+ * {@code sign-digest sk digest signature} and {@code verify-digest pk digest signature}, as the operations above
+ * on a hex encoded digest.
+ * </li>
+ * </ul>
+ * Empty lines and lines starting with {@code #} are skipped. Operations are performed at once unless one reads a file
+ * written by an earlier one, a key or a signature, in which case it waits for it.
+ * <p>
+ * A line of output is printed for each operation, in the order of the script, made of the line number,
+ * the operation, the status and a detail, separated by tabs: the status is one of {@link Status},
+ * the detail is the signature in hex for a signing operation and the error message for {@link Status#ERROR}.
+ */
+public class BatchRunner {
+
+    /**
+     * The outcome of an operation.
+     */
+    public enum Status {
+        /**
+         * A key pair or a signature has been generated.
+         */
+        OK,
+        /**
+         * The signature is valid.
+         */
+        VALID,
+        /**
+         * The signature is not valid.
+         */
+        INVALID,
+        /**
+         * The operation could not be performed.
+         */
+        ERROR
+    }
+
+    private final RainbowParameters param;
+    private final SecureRandom random;
+    private final int threads;
+    private final boolean packed;
+    private final boolean selfCheck;
+
+    private final KeyCache<PublicMap> publicKeys = KeyCache.publicKeys(KeyCache.DEFAULT_CAPACITY);
+    private final KeyCache<RainbowSecKey> secretKeys = KeyCache.secretKeys(KeyCache.DEFAULT_CAPACITY);
+
+    /**
+     * Constructor, sets the parameters of the generated keys and the number of threads.
+     *
+     * @param param     the parameters of the generated keys
+     * @param random    the source of randomness for keys and signatures
+     * @param threads   the number of operations performed at once
+     * @param packed    whether signatures are saved in the packed encoding
+     * @param selfCheck whether signatures are checked before being saved, see {@link RainbowSecKey#sign(byte[], SecureRandom, boolean)}
+     */
+    public BatchRunner(RainbowParameters param, SecureRandom random, int threads, boolean packed, boolean selfCheck) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive!");
+        }
+
+        this.param = param;
+        this.random = random;
+        this.threads = threads;
+        this.packed = packed;
+        this.selfCheck = selfCheck;
+    }
+
+    /**
+     * Runs all the operations of a script, printing a line for each one.
+     * At most a few operations per thread are pending at any time, so the script can be of any length.
+     *
+     * @param script the script
+     * @param out    the stream on which results are printed
+     * @return the number of operations whose status is neither {@link Status#OK} nor {@link Status#VALID}
+     * @throws IOException if the script cannot be read
+     */
+    public long run(BufferedReader script, PrintStream out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        Map<Path, Future<String>> writers = new HashMap<>();
+        long[] failed = {0};
+
+        try {
+            String line;
+            long number = 0;
+
+            while ((line = script.readLine()) != null) {
+                number++;
+                String[] args = line.trim().split("\\s+");
+
+                if (args[0].isEmpty() || args[0].startsWith("#")) continue;
+
+                // an operation reading a file written earlier in the script waits for it to be written;
+                // the pool takes operations in order, so the writer has already started
+                List<Future<String>> after = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    Future<String> writer = writers.get(path(args[i]));
+                    if (writer != null) after.add(writer);
+                }
+
+                long index = number;
+                Future<String> result = pool.submit(() -> {
+                    for (Future<String> writer : after) {
+                        writer.get();
+                    }
+
+                    Outcome outcome;
+
+                    try {
+                        outcome = execute(args);
+                    } catch (NoSuchFileException ex) {
+                        outcome = new Outcome(Status.ERROR, ex.getFile() + " not found!");
+                    } catch (FileNotFoundException | IllegalArgumentException ex) {
+                        outcome = new Outcome(Status.ERROR, ex.getMessage());
+                    } catch (IOException | RuntimeException ex) {
+                        outcome = new Outcome(Status.ERROR, ex.toString());
+                    }
+
+                    if (outcome.status != Status.OK && outcome.status != Status.VALID) {
+                        synchronized (failed) {
+                            failed[0]++;
+                        }
+                    }
+
+                    return index + "\t" + args[0] + "\t" + outcome.status + "\t" + outcome.detail;
+                });
+
+                List<Path> outputs = outputs(args);
+                for (Path output : outputs) {
+                    writers.put(output, result);
+                }
+                pending.add(new Pending(result, outputs));
+
+                if (pending.size() >= 4 * threads) {
+                    out.println(result(pending.poll(), writers));
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                out.println(result(pending.poll(), writers));
+            }
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        synchronized (failed) {
+            return failed[0];
+        }
+    }
+
+    /**
+     * Returns the files written by an operation.
+     */
+    private static List<Path> outputs(String[] args) {
+        List<Path> outputs = new ArrayList<>();
+
+        if (args[0].equals("keygen") && args.length == 3) {
+            outputs.add(path(args[1]));
+            outputs.add(path(args[2]));
+        } else if ((args[0].equals("sign") || args[0].equals("sign-digest")) && args.length == 4) {
+            outputs.add(path(args[3]));
+        }
+        outputs.remove(null);
+
+        return outputs;
+    }
+
+    private static Path path(String arg) {
+        try {
+            return Paths.get(arg).toAbsolutePath().normalize();
+        } catch (InvalidPathException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Performs an operation, checking its arguments.
+     */
+    private Outcome execute(String[] args) throws IOException {
+        switch (args[0]) {
+            case "keygen":
+                arguments(args, 2);
+                if (args[1].equals(args[2])) {
+                    throw new IllegalArgumentException("Enter different filenames for the keys!");
+                }
+
+                new RainbowKeyPair(param, random).writeKeys(args[1], args[2]);
+                return new Outcome(Status.OK, "");
+            case "sign": {
+                arguments(args, 3);
+                RainbowSecKey sk = secretKey(args[1]);
+                byte[] signature = sk.sign(RainbowScheme.computeHash(args[2], sk.getEqNum(),
+                        MessageHash.getInstance(MessageHash.SHA256)), random, selfCheck);
+
+                return save(new RainbowSignature(signature), args[3]);
+            }
+            case "verify": {
+                arguments(args, 3);
+                PublicMap pk = publicKey(args[1]);
+                RainbowSignature signature = signature(args[3], pk);
+
+                byte[] h = RainbowScheme.computeHash(args[2], pk.getEqNum(), signature);
+                return Outcome.of(pk.verify(signature.getElements(), h));
+            }
+            case "sign-digest": {
+                arguments(args, 3);
+                byte[] digest = digest(args[2]);
+
+                return save(new RainbowSignature(secretKey(args[1]).signDigest(digest, random, selfCheck)), args[3]);
+            }
+            case "verify-digest": {
+                arguments(args, 3);
+                byte[] digest = digest(args[2]);
+                PublicMap pk = publicKey(args[1]);
+
+                return Outcome.of(pk.verifyDigest(signature(args[3], pk).getElements(), digest));
+            }
+            default:
+                throw new IllegalArgumentException(args[0] + " is not a known operation!");
+        }
+    }
+
+    private static void arguments(String[] args, int count) {
+        if (args.length != count + 1) {
+            throw new IllegalArgumentException(args[0] + " takes " + count + " arguments!");
+        }
+    }
+
+    private PublicMap publicKey(String pkPath) throws IOException {
+        try {
+            return publicKeys.get(pkPath);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            throw new NoSuchFileException(pkPath);
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new IllegalArgumentException(pkPath + " is not a valid public key!");
+        }
+    }
+
+    private RainbowSecKey secretKey(String skPath) throws IOException {
+        try {
+            return secretKeys.get(skPath);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            throw new NoSuchFileException(skPath);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(skPath + " is not a valid private key!");
+        }
+    }
+
+    private static RainbowSignature signature(String signaturePath, PublicMap pk) throws IOException {
+        RainbowSignature signature;
+
+        try {
+            signature = RainbowSignature.decode(Files.readAllBytes(Paths.get(signaturePath)));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(signaturePath + " is not a valid signature!");
+        }
+
+        if (signature.getElements().length != pk.getVarNum()) {
+            throw new IllegalArgumentException(signaturePath + " is not a valid signature!");
+        }
+
+        return signature;
+    }
+
+    private static byte[] digest(String hex) {
+        try {
+            return HexFormat.of().parseHex(hex);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Enter a valid digest!");
+        }
+    }
+
+    /**
+     * Saves a new signature, which is never written over an existing file.
+     */
+    private Outcome save(RainbowSignature signature, String signaturePath) throws IOException {
+        try {
+            Files.write(Paths.get(signaturePath), packed ? signature.encodePacked() : signature.encode(),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException ex) {
+            throw new IllegalArgumentException(signaturePath + " is an existing file!");
+        }
+
+        return new Outcome(Status.OK, GF16.toHex(signature.getElements()));
+    }
+
+    private static String result(Pending pending, Map<Path, Future<String>> writers) throws IOException {
+        for (Path output : pending.outputs) {
+            writers.remove(output, pending.result);
+        }
+
+        try {
+            return pending.result.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (RuntimeException) ex.getCause();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running the script");
+        }
+    }
+
+    /**
+     * An operation submitted to the pool, with the files it writes.
+     */
+    private static final class Pending {
+        final Future<String> result;
+        final List<Path> outputs;
+
+        Pending(Future<String> result, List<Path> outputs) {
+            this.result = result;
+            this.outputs = outputs;
+        }
+    }
+
+    /**
+     * The status of an operation, with the signature generated or the error message.
+     */
+    private static final class Outcome {
+        final Status status;
+        final String detail;
+
+        Outcome(Status status, String detail) {
+            this.status = status;
+            this.detail = detail;
+        }
+
+        static Outcome of(boolean valid) {
+            return new Outcome(valid ? Status.VALID : Status.INVALID, "");
+        }
+    }
+}
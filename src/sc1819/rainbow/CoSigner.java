@@ -0,0 +1,228 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class signs a file with several keys, or verifies several signatures of a file, reading the file only once.
+ * <p>
+ * The output of each hash function is squeezed once, as long as needed by the key with the most equations,
+ * and the target vector of every key is taken from it, so keys with different parameters share the same pass.
+ * Verifying, the plain signatures are all hashed by the same read of the file, whatever their hash functions;
+ * the signatures in {@link RainbowSignature#MERKLE} or {@link RainbowSignature#APPEND} mode need a read
+ * for each different way of hashing, which is shared by all the signatures hashed that way.
+ * <p>
+ * Once the targets are known, the keys sign or verify in parallel.
+ */
+public class CoSigner {
+
+    private final int threads;
+
+    /**
+     * Constructor, sets the number of threads signing or verifying.
+     *
+     * @param threads the number of threads
+     */
+    public CoSigner(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread number must be positive!");
+        }
+
+        this.threads = threads;
+    }
+
+    /**
+     * Constructor, uses a thread per available processor.
+     */
+    public CoSigner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Signs a file with several keys.
+     *
+     * @param keys     the secret keys
+     * @param fileName the path of the file
+     * @param hashId   the id of the hash function, see {@link MessageHash}
+     * @param random   the source of the random vinegar variables
+     * @return the plain signature of each key, in the order of the keys
+     * @throws IOException if the file cannot be read
+     */
+    public RainbowSignature[] sign(List<RainbowSecKey> keys, String fileName, byte hashId, SecureRandom random) throws IOException {
+        return sign(keys, fileName, hashId, random, false);
+    }
+
+    /**
+     * Signs a file with several keys, optionally checking each signature before it is returned,
+     * see {@link RainbowSecKey#sign(byte[], SecureRandom, boolean)}.
+     *
+     * @param keys      the secret keys
+     * @param fileName  the path of the file
+     * @param hashId    the id of the hash function, see {@link MessageHash}
+     * @param random    the source of the random vinegar variables
+     * @param selfCheck whether the signatures are checked
+     * @return the plain signature of each key, in the order of the keys
+     * @throws IOException if the file cannot be read
+     */
+    public RainbowSignature[] sign(List<RainbowSecKey> keys, String fileName, byte hashId, SecureRandom random,
+                                   boolean selfCheck) throws IOException {
+        RainbowSignature way = new RainbowSignature(null, RainbowSignature.PLAIN, 0, 0, hashId);
+        List<RainbowSignature> ways = new ArrayList<>();
+        int[] sizes = new int[keys.size()];
+
+        for (int i = 0; i < sizes.length; i++) {
+            ways.add(way);
+            sizes[i] = keys.get(i).getEqNum();
+        }
+
+        byte[][] targets = targets(fileName, ways, sizes);
+
+        List<Callable<RainbowSignature>> tasks = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            RainbowSecKey sk = keys.get(i);
+            byte[] h = targets[i];
+
+            tasks.add(() -> new RainbowSignature(sk.sign(h, random, selfCheck), RainbowSignature.PLAIN, 0, 0, hashId));
+        }
+
+        return run(tasks).toArray(new RainbowSignature[0]);
+    }
+
+    /**
+     * Verifies several signatures of a file, each one with its own key.
+     * A signature whose length does not match its key is not valid.
+     *
+     * @param keys       the public keys
+     * @param fileName   the path of the file
+     * @param signatures the signatures, one for each key
+     * @return whether each signature is valid, in the order of the keys
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if there are not as many signatures as keys
+     */
+    public boolean[] verify(List<? extends PublicMap> keys, String fileName, List<RainbowSignature> signatures) throws IOException {
+        if (keys.size() != signatures.size()) {
+            throw new IllegalArgumentException("A signature is needed for each key!");
+        }
+
+        int[] sizes = new int[keys.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = keys.get(i).getEqNum();
+        }
+
+        byte[][] targets = targets(fileName, signatures, sizes);
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            PublicMap pk = keys.get(i);
+            byte[] signature = signatures.get(i).getElements();
+            byte[] h = targets[i];
+
+            tasks.add(() -> signature.length == pk.getVarNum() && pk.verify(signature, h));
+        }
+
+        List<Boolean> valid = run(tasks);
+        boolean[] res = new boolean[valid.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = valid.get(i);
+        }
+
+        return res;
+    }
+
+    /**
+     * Computes the target vector of each signature, hashing the file in the way recorded in it.
+     */
+    private static byte[][] targets(String fileName, List<RainbowSignature> ways, int[] sizes) throws IOException {
+        Map<Byte, MessageHash> hashes = new HashMap<>();
+        Map<Byte, Integer> lengths = new HashMap<>();
+
+        for (int i = 0; i < sizes.length; i++) {
+            RainbowSignature way = ways.get(i);
+
+            if (way.getMode() == RainbowSignature.PLAIN) {
+                hashes.computeIfAbsent(way.getHash(), MessageHash::getInstance);
+                lengths.merge(way.getHash(), (sizes[i] + 1) / 2, Math::max);
+            }
+        }
+
+        Map<Byte, byte[]> outputs = new HashMap<>();
+        if (!hashes.isEmpty()) {
+            RainbowScheme.feedFile(fileName, -1, buffer -> {
+                for (MessageHash hash : hashes.values()) {
+                    hash.update(buffer.duplicate());
+                }
+            });
+
+            for (Map.Entry<Byte, MessageHash> hash : hashes.entrySet()) {
+                outputs.put(hash.getKey(), hash.getValue().squeeze(lengths.get(hash.getKey())));
+            }
+        }
+
+        Map<List<Long>, byte[]> roots = new HashMap<>();
+        byte[][] res = new byte[sizes.length][];
+
+        for (int i = 0; i < sizes.length; i++) {
+            RainbowSignature way = ways.get(i);
+
+            if (way.getMode() == RainbowSignature.PLAIN) {
+                res[i] = MessageHash.split(outputs.get(way.getHash()), sizes[i]);
+            } else {
+                List<Long> key = List.of((long) way.getMode(), (long) way.getParam(), way.getLength());
+                byte[] root = roots.get(key);
+
+                if (root == null) {
+                    root = RainbowScheme.computeRoot(fileName, way);
+                    roots.put(key, root);
+                }
+
+                res[i] = RainbowScheme.expandRoot(root, sizes[i]);
+            }
+        }
+
+        return res;
+    }
+
+    private <T> List<T> run(List<Callable<T>> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+
+        try {
+            List<Future<T>> futures = pool.invokeAll(tasks);
+            List<T> res = new ArrayList<>(futures.size());
+
+            for (Future<T> future : futures) {
+                res.add(future.get());
+            }
+
+            return res;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while signing");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
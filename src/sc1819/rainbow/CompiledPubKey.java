@@ -0,0 +1,261 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.MultQuad;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a public key for the Rainbow Signature Scheme laid out for fast evaluation,
+ * to be kept in memory by long running processes which verify many signatures with the same key, see {@link KeyCache}.
+ * <p>
+ * The coefficients are stored by monomial rather than by equation: for each monomial x<sub>i</sub>x<sub>j</sub>, with i{@literal <=}j,
+ * then for each variable and for the free term, the coefficients of all the {@code m} equations are packed sixteen per long,
+ * a field element per nibble as in {@link GF16#pack}.
+ * <p>
+ * The evaluation computes each monomial on the signature and adds its packed coefficients into the bucket of its value,
+ * without any multiplication; only at the end the sixteen buckets are multiplied by their values, all the equations at once.
+ */
+public class CompiledPubKey implements PublicMap {
+
+    private static final long LOW = 0x7777777777777777L, HIGH = 0x8888888888888888L;
+
+    /**
+     * Parameters of this public key, {@code n} is the number of variables, {@code m} the number of equations.
+     */
+    private final int n, m;
+    /**
+     * The number of longs holding the coefficients of a monomial.
+     */
+    private final int words;
+    /**
+     * The packed coefficients, monomial by monomial.
+     */
+    private final long[] coefficients;
+
+    /**
+     * Constructor, lays out the coefficients of a public map, given as a function of the equation and of the position
+     * of the coefficient in the order of the packed encoding of {@link MappedPubKey}.
+     */
+    private CompiledPubKey(int n, int m, Coefficients source) {
+        this.n = n;
+        this.m = m;
+        this.words = (m + 15) / 16;
+
+        int columns = n * (n + 1) / 2 + n + 1;
+        this.coefficients = new long[columns * words];
+
+        for (int i = 0; i < m; i++) {
+            int word = i >> 4;
+            int shift = (i & 15) << 2;
+
+            for (int k = 0; k < columns; k++) {
+                coefficients[k * words + word] |= (long) source.get(i, k) << shift;
+            }
+        }
+    }
+
+    /**
+     * Lays out a public map for fast evaluation.
+     * A compressed key is expanded, a packed key is read once.
+     *
+     * @param pk the public map
+     * @return the same map, laid out for fast evaluation
+     * @throws IllegalArgumentException if the representation of the map is not known
+     */
+    public static CompiledPubKey compile(PublicMap pk) {
+        if (pk instanceof CompiledPubKey) {
+            return (CompiledPubKey) pk;
+        }
+        if (pk instanceof CompressedPubKey) {
+            pk = ((CompressedPubKey) pk).expand();
+        }
+
+        int n = pk.getVarNum();
+
+        if (pk instanceof MappedPubKey) {
+            MappedPubKey mapped = (MappedPubKey) pk;
+            return new CompiledPubKey(n, pk.getEqNum(), mapped::getCoefficient);
+        }
+
+        if (pk instanceof RainbowPubKey) {
+            MultQuad[] P = ((RainbowPubKey) pk).getPoly();
+            int[] rows = new int[n * (n + 1) / 2], cols = new int[rows.length];
+
+            for (int r = 0, k = 0; r < n; r++) {
+                for (int c = r; c < n; c++, k++) {
+                    rows[k] = r;
+                    cols[k] = c;
+                }
+            }
+
+            byte[][][] quads = new byte[P.length][][];
+            return new CompiledPubKey(n, P.length, (i, k) -> {
+                if (k == 0) {
+                    quads[i] = P[i].getQuad();
+                }
+
+                if (k < rows.length) {
+                    // x_r*x_c and x_c*x_r are the same monomial
+                    byte[][] quad = quads[i];
+                    int r = rows[k], c = cols[k];
+                    return r == c ? quad[r][r] : GF16.add(quad[r][c], quad[c][r]);
+                }
+                if (k < rows.length + n) {
+                    return P[i].getLin()[k - rows.length];
+                }
+                return P[i].getTerm();
+            });
+        }
+
+        throw new IllegalArgumentException("Unknown public key!");
+    }
+
+    @Override
+    public int getVarNum() {
+        return n;
+    }
+
+    @Override
+    public int getEqNum() {
+        return m;
+    }
+
+    @Override
+    public byte[] eval(byte[] x) {
+        if (x.length != n) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        long[] buckets = new long[getScratchSize()];
+        fill(x, buckets);
+
+        byte[] res = new byte[m];
+
+        for (int w = 0; w < words; w++) {
+            long acc = collect(buckets, w);
+
+            for (int i = w * 16; i < Math.min(m, w * 16 + 16); i++) {
+                res[i] = (byte) ((acc >>> ((i & 15) << 2)) & 0x0f);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Checks whether the evaluation of this public map on a signature is equal to a given digest, without allocating memory.
+     *
+     * @param signature the array on which the map is evaluated
+     * @param h         the expected result of the evaluation
+     * @param scratch   the working space, at least {@link #getScratchSize()} longs, overwritten
+     * @return true if P(signature)=h, false otherwise
+     * @throws IllegalArgumentException if the signature's length is not n or the working space is too short
+     */
+    public boolean verify(byte[] signature, byte[] h, long[] scratch) {
+        if (signature.length != n || scratch.length < getScratchSize()) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+        if (h.length != m) {
+            return false;
+        }
+
+        fill(signature, scratch);
+
+        long diff = 0;
+        for (int w = 0; w < words; w++) {
+            long acc = collect(scratch, w);
+
+            for (int i = w * 16; i < Math.min(m, w * 16 + 16); i++) {
+                diff |= ((acc >>> ((i & 15) << 2)) & 0x0f) ^ h[i];
+            }
+        }
+
+        return diff == 0;
+    }
+
+    @Override
+    public boolean verify(byte[] signature, byte[] h) {
+        return verify(signature, h, new long[getScratchSize()]);
+    }
+
+    /**
+     * Returns the size of the working space needed by {@link #verify(byte[], byte[], long[])}.
+     *
+     * @return the number of longs of the working space, the sixteen buckets
+     */
+    public int getScratchSize() {
+        return 16 * words;
+    }
+
+    /**
+     * Computes each monomial on x and adds its packed coefficients into the bucket of its value.
+     */
+    private void fill(byte[] x, long[] buckets) {
+        Arrays.fill(buckets, 0, 16 * words, 0);
+        int k = 0;
+
+        for (int r = 0; r < n; r++) {
+            if (x[r] == 0) {
+                k += n - r;
+                continue;
+            }
+
+            for (int c = r; c < n; c++, k++) {
+                add(buckets, GF16.mult(x[r], x[c]), k);
+            }
+        }
+
+        for (int c = 0; c < n; c++, k++) {
+            add(buckets, x[c], k);
+        }
+        add(buckets, (byte) 1, k);
+    }
+
+    /**
+     * Returns the w-th word of the evaluation, multiplying the buckets by their values.
+     */
+    private long collect(long[] buckets, int w) {
+        long acc = 0;
+
+        for (int v = 1; v < 16; v++) {
+            acc ^= multPacked(buckets[v * words + w], v);
+        }
+
+        return acc;
+    }
+
+    private void add(long[] buckets, byte value, int k) {
+        if (value == 0) return;
+
+        int bucket = value * words, column = k * words;
+        for (int w = 0; w < words; w++) {
+            buckets[bucket + w] ^= coefficients[column + w];
+        }
+    }
+
+    /**
+     * Multiplies sixteen field elements, packed a nibble each, by the same element v.
+     */
+    static long multPacked(long a, int v) {
+        long res = 0;
+
+        for (; v != 0; v >>>= 1) {
+            if ((v & 1) != 0) {
+                res ^= a;
+            }
+            // times x, reducing x^4 to x+1
+            long carry = (a & HIGH) >>> 3;
+            a = ((a & LOW) << 1) ^ carry ^ (carry << 1);
+        }
+
+        return res;
+    }
+
+    /**
+     * The coefficients of a public map, as read while it is laid out.
+     */
+    private interface Coefficients {
+        byte get(int equation, int k);
+    }
+}
@@ -0,0 +1,287 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.AffineMap;
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.Layer;
+import sc1819.rainbow.util.MultQuad;
+
+import java.util.Arrays;
+
+/**
+ * This class represents the maps of a secret key for the Rainbow Signature Scheme laid out for fast evaluation in the forward
+ * direction, so that the signer can check a signature before releasing it, see {@link RainbowSecKey#check(byte[], byte[])}.
+ * <p>
+ * The coefficients are stored by monomial as in {@link CompiledPubKey}, sixteen equations per long:
+ * <ul>
+ * <li>
+ * for {@code T} and {@code S}, the column of the matrix of each variable, then the vector;
+ * </li>
+ * <li>
+ * for each layer of the central map, for each vinegar variable x<sub>r</sub> the monomials x<sub>r</sub>x<sub>c</sub>
+ * with the vinegar variables c{@literal >=}r and with the oil variables, then each variable and the free term.
+ * </li>
+ * </ul>
+ * Each map is evaluated adding the coefficients of each monomial into the bucket of its value, as by {@link CompiledPubKey},
+ * on the vectors packed sixteen elements per long. The evaluation uses no memory but the working space given by the caller.
+ */
+public class CompiledSecKey {
+
+    /**
+     * The number of variables and the number of equations of the key.
+     */
+    private final int n, m;
+    /**
+     * The number of longs holding a packed vector of n and of m elements.
+     */
+    private final int nWords, mWords;
+    /**
+     * The affine maps of the key.
+     */
+    private final Affine T, S;
+    /**
+     * The layers of the central map of the key.
+     */
+    private final Quadratic[] layers;
+
+    /**
+     * Constructor, lays out the maps of a secret key.
+     *
+     * @param sk the secret key
+     */
+    public CompiledSecKey(RainbowSecKey sk) {
+        this.n = sk.getVarNum();
+        this.m = sk.getEqNum();
+        this.nWords = (n + 15) / 16;
+        this.mWords = (m + 15) / 16;
+
+        this.T = new Affine(sk.getT());
+        this.S = new Affine(sk.getS());
+
+        Layer[] source = sk.getF().getLayers();
+        this.layers = new Quadratic[source.length];
+        for (int l = 0; l < source.length; l++) {
+            layers[l] = new Quadratic(source[l]);
+        }
+    }
+
+    /**
+     * Returns the size of the working space needed by {@link #check(byte[], byte[], long[])}.
+     *
+     * @return the number of longs of the working space
+     */
+    public int getScratchSize() {
+        // the buckets, then the signature, T of it, T of it unpacked, F of that and S of that
+        return 16 * nWords + 2 * nWords + n + 2 * mWords;
+    }
+
+    /**
+     * Checks that S(F(T(signature)))=h, without allocating memory.
+     *
+     * @param signature the signature, n field elements
+     * @param h         the target vector, m field elements
+     * @param scratch   the working space, at least {@link #getScratchSize()} longs, overwritten
+     * @return true if the signature is valid
+     * @throws IllegalArgumentException if a length is wrong
+     */
+    public boolean check(byte[] signature, byte[] h, long[] scratch) {
+        if (signature.length != n || h.length != m || scratch.length < getScratchSize()) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        int x = 16 * nWords, y = x + nWords, u = y + nWords, z = u + n, s = z + mWords;
+
+        // the maps leave the buckets cleared, but the working space may come dirty
+        Arrays.fill(scratch, 0, s + mWords, 0);
+        for (int i = 0; i < n; i++) {
+            scratch[x + (i >> 4)] |= (long) signature[i] << ((i & 15) << 2);
+        }
+
+        T.eval(scratch, x, y);
+
+        // the central map reads each variable many times
+        for (int i = 0; i < n; i++) {
+            scratch[u + i] = nibble(scratch, y, i);
+        }
+
+        int eq = 0;
+        for (Quadratic layer : layers) {
+            layer.eval(scratch, u, z, eq);
+            eq += layer.oi;
+        }
+
+        S.eval(scratch, z, s);
+
+        int diff = 0;
+        for (int i = 0; i < m; i++) {
+            diff |= nibble(scratch, s, i) ^ h[i];
+        }
+
+        return diff == 0;
+    }
+
+    /**
+     * Overwrites all the coefficients with zeros. After this call the maps can no longer be evaluated.
+     */
+    public void wipe() {
+        Arrays.fill(T.coefficients, 0);
+        Arrays.fill(S.coefficients, 0);
+        for (Quadratic layer : layers) {
+            Arrays.fill(layer.coefficients, 0);
+        }
+    }
+
+    /**
+     * Returns the i-th element of a vector packed in an array from a given position.
+     */
+    private static int nibble(long[] a, int off, int i) {
+        return (int) (a[off + (i >> 4)] >>> ((i & 15) << 2)) & 0x0f;
+    }
+
+    /**
+     * Adds the packed coefficients of the k-th monomial into the bucket of its value, at the start of the working space.
+     */
+    private static void add(long[] scratch, long[] coefficients, int words, int value, int k) {
+        if (value == 0) return;
+
+        int bucket = value * words, column = k * words;
+        for (int w = 0; w < words; w++) {
+            scratch[bucket + w] ^= coefficients[column + w];
+        }
+    }
+
+    /**
+     * Multiplies the buckets by their values and adds them to the packed coefficients of the k-th column, writing the sum
+     * of the w-th word and clearing the buckets of that word.
+     */
+    private static long collect(long[] scratch, long[] coefficients, int words, int k, int w) {
+        long acc = coefficients[k * words + w];
+
+        for (int v = 1; v < 16; v++) {
+            acc ^= CompiledPubKey.multPacked(scratch[v * words + w], v);
+            scratch[v * words + w] = 0;
+        }
+
+        return acc;
+    }
+
+    /**
+     * An affine map, whose columns are packed.
+     */
+    private static final class Affine {
+        private final int size, words;
+        private final long[] coefficients;
+
+        private Affine(AffineMap map) {
+            byte[][] matrix = map.getMatrix();
+            byte[] vector = map.getVector();
+
+            this.size = vector.length;
+            this.words = (size + 15) / 16;
+            this.coefficients = new long[(size + 1) * words];
+
+            for (int i = 0; i < size; i++) {
+                int word = i >> 4;
+                int shift = (i & 15) << 2;
+
+                for (int j = 0; j < size; j++) {
+                    coefficients[j * words + word] |= (long) matrix[i][j] << shift;
+                }
+                coefficients[size * words + word] |= (long) vector[i] << shift;
+            }
+        }
+
+        /**
+         * Evaluates this map on the vector packed at position in of the working space, writing it at position out.
+         */
+        private void eval(long[] scratch, int in, int out) {
+            for (int j = 0; j < size; j++) {
+                add(scratch, coefficients, words, nibble(scratch, in, j), j);
+            }
+
+            for (int w = 0; w < words; w++) {
+                scratch[out + w] = collect(scratch, coefficients, words, size, w);
+            }
+        }
+    }
+
+    /**
+     * A layer of the central map, whose coefficients are packed by monomial.
+     */
+    private static final class Quadratic {
+        private final int vi, oi, words, columns;
+        private final long[] coefficients;
+
+        private Quadratic(Layer layer) {
+            this.vi = layer.getVi();
+            this.oi = layer.getOi();
+            this.words = (oi + 15) / 16;
+            this.columns = vi * (vi + 1) / 2 + vi * oi + vi + oi;
+            this.coefficients = new long[(columns + 1) * words];
+
+            MultQuad[][] poly = layer.getPoly();
+
+            for (int i = 0; i < oi; i++) {
+                int word = i >> 4;
+                int shift = (i & 15) << 2;
+
+                byte[][] alpha = poly[i][0].getQuad();
+                byte[][] beta = poly[i][1].getQuad();
+                byte[] gammav = poly[i][0].getLin();
+                byte[] gammao = poly[i][2].getLin();
+                int k = 0;
+
+                for (int r = 0; r < vi; r++) {
+                    for (int c = r; c < vi; c++, k++) {
+                        // x_r*x_c and x_c*x_r are the same monomial
+                        byte coeff = r == c ? alpha[r][r] : GF16.add(alpha[r][c], alpha[c][r]);
+                        coefficients[k * words + word] |= (long) coeff << shift;
+                    }
+                    for (int c = 0; c < oi; c++, k++) {
+                        coefficients[k * words + word] |= (long) beta[r][c] << shift;
+                    }
+                }
+
+                for (int c = 0; c < vi; c++, k++) {
+                    coefficients[k * words + word] |= (long) gammav[c] << shift;
+                }
+                for (int c = 0; c < oi; c++, k++) {
+                    coefficients[k * words + word] |= (long) gammao[c] << shift;
+                }
+                coefficients[k * words + word] |= (long) poly[i][0].getTerm() << shift;
+            }
+        }
+
+        /**
+         * Evaluates this layer on the vector at position in of the working space, an element per long, whose first vi+oi elements are used,
+         * writing the result as the elements from the first-th of the vector packed at position out.
+         */
+        private void eval(long[] scratch, int in, int out, int first) {
+            int k = 0;
+
+            for (int r = 0; r < vi; r++) {
+                int xr = (int) scratch[in + r];
+                if (xr == 0) {
+                    k += vi - r + oi;
+                    continue;
+                }
+
+                for (int c = r; c < vi + oi; c++, k++) {
+                    add(scratch, coefficients, words, GF16.mult((byte) xr, (byte) scratch[in + c]), k);
+                }
+            }
+
+            for (int c = 0; c < vi + oi; c++, k++) {
+                add(scratch, coefficients, words, (int) scratch[in + c], k);
+            }
+
+            for (int w = 0; w < words; w++) {
+                long acc = collect(scratch, coefficients, words, columns, w);
+
+                for (int i = w * 16; i < Math.min(oi, w * 16 + 16); i++) {
+                    int e = first + i;
+                    scratch[out + (e >> 4)] |= ((acc >>> ((i & 15) << 2)) & 0x0f) << ((e & 15) << 2);
+                }
+            }
+        }
+    }
+}
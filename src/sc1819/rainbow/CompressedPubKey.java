@@ -0,0 +1,342 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.AffineMap;
+import sc1819.rainbow.util.CentralMap;
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.Layer;
+import sc1819.rainbow.util.MultQuad;
+import sc1819.rainbow.util.SeedExpander;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+
+/**
+ * This class represents a compressed public key for the Rainbow Signature Scheme, in the style of CyclicRainbow.
+ * <p>
+ * The quadratic coefficients of the public map on the monomials x<sub>i</sub>x<sub>j</sub>, with i{@literal <=}j, i{@literal <}v1
+ * and j{@literal <}v1+o1, are not stored: they are expanded from a short seed through a {@link SeedExpander}.
+ * These are exactly the monomials on which every polynomial of the central map may have a nonzero coefficient,
+ * so a secret key matching the seed is obtained by choosing {@code S}, {@code T} and the other coefficients of {@code F} at random
+ * and then solving a linear system for the coefficients of {@code F} on those monomials,
+ * see {@link #generateSecKey(RainbowParameters, SecureRandom, byte[], boolean)}.
+ * <p>
+ * Only the seed and the remaining coefficients, packed two per byte, are stored.
+ * The key can be evaluated in streaming fashion, expanding the seed while the equations are evaluated,
+ * or expanded once into a {@link RainbowPubKey}.
+ */
+public class CompressedPubKey implements PublicMap, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The seed from which the coefficients on the seeded monomials are expanded.
+     */
+    private byte[] seed;
+    /**
+     * Parameters of this public key, {@code n} is the number of variables, {@code m} the number of equations.
+     */
+    private int n, m;
+    /**
+     * The parameters v1 and o1 of the scheme, which determine the seeded monomials.
+     */
+    private int v1, o1;
+    /**
+     * For each equation, the quadratic coefficients on the monomials which are not seeded, in upper triangular row order,
+     * followed by the linear coefficients and by the free term, packed two per byte.
+     */
+    private byte[] coefficients;
+
+    /**
+     * Constructor, compresses a public key generated by a secret key matching the seed.
+     *
+     * @param pk   the public key to be compressed
+     * @param seed the seed of the key
+     * @param v1   the number of vinegar variables of the first layer
+     * @param o1   the number of oil variables of the first layer
+     * @throws IllegalArgumentException if the public key does not match the seed
+     */
+    public CompressedPubKey(RainbowPubKey pk, byte[] seed, int v1, int o1) {
+        this.seed = seed.clone();
+        this.n = pk.getVarNum();
+        this.m = pk.getEqNum();
+        this.v1 = v1;
+        this.o1 = o1;
+
+        SeedExpander expander = new SeedExpander(seed);
+        byte[] coeff = new byte[m * (n * (n + 1) / 2 - seededNum(v1, o1) + n + 1)];
+        int k = 0;
+        byte c;
+
+        for (MultQuad poly : pk.getPoly()) {
+            byte[][] quad = poly.getQuad();
+
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    c = i == j ? quad[i][i] : GF16.add(quad[i][j], quad[j][i]);
+
+                    if (!isSeeded(i, j, v1, o1)) {
+                        coeff[k++] = c;
+                    } else if (c != expander.nextElement()) {
+                        throw new IllegalArgumentException("Public key does not match the seed!");
+                    }
+                }
+            }
+
+            System.arraycopy(poly.getLin(), 0, coeff, k, n);
+            k += n;
+            coeff[k++] = poly.getTerm();
+        }
+
+        this.coefficients = GF16.pack(coeff);
+    }
+
+    /**
+     * Tells whether the coefficient of x<sub>i</sub>x<sub>j</sub>, with i{@literal <=}j, is expanded from the seed.
+     *
+     * @param i  the index of the first variable
+     * @param j  the index of the second variable
+     * @param v1 the number of vinegar variables of the first layer
+     * @param o1 the number of oil variables of the first layer
+     * @return true if the monomial is seeded
+     */
+    public static boolean isSeeded(int i, int j, int v1, int o1) {
+        return i < v1 && j < v1 + o1;
+    }
+
+    /**
+     * Returns the number of seeded monomials of each equation.
+     *
+     * @param v1 the number of vinegar variables of the first layer
+     * @param o1 the number of oil variables of the first layer
+     * @return v1(v1+o1)-v1(v1-1)/2
+     */
+    public static int seededNum(int v1, int o1) {
+        return v1 * (v1 + o1) - v1 * (v1 - 1) / 2;
+    }
+
+    /**
+     * Generates a secret key whose public key has the coefficients expanded from a seed on the seeded monomials.
+     * <p>
+     * Let {@code Q} be the matrix of the quadratic coefficients of F°T, one row for each polynomial,
+     * then the public map has quadratic coefficients {@code SQ}, hence on the seeded monomials Q must be equal to
+     * S<sup>-1</sup>R, being R the coefficients expanded from the seed.
+     * Composing with T is a linear map on the coefficients of F, so writing f=(f<sub>B</sub>,f<sub>C</sub>) for the coefficients of F
+     * on the seeded monomials and on the others, and restricting to the seeded monomials,
+     * f<sub>B</sub>A<sub>BB</sub>=S<sup>-1</sup>R-f<sub>C</sub>A<sub>CB</sub>.
+     * The coefficients f<sub>C</sub> are zero in the first layer and random in the second one, then f<sub>B</sub> is found by solving this system.
+     * If A<sub>BB</sub> is singular a new T is generated.
+     *
+     * @param param    the parameters of the scheme
+     * @param random   the source of random field elements needed to generate the maps
+     * @param seed     the seed of the public key
+     * @param standard whether the affine maps are to be in standard form
+     * @return the secret key
+     */
+    public static RainbowSecKey generateSecKey(RainbowParameters param, SecureRandom random, byte[] seed, boolean standard) {
+        int v1 = param.getv1(), o1 = param.geto1(), o2 = param.geto2();
+        int m = o1 + o2, n = v1 + m, v2 = v1 + o1;
+        int b = seededNum(v1, o1);
+
+        // indices of the seeded monomials
+        int[] rowOf = new int[b], colOf = new int[b];
+        int[][] index = new int[n][n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                if (isSeeded(i, j, v1, o1)) {
+                    rowOf[k] = i;
+                    colOf[k] = j;
+                    index[i][j] = k++;
+                }
+            }
+        }
+
+        AffineMap S = RainbowSecKey.generateS(param, random, standard);
+
+        // coefficients of F°T on the seeded monomials: S^-1 R
+        byte[][] R = new byte[m][b];
+        SeedExpander expander = new SeedExpander(seed);
+        for (int p = 0; p < m; p++) {
+            for (k = 0; k < b; k++) {
+                R[p][k] = expander.nextElement();
+            }
+        }
+        byte[][] target = GF16.prodMatMat(S.getInverse(), R);
+
+        // random coefficients of the second layer outside the seeded monomials
+        byte[][][] fC = new byte[o2][n][n];
+        for (int p = 0; p < o2; p++) {
+            for (int i = 0; i < v2; i++) {
+                for (int j = i; j < n; j++) {
+                    if (!isSeeded(i, j, v1, o1)) fC[p][i][j] = (byte) random.nextInt(16);
+                }
+            }
+        }
+
+        AffineMap T;
+        byte[][] fB;
+
+        do {
+            T = RainbowSecKey.generateT(param, random, standard);
+            byte[][] t = T.getMatrix();
+
+            // right-hand sides, one column for each polynomial
+            byte[][] rhs = new byte[b][m];
+            for (int p = 0; p < m; p++) {
+                byte[][] q = null;
+
+                if (p >= o1) {
+                    q = GF16.prodMatMat(GF16.transpose(t), GF16.prodMatMat(fC[p - o1], t));
+                }
+
+                for (k = 0; k < b; k++) {
+                    rhs[k][p] = target[p][k];
+
+                    if (q != null) {
+                        int i = rowOf[k], j = colOf[k];
+                        rhs[k][p] = GF16.add(rhs[k][p], i == j ? q[i][i] : GF16.add(q[i][j], q[j][i]));
+                    }
+                }
+            }
+
+            // A_BB transposed: the coefficient of the monomial c of (Tx)_i(Tx)_j in row c, column index[i][j]
+            byte[][] a = new byte[b][b];
+            for (int c = 0; c < b; c++) {
+                int x = rowOf[c], y = colOf[c];
+
+                for (int r = 0; r < b; r++) {
+                    int i = rowOf[r], j = colOf[r];
+
+                    if (x == y) {
+                        a[c][r] = GF16.mult(t[i][x], t[j][x]);
+                    } else {
+                        a[c][r] = GF16.add(GF16.mult(t[i][x], t[j][y]), GF16.mult(t[i][y], t[j][x]));
+                    }
+                }
+            }
+
+            fB = GF16.solveSystems(a, rhs);
+        } while (fB == null);
+
+        Layer[] layers = new Layer[2];
+        int[] vi = {v1, v2}, oi = {o1, o2};
+
+        for (int l = 0; l < 2; l++) {
+            byte[][][] alpha = new byte[oi[l]][vi[l]][vi[l]];
+            byte[][][] beta = new byte[oi[l]][vi[l]][oi[l]];
+            byte[][] gammav = new byte[oi[l]][vi[l]];
+            byte[][] gammao = new byte[oi[l]][oi[l]];
+            byte[] delta = new byte[oi[l]];
+
+            for (int p = 0; p < oi[l]; p++) {
+                int poly = l == 0 ? p : o1 + p;
+
+                for (int i = 0; i < vi[l]; i++) {
+                    for (int j = i; j < vi[l] + oi[l]; j++) {
+                        byte c = isSeeded(i, j, v1, o1) ? fB[index[i][j]][poly] : fC[p][i][j];
+
+                        if (j < vi[l]) alpha[p][i][j] = c;
+                        else beta[p][i][j - vi[l]] = c;
+                    }
+
+                    gammav[p][i] = (byte) random.nextInt(16);
+                }
+
+                for (int j = 0; j < oi[l]; j++) {
+                    gammao[p][j] = (byte) random.nextInt(16);
+                }
+
+                delta[p] = (byte) random.nextInt(16);
+            }
+
+            layers[l] = new Layer(vi[l], oi[l], alpha, beta, gammav, gammao, delta);
+        }
+
+        return new RainbowSecKey(S, T, new CentralMap(v1, o1, o2, layers[0], layers[1]));
+    }
+
+    @Override
+    public int getVarNum() {
+        return n;
+    }
+
+    @Override
+    public int getEqNum() {
+        return m;
+    }
+
+    /**
+     * Returns the evaluation of this public map on an array of field elements, expanding the seed while the equations are evaluated.
+     *
+     * @param x the array on which the map is evaluated
+     * @return the result of the evaluation
+     */
+    @Override
+    public byte[] eval(byte[] x) {
+        if (x.length != n) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        SeedExpander expander = new SeedExpander(seed);
+        byte[] res = new byte[m];
+        int k = 0;
+        byte acc, c;
+
+        for (int p = 0; p < m; p++) {
+            for (int i = 0; i < n; i++) {
+                acc = 0;
+
+                for (int j = i; j < n; j++) {
+                    c = isSeeded(i, j, v1, o1) ? expander.nextElement() : coefficient(k++);
+                    acc = GF16.add(acc, GF16.mult(c, x[j]));
+                }
+
+                res[p] = GF16.add(res[p], GF16.mult(acc, x[i]));
+            }
+
+            for (int j = 0; j < n; j++) {
+                res[p] = GF16.add(res[p], GF16.mult(coefficient(k++), x[j]));
+            }
+
+            res[p] = GF16.add(res[p], coefficient(k++));
+        }
+
+        return res;
+    }
+
+    /**
+     * Expands this key into a public key, whose quadratic components are upper triangular.
+     *
+     * @return the expanded public key
+     */
+    public RainbowPubKey expand() {
+        SeedExpander expander = new SeedExpander(seed);
+        MultQuad[] P = new MultQuad[m];
+        int k = 0;
+
+        for (int p = 0; p < m; p++) {
+            byte[][] quad = new byte[n][n];
+            byte[] lin = new byte[n];
+
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    quad[i][j] = isSeeded(i, j, v1, o1) ? expander.nextElement() : coefficient(k++);
+                }
+            }
+
+            for (int j = 0; j < n; j++) {
+                lin[j] = coefficient(k++);
+            }
+
+            P[p] = new MultQuad(quad, lin, coefficient(k++));
+        }
+
+        return new RainbowPubKey(P);
+    }
+
+    /**
+     * Returns the k-th stored field element.
+     */
+    private byte coefficient(int k) {
+        return (byte) ((coefficients[k >> 1] >> ((k & 1) << 2)) & 0x0f);
+    }
+}
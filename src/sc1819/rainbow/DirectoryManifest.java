@@ -0,0 +1,270 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * This class hashes all the files of a directory tree in parallel and lists their SHA-256 digests in a manifest,
+ * so that a whole tree is signed by signing the manifest only once.
+ * <p>
+ * The manifest is a UTF-8 text file with a line for each regular file and each symbolic link, made of a field,
+ * two spaces and the path relative to the root of the tree, with '/' as separator. For a regular file the field is
+ * the hex encoded digest, as in the format of sha256sum. Symbolic links are not followed: the field of a link is
+ * {@link #LINK} followed by its target, with backslashes, spaces and line feeds escaped as "\\", "\s" and "\n",
+ * so that a link added to, or changed in, a signed tree does not go unnoticed; sha256sum does not accept these lines.
+ * Other files, such as named pipes, are not listed.
+ * <p>
+ * Unlike sha256sum, the paths are not escaped: a path containing a line feed cannot be listed,
+ * and a line starting with a backslash is not read as an escaped path.
+ * The lines are sorted by path, so the same tree always gives the same manifest.
+ */
+public class DirectoryManifest {
+
+    /**
+     * The start of the field of a symbolic link in a manifest.
+     */
+    public static final String LINK = "symlink:";
+
+    private final int threads;
+
+    /**
+     * Constructor, sets the number of threads hashing the files.
+     *
+     * @param threads the number of threads hashing the files
+     */
+    public DirectoryManifest(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread number must be positive!");
+        }
+
+        this.threads = threads;
+    }
+
+    /**
+     * Constructor, uses a thread per available processor.
+     */
+    public DirectoryManifest() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Hashes all the regular files of a directory tree and reads the targets of its symbolic links.
+     *
+     * @param root    the root of the tree
+     * @param exclude the files which are not to be hashed, such as the manifest itself
+     * @return the field of each file in the manifest, the hex encoded digest or the target of a link after {@link #LINK},
+     * keyed by its relative path and sorted
+     * @throws IOException if the tree cannot be walked or a file cannot be read
+     */
+    public SortedMap<String, String> hash(Path root, Set<Path> exclude) throws IOException {
+        List<Path> files, links;
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> all = walk.filter(path -> !exclude.contains(path.toAbsolutePath().normalize())).toList();
+
+            files = all.stream().filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).toList();
+            links = all.stream().filter(Files::isSymbolicLink).toList();
+        }
+
+        SortedMap<String, String> res = new TreeMap<>();
+        for (Path link : links) {
+            res.put(relativeName(root, link), LINK + escape(Files.readSymbolicLink(link).toString()));
+        }
+        if (files.isEmpty()) {
+            return res;
+        }
+
+        HexFormat hex = HexFormat.of();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+
+        try {
+            List<Future<byte[]>> digests = new ArrayList<>(files.size());
+
+            for (Path file : files) {
+                digests.add(pool.submit(() -> digest(file)));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                String name = relativeName(root, files.get(i));
+                res.put(name, hex.formatHex(digests.get(i).get()));
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return res;
+    }
+
+    /**
+     * Hashes a directory tree again and compares it with a manifest.
+     *
+     * @param root     the root of the tree
+     * @param manifest the fields listed in the manifest
+     * @param exclude  the files which are not to be hashed, such as the manifest itself
+     * @return the paths of the files and links which differ from the manifest, are missing or are not listed,
+     * empty if the tree matches
+     * @throws IOException if the tree cannot be walked or a file cannot be read
+     */
+    public List<String> check(Path root, Map<String, String> manifest, Set<Path> exclude) throws IOException {
+        SortedMap<String, String> actual = hash(root, exclude);
+        List<String> res = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : manifest.entrySet()) {
+            if (!entry.getValue().equals(actual.get(entry.getKey()))) {
+                res.add(entry.getKey());
+            }
+        }
+        for (String name : actual.keySet()) {
+            if (!manifest.containsKey(name)) {
+                res.add(name);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Encodes the fields of a tree as a manifest.
+     *
+     * @param fields the field of each file, keyed by its relative path
+     * @return the content of the manifest
+     */
+    public static byte[] encode(SortedMap<String, String> fields) {
+        StringBuilder res = new StringBuilder(fields.size() * 100);
+
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            res.append(entry.getValue()).append("  ").append(entry.getKey()).append('\n');
+        }
+
+        return res.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a manifest.
+     *
+     * @param manifest the content of the manifest
+     * @return the field of each file, keyed by its relative path
+     * @throws IllegalArgumentException if a line is not valid
+     */
+    public static SortedMap<String, String> decode(byte[] manifest) {
+        SortedMap<String, String> res = new TreeMap<>();
+        HexFormat hex = HexFormat.of();
+
+        for (String line : new String(manifest, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) continue;
+
+            // neither a digest nor an escaped target contains a space
+            int end = line.indexOf(' ');
+            if (end < 0 || end + 2 >= line.length() || line.charAt(end + 1) != ' ') {
+                throw new IllegalArgumentException("Wrong manifest line!");
+            }
+
+            String field = line.substring(0, end);
+            if (field.startsWith(LINK)) {
+                // the target is kept escaped, as it is compared with the one read from the tree
+                unescape(field.substring(LINK.length()));
+            } else if (field.length() != 64) {
+                throw new IllegalArgumentException("Wrong manifest line!");
+            } else {
+                field = hex.formatHex(hex.parseHex(field));
+            }
+
+            res.put(line.substring(end + 2), field);
+        }
+
+        return res;
+    }
+
+    /**
+     * Escapes the target of a link, so that it contains neither spaces nor line feeds.
+     */
+    private static String escape(String target) {
+        return target.replace("\\", "\\\\").replace(" ", "\\s").replace("\n", "\\n");
+    }
+
+    /**
+     * Undoes {@link #escape(String)}.
+     *
+     * @throws IllegalArgumentException if the target is not escaped properly
+     */
+    private static String unescape(String target) {
+        StringBuilder res = new StringBuilder(target.length());
+
+        for (int i = 0; i < target.length(); i++) {
+            char c = target.charAt(i);
+
+            if (c == '\\') {
+                if (++i == target.length()) {
+                    throw new IllegalArgumentException("Wrong manifest line!");
+                }
+
+                switch (target.charAt(i)) {
+                    case '\\':
+                        res.append('\\');
+                        break;
+                    case 's':
+                        res.append(' ');
+                        break;
+                    case 'n':
+                        res.append('\n');
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Wrong manifest line!");
+                }
+            } else {
+                res.append(c);
+            }
+        }
+
+        return res.toString();
+    }
+
+    private static String relativeName(Path root, Path file) throws IOException {
+        String name = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+
+        if (name.indexOf('\n') >= 0) {
+            throw new IOException(file + " cannot be listed in a manifest!");
+        }
+
+        return name;
+    }
+
+    private static byte[] digest(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        RainbowScheme.digestFile(digest, file.toString());
+
+        return digest.digest();
+    }
+}
@@ -0,0 +1,200 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class keeps the keys loaded from files in memory, so that processes which sign or verify many times
+ * load each key only once.
+ * <p>
+ * Keys are looked up by the absolute path of their file, and a cached key is used only while the file has the same
+ * modification time, size and, where the file system provides one, identity as when it was loaded:
+ * a key file which is replaced or rewritten is loaded again.
+ * <p>
+ * At most {@code capacity} keys are kept, the least recently used one is evicted first. Evicted keys are not wiped,
+ * since they may still be in use by another thread.
+ * <p>
+ * A key requested by many threads at once is loaded by the first one only, while the others wait for it.
+ *
+ * @param <K> the type of the keys
+ */
+public class KeyCache<K> {
+
+    /**
+     * Loads a key from a file.
+     *
+     * @param <K> the type of the keys
+     */
+    public interface Loader<K> {
+
+        /**
+         * Loads a key from a file.
+         *
+         * @param path the path of the file
+         * @return the key
+         * @throws IOException if the file cannot be read or does not contain a valid key
+         */
+        K load(String path) throws IOException;
+    }
+
+    /**
+     * The default number of keys kept.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final Loader<K> loader;
+    private final LinkedHashMap<Path, Entry<K>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructor, sets the number of keys kept and how they are loaded.
+     *
+     * @param capacity the largest number of keys kept
+     * @param loader   loads a key from a file
+     */
+    public KeyCache(int capacity, Loader<K> loader) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+
+        this.capacity = capacity;
+        this.loader = loader;
+    }
+
+    /**
+     * Returns a cache of public keys, packed or serialized, laid out for fast evaluation as by {@link CompiledPubKey}.
+     *
+     * @param capacity the largest number of keys kept
+     * @return the cache
+     */
+    public static KeyCache<PublicMap> publicKeys(int capacity) {
+        return new KeyCache<>(capacity, path -> CompiledPubKey.compile(RainbowScheme.openPublicMap(path)));
+    }
+
+    /**
+     * Returns a cache of secret keys.
+     *
+     * @param capacity the largest number of keys kept
+     * @return the cache
+     */
+    public static KeyCache<RainbowSecKey> secretKeys(int capacity) {
+        return new KeyCache<>(capacity, RainbowSecKey::readKey);
+    }
+
+    /**
+     * Returns the key stored in a file, loading it if it is not cached or the file has changed since it was loaded.
+     *
+     * @param path the path of the file
+     * @return the key
+     * @throws IOException if the file cannot be read or does not contain a valid key
+     */
+    public K get(String path) throws IOException {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        Entry<K> entry;
+        boolean owner = false;
+
+        synchronized (entries) {
+            entry = entries.get(file);
+
+            if (entry == null || !entry.matches(attributes)) {
+                entry = new Entry<>(attributes);
+                entries.put(file, entry);
+                owner = true;
+
+                if (entries.size() > capacity) {
+                    entries.remove(entries.keySet().iterator().next());
+                }
+            }
+        }
+
+        if (owner) {
+            try {
+                entry.key.complete(loader.load(file.toString()));
+            } catch (IOException | RuntimeException | Error ex) {
+                // the threads waiting for the key get the same error, the next request tries again
+                synchronized (entries) {
+                    entries.remove(file, entry);
+                }
+                entry.key.completeExceptionally(ex);
+            }
+        }
+
+        try {
+            return entry.key.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (RuntimeException) ex.getCause();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + path);
+        }
+    }
+
+    /**
+     * Removes the key of a file, if cached.
+     *
+     * @param path the path of the file
+     */
+    public void invalidate(String path) {
+        synchronized (entries) {
+            entries.remove(Paths.get(path).toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Removes all the cached keys.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached keys, including those being loaded.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * A cached key, together with the attributes its file had when it was loaded.
+     */
+    private static final class Entry<K> {
+        final FileTime modified;
+        final long size;
+        final Object fileKey;
+        final CompletableFuture<K> key = new CompletableFuture<>();
+
+        Entry(BasicFileAttributes attributes) {
+            this.modified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.fileKey = attributes.fileKey();
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size()
+                    && Objects.equals(fileKey, attributes.fileKey());
+        }
+    }
+}
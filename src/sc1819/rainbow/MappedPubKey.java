@@ -0,0 +1,305 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.MultQuad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class represents a public key for the Rainbow Signature Scheme which is evaluated directly from its packed encoding,
+ * usually a read-only memory mapping of a key file.
+ * <p>
+ * The packed encoding consists of a header followed by one block for each equation of the public map:
+ * <ul>
+ * <li>
+ * the header contains the magic number {@code RBPK}, the version of the encoding, {@code n} and {@code m} as 32-bit integers;
+ * </li>
+ * <li>
+ * each block contains the upper triangular part of the quadratic component, stored row by row, the linear component and the free term,
+ * packed two field elements per byte.
+ * </li>
+ * </ul>
+ * Since the quadratic component of a polynomial over GF16 is determined by its upper triangular part,
+ * each equation takes {@code (n(n+1)/2+n+1)/2} bytes.
+ * <p>
+ * Equations are decoded only when they are evaluated, hence loading a key costs no more than mapping the file,
+ * and a verification stops at the first equation which does not match the digest.
+ */
+public class MappedPubKey implements PublicMap {
+
+    /**
+     * The magic number of a packed public key, {@code RBPK} in ASCII.
+     */
+    public static final int MAGIC = 0x5242504B;
+    /**
+     * The version of the packed encoding.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The size in bytes of the header of a packed public key.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The packed encoding of this public key.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Parameters of this public key, {@code n} is the number of variables, {@code m} the number of equations.
+     */
+    private final int n, m;
+    /**
+     * The size in bytes of the block of each equation.
+     */
+    private final int eqSize;
+
+    /**
+     * Constructor, wraps the packed encoding of a public key.
+     *
+     * @param buffer a buffer containing the packed encoding, starting from its current position
+     * @throws IllegalArgumentException if the buffer does not contain a valid packed public key
+     */
+    public MappedPubKey(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+
+        if (this.buffer.remaining() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a packed public key!");
+        }
+
+        this.n = this.buffer.getInt(8);
+        this.m = this.buffer.getInt(12);
+
+        if (n <= 0 || m <= 0) {
+            throw new IllegalArgumentException("Not a packed public key!");
+        }
+
+        this.eqSize = equationSize(n);
+
+        if (this.buffer.remaining() < HEADER_SIZE + (long) m * eqSize) {
+            throw new IllegalArgumentException("Truncated packed public key!");
+        }
+    }
+
+    /**
+     * Maps a packed public key file into memory.
+     * The mapping is read-only, hence it is shared with every other process mapping the same file.
+     *
+     * @param path the path of the file containing the packed key
+     * @return the public key backed by the mapping
+     * @throws IOException              if the file cannot be mapped
+     * @throws IllegalArgumentException if the file is not a valid packed public key
+     */
+    public static MappedPubKey open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new MappedPubKey(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the magic number of a packed public key.
+     *
+     * @param path the path of the file to be checked
+     * @return true if the file is a packed public key, false otherwise or if the file cannot be read
+     */
+    public static boolean isPacked(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+
+            while (magic.hasRemaining() && channel.read(magic) >= 0) ;
+
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the size in bytes of the block of an equation in {@code n} variables.
+     *
+     * @param n the number of variables
+     * @return the size of the block
+     */
+    public static int equationSize(int n) {
+        return (n * (n + 1) / 2 + n + 1 + 1) / 2;
+    }
+
+    /**
+     * Writes the header of a packed public key into a buffer.
+     *
+     * @param buffer the buffer, written from its current position
+     * @param n      the number of variables
+     * @param m      the number of equations
+     */
+    public static void putHeader(ByteBuffer buffer, int n, int m) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(n);
+        buffer.putInt(m);
+    }
+
+    /**
+     * Packs a polynomial into the block of an equation.
+     * The quadratic component is folded into its upper triangular part.
+     *
+     * @param poly a MultQuad of type 0 in {@code n} variables
+     * @param n    the number of variables
+     * @return the packed block of the equation
+     */
+    public static byte[] encodeEquation(MultQuad poly, int n) {
+        byte[][] quad = poly.getQuad();
+        byte[] lin = poly.getLin();
+        byte[] coeff = new byte[n * (n + 1) / 2 + n + 1];
+        int k = 0;
+
+        for (int i = 0; i < n; i++) {
+            coeff[k++] = quad[i][i];
+
+            for (int j = i + 1; j < n; j++) {
+                coeff[k++] = GF16.add(quad[i][j], quad[j][i]);
+            }
+        }
+
+        System.arraycopy(lin, 0, coeff, k, n);
+        coeff[k + n] = poly.getTerm();
+
+        return GF16.pack(coeff);
+    }
+
+    /**
+     * Returns the packed encoding of a public key.
+     *
+     * @param pk the public key to be encoded
+     * @return a heap buffer containing the packed encoding, ready to be read
+     */
+    public static ByteBuffer encode(RainbowPubKey pk) {
+        int n = pk.getVarNum();
+        int m = pk.getEqNum();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + m * equationSize(n));
+
+        putHeader(buffer, n, m);
+        for (MultQuad poly : pk.getPoly()) {
+            buffer.put(encodeEquation(poly, n));
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Writes a public key onto a file using the packed encoding.
+     *
+     * @param pk   the public key to be written
+     * @param path the path of the file onto which the key is to be written
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(RainbowPubKey pk, String path) throws IOException {
+        ByteBuffer buffer = encode(pk);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    @Override
+    public int getVarNum() {
+        return n;
+    }
+
+    @Override
+    public int getEqNum() {
+        return m;
+    }
+
+    /**
+     * Returns the evaluation of a single equation of this public map, decoding its block on the fly.
+     *
+     * @param i the index of the equation
+     * @param x the array on which the equation is evaluated
+     * @return the result of the evaluation
+     */
+    public byte evalEquation(int i, byte[] x) {
+        if (x.length != n) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        int base = HEADER_SIZE + i * eqSize;
+        int k = 0;
+        byte res = 0, acc;
+
+        for (int r = 0; r < n; r++) {
+            acc = 0;
+
+            for (int c = r; c < n; c++, k++) {
+                acc = GF16.add(acc, GF16.mult(coefficient(base, k), x[c]));
+            }
+
+            res = GF16.add(res, GF16.mult(acc, x[r]));
+        }
+
+        for (int c = 0; c < n; c++, k++) {
+            res = GF16.add(res, GF16.mult(coefficient(base, k), x[c]));
+        }
+
+        return GF16.add(res, coefficient(base, k));
+    }
+
+    /**
+     * Returns a coefficient of an equation, in the order of the packed encoding:
+     * the upper triangular quadratic component row by row, the linear component and the free term.
+     *
+     * @param i the index of the equation
+     * @param k the position of the coefficient in the block of the equation
+     * @return the coefficient
+     */
+    public byte getCoefficient(int i, int k) {
+        return coefficient(HEADER_SIZE + i * eqSize, k);
+    }
+
+    /**
+     * Returns the k-th field element of the block starting at {@code base}.
+     */
+    private byte coefficient(int base, int k) {
+        return (byte) ((buffer.get(base + (k >> 1)) >> ((k & 1) << 2)) & 0x0f);
+    }
+
+    @Override
+    public byte[] eval(byte[] x) {
+        byte[] res = new byte[m];
+
+        for (int i = 0; i < m; i++) {
+            res[i] = evalEquation(i, x);
+        }
+
+        return res;
+    }
+
+    /**
+     * Checks whether the evaluation of this public map on a signature is equal to a given digest.
+     * The equations are evaluated one at a time, stopping at the first one which does not match.
+     *
+     * @param signature the array on which the map is evaluated
+     * @param h         the expected result of the evaluation
+     * @return true if P(signature)=h, false otherwise
+     */
+    @Override
+    public boolean verify(byte[] signature, byte[] h) {
+        if (h.length != m) {
+            return false;
+        }
+
+        for (int i = 0; i < m; i++) {
+            if (evalEquation(i, signature) != h[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
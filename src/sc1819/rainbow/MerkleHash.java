@@ -0,0 +1,336 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class computes the hash of a file as the root of a Merkle tree built with SHA-256,
+ * so that the chunks of a large file can be hashed in parallel.
+ * <p>
+ * The file is split into chunks of 2<sup>chunkBits</sup> bytes, the last one possibly shorter, and:
+ * <ul>
+ * <li>
+ * each chunk is a leaf, whose hash is SHA-256(0x00 || chunk);
+ * </li>
+ * <li>
+ * each inner node has hash SHA-256(0x01 || left || right), a node left without a sibling is moved up a level unchanged;
+ * </li>
+ * <li>
+ * the result is SHA-256(0x02 || length || top), where length is the size of the file as a big endian long
+ * and top is the hash at the top of the tree.
+ * </li>
+ * </ul>
+ * An empty file has a single, empty, leaf.
+ * <p>
+ * The whole tree can be saved on a file, so that a range of the hashed file can later be checked against the root
+ * reading only the chunks overlapping the range and the siblings on their paths to the top.
+ */
+public class MerkleHash {
+
+    /**
+     * The default chunk size, 4 MiB.
+     */
+    public static final int DEFAULT_CHUNK_BITS = 22;
+    /**
+     * The smallest and largest allowed chunk sizes, 1 KiB and 1 GiB.
+     */
+    public static final int MIN_CHUNK_BITS = 10, MAX_CHUNK_BITS = 30;
+
+    /**
+     * The first four bytes of a tree file, "RBMT".
+     */
+    public static final int TREE_MAGIC = 0x52424D54;
+
+    private static final int TREE_HEADER_SIZE = 16;
+    private static final int HASH_SIZE = 32;
+    private static final byte LEAF = 0, NODE = 1, ROOT = 2;
+
+    private final int chunkBits;
+    private final int threads;
+
+    /**
+     * Constructor, sets the size of the chunks and the number of threads hashing them.
+     *
+     * @param chunkBits the base 2 logarithm of the chunk size
+     * @param threads   the number of threads hashing the chunks
+     */
+    public MerkleHash(int chunkBits, int threads) {
+        if (chunkBits < MIN_CHUNK_BITS || chunkBits > MAX_CHUNK_BITS) {
+            throw new IllegalArgumentException("Chunk size out of range!");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread number must be positive!");
+        }
+
+        this.chunkBits = chunkBits;
+        this.threads = threads;
+    }
+
+    /**
+     * Constructor, sets the size of the chunks and uses a thread per available processor.
+     *
+     * @param chunkBits the base 2 logarithm of the chunk size
+     */
+    public MerkleHash(int chunkBits) {
+        this(chunkBits, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the root of the Merkle tree of a file.
+     *
+     * @param fileName the path of the file
+     * @return the 32 bytes of the root
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] root(String fileName) throws IOException {
+        return root(fileName, null);
+    }
+
+    /**
+     * Computes the root of the Merkle tree of a file, optionally writing the whole tree onto a file,
+     * from which the inclusion proofs of single chunks are then read by {@link #rangeRoot}.
+     * <p>
+     * The tree file consists of a header, made of {@link #TREE_MAGIC} and the chunk bits as ints and the size of the hashed file as a long,
+     * followed by the hashes of each level of the tree, starting from the leaves.
+     *
+     * @param fileName the path of the file
+     * @param treePath the path of the file on which the tree is written, null if the tree is not needed
+     * @return the 32 bytes of the root
+     * @throws IOException if the file cannot be read or the tree cannot be written
+     */
+    public byte[] root(String fileName, String treePath) throws IOException {
+        long size;
+        byte[][] level;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            size = channel.size();
+            level = leaves(channel, size);
+        }
+
+        FileChannel tree = null;
+        try {
+            if (treePath != null) {
+                tree = FileChannel.open(Paths.get(treePath), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+                ByteBuffer header = ByteBuffer.allocate(TREE_HEADER_SIZE);
+                header.putInt(TREE_MAGIC).putInt(chunkBits).putLong(size).flip();
+                writeFully(tree, header);
+            }
+
+            MessageDigest digest = newDigest();
+
+            while (true) {
+                if (tree != null) {
+                    for (byte[] node : level) {
+                        writeFully(tree, ByteBuffer.wrap(node));
+                    }
+                }
+
+                if (level.length == 1) break;
+
+                byte[][] next = new byte[(level.length + 1) / 2][];
+                for (int i = 0; i + 1 < level.length; i += 2) {
+                    next[i / 2] = node(digest, level[i], level[i + 1]);
+                }
+                if (level.length % 2 == 1) {
+                    next[next.length - 1] = level[level.length - 1];
+                }
+
+                level = next;
+            }
+
+            return finish(digest, size, level[0]);
+        } finally {
+            if (tree != null) {
+                tree.close();
+            }
+        }
+    }
+
+    /**
+     * Hashes the chunks of a file in parallel.
+     */
+    private byte[][] leaves(FileChannel channel, long size) throws IOException {
+        long chunkSize = 1L << chunkBits;
+        int chunks = chunkCount(size, chunkBits);
+
+        byte[][] res = new byte[chunks][];
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks));
+
+        try {
+            List<Future<byte[]>> leaves = new ArrayList<>(chunks);
+
+            for (int i = 0; i < chunks; i++) {
+                long position = i * chunkSize;
+                long length = Math.min(chunkSize, size - position);
+
+                leaves.add(pool.submit(() -> leaf(newDigest(), channel, position, length)));
+            }
+
+            for (int i = 0; i < chunks; i++) {
+                res[i] = leaves.get(i).get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return res;
+    }
+
+    /**
+     * Computes the root of the Merkle tree of a file reading only the chunks overlapping a range of bytes,
+     * together with their inclusion proofs read from a tree file written by {@link #root(String, String)}.
+     * The chunks are hashed and each one is followed up to the top of the tree; the result is the root
+     * of the tree only if all the chunks lead to the same top.
+     *
+     * @param fileName  the path of the file
+     * @param treePath  the path of the tree file
+     * @param chunkBits the base 2 logarithm of the chunk size, as recorded in the signature
+     * @param offset    the first byte of the range
+     * @param length    the number of bytes of the range, at least 1
+     * @return the 32 bytes of the root, or null if the chunks are not consistent with the tree file
+     * @throws IOException              if either file cannot be read
+     * @throws IllegalArgumentException if the tree file is not valid or the range is not within the hashed file
+     */
+    public static byte[] rangeRoot(String fileName, String treePath, int chunkBits, long offset, long length) throws IOException {
+        try (FileChannel tree = FileChannel.open(Paths.get(treePath), StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(TREE_HEADER_SIZE);
+            readFully(tree, header, 0);
+            header.flip();
+
+            if (header.getInt() != TREE_MAGIC || header.getInt() != chunkBits) {
+                throw new IllegalArgumentException("Wrong tree file!");
+            }
+            long size = header.getLong();
+
+            if (offset < 0 || length <= 0 || offset > size - length) {
+                throw new IllegalArgumentException("Range out of the file!");
+            }
+
+            long chunkSize = 1L << chunkBits;
+            int leaves = chunkCount(size, chunkBits);
+            MessageDigest digest = newDigest();
+            ByteBuffer sibling = ByteBuffer.allocate(HASH_SIZE);
+            byte[] top = null;
+
+            for (long chunk = offset >> chunkBits; chunk <= (offset + length - 1) >> chunkBits; chunk++) {
+                long position = chunk * chunkSize;
+                long chunkLength = Math.min(chunkSize, size - position);
+
+                if (channel.size() < position + chunkLength) {
+                    throw new IOException("Unexpected end of file!");
+                }
+
+                byte[] hash = leaf(digest, channel, position, chunkLength);
+
+                // climb the tree, reading only the siblings on the path
+                long levelStart = TREE_HEADER_SIZE;
+                int count = leaves;
+                int index = (int) chunk;
+
+                while (count > 1) {
+                    int other = index ^ 1;
+
+                    if (other < count) {
+                        sibling.clear();
+                        readFully(tree, sibling, levelStart + (long) other * HASH_SIZE);
+
+                        hash = (index & 1) == 0 ? node(digest, hash, sibling.array()) : node(digest, sibling.array(), hash);
+                    }
+
+                    levelStart += (long) count * HASH_SIZE;
+                    count = (count + 1) / 2;
+                    index /= 2;
+                }
+
+                if (top == null) {
+                    top = hash;
+                } else if (!MessageDigest.isEqual(top, hash)) {
+                    return null;
+                }
+            }
+
+            return finish(digest, size, top);
+        }
+    }
+
+    /**
+     * Returns the base 2 logarithm of the chunk size.
+     *
+     * @return the chunk bits
+     */
+    public int getChunkBits() {
+        return chunkBits;
+    }
+
+    private static int chunkCount(long size, int chunkBits) {
+        return (int) Math.max(1, (size + (1L << chunkBits) - 1) >> chunkBits);
+    }
+
+    private static byte[] leaf(MessageDigest digest, FileChannel channel, long position, long length) throws IOException {
+        digest.update(LEAF);
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        return digest.digest();
+    }
+
+    private static byte[] node(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(NODE);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    private static byte[] finish(MessageDigest digest, long size, byte[] top) {
+        digest.update(ROOT);
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+        digest.update(top);
+        return digest.digest();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IllegalArgumentException("Truncated tree file!");
+            }
+            position += read;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.AffineMap;
+import sc1819.rainbow.util.CentralMap;
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.Layer;
+import sc1819.rainbow.util.MultQuad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents a secret key for the Rainbow Signature Scheme whose material is stored outside of the Java heap.
+ * <p>
+ * All the maps needed for signing are copied into a single direct buffer, one field element per byte:
+ * <ul>
+ * <li>
+ * the inverse of {@code S} and its vectorial part, the inverse of {@code T} and its vectorial part;
+ * </li>
+ * <li>
+ * for each layer of the central map, the coefficients alpha, beta, gammav, gammao and delta of its polynomials.
+ * </li>
+ * </ul>
+ * The coefficients are written into the buffer one at a time, so that no dense or unpacked copy of the maps is built on the heap.
+ * The signing kernels read the coefficients straight from the buffer, so the key material is never moved by the garbage collector;
+ * the vectors computed while signing are kept in a small working space on the heap, overwritten with zeros after each signature.
+ * The footprint of a loaded key is fixed and given by {@link #size()}.
+ * <p>
+ * A key can be shared by many threads: each one signs in a working space of its own, as each one has its own
+ * {@link RainbowSigner} in {@link RainbowSecKey}, so signatures with the same key are computed in parallel.
+ * <p>
+ * A key must be closed when it is no longer needed: {@link #close()} overwrites the whole buffer with zeros.
+ */
+public class OffHeapSecKey implements AutoCloseable {
+
+    /**
+     * The buffer containing the key material.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The number of variables and the number of equations of this key.
+     */
+    private final int n, m;
+    /**
+     * The number of vinegar and oil variables of each layer.
+     */
+    private final int[] vi, oi;
+    /**
+     * The offsets of the inverse of S, of the vector of S, of the inverse of T and of the vector of T.
+     */
+    private final int invSOff, csOff, invTOff, ctOff;
+    /**
+     * The offsets of the coefficients alpha, beta, gammav, gammao and delta of each layer.
+     */
+    private final int[] alphaOff, betaOff, gammavOff, gammaoOff, deltaOff;
+    /**
+     * The largest number of oil variables of a layer, the size of the linear systems solved while signing.
+     */
+    private final int maxOil;
+    /**
+     * The working space of each thread calling {@link #sign(byte[], SecureRandom)}.
+     */
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+    /**
+     * Held for reading while signing and for writing while closing, so that the buffer is not wiped under a signature.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Whether this key has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructor, copies a secret key into a newly allocated direct buffer.
+     *
+     * @param sk the secret key to be copied
+     */
+    public OffHeapSecKey(RainbowSecKey sk) {
+        this.n = sk.getVarNum();
+        this.m = sk.getEqNum();
+
+        Layer[] layers = sk.getF().getLayers();
+        this.vi = new int[layers.length];
+        this.oi = new int[layers.length];
+        this.alphaOff = new int[layers.length];
+        this.betaOff = new int[layers.length];
+        this.gammavOff = new int[layers.length];
+        this.gammaoOff = new int[layers.length];
+        this.deltaOff = new int[layers.length];
+
+        int size = 0;
+        invSOff = size;
+        size += m * m;
+        csOff = size;
+        size += m;
+        invTOff = size;
+        size += n * n;
+        ctOff = size;
+        size += n;
+
+        for (int l = 0; l < layers.length; l++) {
+            vi[l] = layers[l].getVi();
+            oi[l] = layers[l].getOi();
+
+            alphaOff[l] = size;
+            size += oi[l] * vi[l] * vi[l];
+            betaOff[l] = size;
+            size += oi[l] * vi[l] * oi[l];
+            gammavOff[l] = size;
+            size += oi[l] * vi[l];
+            gammaoOff[l] = size;
+            size += oi[l] * oi[l];
+            deltaOff[l] = size;
+            size += oi[l];
+        }
+
+        buffer = ByteBuffer.allocateDirect(size);
+
+        int o = 0;
+        for (int l = 0; l < layers.length; l++) {
+            o = Math.max(o, oi[l]);
+        }
+        this.maxOil = o;
+
+        putInverse(sk.getS());
+        buffer.put(sk.getCs());
+        putInverse(sk.getT());
+        buffer.put(sk.getCt());
+
+        for (int l = 0; l < layers.length; l++) {
+            MultQuad[][] poly = layers[l].getPoly();
+
+            for (MultQuad[] p : poly) putQuad(p[0], vi[l], vi[l]);
+            for (MultQuad[] p : poly) putQuad(p[1], vi[l], oi[l]);
+            for (MultQuad[] p : poly) buffer.put(p[0].getLin());
+            for (MultQuad[] p : poly) buffer.put(p[2].getLin());
+            for (MultQuad[] p : poly) buffer.put(p[0].getTerm());
+        }
+    }
+
+    /**
+     * Reads a secret key from a file directly into a direct buffer.
+     * A key stored as a seed is regenerated without going through the cache of {@link SeedSecKey},
+     * so that the heap copy produced by the deserialization is never shared, and it is wiped as soon as it has been copied.
+     *
+     * @param path the path of the file containing the key to be read
+     * @return the secret key read from the file
+     * @throws IOException if the file cannot be read or does not contain a secret key
+     */
+    public static OffHeapSecKey readKey(String path) throws IOException {
+        RainbowSecKey sk = RainbowSecKey.readKey(path, false);
+
+        try {
+            return new OffHeapSecKey(sk);
+        } finally {
+            sk.wipe();
+        }
+    }
+
+    /**
+     * Writes the matrix of the inverse of an affine map row by row, computing its j-th column as the image of
+     * e<sub>j</sub>+v through the inverse of the map, so that the matrix is never built on the heap.
+     * The two vectors used are overwritten with zeros.
+     */
+    private void putInverse(AffineMap map) {
+        byte[] vector = map.getVector();
+        int size = vector.length, start = buffer.position();
+        byte[] in = new byte[size], column = new byte[size];
+
+        for (int j = 0; j < size; j++) {
+            System.arraycopy(vector, 0, in, 0, size);
+            in[j] = GF16.add(in[j], (byte) 1);
+            map.evalInv(in, 0, column, 0);
+
+            for (int i = 0; i < size; i++) {
+                buffer.put(start + i * size + j, column[i]);
+            }
+        }
+
+        Arrays.fill(in, (byte) 0);
+        Arrays.fill(column, (byte) 0);
+        buffer.position(start + size * size);
+    }
+
+    /**
+     * Writes the quadratic coefficients of a polynomial row by row, reading them one at a time so that the packed
+     * ones are never unpacked into a matrix on the heap.
+     */
+    private void putQuad(MultQuad poly, int rows, int columns) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                buffer.put(poly.getQuad(i, j));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of equations in this key.
+     *
+     * @return m
+     */
+    public int getEqNum() {
+        return m;
+    }
+
+    /**
+     * Returns the number of variables in this key.
+     *
+     * @return n
+     */
+    public int getVarNum() {
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes of key material stored outside of the heap.
+     *
+     * @return the size of the buffer
+     */
+    public int size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Produces a signature of a target vector, computing T<sup>-1</sup>(F<sup>-1</sup>(S<sup>-1</sup>(h))).
+     * The intermediate vectors and linear systems are kept in the working space of the calling thread, which is overwritten
+     * with zeros before returning, so that only the signature is allocated. Many threads can sign at once.
+     *
+     * @param h      the target vector, an array of {@code m} field elements
+     * @param random the source of random field elements needed to invert the central map
+     * @return the signature, an array of {@code n} field elements
+     * @throws IllegalStateException if this key has been closed, or no signature is found in {@link CentralMap#MAX_ATTEMPTS} attempts
+     */
+    public byte[] sign(byte[] h, SecureRandom random) {
+        if (h.length != m) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        byte[] signature = new byte[n];
+        Workspace w = workspaces.get();
+
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Key closed!");
+            }
+
+            evalInv(invSOff, csOff, m, h, w.y);
+            if (!invF(w, random)) {
+                throw new IllegalStateException("Central map not invertible!");
+            }
+            evalInv(invTOff, ctOff, n, w.x, signature);
+        } finally {
+            lock.readLock().unlock();
+            w.wipe();
+        }
+
+        return signature;
+    }
+
+    /**
+     * Signs a digest, which is expanded into the target vector as by {@link RainbowScheme#expandDigest}.
+     *
+     * @param digest the digest, at least m/2 bytes long
+     * @param random the source of random field elements needed to invert the central map
+     * @return the signature, an array of {@code n} field elements
+     */
+    public byte[] signDigest(byte[] digest, SecureRandom random) {
+        return sign(RainbowScheme.expandDigest(digest, m), random);
+    }
+
+    /**
+     * Evaluates the inverse of an affine map stored at the given offsets on x, as in {@link AffineMap#evalInv(byte[])}, writing it in res.
+     */
+    private void evalInv(int matOff, int vecOff, int size, byte[] x, byte[] res) {
+        byte acc;
+
+        for (int i = 0; i < size; i++) {
+            acc = 0;
+
+            for (int j = 0; j < size; j++) {
+                acc = GF16.add(acc, GF16.mult(buffer.get(matOff + i * size + j), GF16.add(x[j], buffer.get(vecOff + j))));
+            }
+
+            res[i] = acc;
+        }
+    }
+
+    /**
+     * Computes in the x of a working space an array such that F(x)=y, as in {@link CentralMap#invF(byte[], SecureRandom)}.
+     *
+     * @return false if no solution is found in {@link CentralMap#MAX_ATTEMPTS} attempts
+     */
+    private boolean invF(Workspace w, SecureRandom random) {
+        int l = 0, yOff = 0, attempts = 0;
+
+        while (l < vi.length) {
+            // a new random vinegar vector is needed whenever the first layer is reached
+            if (l == 0) {
+                if (attempts++ == CentralMap.MAX_ATTEMPTS) {
+                    return false;
+                }
+
+                for (int i = 0; i < vi[0]; i++) {
+                    w.x[i] = (byte) random.nextInt(16);
+                }
+                yOff = 0;
+            }
+
+            if (solveLayer(w, l, yOff)) {
+                yOff += oi[l];
+                l++;
+            } else {
+                l = 0;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes the oil variables of a layer, given its vinegar variables at the start of x, writing them after those.
+     * The linear system is assembled in the working space as the augmented matrix of {@link GF16#solveInPlace(byte[], int, int)}.
+     */
+    private boolean solveLayer(Workspace ws, int l, int yOff) {
+        byte[] x = ws.x, y = ws.y, system = ws.system;
+        int v = vi[l], o = oi[l], w = o + 1;
+        byte acc, res;
+        int alpha, beta;
+
+        for (int i = 0; i < o; i++) {
+            alpha = alphaOff[l] + i * v * v;
+            beta = betaOff[l] + i * v * o;
+
+            // evaluate the vinegar part of the polynomial
+            res = GF16.add(buffer.get(deltaOff[l] + i), y[yOff + i]);
+
+            // alpha is upper triangular, as generated by Layer
+            for (int j = 0; j < v; j++) {
+                acc = buffer.get(gammavOff[l] + i * v + j);
+
+                for (int k = j; k < v; k++) {
+                    acc = GF16.add(acc, GF16.mult(buffer.get(alpha + j * v + k), x[k]));
+                }
+
+                res = GF16.add(res, GF16.mult(acc, x[j]));
+            }
+
+            system[i * w + o] = res;
+
+            // evaluate the mixed part
+            for (int k = 0; k < o; k++) {
+                acc = buffer.get(gammaoOff[l] + i * o + k);
+
+                for (int j = 0; j < v; j++) {
+                    acc = GF16.add(acc, GF16.mult(x[j], buffer.get(beta + j * o + k)));
+                }
+
+                system[i * w + k] = acc;
+            }
+        }
+
+        if (!GF16.solveInPlace(system, 0, o)) {
+            return false;
+        }
+
+        for (int i = 0; i < o; i++) {
+            x[v + i] = system[i * w + o];
+        }
+
+        return true;
+    }
+
+    /**
+     * Overwrites the key material with zeros. After this call the key can no longer be used for signing.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The working space of a thread: the image of the target vector through the inverse of S,
+     * the preimage through the central map and the augmented matrix of a linear system.
+     */
+    private final class Workspace {
+        final byte[] y = new byte[m];
+        final byte[] x = new byte[n];
+        final byte[] system = new byte[maxOil * (maxOil + 1)];
+
+        void wipe() {
+            Arrays.fill(y, (byte) 0);
+            Arrays.fill(x, (byte) 0);
+            Arrays.fill(system, (byte) 0);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package sc1819.rainbow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents a file holding many public keys, each one with an id and a fingerprint,
+ * so that a verifier opens a single file instead of a file per key.
+ * <p>
+ * The file consists of:
+ * <ul>
+ * <li>
+ * a header made of {@link #MAGIC}, {@link #VERSION}, the number of keys and the size in bytes of the index, as ints;
+ * </li>
+ * <li>
+ * the index, with an entry for each key made of the length of the id as an unsigned byte, the id in UTF-8,
+ * the 32 bytes of the fingerprint, the offset and the length of the key in the file as longs;
+ * </li>
+ * <li>
+ * the keys, each one in the packed encoding of {@link MappedPubKey}, which records the parameters of the key.
+ * </li>
+ * </ul>
+ * The fingerprint of a key is the SHA-256 digest of its packed encoding.
+ * <p>
+ * Opening a store reads the index only; a key is then found in constant time and mapped into memory on its own,
+ * without reading any other key.
+ */
+public class PubKeyStore implements Closeable {
+
+    /**
+     * The first four bytes of a key store, "RBKS".
+     */
+    public static final int MAGIC = 0x52424B53;
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int FINGERPRINT_SIZE = 32;
+
+    private final FileChannel channel;
+    private final Map<String, Entry> ids = new LinkedHashMap<>();
+    private final Map<ByteBuffer, Entry> fingerprints = new HashMap<>();
+
+    private PubKeyStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IllegalArgumentException("Wrong key store file!");
+        }
+        int count = header.getInt();
+        int indexSize = header.getInt();
+
+        if (count < 0 || indexSize < 0 || HEADER_SIZE + (long) indexSize > channel.size()) {
+            throw new IllegalArgumentException("Truncated key store file!");
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(indexSize);
+        readFully(index, HEADER_SIZE);
+        index.flip();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[index.get() & 0xff];
+                index.get(id);
+                byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+                index.get(fingerprint);
+                Entry entry = new Entry(index.getLong(), index.getLong());
+
+                if (entry.offset < HEADER_SIZE + indexSize || entry.length < MappedPubKey.HEADER_SIZE
+                        || entry.offset > channel.size() - entry.length) {
+                    throw new IllegalArgumentException("Truncated key store file!");
+                }
+
+                ids.put(new String(id, StandardCharsets.UTF_8), entry);
+                fingerprints.putIfAbsent(ByteBuffer.wrap(fingerprint), entry);
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated key store file!");
+        }
+    }
+
+    /**
+     * Opens a key store, reading its index.
+     *
+     * @param path the path of the key store
+     * @return the opened key store
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid key store
+     */
+    public static PubKeyStore open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        try {
+            return new PubKeyStore(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the magic number of a key store.
+     *
+     * @param path the path of the file to be checked
+     * @return true if the file is a key store, false otherwise or if the file cannot be read
+     */
+    public static boolean isStore(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+
+            while (magic.hasRemaining() && channel.read(magic) >= 0) ;
+
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the key with a given id, mapped into memory.
+     *
+     * @param id the id of the key
+     * @return the key, or null if the store has no key with that id
+     * @throws IOException              if the key cannot be mapped
+     * @throws IllegalArgumentException if the key is not valid
+     */
+    public MappedPubKey get(String id) throws IOException {
+        return map(ids.get(id));
+    }
+
+    /**
+     * Returns the key with a given fingerprint, mapped into memory.
+     *
+     * @param fingerprint the SHA-256 digest of the packed encoding of the key
+     * @return the key, or null if the store has no key with that fingerprint
+     * @throws IOException              if the key cannot be mapped
+     * @throws IllegalArgumentException if the key is not valid
+     */
+    public MappedPubKey getByFingerprint(byte[] fingerprint) throws IOException {
+        return map(fingerprints.get(ByteBuffer.wrap(fingerprint)));
+    }
+
+    /**
+     * Returns the ids of the keys, in the order of the index.
+     *
+     * @return the ids
+     */
+    public Set<String> ids() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    /**
+     * Returns the number of keys in this store.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a key store holding a set of public keys.
+     * The store is written on a temporary file which then replaces {@code path}, so a store is never seen half written.
+     *
+     * @param path the path of the key store
+     * @param keys the packed encoding of each key, see {@link MappedPubKey#encode}, by id; each id at most 255 bytes in UTF-8
+     * @throws IOException              if the store cannot be written
+     * @throws IllegalArgumentException if an id is too long or a key is not valid
+     */
+    public static void write(String path, Map<String, ByteBuffer> keys) throws IOException {
+        int indexSize = 0;
+        for (String id : keys.keySet()) {
+            int length = id.getBytes(StandardCharsets.UTF_8).length;
+            if (length > 0xff) {
+                throw new IllegalArgumentException("Key id too long!");
+            }
+            indexSize += 1 + length + FINGERPRINT_SIZE + 2 * Long.BYTES;
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE + indexSize);
+        head.putInt(MAGIC).putInt(VERSION).putInt(keys.size()).putInt(indexSize);
+
+        long offset = HEADER_SIZE + indexSize;
+        for (Map.Entry<String, ByteBuffer> key : keys.entrySet()) {
+            ByteBuffer packed = key.getValue().duplicate();
+            new MappedPubKey(packed);
+
+            byte[] id = key.getKey().getBytes(StandardCharsets.UTF_8);
+            head.put((byte) id.length).put(id).put(fingerprint(packed)).putLong(offset).putLong(packed.remaining());
+            offset += packed.remaining();
+        }
+        head.flip();
+
+        Path file = Paths.get(path).toAbsolutePath();
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                writeFully(out, head);
+                for (ByteBuffer packed : keys.values()) {
+                    writeFully(out, packed.duplicate());
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a public key.
+     *
+     * @param packed the packed encoding of the key, from its position to its limit, which are left unaltered
+     * @return the SHA-256 digest of the packed encoding
+     */
+    public static byte[] fingerprint(ByteBuffer packed) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(packed.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private MappedPubKey map(Entry entry) throws IOException {
+        if (entry == null) {
+            return null;
+        }
+
+        return new MappedPubKey(channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IllegalArgumentException("Truncated key store file!");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The position of a key in the file.
+     */
+    private static final class Entry {
+        final long offset;
+        final long length;
+
+        Entry(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package sc1819.rainbow;
+
+import java.util.Arrays;
+
+/**
+ * This interface represents the public map {@code P} of the Rainbow signature scheme,
+ * a system of {@code m} multivariate quadratic polynomials in {@code n} variables.
+ * <p>
+ * It is implemented by every representation of a public key that can be used to verify a signature.
+ */
+public interface PublicMap {
+
+    /**
+     * Returns the number of variables of this public map.
+     *
+     * @return n
+     */
+    int getVarNum();
+
+    /**
+     * Returns the number of equations of this public map.
+     *
+     * @return m
+     */
+    int getEqNum();
+
+    /**
+     * Returns the evaluation of this public map on an array of field elements.
+     *
+     * @param x the array on which the map is evaluated
+     * @return the result of the evaluation
+     */
+    byte[] eval(byte[] x);
+
+    /**
+     * Checks whether the evaluation of this public map on a signature is equal to a given digest.
+     *
+     * @param signature the array on which the map is evaluated
+     * @param h         the expected result of the evaluation
+     * @return true if P(signature)=h, false otherwise
+     */
+    default boolean verify(byte[] signature, byte[] h) {
+        return Arrays.equals(eval(signature), h);
+    }
+
+    /**
+     * Checks a signature of a digest, which is expanded into the target vector as by {@link RainbowScheme#expandDigest}.
+     *
+     * @param signature the array on which the map is evaluated
+     * @param digest    the digest, at least m/2 bytes long
+     * @return true if the signature is valid for the digest, false otherwise
+     */
+    default boolean verifyDigest(byte[] signature, byte[] digest) {
+        return verify(signature, RainbowScheme.expandDigest(digest, getEqNum()));
+    }
+}
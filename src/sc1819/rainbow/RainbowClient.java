@@ -0,0 +1,126 @@
+package sc1819.rainbow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * This class is a connection to a {@link RainbowDaemon}, through which digests are signed and verified
+ * with the keys loaded by the daemon.
+ * <p>
+ * Requests on the same connection are served one at a time, the methods can be called by many threads
+ * but each one waits for the previous request; concurrent clients should open a connection each.
+ */
+public class RainbowClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Constructor, connects to a daemon.
+     *
+     * @param address the address of the daemon, see {@link RainbowDaemon#address}
+     * @throws IOException if the daemon cannot be reached
+     */
+    public RainbowClient(SocketAddress address) throws IOException {
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        channel.connect(address);
+
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Signs a digest with a secret key loaded by the daemon.
+     *
+     * @param skPath the path of the secret key, as seen by the daemon
+     * @param digest the digest, at least m/2 bytes long
+     * @return the signature
+     * @throws IOException if the daemon cannot be reached or the request fails
+     */
+    public byte[] signDigest(String skPath, byte[] digest) throws IOException {
+        return request(RainbowDaemon.OP_SIGN, skPath, new byte[0], digest).payload;
+    }
+
+    /**
+     * Verifies a signature of a digest with a public key loaded by the daemon.
+     *
+     * @param pkPath    the path of the public key, as seen by the daemon
+     * @param digest    the digest, at least m/2 bytes long
+     * @param signature the signature
+     * @return true if the signature is valid, false otherwise
+     * @throws IOException if the daemon cannot be reached or the request fails
+     */
+    public boolean verifyDigest(String pkPath, byte[] digest, byte[] signature) throws IOException {
+        return request(RainbowDaemon.OP_VERIFY, pkPath, signature, digest).status == RainbowDaemon.STATUS_OK;
+    }
+
+    /**
+     * Returns the counters of the daemon.
+     *
+     * @return a line per counter, as name=value
+     * @throws IOException if the daemon cannot be reached
+     */
+    public String stats() throws IOException {
+        return new String(request(RainbowDaemon.OP_STATS, "", new byte[0], new byte[0]).payload, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized Reply request(byte op, String keyPath, byte[] signature, byte[] digest) throws IOException {
+        // the daemon resolves relative paths against its own directory
+        byte[] key = keyPath.isEmpty() ? new byte[0]
+                : Paths.get(keyPath).toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+
+        out.writeByte(op);
+        writeField(key);
+        writeField(signature);
+        writeField(digest);
+        out.flush();
+
+        byte status = in.readByte();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+
+        if (status == RainbowDaemon.STATUS_ERROR) {
+            throw new IOException(new String(payload, StandardCharsets.UTF_8));
+        }
+
+        return new Reply(status, payload);
+    }
+
+    private void writeField(byte[] field) throws IOException {
+        if (field.length > 0xffff) {
+            throw new IllegalArgumentException("Field too long!");
+        }
+
+        out.writeShort(field.length);
+        out.write(field);
+    }
+
+    private static final class Reply {
+        final byte status;
+        final byte[] payload;
+
+        Reply(byte status, byte[] payload) {
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package sc1819.rainbow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * This class is a long running process which signs and verifies digests on behalf of local clients,
+ * so that they pay neither the start of a JVM nor the loading of the keys on every operation.
+ * <p>
+ * The daemon listens on a Unix domain socket or on a port of the loopback interface; each connection is served by a thread
+ * of a bounded pool and carries a sequence of requests, each one answered before the next one is read.
+ * A request is made of the operation as a byte, then the path of the key, the signature and the digest,
+ * each one as an unsigned short length followed by its bytes; unused fields are empty. The path of the key is resolved
+ * by the daemon. Only the secret keys given when the daemon is built can sign, they are loaded at once and kept
+ * for the life of the daemon, optionally outside of the Java heap as {@link OffHeapSecKey}s, which are zeroized when
+ * the daemon is closed; the public keys are kept in a {@link KeyCache}.
+ * A response is made of the status as a byte, followed by an int length and the payload:
+ * the signature for {@link #OP_SIGN}, the counters for {@link #OP_STATS}, the error message for {@link #STATUS_ERROR}.
+ * <p>
+ * Signing and verification requests are put on bounded queues, from which worker threads take them in batches,
+ * as many as are waiting up to {@link #MAX_BATCH}. Batching only saves work around the kernels: the requests of a batch
+ * for the same operation and key share a single lookup of the key and a single hand-off between threads, while each signature
+ * and verification is still computed on its own. The workers sign in parallel, also with the same key, each one
+ * in its own working space. A request which fails, for instance on a malformed signature, fails alone.
+ * When a queue is full the connection threads wait, hence clients are slowed down rather than requests piling up.
+ * <p>
+ * Signatures are returned as their field elements, digests are expanded as by {@link RainbowScheme#expandDigest}.
+ * <p>
+ * Java 17 has no virtual threads, so connections are served by platform threads, at most {@code maxConnections} at once.
+ * <p>
+ * A Unix domain socket is created readable and writable by its owner only. A port on the loopback interface can be reached
+ * by every local user, hence any of them can sign with the configured keys.
+ */
+public class RainbowDaemon implements Closeable {
+
+    /**
+     * Signs a digest with a secret key.
+     */
+    public static final byte OP_SIGN = 1;
+    /**
+     * Verifies a signature of a digest with a public key.
+     */
+    public static final byte OP_VERIFY = 2;
+    /**
+     * Returns the counters of the daemon, as text.
+     */
+    public static final byte OP_STATS = 3;
+
+    /**
+     * The request succeeded, for {@link #OP_VERIFY} the signature is valid.
+     */
+    public static final byte STATUS_OK = 0;
+    /**
+     * The signature is not valid.
+     */
+    public static final byte STATUS_INVALID = 1;
+    /**
+     * The request failed, the payload is the error message.
+     */
+    public static final byte STATUS_ERROR = 2;
+
+    /**
+     * The largest number of requests processed as a batch.
+     */
+    public static final int MAX_BATCH = 64;
+    /**
+     * The default number of connections served at once.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    private final ServerSocketChannel server;
+    private final Semaphore connections;
+    private final ExecutorService connectionPool;
+    private final ExecutorService workerPool;
+    private final BlockingQueue<Request> signQueue, verifyQueue;
+    /**
+     * The secret keys the daemon signs with, by absolute path, each one as the function signing a digest with it.
+     */
+    private final Map<String, Function<byte[], byte[]>> secretKeys = new HashMap<>();
+    private final List<OffHeapSecKey> offHeapKeys = new ArrayList<>();
+    private final KeyCache<PublicMap> publicKeys = KeyCache.publicKeys(KeyCache.DEFAULT_CAPACITY);
+    private final SecureRandom random;
+    private final Path socketPath;
+
+    private final LongAdder requests = new LongAdder(), batches = new LongAdder(), errors = new LongAdder();
+    private final LongAdder signed = new LongAdder(), verified = new LongAdder(), latency = new LongAdder();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+    private final long started = System.nanoTime();
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, binds the socket and starts the worker threads; requests are accepted once {@link #serve()} is called.
+     *
+     * @param address        a Unix domain socket address or an address on the loopback interface, see {@link #address}
+     * @param skPaths        the paths of the secret keys the daemon signs with
+     * @param offHeap        whether the secret keys are kept outside of the Java heap
+     * @param selfCheck      whether signatures are checked before being returned, see {@link RainbowSecKey#sign(byte[], SecureRandom, boolean)},
+     *                       only for keys on the heap
+     * @param maxConnections the largest number of connections served at once
+     * @param workers        the number of worker threads of each of the signing and verification queues
+     * @param random         the source of the random vinegar variables
+     * @throws IOException if a secret key cannot be loaded or the socket cannot be bound
+     */
+    public RainbowDaemon(SocketAddress address, List<String> skPaths, boolean offHeap, boolean selfCheck, int maxConnections,
+                         int workers, SecureRandom random) throws IOException {
+        if (maxConnections <= 0 || workers <= 0) {
+            throw new IllegalArgumentException("Thread number must be positive!");
+        }
+        if (offHeap && selfCheck) {
+            throw new IllegalArgumentException("Keys outside of the heap cannot check their signatures!");
+        }
+
+        for (String skPath : skPaths) {
+            try {
+                if (offHeap) {
+                    // keys stored as seeds are regenerated outside of the cache, so that no copy is left on the heap
+                    OffHeapSecKey key = OffHeapSecKey.readKey(skPath);
+
+                    offHeapKeys.add(key);
+                    secretKeys.put(resolve(skPath), digest -> key.signDigest(digest, random));
+                } else {
+                    RainbowSecKey sk = RainbowSecKey.readKey(skPath);
+
+                    secretKeys.put(resolve(skPath), digest -> sk.signDigest(digest, random, selfCheck));
+                }
+            } catch (IOException ex) {
+                close(offHeapKeys);
+                throw ex instanceof NoSuchFileException || ex instanceof FileNotFoundException
+                        ? new IOException(skPath + " not found!") : ex;
+            }
+        }
+
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                socketPath = ((UnixDomainSocketAddress) address).getPath();
+
+                // a socket left by a daemon which did not stop cleanly
+                if (Files.exists(socketPath) && !Files.isRegularFile(socketPath) && !Files.isDirectory(socketPath)) {
+                    Files.delete(socketPath);
+                }
+
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                bindPrivate(server, socketPath);
+            } else {
+                socketPath = null;
+                server = ServerSocketChannel.open();
+                server.bind(address);
+            }
+        } catch (IOException ex) {
+            close(offHeapKeys);
+            throw ex;
+        }
+
+        this.random = random;
+        this.connections = new Semaphore(maxConnections);
+        this.connectionPool = Executors.newFixedThreadPool(maxConnections);
+        this.workerPool = Executors.newFixedThreadPool(2 * workers);
+        this.signQueue = new ArrayBlockingQueue<>(4 * MAX_BATCH);
+        this.verifyQueue = new ArrayBlockingQueue<>(4 * MAX_BATCH);
+
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(() -> work(signQueue));
+            workerPool.execute(() -> work(verifyQueue));
+        }
+    }
+
+    /**
+     * Parses the address of a daemon: a number is a port on the loopback interface, anything else the path of a Unix domain socket.
+     *
+     * @param spec the port or the path
+     * @return the address
+     */
+    public static SocketAddress address(String spec) {
+        if (spec.matches("[0-9]{1,5}")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /**
+     * Binds a Unix domain socket readable and writable by its owner only. The socket is bound under a temporary name
+     * and linked into place once its permissions are set, so that no other user can connect in between.
+     */
+    private static void bindPrivate(ServerSocketChannel server, Path path) throws IOException {
+        Path temp = path.resolveSibling("." + path.getFileName() + "." + ProcessHandle.current().pid());
+        Files.deleteIfExists(temp);
+
+        try {
+            server.bind(UnixDomainSocketAddress.of(temp));
+            if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+            }
+            // unlike a move, a link never replaces an existing file
+            Files.createLink(path, temp);
+        } catch (IOException ex) {
+            server.close();
+            throw ex;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the address the daemon is listening on, with the actual port if it was bound to port 0.
+     *
+     * @return the local address
+     * @throws IOException if the socket is closed
+     */
+    public SocketAddress getAddress() throws IOException {
+        // the socket was bound under a temporary name
+        return socketPath != null ? UnixDomainSocketAddress.of(socketPath) : server.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections until the daemon is closed.
+     *
+     * @throws IOException if the socket fails
+     */
+    public void serve() throws IOException {
+        while (running) {
+            try {
+                connections.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException ex) {
+                connections.release();
+                return;
+            }
+
+            connectionPool.execute(() -> {
+                try (SocketChannel client = channel) {
+                    handle(client);
+                } catch (IOException ignored) {
+                    // the client went away
+                } finally {
+                    connections.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops accepting connections, stops the threads, removes the Unix domain socket and zeroizes the keys kept
+     * outside of the heap once the workers are done.
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        connectionPool.shutdownNow();
+        workerPool.shutdownNow();
+
+        if (socketPath != null) {
+            Files.deleteIfExists(socketPath);
+        }
+
+        try {
+            workerPool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        close(offHeapKeys);
+    }
+
+    private static void close(List<OffHeapSecKey> keys) {
+        for (OffHeapSecKey key : keys) {
+            key.close();
+        }
+    }
+
+    /**
+     * Returns the counters of the daemon: requests served, signatures, verifications, errors, batches,
+     * average batch size, average and maximum latency and throughput since the start.
+     *
+     * @return a line per counter, as name=value
+     */
+    public String stats() {
+        long n = requests.sum(), b = batches.sum(), kernel = signed.sum() + verified.sum();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        return "requests=" + n + "\n"
+                + "signed=" + signed.sum() + "\n"
+                + "verified=" + verified.sum() + "\n"
+                + "errors=" + errors.sum() + "\n"
+                + "batches=" + b + "\n"
+                + String.format("avg_batch=%.2f%n", b == 0 ? 0.0 : (double) kernel / b)
+                + String.format("avg_latency_us=%.1f%n", n == 0 ? 0.0 : latency.sum() / 1e3 / n)
+                + String.format("max_latency_us=%.1f%n", maxLatency.get() / 1e3)
+                + String.format("throughput_per_s=%.1f%n", n / seconds);
+    }
+
+    /**
+     * Serves the requests of a connection until the client closes it.
+     */
+    private void handle(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+        while (true) {
+            int op = in.read();
+            if (op < 0) return;
+
+            byte[] key = readField(in), signature = readField(in), digest = readField(in);
+            long start = System.nanoTime();
+
+            Response response;
+            if (op == OP_SIGN || op == OP_VERIFY) {
+                Request request = new Request((byte) op, new String(key, StandardCharsets.UTF_8), signature, digest);
+
+                try {
+                    (op == OP_SIGN ? signQueue : verifyQueue).put(request);
+                    response = request.response.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException ex) {
+                    response = Response.error(String.valueOf(ex.getCause()));
+                }
+            } else if (op == OP_STATS) {
+                response = new Response(STATUS_OK, stats().getBytes(StandardCharsets.UTF_8));
+            } else {
+                response = Response.error("Unknown operation!");
+            }
+
+            long elapsed = System.nanoTime() - start;
+            requests.increment();
+            latency.add(elapsed);
+            maxLatency.accumulate(elapsed);
+            if (response.status == STATUS_ERROR) errors.increment();
+
+            out.writeByte(response.status);
+            out.writeInt(response.payload.length);
+            out.write(response.payload);
+            out.flush();
+        }
+    }
+
+    private static byte[] readField(DataInputStream in) throws IOException {
+        byte[] res = new byte[in.readUnsignedShort()];
+        in.readFully(res);
+        return res;
+    }
+
+    /**
+     * Takes the requests of a queue in batches, until the daemon is closed.
+     */
+    private void work(BlockingQueue<Request> queue) {
+        List<Request> batch = new ArrayList<>(MAX_BATCH);
+
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                process(batch);
+                batches.increment();
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            for (Request request : batch) {
+                request.response.complete(Response.error("Daemon stopped!"));
+            }
+        }
+    }
+
+    /**
+     * Processes a batch, grouping the requests by operation and key so that each key is looked up once.
+     */
+    private void process(List<Request> batch) {
+        Map<Map.Entry<Byte, String>, List<Request>> byKey = new LinkedHashMap<>();
+        for (Request request : batch) {
+            byKey.computeIfAbsent(Map.entry(request.op, request.keyPath), key -> new ArrayList<>()).add(request);
+        }
+
+        for (Map.Entry<Map.Entry<Byte, String>, List<Request>> group : byKey.entrySet()) {
+            String keyPath = group.getKey().getValue();
+            List<Request> requests = group.getValue();
+
+            try {
+                if (group.getKey().getKey() == OP_SIGN) {
+                    Function<byte[], byte[]> sk = secretKeys.get(resolve(keyPath));
+                    if (sk == null) {
+                        throw new IllegalArgumentException("not a signing key of the daemon!");
+                    }
+
+                    signed.add(requests.size());
+                    for (Request request : requests) {
+                        request.response.complete(sign(sk, request));
+                    }
+                } else {
+                    PublicMap pk = publicKeys.get(keyPath);
+
+                    verified.add(requests.size());
+                    for (Request request : requests) {
+                        request.response.complete(verify(pk, request));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                String message = ex instanceof NoSuchFileException ? keyPath + " not found!"
+                        : keyPath + ": " + ex.getMessage();
+
+                for (Request request : requests) {
+                    request.response.complete(Response.error(message));
+                }
+            }
+        }
+    }
+
+    private static Response sign(Function<byte[], byte[]> sk, Request request) {
+        try {
+            return new Response(STATUS_OK, sk.apply(request.digest));
+        } catch (RuntimeException ex) {
+            return Response.error(ex.getMessage());
+        }
+    }
+
+    private static Response verify(PublicMap pk, Request request) {
+        try {
+            for (byte e : request.signature) {
+                if ((e & 0xf0) != 0) {
+                    return Response.error("Not a field element!");
+                }
+            }
+
+            boolean valid = request.signature.length == pk.getVarNum() && pk.verifyDigest(request.signature, request.digest);
+            return new Response(valid ? STATUS_OK : STATUS_INVALID, new byte[0]);
+        } catch (RuntimeException ex) {
+            return Response.error(ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns the absolute form of the path of a key, so that a key is found however its path is written.
+     */
+    private static String resolve(String keyPath) {
+        return Paths.get(keyPath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * A signing or verification request waiting in a queue.
+     */
+    private static final class Request {
+        final byte op;
+        final String keyPath;
+        final byte[] signature;
+        final byte[] digest;
+        final CompletableFuture<Response> response = new CompletableFuture<>();
+
+        Request(byte op, String keyPath, byte[] signature, byte[] digest) {
+            this.op = op;
+            this.keyPath = keyPath;
+            this.signature = signature;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * The status and payload of a response.
+     */
+    private static final class Response {
+        final byte status;
+        final byte[] payload;
+
+        Response(byte status, byte[] payload) {
+            this.status = status;
+            this.payload = payload;
+        }
+
+        static Response error(String message) {
+            return new Response(STATUS_ERROR, String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
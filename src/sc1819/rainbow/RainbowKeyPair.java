@@ -1,5 +1,9 @@
 package sc1819.rainbow;
 
+import sc1819.rainbow.util.Layer;
+import sc1819.rainbow.util.SeedExpander;
+
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
@@ -21,6 +25,22 @@ public class RainbowKeyPair {
      * The private key of this key pair.
      */
     private RainbowSecKey sk;
+    /**
+     * The seed of the public key if this key pair is compressed, null otherwise.
+     */
+    private byte[] pkSeed;
+    /**
+     * The seed of the secret key if it is to be stored as a seed, null otherwise.
+     */
+    private byte[] skSeed;
+    /**
+     * The parameters of this key pair, if it has been generated.
+     */
+    private RainbowParameters param;
+    /**
+     * Whether the affine maps of the secret key are in standard form.
+     */
+    private boolean standard;
 
     /**
      * Constructor, loads a secret key and a public key from two files.
@@ -48,6 +68,72 @@ public class RainbowKeyPair {
         this.pk = new RainbowPubKey(sk);
     }
 
+    /**
+     * Constructor, given a source of random field elements, generates a key pair.
+     * If compressed, part of the public key is expanded from a seed and only the rest of it is written by {@link #saveKeys(String, String)}.
+     *
+     * @param param      the parameters of the scheme
+     * @param random     the source of random field elements
+     * @param compressed whether to generate a compressed public key
+     * @see CompressedPubKey
+     */
+    public RainbowKeyPair(RainbowParameters param, SecureRandom random, boolean compressed) {
+        this(param, random, compressed, false);
+    }
+
+    /**
+     * Constructor, given a source of random field elements, generates a key pair.
+     * If compressed, part of the public key is expanded from a seed and only the rest of it is written by {@link #saveKeys(String, String)}.
+     * If seeded, the maps of the secret key are generated from a seed, which is all that is written by {@link #saveKeys(String, String)}.
+     *
+     * @param param      the parameters of the scheme
+     * @param random     the source of random field elements
+     * @param compressed whether to generate a compressed public key
+     * @param seeded     whether to generate a secret key stored as a seed
+     * @see CompressedPubKey
+     * @see SeedSecKey
+     */
+    public RainbowKeyPair(RainbowParameters param, SecureRandom random, boolean compressed, boolean seeded) {
+        this(param, random, compressed, seeded, false);
+    }
+
+    /**
+     * Constructor, given a source of random field elements, generates a key pair.
+     * If compressed, part of the public key is expanded from a seed and only the rest of it is written by {@link #saveKeys(String, String)}.
+     * If seeded, the maps of the secret key are generated from a seed, which is all that is written by {@link #saveKeys(String, String)}.
+     * If standard, the affine maps of the secret key are in standard form.
+     *
+     * @param param      the parameters of the scheme
+     * @param random     the source of random field elements
+     * @param compressed whether to generate a compressed public key
+     * @param seeded     whether to generate a secret key stored as a seed
+     * @param standard   whether to generate the affine maps in standard form
+     * @see CompressedPubKey
+     * @see SeedSecKey
+     * @see RainbowSecKey#RainbowSecKey(RainbowParameters, SecureRandom, boolean)
+     */
+    public RainbowKeyPair(RainbowParameters param, SecureRandom random, boolean compressed, boolean seeded, boolean standard) {
+        this.param = param;
+        this.standard = standard;
+
+        if (compressed) {
+            this.pkSeed = new byte[SeedExpander.SEED_LENGTH];
+            random.nextBytes(pkSeed);
+        }
+        if (seeded) {
+            this.skSeed = new byte[SeedExpander.SEED_LENGTH];
+            random.nextBytes(skSeed);
+            random = new SeedExpander(skSeed);
+        }
+
+        if (compressed) {
+            this.sk = CompressedPubKey.generateSecKey(param, random, pkSeed, standard);
+        } else {
+            this.sk = new RainbowSecKey(param, random, standard);
+        }
+        this.pk = new RainbowPubKey(sk);
+    }
+
     /**
      * Loads both a public and a private key into this key pair.
      *
@@ -66,42 +152,37 @@ public class RainbowKeyPair {
      * @param skPath the path of the file onto which the private key is to be written
      */
     public void saveKeys(String pkPath, String skPath) {
-        FileOutputStream fout = null;
-        ObjectOutputStream oos = null;
-
         try {
-            fout = new FileOutputStream(pkPath);
-            oos = new ObjectOutputStream(fout);
-            oos.writeObject(pk);
-
-            fout = new FileOutputStream(skPath);
-            oos = new ObjectOutputStream(fout);
-            oos.writeObject(sk);
-
-            //System.out.println("Done");
-
-        } catch (Exception ex) {
-
+            writeKeys(pkPath, skPath);
+        } catch (IOException ex) {
             ex.printStackTrace();
+        }
+    }
 
-        } finally {
-
-            if (fout != null) {
-                try {
-                    fout.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Writes the private and secret key onto two files, as {@link #saveKeys(String, String)} does,
+     * but reports errors to the caller.
+     *
+     * @param pkPath the path of the file onto which the public key is to be written
+     * @param skPath the path of the file onto which the private key is to be written
+     * @throws IOException if a key cannot be written
+     */
+    public void writeKeys(String pkPath, String skPath) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(pkPath)))) {
+            if (pkSeed != null) {
+                Layer first = sk.getF().getLayers()[0];
+                oos.writeObject(new CompressedPubKey(pk, pkSeed, first.getVi(), first.getOi()));
+            } else {
+                oos.writeObject(pk);
             }
+        }
 
-            if (oos != null) {
-                try {
-                    oos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(skPath)))) {
+            if (skSeed != null) {
+                oos.writeObject(new SeedSecKey(param, skSeed, pkSeed, standard));
+            } else {
+                oos.writeObject(sk);
             }
-
         }
     }
 
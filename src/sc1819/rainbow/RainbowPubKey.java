@@ -6,6 +6,7 @@ import sc1819.rainbow.util.Layer;
 import sc1819.rainbow.util.MultQuad;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * This class represents the public key for the Rainbow Signature Scheme.
@@ -15,7 +16,7 @@ import java.io.*;
  * <p>
  * The public map {@code P}  is a system of {@code m} multivariate quadratic polynomials in {@code n} variables.
  */
-public class RainbowPubKey implements Serializable {
+public class RainbowPubKey implements PublicMap, Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
@@ -60,6 +61,17 @@ public class RainbowPubKey implements Serializable {
         compositionOfSAndFcompT(S, vs);
     }
 
+    /**
+     * Constructor, builds a public key from the system of polynomials {@code P}.
+     *
+     * @param P the polynomials of the public map, MultQuads of type 0 in the same number of variables
+     */
+    public RainbowPubKey(MultQuad[] P) {
+        this.P = P;
+        this.m = P.length;
+        this.n = P[0].getLin().length;
+    }
+
     /**
      * Composes the central map {@code F} and the affine map {@code T}.
      *
@@ -159,10 +171,16 @@ public class RainbowPubKey implements Serializable {
         //il metodo combine di MultQuad
 
         //Applico S
+        //i coefficienti nulli vengono saltati, quelli uguali a 1 non richiedono moltiplicazioni:
+        //se S è in forma standard quasi tutti i coefficienti sono di questo tipo
         for (int i = 0; i < m; i++) {
-            poly = MultQuad.mult(P[0], s[i][0]);
-            for (int j = 1; j < m; j++) {
-                poly = MultQuad.combine(poly, MultQuad.mult(P[j], s[i][j]));
+            poly = null;
+            for (int j = 0; j < m; j++) {
+                if (s[i][j] == 0) continue;
+
+                if (poly == null) poly = MultQuad.mult(P[j], s[i][j]);
+                else if (s[i][j] == 1) poly = MultQuad.combine(poly, P[j]);
+                else poly = MultQuad.combine(poly, MultQuad.mult(P[j], s[i][j]));
             }
 
             polyArray[i] = poly;
@@ -192,22 +210,28 @@ public class RainbowPubKey implements Serializable {
      */
     private byte[][] composeQuadraticWithMatrix(byte[][] quad, byte[][] affineMat, int startRow, int endRow, int startCol, int endCol, int mapSize) {
         byte[][] res = new byte[mapSize][mapSize];
-        byte colFactor;
-        int rowIndex, colIndex;
+        byte[] colFactor = new byte[endCol - startCol];
+        byte t;
 
         for (int i = 0; i < mapSize; i++) {
-            for (int j = 0; j < mapSize; j++) {
-                for (int k = startCol; k < endCol; k++) {
-                    colFactor = 0;
+            //colFactor_k = (T e_i) A e_k does not depend on j
+            Arrays.fill(colFactor, (byte) 0);
+
+            for (int h = startRow; h < endRow; h++) {
+                t = affineMat[h][i];
+                if (t == 0) continue;
 
-                    for (int h = startRow; h < endRow; h++) {
-                        rowIndex = h - startRow;
-                        colIndex = k - startCol;
+                for (int k = 0; k < colFactor.length; k++) {
+                    colFactor[k] = GF16.add(colFactor[k], GF16.mult(t, quad[h - startRow][k]));
+                }
+            }
 
-                        colFactor = GF16.add(colFactor, GF16.mult(affineMat[h][i], quad[rowIndex][colIndex]));
-                    }
+            for (int k = startCol; k < endCol; k++) {
+                t = colFactor[k - startCol];
+                if (t == 0) continue;
 
-                    res[i][j] = GF16.add(res[i][j], GF16.mult(colFactor, affineMat[k][j]));
+                for (int j = 0; j < mapSize; j++) {
+                    res[i][j] = GF16.add(res[i][j], GF16.mult(t, affineMat[k][j]));
                 }
             }
         }
@@ -284,13 +308,55 @@ public class RainbowPubKey implements Serializable {
     }
 
     /**
-     * Loads a public key from a file.
+     * Checks whether the evaluation of this public map on a signature is equal to a given digest,
+     * evaluating one polynomial at a time without allocating memory.
+     *
+     * @param signature the array on which the map is evaluated
+     * @param h         the expected result of the evaluation
+     * @return true if P(signature)=h, false otherwise
+     * @throws IllegalArgumentException if the signature's length is not n
+     */
+    @Override
+    public boolean verify(byte[] signature, byte[] h) {
+        if (signature.length != n) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+        if (h.length != m) {
+            return false;
+        }
+
+        int diff = 0;
+        for (int i = 0; i < m; i++) {
+            diff |= P[i].eval(signature, 0, 0) ^ h[i];
+        }
+
+        return diff == 0;
+    }
+
+    /**
+     * Loads a public key from a file. A compressed public key is expanded.
      *
      * @param path the path of the file containing the key to be loaded
      * @return the public key loaded from the file
      */
     public static RainbowPubKey loadKey(String path) {
-        RainbowPubKey pk = null;
+        PublicMap pk = loadMap(path);
+
+        if (pk instanceof CompressedPubKey) {
+            return ((CompressedPubKey) pk).expand();
+        }
+
+        return (RainbowPubKey) pk;
+    }
+
+    /**
+     * Loads a serialized public map from a file, either a public key or a compressed public key.
+     *
+     * @param path the path of the file containing the key to be loaded
+     * @return the public map loaded from the file
+     */
+    public static PublicMap loadMap(String path) {
+        PublicMap pk = null;
 
         FileInputStream fin = null;
         ObjectInputStream ois = null;
@@ -299,7 +365,7 @@ public class RainbowPubKey implements Serializable {
 
             fin = new FileInputStream(path);
             ois = new ObjectInputStream(fin);
-            pk = (RainbowPubKey) ois.readObject();
+            pk = (PublicMap) ois.readObject();
         } catch (FileNotFoundException ex) {
             System.out.println(path + " not found!");
             System.exit(1);
@@ -331,6 +397,22 @@ public class RainbowPubKey implements Serializable {
         return pk;
     }
 
+    /**
+     * Reads a serialized public map from a file, as {@link #loadMap(String)} does, but reports errors to the caller
+     * instead of terminating, so it can be used by long running processes.
+     *
+     * @param path the path of the file containing the key to be read
+     * @return the public map read from the file
+     * @throws IOException if the file cannot be read or does not contain a public map
+     */
+    public static PublicMap readMap(String path) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            return (PublicMap) ois.readObject();
+        } catch (ClassCastException | ClassNotFoundException ex) {
+            throw new InvalidObjectException(path + " is not a valid public key!");
+        }
+    }
+
     /**
      * Returns the polynomials that composes the public key.
      *
@@ -2,13 +2,35 @@ package sc1819.rainbow;
 
 import org.apache.commons.cli.*;
 import sc1819.rainbow.debug.FixedRand;
+import sc1819.rainbow.hash.FixedHash;
+import sc1819.rainbow.hash.JcaHash;
+import sc1819.rainbow.hash.MessageHash;
 import sc1819.rainbow.util.GF16;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * This class contains all methods needed to perform the Rainbow signature scheme on a file.
@@ -29,6 +51,37 @@ public class RainbowScheme {
 
     private static RainbowParameters PARAMETERS = new RainbowParameters();
     private static SecureRandom RANDOM = new SecureRandom();
+    private static boolean PACKED = false;
+    private static boolean SELF_CHECK = false;
+    private static boolean OFF_HEAP = false;
+
+    /**
+     * The keys loaded so far, so that a process signing or verifying many times loads each key only once.
+     * The public keys are laid out for fast evaluation, which only pays off for the many records of {@link #verifyStream(String, String)}.
+     */
+    private static final KeyCache<PublicMap> PUBLIC_KEYS = KeyCache.publicKeys(KeyCache.DEFAULT_CAPACITY);
+    private static final KeyCache<RainbowSecKey> SECRET_KEYS = KeyCache.secretKeys(KeyCache.DEFAULT_CAPACITY);
+
+    /**
+     * The signatures found valid, if verifications are cached, and the fingerprints of the keys they were verified with.
+     */
+    private static VerificationCache VERIFIED = null;
+    private static final KeyCache<byte[]> FINGERPRINTS = new KeyCache<>(KeyCache.DEFAULT_CAPACITY, VerificationCache::fingerprint);
+
+    /**
+     * The long names of the command line options selecting an operation, exactly one of them must be given.
+     */
+    private static final String[] OPERATIONS = {"keygen", "sign", "verify", "verify-range", "sign-digest", "verify-digest", "sign-into",
+            "verify-from", "sign-tree", "verify-tree", "verify-stream", "keystore", "daemon", "batch", "co-sign", "co-verify", "pack"};
+
+    /**
+     * The size in bytes from which files are hashed through memory mapping rather than read.
+     */
+    public static final long MAP_THRESHOLD = 1 << 20;
+    /**
+     * The size in bytes of each mapped region of a hashed file.
+     */
+    public static final long MAP_CHUNK_SIZE = 64 << 20;
 
     /**
      * Generates a key pair. Writes both keys on files.
@@ -37,94 +90,1070 @@ public class RainbowScheme {
      * @param skPath the path of the file on which the private key is written
      */
     public static void keygen(String pkPath, String skPath) {
-        RainbowKeyPair keys = new RainbowKeyPair(PARAMETERS, RANDOM);
+        keygen(pkPath, skPath, false, false, false);
+    }
+
+    /**
+     * Generates a key pair, optionally with a compressed public key, a secret key stored as a seed
+     * or affine maps in standard form. Writes both keys on files.
+     *
+     * @param pkPath     the path of the file on which the public key is written
+     * @param skPath     the path of the file on which the private key is written
+     * @param compressed whether part of the public key is to be expanded from a seed
+     * @param seeded     whether the secret key is to be stored as a seed
+     * @param standard   whether the affine maps of the secret key are to be in standard form
+     */
+    public static void keygen(String pkPath, String skPath, boolean compressed, boolean seeded, boolean standard) {
+        RainbowKeyPair keys = new RainbowKeyPair(PARAMETERS, RANDOM, compressed, seeded, standard);
         keys.saveKeys(pkPath, skPath);
     }
 
     /**
-     * Loads a private key from file and produces a signature for a given file.
+     * Generates a key pair writing the public key directly on file in the packed encoding,
+     * a block of equations at a time, without building the whole public map in memory.
+     *
+     * @param pkPath   the path of the file on which the public key is written
+     * @param skPath   the path of the file on which the private key is written
+     * @param seeded   whether the secret key is to be stored as a seed
+     * @param standard whether the affine maps of the secret key are to be in standard form
+     */
+    public static void keygenStreaming(String pkPath, String skPath, boolean seeded, boolean standard) {
+        StreamingKeyGen keyGen = new StreamingKeyGen(PARAMETERS, StreamingKeyGen.DEFAULT_BLOCK_SIZE);
+
+        try {
+            keyGen.generate(RANDOM, standard, seeded, pkPath, skPath);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads a private key from file and produces a signature for a given file.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param signaturePath the path of the signature generated
+     */
+    public static void sign(String skPath, String filePath, String signaturePath) {
+        sign(skPath, filePath, signaturePath, false);
+    }
+
+    /**
+     * Loads a private key from file and produces a signature for a given file,
+     * optionally hashing the file as a Merkle tree whose chunks are hashed in parallel.
+     * The way the file is hashed is recorded in the signature.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param signaturePath the path of the signature generated
+     * @param merkle        whether the file is to be hashed as a Merkle tree
+     */
+    public static void sign(String skPath, String filePath, String signaturePath, boolean merkle) {
+        sign(skPath, filePath, signaturePath, merkle, null);
+    }
+
+    /**
+     * Loads a private key from file and produces a signature for a given file,
+     * optionally hashing the file as a Merkle tree and saving the tree, so that single ranges of the file
+     * can later be verified on their own by {@link #verifyRange}.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param signaturePath the path of the signature generated
+     * @param merkle        whether the file is to be hashed as a Merkle tree, implied by a non null {@code treePath}
+     * @param treePath      the path of the file on which the Merkle tree is saved, or null
+     */
+    public static void sign(String skPath, String filePath, String signaturePath, boolean merkle, String treePath) {
+        RainbowSecKey sk = loadSecretKey(skPath);
+        merkle = merkle || treePath != null;
+
+        byte[] signature = merkle
+                ? merkleHashFile(filePath, sk.getEqNum(), MerkleHash.DEFAULT_CHUNK_BITS, treePath)
+                : hashFile(filePath, sk.getEqNum());
+        signature = sk.sign(signature, RANDOM, SELF_CHECK);
+
+        saveSignature(merkle
+                ? new RainbowSignature(signature, RainbowSignature.MERKLE, MerkleHash.DEFAULT_CHUNK_BITS)
+                : new RainbowSignature(signature), signaturePath);
+
+        System.out.print(PARAMETERS.getParamString() + " = ");
+        System.out.println(GF16.toHex(signature));
+    }
+
+    /**
+     * Loads a private key from file and produces a signature for a given file hashed with a chosen hash function,
+     * which is recorded in the signature.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param signaturePath the path of the signature generated
+     * @param hash          a new computation of the hash function
+     */
+    public static void sign(String skPath, String filePath, String signaturePath, MessageHash hash) {
+        RainbowSecKey sk = loadSecretKey(skPath);
+
+        byte[] signature = sk.sign(hashFile(filePath, sk.getEqNum(), hash), RANDOM, SELF_CHECK);
+
+        saveSignature(new RainbowSignature(signature, RainbowSignature.PLAIN, 0, 0, hash.getId()), signaturePath);
+
+        System.out.print(PARAMETERS.getParamString() + " = ");
+        System.out.println(GF16.toHex(signature));
+    }
+
+    /**
+     * Loads a private key from file and signs the current content of an append-only file,
+     * resuming the hash from the checkpoint in a state file, so that only the bytes appended since the last signature are read,
+     * besides a sample of the hashed prefix checked by {@link AppendHash}.
+     * The signature binds the length of the signed prefix, and remains valid while the file grows.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param signaturePath the path of the signature generated
+     * @param statePath     the path of the state file, which is created if missing and updated
+     */
+    public static void signAppend(String skPath, String filePath, String signaturePath, String statePath) {
+        RainbowSecKey sk = loadSecretKey(skPath);
+        AppendHash hash = new AppendHash(statePath);
+        byte[] signature = null;
+
+        try {
+            signature = expandRoot(hash.hash(filePath), sk.getEqNum());
+        } catch (NoSuchFileException ex) {
+            System.out.println(filePath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+        signature = sk.sign(signature, RANDOM, SELF_CHECK);
+
+        saveSignature(new RainbowSignature(signature, RainbowSignature.APPEND, 0, hash.getLength()), signaturePath);
+
+        System.out.print(PARAMETERS.getParamString() + " = ");
+        System.out.println(GF16.toHex(signature));
+    }
+
+    /**
+     * Loads a private key from file and signs a digest computed elsewhere, without reading the signed data.
+     * The digest is expanded as in {@link #hashFile(String, int)}, so signing the SHA-256 digest of a file
+     * gives a signature of the file.
+     *
+     * @param skPath the path of the file containing the secret key
+     * @param digest the digest, at least m/2 bytes long
+     * @return the signature
+     */
+    public static byte[] signDigest(String skPath, byte[] digest) {
+        return loadSecretKey(skPath).signDigest(digest, RANDOM, SELF_CHECK);
+    }
+
+    /**
+     * Verifies a signature of a digest computed elsewhere, without reading the signed data.
+     *
+     * @param pkPath    path to the file containing the public key
+     * @param digest    the digest, at least m/2 bytes long
+     * @param signature the signature
+     * @return true if the signature is valid, false otherwise
+     */
+    public static boolean verifyDigest(String pkPath, byte[] digest, byte[] signature) {
+        if (VERIFIED != null) {
+            return verifyCached(pkPath, digest, new RainbowSignature(signature));
+        }
+
+        PublicMap pk = loadPublicMap(pkPath);
+
+        return signature.length == pk.getVarNum() && pk.verifyDigest(signature, digest);
+    }
+
+    /**
+     * Loads several private keys from file and signs a given file with each of them, reading and hashing the file only once,
+     * see {@link CoSigner}.
+     *
+     * @param skPaths        the paths of the files containing the secret keys
+     * @param filePath       the path of the file that is to be signed
+     * @param signaturePaths the paths of the signatures generated, one for each key
+     * @param hash           the id of the hash function, see {@link MessageHash}
+     */
+    public static void coSign(String[] skPaths, String filePath, String[] signaturePaths, byte hash) {
+        List<RainbowSecKey> keys = new ArrayList<>();
+        for (String skPath : skPaths) {
+            keys.add(loadSecretKey(skPath));
+        }
+
+        RainbowSignature[] signatures = null;
+        try {
+            signatures = new CoSigner().sign(keys, filePath, hash, RANDOM, SELF_CHECK);
+        } catch (NoSuchFileException ex) {
+            System.out.println(filePath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        for (int i = 0; i < signatures.length; i++) {
+            saveSignature(signatures[i], signaturePaths[i]);
+
+            System.out.print(signaturePaths[i] + " = ");
+            System.out.println(GF16.toHex(signatures[i].getElements()));
+        }
+    }
+
+    /**
+     * Verifies several signatures of a file, each one with its own public key, reading and hashing the file only once
+     * for all the signatures hashed the same way, see {@link CoSigner}. The signatures that are not valid are listed.
+     *
+     * @param pkPaths        the paths to the files containing the public keys
+     * @param filePath       path to the signed file
+     * @param signaturePaths the paths to the signatures, one for each key
+     * @return true if all the signatures are valid, false otherwise
+     */
+    public static boolean coVerify(String[] pkPaths, String filePath, String[] signaturePaths) {
+        List<PublicMap> keys = new ArrayList<>();
+        List<RainbowSignature> signatures = new ArrayList<>();
+        for (int i = 0; i < pkPaths.length; i++) {
+            keys.add(loadPublicMap(pkPaths[i]));
+            signatures.add(readSignature(signaturePaths[i]));
+        }
+
+        boolean[] valid = null;
+        try {
+            valid = new CoSigner().verify(keys, filePath, signatures);
+        } catch (NoSuchFileException ex) {
+            System.out.println(filePath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        boolean res = true;
+        for (int i = 0; i < valid.length; i++) {
+            if (!valid[i]) {
+                System.out.println(signaturePaths[i] + ": FAILED");
+                res = false;
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Verifies that a file signature is valid.
+     * The file is hashed in the way recorded in the signature.
+     *
+     * @param pkPath        path to the file containing the public key
+     * @param filePath      path to the signed file
+     * @param signaturePath path to the signature
+     * @return true if the signature is valid, false otherwise
+     */
+    public static boolean verify(String pkPath, String filePath, String signaturePath) {
+        if (VERIFIED != null) {
+            RainbowSignature signature = readSignature(signaturePath);
+
+            return verifyCached(pkPath, messageDigest(filePath, signature), signature);
+        }
+
+        PublicMap pk = loadPublicMap(pkPath);
+
+        RainbowSignature signature = readSignature(signaturePath);
+
+        if (signature.getElements().length != pk.getVarNum()) {
+            System.out.println(signaturePath + " is not a valid signature!");
+            System.exit(1);
+        }
+
+        byte[] h = hashFile(filePath, pk.getEqNum(), signature);
+
+        return pk.verify(signature.getElements(), h);
+    }
+
+    /**
+     * Sets the cache of the signatures found valid by {@link #verify(String, String, String)} and
+     * {@link #verifyDigest(String, byte[], byte[])}, which then load the key and evaluate the public map
+     * only for signatures not found valid yet.
+     *
+     * @param cache the cache, or null to verify every signature
+     */
+    public static void setVerificationCache(VerificationCache cache) {
+        VERIFIED = cache;
+    }
+
+    /**
+     * Verifies a signature through the cache of the signatures found valid, see {@link VerificationCache}.
+     *
+     * @param pkPath    path to the file containing the public key
+     * @param digest    the digest of the message, as described in {@link VerificationCache#entry}
+     * @param signature the signature
+     * @return true if the signature is valid, false otherwise
+     */
+    private static boolean verifyCached(String pkPath, byte[] digest, RainbowSignature signature) {
+        byte[] entry = null;
+
+        try {
+            entry = VerificationCache.entry(FINGERPRINTS.get(pkPath), digest, signature);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(pkPath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        if (VERIFIED.contains(entry)) {
+            return true;
+        }
+
+        PublicMap pk = loadPublicMap(pkPath);
+        if (signature.getElements().length != pk.getVarNum()) {
+            return false;
+        }
+
+        byte[] h = signature.getMode() == RainbowSignature.PLAIN ? MessageHash.split(digest, pk.getEqNum())
+                : expandRoot(digest, pk.getEqNum());
+        boolean valid = pk.verify(signature.getElements(), h);
+
+        if (valid) {
+            try {
+                VERIFIED.add(entry);
+            } catch (IOException ex) {
+                // the signature is valid all the same, it will just be verified again
+                System.out.println(ex.getMessage());
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Computes the digest of a file identifying it in the cache of verifications: {@link VerificationCache#DIGEST_SIZE}
+     * bytes of output of the hash function of a plain signature, or the root of any other signature.
+     */
+    private static byte[] messageDigest(String filePath, RainbowSignature signature) {
+        try {
+            if (signature.getMode() != RainbowSignature.PLAIN) {
+                return computeRoot(filePath, signature);
+            }
+
+            MessageHash hash = MessageHash.getInstance(signature.getHash());
+            feedFile(filePath, -1, hash::update);
+            return hash.squeeze(VerificationCache.DIGEST_SIZE);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(filePath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Loads a public key from a file, either packed or serialized, for a single verification: a packed key is mapped
+     * and its equations decoded lazily, see {@link MappedPubKey}, since laying it out for fast evaluation
+     * would cost more than the verification itself.
+     *
+     * @param pkPath path to the file containing the public key
+     * @return the public map of the key
+     */
+    public static PublicMap loadPublicMap(String pkPath) {
+        try {
+            return openPublicMap(pkPath);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(pkPath + " not found!");
+            System.exit(1);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(pkPath + " is not a valid public key!");
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Loads a secret key from a file through a {@link KeyCache}: the key is kept in memory,
+     * and is loaded again only if the file changes. The key may be shared, so it must not be modified:
+     * if --self-check is given, the signatures are checked by asking for it each time the key signs.
+     *
+     * @param skPath path to the file containing the secret key
+     * @return the secret key
+     */
+    public static RainbowSecKey loadSecretKey(String skPath) {
+        try {
+            return SECRET_KEYS.get(skPath);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(skPath + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(skPath + " is not a valid private key!");
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Opens a public key from a file, either packed or serialized, as {@link #loadPublicMap(String)} does,
+     * but reports errors to the caller instead of terminating.
+     *
+     * @param pkPath path to the file containing the public key
+     * @return the public map of the key
+     * @throws IOException if the file cannot be read or does not contain a valid public key
+     */
+    public static PublicMap openPublicMap(String pkPath) throws IOException {
+        if (MappedPubKey.isPacked(pkPath)) {
+            try {
+                return MappedPubKey.open(pkPath);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(pkPath + " is not a valid public key!", ex);
+            }
+        }
+
+        return RainbowPubKey.readMap(pkPath);
+    }
+
+    /**
+     * Converts a serialized public key into the packed encoding, which can be mapped into memory.
+     *
+     * @param pkPath  path to the file containing the serialized public key
+     * @param outPath path of the file on which the packed public key is written
+     */
+    public static void pack(String pkPath, String outPath) {
+        RainbowPubKey pk = RainbowPubKey.loadKey(pkPath);
+
+        try {
+            MappedPubKey.write(pk, outPath);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Verifies a range of a file against a Merkle signature, reading only the chunks overlapping the range
+     * and their inclusion proofs from the tree saved when the file was signed.
+     *
+     * @param pkPath        path to the file containing the public key
+     * @param filePath      path to the signed file
+     * @param signaturePath path to the signature
+     * @param treePath      path to the Merkle tree saved when signing
+     * @param offset        the first byte of the range
+     * @param length        the number of bytes of the range
+     * @return true if the range belongs to the signed file, false otherwise
+     */
+    public static boolean verifyRange(String pkPath, String filePath, String signaturePath, String treePath, long offset, long length) {
+        PublicMap pk = loadPublicMap(pkPath);
+
+        RainbowSignature signature = readSignature(signaturePath);
+
+        if (signature.getMode() != RainbowSignature.MERKLE || signature.getElements().length != pk.getVarNum()) {
+            System.out.println(signaturePath + " is not a valid Merkle signature!");
+            System.exit(1);
+        }
+
+        byte[] root = null;
+        try {
+            root = MerkleHash.rangeRoot(filePath, treePath, signature.getParam(), offset, length);
+        } catch (NoSuchFileException ex) {
+            System.out.println(ex.getFile() + " not found!");
+            System.exit(1);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        return root != null && pk.verify(signature.getElements(), expandRoot(root, pk.getEqNum()));
+    }
+
+    /**
+     * Loads a private key from file, signs a file and appends the signature to a container, see {@link SignatureContainer},
+     * keyed by the SHA-256 digest of the file. The signature is the same as the one {@link #sign(String, String, String, boolean)}
+     * produces without Merkle tree, and the file is read once, for both the key and the hash.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param filePath      the path of the file that is to be signed
+     * @param containerPath the path of the container, which is created if missing
+     */
+    public static void signInto(String skPath, String filePath, String containerPath) {
+        RainbowSecKey sk = loadSecretKey(skPath);
+
+        byte[] key = sha256File(filePath);
+        byte[] signature = sk.sign(expandRoot(key, sk.getEqNum()), RANDOM, SELF_CHECK);
+
+        try {
+            SignatureContainer.append(containerPath, key, new RainbowSignature(signature));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(containerPath + " is not a valid container!");
+            System.exit(1);
+        }
+
+        System.out.print(PARAMETERS.getParamString() + " = ");
+        System.out.println(GF16.toHex(signature));
+    }
+
+    /**
+     * Verifies a file against the signature stored for its SHA-256 digest in a container, see {@link SignatureContainer}.
+     *
+     * @param pkPath        path to the file containing the public key
+     * @param filePath      path to the signed file
+     * @param containerPath path to the container
+     * @return true if the container holds a valid signature of the file, false otherwise
+     */
+    public static boolean verifyFrom(String pkPath, String filePath, String containerPath) {
+        PublicMap pk = loadPublicMap(pkPath);
+
+        byte[] key = sha256File(filePath);
+        RainbowSignature signature = null;
+
+        try (SignatureContainer container = SignatureContainer.open(containerPath)) {
+            signature = container.get(key);
+        } catch (NoSuchFileException ex) {
+            System.out.println(containerPath + " not found!");
+            System.exit(1);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(containerPath + " is not a valid container!");
+            System.exit(1);
+        }
+
+        return signature != null && signature.getMode() == RainbowSignature.PLAIN && signature.getHash() == MessageHash.SHA256
+                && signature.getElements().length == pk.getVarNum()
+                && pk.verify(signature.getElements(), expandRoot(key, pk.getEqNum()));
+    }
+
+    /**
+     * Loads a private key from file and signs a whole directory tree: all its files are hashed in parallel
+     * and listed in a manifest, see {@link DirectoryManifest}, which is then signed once.
+     * The signature is a plain signature of the manifest, so the manifest can also be verified by {@link #verify}.
+     *
+     * @param skPath        the path of the file containing the secret key
+     * @param rootPath      the root of the tree that is to be signed
+     * @param manifestPath  the path of the manifest generated
+     * @param signaturePath the path of the signature of the manifest
+     */
+    public static void signTree(String skPath, String rootPath, String manifestPath, String signaturePath) {
+        RainbowSecKey sk = loadSecretKey(skPath);
+        byte[] manifest = null;
+        int files = 0;
+
+        try {
+            SortedMap<String, String> digests = new DirectoryManifest().hash(Paths.get(rootPath), treeExclusions(manifestPath, signaturePath));
+            files = digests.size();
+            manifest = DirectoryManifest.encode(digests);
+
+            Files.write(Paths.get(manifestPath), manifest);
+        } catch (NoSuchFileException ex) {
+            System.out.println(ex.getFile() + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        MessageHash hash = MessageHash.getInstance(MessageHash.SHA256);
+        hash.update(manifest);
+        byte[] signature = sk.sign(hash.expand(sk.getEqNum()), RANDOM, SELF_CHECK);
+
+        saveSignature(new RainbowSignature(signature), signaturePath);
+
+        System.out.println(files + " files listed in " + manifestPath);
+        System.out.print(PARAMETERS.getParamString() + " = ");
+        System.out.println(GF16.toHex(signature));
+    }
+
+    /**
+     * Verifies a directory tree: checks the signature of its manifest, then hashes all the files again in parallel
+     * and compares them with the manifest. The files which do not match are printed.
+     *
+     * @param pkPath        path to the file containing the public key
+     * @param rootPath      the root of the signed tree
+     * @param manifestPath  path to the manifest
+     * @param signaturePath path to the signature of the manifest
+     * @return true if the manifest is signed and the tree matches it, false otherwise
+     */
+    public static boolean verifyTree(String pkPath, String rootPath, String manifestPath, String signaturePath) {
+        PublicMap pk = loadPublicMap(pkPath);
+
+        RainbowSignature signature = readSignature(signaturePath);
+
+        if (signature.getMode() != RainbowSignature.PLAIN || signature.getElements().length != pk.getVarNum()) {
+            System.out.println(signaturePath + " is not a valid signature!");
+            System.exit(1);
+        }
+
+        List<String> failed = null;
+        try {
+            // the manifest is read once, so the digests compared are exactly the signed ones
+            byte[] manifest = Files.readAllBytes(Paths.get(manifestPath));
+
+            MessageHash hash = MessageHash.getInstance(signature.getHash());
+            hash.update(manifest);
+            if (!pk.verify(signature.getElements(), hash.expand(pk.getEqNum()))) {
+                return false;
+            }
+
+            failed = new DirectoryManifest().check(Paths.get(rootPath), DirectoryManifest.decode(manifest),
+                    treeExclusions(manifestPath, signaturePath));
+        } catch (NoSuchFileException ex) {
+            System.out.println(ex.getFile() + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(manifestPath + " is not a valid manifest!");
+            System.exit(1);
+        }
+
+        for (String name : failed) {
+            System.out.println(name + ": FAILED");
+        }
+
+        return failed.isEmpty();
+    }
+
+    /**
+     * Verifies a stream of signed records, see {@link StreamVerifier}, printing the result of each record in order.
+     * The key id of a record is either the id of a key in a {@link PubKeyStore}, or the name of a public key file in a directory;
+     * the keys are kept in memory, laid out for fast evaluation.
+     *
+     * @param keys       a key store or the directory containing the public keys
+     * @param streamPath the path of the stream, or "-" for the standard input
+     * @return true if all the records are valid, false otherwise
+     */
+    public static boolean verifyStream(String keys, String streamPath) {
+        PubKeyStore store = null;
+        Function<String, PublicMap> resolver;
+
+        if (PubKeyStore.isStore(keys)) {
+            try {
+                store = PubKeyStore.open(keys);
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println(keys + " is not a valid key store!");
+                System.exit(1);
+            }
+
+            PubKeyStore opened = store;
+            Map<String, PublicMap> compiled = new ConcurrentHashMap<>();
+
+            resolver = id -> compiled.computeIfAbsent(id, name -> {
+                try {
+                    MappedPubKey pk = opened.get(name);
+                    return pk == null ? null : CompiledPubKey.compile(pk);
+                } catch (IOException | IllegalArgumentException ex) {
+                    return null;
+                }
+            });
+        } else {
+            resolver = id -> {
+                // only plain file names, so that a record cannot point outside the directory
+                if (!id.matches("[A-Za-z0-9_.-]+") || id.equals(".") || id.equals("..")) {
+                    return null;
+                }
+
+                try {
+                    return PUBLIC_KEYS.get(Paths.get(keys, id).toString());
+                } catch (IOException | IllegalArgumentException ex) {
+                    return null;
+                }
+            };
+        }
+
+        try {
+            return verifyStream(new StreamVerifier(resolver), streamPath);
+        } finally {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static boolean verifyStream(StreamVerifier verifier, String streamPath) {
+
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
+        long[] valid = {0};
+
+        try (InputStream in = streamPath.equals("-") ? System.in : new FileInputStream(streamPath)) {
+            long count = verifier.verify(in, (index, keyId, result) -> {
+                out.println(index + " " + keyId + " " + result);
+                if (result == StreamVerifier.Result.VALID) valid[0]++;
+            });
+            out.flush();
+
+            System.out.println(valid[0] + " of " + count + " records valid");
+
+            return valid[0] == count;
+        } catch (FileNotFoundException ex) {
+            System.out.println(streamPath + " not found!");
+        } catch (IOException ex) {
+            out.flush();
+            System.out.println(ex.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Runs a {@link RainbowDaemon} until the process is terminated, then prints its counters.
+     *
+     * @param socket  the path of a Unix domain socket, or a port on the loopback interface
+     * @param skPaths the paths of the secret keys the daemon signs with
+     */
+    public static void daemon(String socket, List<String> skPaths) {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            RainbowDaemon daemon = new RainbowDaemon(RainbowDaemon.address(socket), skPaths, OFF_HEAP, SELF_CHECK,
+                    RainbowDaemon.DEFAULT_MAX_CONNECTIONS, threads, RANDOM);
+
+            // the daemon is closed by the hook, also when serve fails and the process exits
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.print(daemon.stats());
+                try {
+                    daemon.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+
+            System.out.println("Listening on " + daemon.getAddress());
+            daemon.serve();
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the operations listed in a script, see {@link BatchRunner}, printing a line for each one.
+     *
+     * @param scriptPath the path of the script, or "-" for the standard input
+     * @param threads    the number of operations performed at once
+     * @return true if all the operations succeeded and all the signatures are valid, false otherwise
+     */
+    public static boolean batch(String scriptPath, int threads) {
+        BatchRunner runner = new BatchRunner(PARAMETERS, RANDOM, threads, PACKED, SELF_CHECK);
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
+
+        try (BufferedReader script = new BufferedReader(new InputStreamReader(
+                scriptPath.equals("-") ? System.in : new FileInputStream(scriptPath)))) {
+            return runner.run(script, out) == 0;
+        } catch (FileNotFoundException ex) {
+            System.out.println(scriptPath + " not found!");
+        } catch (IOException ex) {
+            out.flush();
+            System.out.println(ex.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Collects all the public keys in a directory, packed or serialized, into a key store, see {@link PubKeyStore},
+     * each one with the name of its file as id.
+     *
+     * @param storePath the path of the key store
+     * @param keyDir    the directory containing the public keys
+     */
+    public static void buildKeyStore(String storePath, String keyDir) {
+        Map<String, ByteBuffer> keys = new TreeMap<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(keyDir))) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) continue;
+
+                keys.put(file.getFileName().toString(), packedKey(file.toString()));
+            }
+
+            PubKeyStore.write(storePath, keys);
+        } catch (NoSuchFileException ex) {
+            System.out.println(ex.getFile() + " not found!");
+            System.exit(1);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        System.out.println(keys.size() + " keys stored in " + storePath);
+    }
+
+    /**
+     * Returns the packed encoding of a public key file, expanding a compressed key.
+     */
+    private static ByteBuffer packedKey(String pkPath) throws IOException {
+        if (MappedPubKey.isPacked(pkPath)) {
+            return ByteBuffer.wrap(Files.readAllBytes(Paths.get(pkPath)));
+        }
+
+        PublicMap pk = RainbowPubKey.readMap(pkPath);
+        if (pk instanceof CompressedPubKey) {
+            pk = ((CompressedPubKey) pk).expand();
+        }
+
+        return MappedPubKey.encode((RainbowPubKey) pk);
+    }
+
+    /**
+     * The manifest and its signature are not listed when they are saved within the signed tree.
+     */
+    private static Set<Path> treeExclusions(String manifestPath, String signaturePath) {
+        return Set.of(Paths.get(manifestPath).toAbsolutePath().normalize(), Paths.get(signaturePath).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file, the key of its signature in a container.
+     */
+    private static byte[] sha256File(String fileName) {
+        MessageDigest digest = null;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+            digestFile(digest, fileName);
+        } catch (NoSuchFileException ex) {
+            System.out.println(fileName + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * This methods computes the hash of a file using SHA-256. (this is needed to generate a file signature)
+     *
+     * @param fileName the path of the file to be hashed
+     * @param size the size of the digest
+     * @return the hash of the file
+     */
+    public static byte[] hashFile(String fileName, int size) {
+        return hashFile(fileName, size, MessageHash.getInstance(MessageHash.SHA256));
+    }
+
+    /**
+     * Computes the hash of a file with a given hash function, producing as many field elements as needed.
+     *
+     * @param fileName the path of the file to be hashed
+     * @param size     the size of the digest
+     * @param hash     a new computation of the hash function
+     * @return the hash of the file
+     */
+    public static byte[] hashFile(String fileName, int size, MessageHash hash) {
+        try {
+            return computeHash(fileName, size, hash);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(fileName + " not found!");
+            System.exit(1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return hash.expand(size);
+    }
+
+    /**
+     * Computes the hash of a file as {@link #hashFile(String, int, MessageHash)} does, but reports errors to the caller.
+     *
+     * @param fileName the path of the file to be hashed
+     * @param size     the size of the digest
+     * @param hash     a new computation of the hash function
+     * @return the hash of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] computeHash(String fileName, int size, MessageHash hash) throws IOException {
+        feedFile(fileName, -1, hash::update);
+
+        return hash.expand(size);
+    }
+
+    /**
+     * Computes the hash of a file as the root of a Merkle tree, see {@link MerkleHash}, whose chunks are hashed in parallel.
+     *
+     * @param fileName  the path of the file to be hashed
+     * @param size      the size of the digest
+     * @param chunkBits the base 2 logarithm of the chunk size
+     * @return the hash of the file
+     */
+    public static byte[] merkleHashFile(String fileName, int size, int chunkBits) {
+        return merkleHashFile(fileName, size, chunkBits, null);
+    }
+
+    /**
+     * Computes the hash of a file as the root of a Merkle tree, see {@link MerkleHash}, optionally saving the tree on file.
+     *
+     * @param fileName  the path of the file to be hashed
+     * @param size      the size of the digest
+     * @param chunkBits the base 2 logarithm of the chunk size
+     * @param treePath  the path of the file on which the tree is saved, or null
+     * @return the hash of the file
+     */
+    public static byte[] merkleHashFile(String fileName, int size, int chunkBits, String treePath) {
+        byte[] root = null;
+
+        try {
+            root = new MerkleHash(chunkBits).root(fileName, treePath);
+        } catch (NoSuchFileException ex) {
+            System.out.println(fileName + " not found!");
+            System.exit(1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        return expandRoot(root, size);
+    }
+
+    /**
+     * Computes the hash of a file in the way recorded in a signature.
+     *
+     * @param fileName  the path of the file to be hashed
+     * @param size      the size of the digest
+     * @param signature the signature of the file
+     * @return the hash of the file
+     */
+    public static byte[] hashFile(String fileName, int size, RainbowSignature signature) {
+        try {
+            return computeHash(fileName, size, signature);
+        } catch (NoSuchFileException | FileNotFoundException ex) {
+            System.out.println(fileName + " not found!");
+            System.exit(1);
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Computes the hash of a file in the way recorded in a signature, as {@link #hashFile(String, int, RainbowSignature)} does,
+     * but reports errors to the caller.
+     *
+     * @param fileName  the path of the file to be hashed
+     * @param size      the size of the digest
+     * @param signature the signature of the file
+     * @return the hash of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] computeHash(String fileName, int size, RainbowSignature signature) throws IOException {
+        if (signature.getMode() == RainbowSignature.PLAIN) {
+            return computeHash(fileName, size, MessageHash.getInstance(signature.getHash()));
+        }
+
+        return expandRoot(computeRoot(fileName, signature), size);
+    }
+
+    /**
+     * Computes the SHA-256 root of a file signed in {@link RainbowSignature#MERKLE} or {@link RainbowSignature#APPEND} mode,
+     * from which the target vector is expanded for any number of equations.
+     */
+    static byte[] computeRoot(String fileName, RainbowSignature signature) throws IOException {
+        if (signature.getMode() == RainbowSignature.MERKLE) {
+            return new MerkleHash(signature.getParam()).root(fileName, null);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digestFile(digest, fileName, signature.getLength());
+
+        return AppendHash.target(signature.getLength(), digest.digest());
+    }
+
+    /**
+     * Expands a digest into the target vector of a signature: the first ({@code size}+1)/2 bytes of the digest are split
+     * into their high nibbles, which make the first half of the target, and their low nibbles, which make the second half.
      *
-     * @param skPath        the path of the file containing the secret key
-     * @param filePath      the path of the file that is to be signed
-     * @param signaturePath the path of the signature generated
+     * @param res  the digest
+     * @param size the number of field elements of the target, that is the number of equations of the public map
+     * @return the target vector
+     * @throws IllegalArgumentException if the digest is too short
      */
-    public static void sign(String skPath, String filePath, String signaturePath) {
-        RainbowSecKey sk = RainbowSecKey.loadKey(skPath);
-
-        byte[] signature = hashFile(filePath, sk.getEqNum());
-        signature = sk.getS().evalInv(signature);
-        signature = sk.getF().invF(signature, RANDOM);
-        signature = sk.getT().evalInv(signature);
-
-        saveSignature(signature, signaturePath);
+    public static byte[] expandDigest(byte[] res, int size) {
+        return MessageHash.split(res, size);
+    }
 
-        System.out.print(PARAMETERS.getParamString() + " = ");
-        System.out.println(GF16.toHex(signature));
+    /**
+     * Expands the SHA-256 root of a Merkle or append-only hash into the target vector,
+     * extending it as in {@link FixedHash} if the parameters need more than 32 bytes.
+     */
+    static byte[] expandRoot(byte[] root, int size) {
+        return MessageHash.split(FixedHash.extend(root, (size + 1) / 2, new JcaHash("SHA-256", MessageHash.SHA256)), size);
     }
 
     /**
-     * Verifies that a file signature is valid.
+     * Feeds the content of a file to a message digest.
+     * Files smaller than {@link #MAP_THRESHOLD} are read into a single array, larger files are mapped into memory
+     * in chunks of {@link #MAP_CHUNK_SIZE} bytes, so their pages are hashed without being copied.
      *
-     * @param pkPath        path to the file containing the public key
-     * @param filePath      path to the signed file
-     * @param signaturePath path to the signature
-     * @return true if the signature is valid, false otherwise
+     * @param digest   the message digest to be updated
+     * @param fileName the path of the file
+     * @throws IOException if the file cannot be read
      */
-    public static boolean verify(String pkPath, String filePath, String signaturePath) {
-        RainbowPubKey pk = RainbowPubKey.loadKey(pkPath);
-
-        byte[] h = hashFile(filePath, pk.getEqNum());
-
-        byte[] signature = loadSignature(signaturePath);
-
-        if (signature.length != pk.getVarNum()) {
-            System.out.println(signaturePath + " is not a valid signature!");
-            System.exit(1);
-        }
-        byte[] k = pk.eval(signature);
-
-        return Arrays.equals(h, k);
+    public static void digestFile(MessageDigest digest, String fileName) throws IOException {
+        digestFile(digest, fileName, -1);
     }
 
     /**
-     * This methods computes the hash of a file using SHA-256. (this is needed to generate a file signature)
+     * Feeds a prefix of a file to a message digest, as {@link #digestFile(MessageDigest, String)} does with the whole file.
      *
-     * @param fileName the path of the file to be hashed
-     * @param size the size of the digest
-     * @return the hash of the file
+     * @param digest   the message digest to be updated
+     * @param fileName the path of the file
+     * @param limit    the length of the prefix, or -1 for the whole file
+     * @throws IOException if the file cannot be read or is shorter than {@code limit}
      */
-    public static byte[] hashFile(String fileName, int size) {
-        byte[] buffer = new byte[8192];
-        int count;
-        MessageDigest digest = null;
-        try {
-            digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-        BufferedInputStream bis;
-        try {
-            bis = new BufferedInputStream(new FileInputStream(fileName));
-            while ((count = bis.read(buffer)) > 0) {
-                digest.update(buffer, 0, count);
+    public static void digestFile(MessageDigest digest, String fileName, long limit) throws IOException {
+        feedFile(fileName, limit, digest::update);
+    }
+
+    /**
+     * Passes a prefix of a file to a consumer, either read into a single buffer or mapped into memory in chunks.
+     */
+    static void feedFile(String fileName, long limit, Consumer<ByteBuffer> digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (limit >= 0) {
+                if (limit > size) {
+                    throw new EOFException(fileName + " is shorter than the signed prefix!");
+                }
+                size = limit;
             }
-            bis.close();
-        } catch (FileNotFoundException ex) {
-            System.out.println(fileName + " not found!");
-            System.exit(1);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
 
-        byte[] res = digest.digest();
-        byte[] resHalf = new byte[size];
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) break;
+                }
+
+                buffer.flip();
+                digest.accept(buffer);
+                return;
+            }
 
-        for (int i = 0; i < size/2; i++) {
-            resHalf[i] = (byte) ((res[i] & 0xf0) >> 4);
-            resHalf[i + size/2] = (byte) (res[i] & 0x0f);
+            for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                long length = Math.min(MAP_CHUNK_SIZE, size - position);
+                digest.accept(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
         }
+    }
 
-        return resHalf;
+    /**
+     * Saves a signature on file, in the packed encoding if the {@code --packed} option was given.
+     */
+    private static void saveSignature(RainbowSignature signature, String signaturePath) {
+        saveSignature(PACKED ? signature.encodePacked() : signature.encode(), signaturePath);
     }
 
     private static void saveSignature(byte[] signature, String signaturePath) {
@@ -187,6 +1216,22 @@ public class RainbowScheme {
         return signature;
     }
 
+    /**
+     * Loads a signature from file, decoding the way the signed file is to be hashed.
+     *
+     * @param signaturePath the path of the signature
+     * @return the signature
+     */
+    public static RainbowSignature readSignature(String signaturePath) {
+        try {
+            return RainbowSignature.decode(loadSignature(signaturePath));
+        } catch (IllegalArgumentException ex) {
+            System.out.println(signaturePath + " is not a valid signature!");
+            System.exit(1);
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
         Options options = new Options();
 
@@ -220,6 +1265,240 @@ public class RainbowScheme {
                 .build();
         options.addOption(verify);
 
+        Option pack = Option.builder("p")
+                .argName("pk out")
+                .hasArgs()
+                .numberOfArgs(2)
+                .valueSeparator(' ')
+                .desc("Convert the public key <pk> into the packed format, which can be memory-mapped, and save it in <out>")
+                .longOpt("pack")
+                .build();
+        options.addOption(pack);
+
+        Option compressed = Option.builder(null)
+                .desc("Generate a compressed public key, part of which is expanded from a seed")
+                .longOpt("compressed")
+                .build();
+        options.addOption(compressed);
+
+        Option seeded = Option.builder(null)
+                .desc("Generate a secret key which is stored as a seed and regenerated when loaded")
+                .longOpt("seeded")
+                .build();
+        options.addOption(seeded);
+
+        Option standard = Option.builder(null)
+                .desc("Generate a secret key whose affine maps are in the block-identity standard form")
+                .longOpt("standard")
+                .build();
+        options.addOption(standard);
+
+        Option streaming = Option.builder(null)
+                .desc("Write the public key in the packed encoding while it is generated, a block of equations at a time")
+                .longOpt("streaming")
+                .build();
+        options.addOption(streaming);
+
+        Option merkle = Option.builder(null)
+                .desc("Sign the root of a Merkle tree of the file, whose chunks are hashed in parallel")
+                .longOpt("merkle")
+                .build();
+        options.addOption(merkle);
+
+        Option proofs = Option.builder(null)
+                .argName("tree")
+                .hasArg()
+                .desc("Sign in Merkle mode saving the tree in <tree>, from which the proofs of single ranges are read")
+                .longOpt("proofs")
+                .build();
+        options.addOption(proofs);
+
+        Option append = Option.builder(null)
+                .argName("state")
+                .hasArg()
+                .desc("Sign an append-only file resuming the hash from the checkpoint in <state>, which is then updated")
+                .longOpt("append")
+                .build();
+        options.addOption(append);
+
+        Option hash = Option.builder(null)
+                .argName("name")
+                .hasArg()
+                .desc("Sign hashing the file with <name>, one of " + String.join(", ", MessageHash.NAMES) + ", default SHA-256")
+                .longOpt("hash")
+                .build();
+        options.addOption(hash);
+
+        Option verifyRange = Option.builder(null)
+                .argName("pk file signature tree offset length")
+                .hasArgs()
+                .numberOfArgs(6)
+                .valueSeparator(' ')
+                .desc("Verify <length> bytes of <file> from <offset> with <pk>, a Merkle <signature> and its <tree>")
+                .longOpt("verify-range")
+                .build();
+        options.addOption(verifyRange);
+
+        Option signDigest = Option.builder(null)
+                .argName("sk digest signature")
+                .hasArgs()
+                .numberOfArgs(3)
+                .valueSeparator(' ')
+                .desc("Sign the hex encoded <digest> with the secret key <sk> and save it in <signature>")
+                .longOpt("sign-digest")
+                .build();
+        options.addOption(signDigest);
+
+        Option verifyDigest = Option.builder(null)
+                .argName("pk digest signature")
+                .hasArgs()
+                .numberOfArgs(3)
+                .valueSeparator(' ')
+                .desc("Verify the signature <signature> of the hex encoded <digest> with the public key <pk>")
+                .longOpt("verify-digest")
+                .build();
+        options.addOption(verifyDigest);
+
+        Option signInto = Option.builder(null)
+                .argName("sk file container")
+                .hasArgs()
+                .numberOfArgs(3)
+                .valueSeparator(' ')
+                .desc("Sign <file> with the secret key <sk> and append the signature to <container>, keyed by the SHA-256 of <file>")
+                .longOpt("sign-into")
+                .build();
+        options.addOption(signInto);
+
+        Option verifyFrom = Option.builder(null)
+                .argName("pk file container")
+                .hasArgs()
+                .numberOfArgs(3)
+                .valueSeparator(' ')
+                .desc("Verify <file> with the public key <pk> and the signature stored for it in <container>")
+                .longOpt("verify-from")
+                .build();
+        options.addOption(verifyFrom);
+
+        Option signTree = Option.builder(null)
+                .argName("sk dir manifest signature")
+                .hasArgs()
+                .numberOfArgs(4)
+                .valueSeparator(' ')
+                .desc("List the digests of all the files under <dir> in <manifest> and sign it with <sk>, saving the signature in <signature>")
+                .longOpt("sign-tree")
+                .build();
+        options.addOption(signTree);
+
+        Option verifyTree = Option.builder(null)
+                .argName("pk dir manifest signature")
+                .hasArgs()
+                .numberOfArgs(4)
+                .valueSeparator(' ')
+                .desc("Verify the <signature> of <manifest> with <pk> and check the files under <dir> against it")
+                .longOpt("verify-tree")
+                .build();
+        options.addOption(verifyTree);
+
+        Option coSign = Option.builder(null)
+                .argName("file sk signature...")
+                .hasArgs()
+                .valueSeparator(' ')
+                .desc("Sign <file> with each secret key <sk>, saving the signature in the <signature> following it, hashing <file> once")
+                .longOpt("co-sign")
+                .build();
+        options.addOption(coSign);
+
+        Option coVerify = Option.builder(null)
+                .argName("file pk signature...")
+                .hasArgs()
+                .valueSeparator(' ')
+                .desc("Verify each <signature> of <file> with the public key <pk> before it, hashing <file> once")
+                .longOpt("co-verify")
+                .build();
+        options.addOption(coVerify);
+
+        Option verifyStream = Option.builder(null)
+                .argName("keys stream")
+                .hasArgs()
+                .numberOfArgs(2)
+                .valueSeparator(' ')
+                .desc("Verify the signed records of <stream>, or of the standard input if it is -, with the key store or directory <keys>")
+                .longOpt("verify-stream")
+                .build();
+        options.addOption(verifyStream);
+
+        Option keystore = Option.builder(null)
+                .argName("store dir")
+                .hasArgs()
+                .numberOfArgs(2)
+                .valueSeparator(' ')
+                .desc("Collect the public keys in <dir> into the key store <store>, with their file names as ids")
+                .longOpt("keystore")
+                .build();
+        options.addOption(keystore);
+
+        Option daemon = Option.builder(null)
+                .argName("socket sk...")
+                .hasArgs()
+                .valueSeparator(' ')
+                .desc("Run a daemon verifying digests, and signing them with the secret keys <sk> only, on the Unix domain socket <socket>, "
+                        + "or on the loopback port <socket> if it is a number")
+                .longOpt("daemon")
+                .build();
+        options.addOption(daemon);
+
+        Option offHeap = Option.builder(null)
+                .desc("Keep the secret keys of --daemon outside of the Java heap, overwritten with zeros when the daemon stops")
+                .longOpt("off-heap")
+                .build();
+        options.addOption(offHeap);
+
+        Option remote = Option.builder(null)
+                .argName("socket")
+                .hasArg()
+                .desc("Perform --sign-digest or --verify-digest through the daemon listening on <socket>")
+                .longOpt("remote")
+                .build();
+        options.addOption(remote);
+
+        Option batch = Option.builder(null)
+                .argName("script")
+                .hasArg()
+                .desc("Run the keygen, sign, verify, sign-digest and verify-digest operations listed one per line in <script>, or in the standard input if it is -")
+                .longOpt("batch")
+                .build();
+        options.addOption(batch);
+
+        Option threads = Option.builder(null)
+                .argName("n")
+                .hasArg()
+                .desc("Perform --batch on <n> threads, by default one per processor")
+                .longOpt("threads")
+                .build();
+        options.addOption(threads);
+
+        Option cache = Option.builder(null)
+                .argName("index")
+                .hasArg()
+                .desc("Remember the signatures found valid by --verify and --verify-digest in the index file <index>, "
+                        + "so that they are not verified again")
+                .longOpt("cache")
+                .build();
+        options.addOption(cache);
+
+        Option selfCheck = Option.builder(null)
+                .desc("Check each signature with the secret key before saving or returning it, failing instead of releasing a wrong one, "
+                        + "also in --batch and --daemon")
+                .longOpt("self-check")
+                .build();
+        options.addOption(selfCheck);
+
+        Option packed = Option.builder(null)
+                .desc("Save the signature with its field elements packed two per byte")
+                .longOpt("packed")
+                .build();
+        options.addOption(packed);
+
         Option debug = Option.builder(null)
                 .desc("Use a reduced and deterministic version of rainbow. For test purposes only")
                 .longOpt("debug")
@@ -244,8 +1523,27 @@ public class RainbowScheme {
             PARAMETERS = new RainbowParameters(2, 1, 1);
             RANDOM = new FixedRand();
         }
+        PACKED = cmd.hasOption("packed");
+        SELF_CHECK = cmd.hasOption("self-check");
+        OFF_HEAP = cmd.hasOption("off-heap");
+
+        if (cmd.hasOption("cache")) {
+            try {
+                VERIFIED = VerificationCache.open(cmd.getOptionValue("cache"), VerificationCache.DEFAULT_CAPACITY);
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println(cmd.getOptionValue("cache") + " is not a valid verification cache!");
+                System.exit(1);
+            }
+        }
+
+        int operations = 0;
+        for (String operation : OPERATIONS) {
+            if (cmd.hasOption(operation)) operations++;
+        }
 
-        if (cmd.hasOption("keygen") && !cmd.hasOption("sign") && !cmd.hasOption("verify")) {
+        if (operations != 1) {
+            formatter.printHelp("RainbowScheme", options, true);
+        } else if (cmd.hasOption("keygen")) {
             String pkFileName = cmd.getOptionValues("keygen")[0];
             String skFileName = cmd.getOptionValues("keygen")[1];
 
@@ -257,14 +1555,24 @@ public class RainbowScheme {
             System.out.print(PARAMETERS.getParamString() + " = ");
             System.out.println("Hash size: " + PARAMETERS.getHashSizeString());
             System.out.println("Signature size: " + PARAMETERS.getSignatureSizeString());
+            if (cmd.hasOption("streaming") && cmd.hasOption("compressed")) {
+                System.out.println("A compressed public key cannot be streamed!");
+                System.exit(1);
+            }
+
             System.out.println("Generating keys...");
-            RainbowScheme.keygen(pkFileName, skFileName);
+            if (cmd.hasOption("streaming")) {
+                RainbowScheme.keygenStreaming(pkFileName, skFileName, cmd.hasOption("seeded"), cmd.hasOption("standard"));
+            } else {
+                RainbowScheme.keygen(pkFileName, skFileName, cmd.hasOption("compressed"), cmd.hasOption("seeded"),
+                        cmd.hasOption("standard"));
+            }
             System.out.println("Keys generated");
             File pkFile = new File(pkFileName);
             System.out.println("Private key size: " + pkFile.length() + " bytes");
             File skFile = new File(skFileName);
             System.out.println("Public key size: " + skFile.length() + " bytes");
-        } else if (!cmd.hasOption("keygen") && cmd.hasOption("sign") && !cmd.hasOption("verify")) {
+        } else if (cmd.hasOption("sign")) {
             String skPath = cmd.getOptionValues("sign")[0];
             String filePath = cmd.getOptionValues("sign")[1];
             String signaturePath = cmd.getOptionValues("sign")[2];
@@ -275,8 +1583,27 @@ public class RainbowScheme {
                 System.exit(1);
             }
 
-            RainbowScheme.sign(skPath, filePath, signaturePath);
-        } else if (!cmd.hasOption("keygen") && !cmd.hasOption("sign") && cmd.hasOption("verify")) {
+            if (cmd.hasOption("hash")) {
+                if (cmd.hasOption("append") || cmd.hasOption("merkle") || cmd.hasOption("proofs")) {
+                    System.out.println("Only plain signatures can use another hash function!");
+                    System.exit(1);
+                }
+
+                MessageHash messageHash = null;
+                try {
+                    messageHash = MessageHash.getInstance(cmd.getOptionValue("hash"));
+                } catch (IllegalArgumentException ex) {
+                    System.out.println(cmd.getOptionValue("hash") + " is not a known hash function!");
+                    System.exit(1);
+                }
+
+                RainbowScheme.sign(skPath, filePath, signaturePath, messageHash);
+            } else if (cmd.hasOption("append")) {
+                RainbowScheme.signAppend(skPath, filePath, signaturePath, cmd.getOptionValue("append"));
+            } else {
+                RainbowScheme.sign(skPath, filePath, signaturePath, cmd.hasOption("merkle"), cmd.getOptionValue("proofs"));
+            }
+        } else if (cmd.hasOption("verify")) {
             String pkPath = cmd.getOptionValues("verify")[0];
             String filePath = cmd.getOptionValues("verify")[1];
             String signaturePath = cmd.getOptionValues("verify")[2];
@@ -284,8 +1611,192 @@ public class RainbowScheme {
             if (RainbowScheme.verify(pkPath, filePath, signaturePath))
                 System.out.println(PARAMETERS.getParamString() + " verification success");
             else System.out.println(PARAMETERS.getParamString() + " verification fail");
-        } else {
-            formatter.printHelp("RainbowScheme", options, true);
+        } else if (cmd.hasOption("verify-range")) {
+            String[] values = cmd.getOptionValues("verify-range");
+            long offset = 0, length = 0;
+
+            try {
+                offset = Long.parseLong(values[4]);
+                length = Long.parseLong(values[5]);
+            } catch (NumberFormatException ex) {
+                System.out.println("Enter a valid range!");
+                System.exit(1);
+            }
+
+            if (RainbowScheme.verifyRange(values[0], values[1], values[2], values[3], offset, length))
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("sign-digest")) {
+            String[] values = cmd.getOptionValues("sign-digest");
+
+            File sigFile = new File(values[2]);
+            if (sigFile.isFile()) {
+                System.out.println(values[2] + " is an existing file!");
+                System.exit(1);
+            }
+
+            byte[] signature = null;
+            try {
+                byte[] digest = HexFormat.of().parseHex(values[1]);
+
+                if (cmd.hasOption("remote")) {
+                    try (RainbowClient client = new RainbowClient(RainbowDaemon.address(cmd.getOptionValue("remote")))) {
+                        signature = client.signDigest(values[0], digest);
+                    }
+                } else {
+                    signature = RainbowScheme.signDigest(values[0], digest);
+                }
+            } catch (IllegalArgumentException ex) {
+                System.out.println("Enter a valid digest!");
+                System.exit(1);
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+                System.exit(1);
+            }
+            saveSignature(new RainbowSignature(signature), values[2]);
+
+            System.out.print(PARAMETERS.getParamString() + " = ");
+            System.out.println(GF16.toHex(signature));
+        } else if (cmd.hasOption("verify-digest")) {
+            String[] values = cmd.getOptionValues("verify-digest");
+
+            boolean valid = false;
+            try {
+                byte[] digest = HexFormat.of().parseHex(values[1]);
+                byte[] signature = readSignature(values[2]).getElements();
+
+                if (cmd.hasOption("remote")) {
+                    try (RainbowClient client = new RainbowClient(RainbowDaemon.address(cmd.getOptionValue("remote")))) {
+                        valid = client.verifyDigest(values[0], digest, signature);
+                    }
+                } else {
+                    valid = RainbowScheme.verifyDigest(values[0], digest, signature);
+                }
+            } catch (IllegalArgumentException ex) {
+                System.out.println("Enter a valid digest!");
+                System.exit(1);
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+                System.exit(1);
+            }
+
+            if (valid)
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("sign-into")) {
+            String[] values = cmd.getOptionValues("sign-into");
+
+            RainbowScheme.signInto(values[0], values[1], values[2]);
+        } else if (cmd.hasOption("verify-from")) {
+            String[] values = cmd.getOptionValues("verify-from");
+
+            if (RainbowScheme.verifyFrom(values[0], values[1], values[2]))
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("sign-tree")) {
+            String[] values = cmd.getOptionValues("sign-tree");
+
+            for (String path : new String[]{values[2], values[3]}) {
+                if (new File(path).isFile()) {
+                    System.out.println(path + " is an existing file!");
+                    System.exit(1);
+                }
+            }
+
+            RainbowScheme.signTree(values[0], values[1], values[2], values[3]);
+        } else if (cmd.hasOption("verify-tree")) {
+            String[] values = cmd.getOptionValues("verify-tree");
+
+            if (RainbowScheme.verifyTree(values[0], values[1], values[2], values[3]))
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("verify-stream")) {
+            String[] values = cmd.getOptionValues("verify-stream");
+
+            if (RainbowScheme.verifyStream(values[0], values[1]))
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("keystore")) {
+            String[] values = cmd.getOptionValues("keystore");
+
+            RainbowScheme.buildKeyStore(values[0], values[1]);
+        } else if (cmd.hasOption("daemon")) {
+            String[] values = cmd.getOptionValues("daemon");
+
+            RainbowScheme.daemon(values[0], Arrays.asList(values).subList(1, values.length));
+        } else if (cmd.hasOption("batch")) {
+            int threadCount = Runtime.getRuntime().availableProcessors();
+
+            if (cmd.hasOption("threads")) {
+                try {
+                    threadCount = Integer.parseInt(cmd.getOptionValue("threads"));
+                } catch (NumberFormatException ex) {
+                    threadCount = 0;
+                }
+
+                if (threadCount <= 0) {
+                    System.out.println("Enter a valid number of threads!");
+                    System.exit(1);
+                }
+            }
+
+            if (!RainbowScheme.batch(cmd.getOptionValue("batch"), threadCount)) {
+                System.exit(1);
+            }
+        } else if (cmd.hasOption("co-sign") || cmd.hasOption("co-verify")) {
+            boolean signing = cmd.hasOption("co-sign");
+            String[] values = cmd.getOptionValues(signing ? "co-sign" : "co-verify");
+
+            if (values.length < 3 || values.length % 2 == 0) {
+                System.out.println("Enter a key and a signature for each signer!");
+                System.exit(1);
+            }
+
+            String[] keyPaths = new String[values.length / 2];
+            String[] signaturePaths = new String[values.length / 2];
+            for (int i = 0; i < keyPaths.length; i++) {
+                keyPaths[i] = values[1 + 2 * i];
+                signaturePaths[i] = values[2 + 2 * i];
+            }
+
+            if (signing) {
+                byte hashId = MessageHash.SHA256;
+                if (cmd.hasOption("hash")) {
+                    try {
+                        hashId = MessageHash.getInstance(cmd.getOptionValue("hash")).getId();
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println(cmd.getOptionValue("hash") + " is not a known hash function!");
+                        System.exit(1);
+                    }
+                }
+
+                for (String path : signaturePaths) {
+                    if (new File(path).isFile()) {
+                        System.out.println(path + " is an existing file!");
+                        System.exit(1);
+                    }
+                }
+                if (new HashSet<>(Arrays.asList(signaturePaths)).size() != signaturePaths.length) {
+                    System.out.println("Enter different filenames for the signatures!");
+                    System.exit(1);
+                }
+
+                RainbowScheme.coSign(keyPaths, values[0], signaturePaths, hashId);
+            } else if (RainbowScheme.coVerify(keyPaths, values[0], signaturePaths))
+                System.out.println(PARAMETERS.getParamString() + " verification success");
+            else System.out.println(PARAMETERS.getParamString() + " verification fail");
+        } else if (cmd.hasOption("pack")) {
+            String pkPath = cmd.getOptionValues("pack")[0];
+            String outPath = cmd.getOptionValues("pack")[1];
+
+            if (pkPath.equals(outPath)) {
+                System.out.println("Enter different filenames for the keys!");
+                System.exit(1);
+            }
+
+            RainbowScheme.pack(pkPath, outPath);
+            File outFile = new File(outPath);
+            System.out.println("Packed public key size: " + outFile.length() + " bytes");
         }
     }
 
@@ -23,7 +23,6 @@ import java.security.SecureRandom;
 public class RainbowSecKey implements Serializable {
     private static final long serialVersionUID = 1L;
 
-
     /**
      * The affine maps of this secret key.
      */
@@ -32,6 +31,14 @@ public class RainbowSecKey implements Serializable {
      * The central map of this secret key.
      */
     private CentralMap F;
+    /**
+     * The maps of this key laid out for checking signatures, null until {@link #compile()} is called.
+     */
+    private transient volatile CompiledSecKey compiled;
+    /**
+     * The signer of each thread calling {@link #sign(byte[], SecureRandom)}, null until it is first called.
+     */
+    private transient volatile ThreadLocal<RainbowSigner> signers;
     /**
      * The number of variables involved in this key.
      */
@@ -48,18 +55,79 @@ public class RainbowSecKey implements Serializable {
      * @param random the source of random field elements needed to generate all the maps
      */
     public RainbowSecKey(RainbowParameters param, SecureRandom random) {
+        this(param, random, false);
+    }
+
+    /**
+     * Constructor, sets the parameters {@code n} and {@code m} and generates all the maps.
+     * If standard, the affine maps are generated in standard form, see {@link #generateS(RainbowParameters, SecureRandom, boolean)}
+     * and {@link #generateT(RainbowParameters, SecureRandom, boolean)}.
+     *
+     * @param param    the parameters of the scheme
+     * @param random   the source of random field elements needed to generate all the maps
+     * @param standard whether the affine maps are to be in standard form
+     */
+    public RainbowSecKey(RainbowParameters param, SecureRandom random, boolean standard) {
         this.m = (byte) (param.geto1() + param.geto2());
         this.n = (byte) (this.m + param.getv1());
 
-        this.S = new AffineMap(m, random);
+        this.S = generateS(param, random, standard);
 
-        this.T = new AffineMap(n, random);
+        this.T = generateT(param, random, standard);
 
         this.F = new CentralMap(param.getv1(), param.geto1(), param.geto2(), random);
     }
 
     /**
-     * Loads a secret key from a file.
+     * Generates the affine map {@code S}. In standard form its matrix is [I S'; 0 I], with diagonal blocks of sizes o1 and o2.
+     *
+     * @param param    the parameters of the scheme
+     * @param random   the source of random field elements
+     * @param standard whether the map is to be in standard form
+     * @return the affine map S
+     */
+    public static AffineMap generateS(RainbowParameters param, SecureRandom random, boolean standard) {
+        if (standard) {
+            return new AffineMap(new int[]{param.geto1(), param.geto2()}, random);
+        }
+
+        return new AffineMap(param.geto1() + param.geto2(), random);
+    }
+
+    /**
+     * Generates the affine map {@code T}. In standard form its matrix is [I T1 T2; 0 I T3; 0 0 I], with diagonal blocks of sizes v1, o1 and o2.
+     *
+     * @param param    the parameters of the scheme
+     * @param random   the source of random field elements
+     * @param standard whether the map is to be in standard form
+     * @return the affine map T
+     */
+    public static AffineMap generateT(RainbowParameters param, SecureRandom random, boolean standard) {
+        if (standard) {
+            return new AffineMap(new int[]{param.getv1(), param.geto1(), param.geto2()}, random);
+        }
+
+        return new AffineMap(param.getv1() + param.geto1() + param.geto2(), random);
+    }
+
+    /**
+     * Constructor, builds a secret key from its maps.
+     *
+     * @param S the affine map on (GF16)<sup>m</sup>
+     * @param T the affine map on (GF16)<sup>n</sup>
+     * @param F the central map
+     */
+    public RainbowSecKey(AffineMap S, AffineMap T, CentralMap F) {
+        this.m = (byte) S.getVector().length;
+        this.n = (byte) T.getVector().length;
+
+        this.S = S;
+        this.T = T;
+        this.F = F;
+    }
+
+    /**
+     * Loads a secret key from a file. A key stored as a seed is regenerated, or taken from the cache of {@link SeedSecKey}.
      *
      * @param path the path of the file containing the key to be loaded
      * @return the secret key loaded from the file
@@ -73,7 +141,8 @@ public class RainbowSecKey implements Serializable {
         try {
             fin = new FileInputStream(path);
             ois = new ObjectInputStream(fin);
-            sk = (RainbowSecKey) ois.readObject();
+            Object key = ois.readObject();
+            sk = key instanceof SeedSecKey ? ((SeedSecKey) key).open() : (RainbowSecKey) key;
         } catch (FileNotFoundException ex) {
             System.out.println(path + " not found!");
             System.exit(1);
@@ -102,6 +171,174 @@ public class RainbowSecKey implements Serializable {
         return sk;
     }
 
+    /**
+     * Reads a secret key from a file, as {@link #loadKey(String)} does, but reports errors to the caller
+     * instead of terminating, so it can be used by long running processes.
+     *
+     * @param path the path of the file containing the key to be read
+     * @return the secret key read from the file
+     * @throws IOException if the file cannot be read or does not contain a secret key
+     */
+    public static RainbowSecKey readKey(String path) throws IOException {
+        return readKey(path, true);
+    }
+
+    /**
+     * Reads a secret key from a file as {@link #readKey(String)} does, choosing whether a key stored as a seed
+     * goes through the cache of {@link SeedSecKey}. If not, the key is regenerated by {@link SeedSecKey#expand()},
+     * so that it is never shared and can be wiped by the caller.
+     *
+     * @param path   the path of the file containing the key to be read
+     * @param cached whether a key stored as a seed is taken from, or put into, the cache
+     * @return the secret key read from the file
+     * @throws IOException if the file cannot be read or does not contain a secret key
+     */
+    public static RainbowSecKey readKey(String path, boolean cached) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            Object key = ois.readObject();
+            if (key instanceof SeedSecKey) {
+                return cached ? ((SeedSecKey) key).open() : ((SeedSecKey) key).expand();
+            }
+
+            return (RainbowSecKey) key;
+        } catch (ClassCastException | ClassNotFoundException ex) {
+            throw new InvalidObjectException(path + " is not a valid private key!");
+        }
+    }
+
+    /**
+     * Signs a target vector, that is computes x such that P(x)=h, inverting S, F and T.
+     * The signature is computed by a {@link RainbowSigner} kept for the calling thread, so that only the signature
+     * is allocated; the signer is built again when the source of randomness changes.
+     *
+     * @param h      the target vector, m field elements
+     * @param random the source of the random vinegar variables
+     * @return the signature, n field elements
+     * @throws IllegalArgumentException if h's length is not m
+     * @throws IllegalStateException    if the key has been wiped
+     */
+    public byte[] sign(byte[] h, SecureRandom random) {
+        return sign(h, random, false);
+    }
+
+    /**
+     * Signs a target vector as {@link #sign(byte[], SecureRandom)} does, optionally checking the signature
+     * with {@link #check(byte[], byte[])} before returning it. Whether to check is chosen by each caller,
+     * as a key may be shared, see {@link SeedSecKey#open()}; the signer of the thread is built again when it changes.
+     *
+     * @param h         the target vector, m field elements
+     * @param random    the source of the random vinegar variables
+     * @param selfCheck whether the signature is checked
+     * @return the signature, n field elements
+     * @throws IllegalArgumentException if h's length is not m
+     * @throws IllegalStateException    if the key has been wiped, or the signature is checked and found wrong
+     */
+    public byte[] sign(byte[] h, SecureRandom random, boolean selfCheck) {
+        ThreadLocal<RainbowSigner> local = signers;
+
+        if (local == null) {
+            synchronized (this) {
+                if (signers == null) {
+                    signers = new ThreadLocal<>();
+                }
+                local = signers;
+            }
+        }
+
+        RainbowSigner signer = local.get();
+        if (signer == null || signer.getRandom() != random || signer.isSelfCheck() != selfCheck) {
+            signer = new RainbowSigner(this, random, selfCheck);
+            local.set(signer);
+        }
+
+        return signer.sign(h);
+    }
+
+    /**
+     * Checks that a signature is valid for a target vector with the maps of this key, that is computes
+     * S(F(T(signature))) and compares it with h, allocating only the working space, see {@link #compile()}.
+     *
+     * @param signature the signature, n field elements
+     * @param h         the target vector, m field elements
+     * @return true if the signature is valid
+     * @throws IllegalArgumentException if a length is wrong
+     */
+    public boolean check(byte[] signature, byte[] h) {
+        CompiledSecKey key = compile();
+
+        return key.check(signature, h, new long[key.getScratchSize()]);
+    }
+
+    /**
+     * Returns the maps of this key laid out for checking signatures without allocating memory, see
+     * {@link CompiledSecKey#check(byte[], byte[], long[])}. They are laid out on the first call, then kept with this key.
+     *
+     * @return the maps laid out for fast evaluation
+     */
+    public CompiledSecKey compile() {
+        CompiledSecKey key = compiled;
+
+        if (key == null) {
+            synchronized (this) {
+                if (compiled == null) {
+                    compiled = new CompiledSecKey(this);
+                }
+                key = compiled;
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Signs a digest, which is expanded into the target vector as by {@link RainbowScheme#expandDigest}.
+     *
+     * @param digest the digest, at least m/2 bytes long
+     * @param random the source of the random vinegar variables
+     * @return the signature, n field elements
+     */
+    public byte[] signDigest(byte[] digest, SecureRandom random) {
+        return signDigest(digest, random, false);
+    }
+
+    /**
+     * Signs a digest as {@link #signDigest(byte[], SecureRandom)} does, optionally checking the signature,
+     * see {@link #sign(byte[], SecureRandom, boolean)}.
+     *
+     * @param digest    the digest, at least m/2 bytes long
+     * @param random    the source of the random vinegar variables
+     * @param selfCheck whether the signature is checked
+     * @return the signature, n field elements
+     */
+    public byte[] signDigest(byte[] digest, SecureRandom random, boolean selfCheck) {
+        return sign(RainbowScheme.expandDigest(digest, m), random, selfCheck);
+    }
+
+    /**
+     * Overwrites all the maps of this key with zeros. After this call the key can no longer be used.
+     */
+    public void wipe() {
+        S.wipe();
+        T.wipe();
+        F.wipe();
+
+        synchronized (this) {
+            // the signers of the other threads are dropped with the thread local, and can no longer sign
+            if (signers != null) {
+                RainbowSigner signer = signers.get();
+                if (signer != null) {
+                    signer.wipe();
+                }
+                signers = null;
+            }
+
+            if (compiled != null) {
+                compiled.wipe();
+                compiled = null;
+            }
+        }
+    }
+
     /**
      * Returns the number of equations in this key.
      *
@@ -0,0 +1,271 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+import sc1819.rainbow.util.GF16;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class represents a Rainbow signature together with the way the signed file was hashed.
+ * <p>
+ * A signature of a file hashed with plain SHA-256 is encoded as in the original format, one field element per byte.
+ * Any other signature is tagged: its encoding starts with the byte {@link #TAG}, which is not a field element,
+ * followed by the mode, a parameter of the mode and the field elements.
+ * For {@link #MERKLE} signatures the parameter is the base 2 logarithm of the chunk size.
+ * {@link #APPEND} signatures also store, as a big endian long between the parameter and the field elements,
+ * the length of the signed prefix of the file.
+ * <p>
+ * Signatures of files hashed with a function other than SHA-256, see {@link MessageHash}, start with {@link #TAG_HASH} instead,
+ * and store the id of the hash function right after the parameter. Only {@link #PLAIN} signatures can use another hash function.
+ * <p>
+ * In the packed encoding, see {@link #encodePacked()}, the field elements are stored two per byte: the encoding starts with {@link #TAG_PACKED},
+ * followed by the mode, the parameter, the id of the hash function, the length of the prefix for {@link #APPEND} signatures,
+ * the number of field elements as a big endian short and the packed elements.
+ */
+public class RainbowSignature {
+
+    /**
+     * The first byte of a tagged signature.
+     */
+    public static final byte TAG = (byte) 0x80;
+    /**
+     * The first byte of a tagged signature which records the hash function.
+     */
+    public static final byte TAG_HASH = (byte) 0x81;
+    /**
+     * The first byte of a signature in the packed encoding.
+     */
+    public static final byte TAG_PACKED = (byte) 0x82;
+    /**
+     * The signed file is hashed with plain SHA-256.
+     */
+    public static final int PLAIN = 0;
+    /**
+     * The signed file is hashed as the root of a Merkle tree, see {@link MerkleHash}.
+     */
+    public static final int MERKLE = 1;
+    /**
+     * A prefix of the file is hashed and bound to its length, see {@link AppendHash}.
+     */
+    public static final int APPEND = 2;
+
+    private static final int HEADER_SIZE = 3;
+
+    private final byte[] elements;
+    private final int mode;
+    private final int param;
+    private final long length;
+    private final byte hash;
+
+    /**
+     * Constructor, builds a signature from its field elements and the way the file was hashed.
+     *
+     * @param elements the field elements of the signature
+     * @param mode     one of {@link #PLAIN}, {@link #MERKLE} and {@link #APPEND}
+     * @param param    the parameter of the mode, 0 for {@link #PLAIN} and {@link #APPEND}
+     * @param length   the length of the signed prefix for {@link #APPEND}, ignored otherwise
+     * @param hash     the id of the hash function, which must be {@link MessageHash#SHA256} unless the mode is {@link #PLAIN}
+     */
+    public RainbowSignature(byte[] elements, int mode, int param, long length, int hash) {
+        if (hash < 0 || hash >= MessageHash.NAMES.length) {
+            throw new IllegalArgumentException("Unknown hash function!");
+        }
+        if (hash != MessageHash.SHA256 && mode != PLAIN) {
+            throw new IllegalArgumentException("Only plain signatures can use another hash function!");
+        }
+        if (mode != PLAIN && mode != MERKLE && mode != APPEND) {
+            throw new IllegalArgumentException("Unknown mode!");
+        }
+        if (mode == MERKLE && (param < MerkleHash.MIN_CHUNK_BITS || param > MerkleHash.MAX_CHUNK_BITS)) {
+            throw new IllegalArgumentException("Chunk size out of range!");
+        }
+        if (mode == APPEND && length < 0) {
+            throw new IllegalArgumentException("Negative length!");
+        }
+
+        this.elements = elements;
+        this.mode = mode;
+        this.param = mode == MERKLE ? param : 0;
+        this.length = mode == APPEND ? length : 0;
+        this.hash = (byte) hash;
+    }
+
+    /**
+     * Constructor, builds a signature of a file hashed with SHA-256.
+     *
+     * @param elements the field elements of the signature
+     * @param mode     one of {@link #PLAIN}, {@link #MERKLE} and {@link #APPEND}
+     * @param param    the parameter of the mode, 0 for {@link #PLAIN} and {@link #APPEND}
+     * @param length   the length of the signed prefix for {@link #APPEND}, ignored otherwise
+     */
+    public RainbowSignature(byte[] elements, int mode, int param, long length) {
+        this(elements, mode, param, length, MessageHash.SHA256);
+    }
+
+    /**
+     * Constructor, builds a signature from its field elements and the way the file was hashed.
+     *
+     * @param elements the field elements of the signature
+     * @param mode     either {@link #PLAIN} or {@link #MERKLE}
+     * @param param    the parameter of the mode, 0 for {@link #PLAIN}
+     */
+    public RainbowSignature(byte[] elements, int mode, int param) {
+        this(elements, mode, param, 0);
+    }
+
+    /**
+     * Constructor, builds a signature of a file hashed with plain SHA-256.
+     *
+     * @param elements the field elements of the signature
+     */
+    public RainbowSignature(byte[] elements) {
+        this(elements, PLAIN, 0);
+    }
+
+    /**
+     * Encodes this signature as it is stored on file.
+     *
+     * @return the encoded signature
+     */
+    public byte[] encode() {
+        boolean sha256 = hash == MessageHash.SHA256;
+
+        if (mode == PLAIN && sha256) {
+            return elements.clone();
+        }
+
+        ByteBuffer res = ByteBuffer.allocate(HEADER_SIZE + (sha256 ? 0 : 1) + (mode == APPEND ? Long.BYTES : 0) + elements.length);
+        res.put(sha256 ? TAG : TAG_HASH).put((byte) mode).put((byte) param);
+        if (!sha256) {
+            res.put(hash);
+        }
+        if (mode == APPEND) {
+            res.putLong(length);
+        }
+        res.put(elements);
+
+        return res.array();
+    }
+
+    /**
+     * Encodes this signature with its field elements packed two per byte, about half the size of {@link #encode()}.
+     *
+     * @return the encoded signature
+     */
+    public byte[] encodePacked() {
+        byte[] packed = GF16.pack(elements);
+        ByteBuffer res = ByteBuffer.allocate(HEADER_SIZE + 1 + (mode == APPEND ? Long.BYTES : 0) + Short.BYTES + packed.length);
+
+        res.put(TAG_PACKED).put((byte) mode).put((byte) param).put(hash);
+        if (mode == APPEND) {
+            res.putLong(length);
+        }
+        res.putShort((short) elements.length).put(packed);
+
+        return res.array();
+    }
+
+    /**
+     * Decodes a signature as it is stored on file, in any of its encodings.
+     *
+     * @param data the encoded signature
+     * @return the decoded signature
+     * @throws IllegalArgumentException if the encoding is not valid or an element is not a field element
+     */
+    public static RainbowSignature decode(byte[] data) {
+        if (data.length == 0 || (data[0] != TAG && data[0] != TAG_HASH && data[0] != TAG_PACKED)) {
+            return new RainbowSignature(checkElements(data.clone()));
+        }
+
+        boolean sha256 = data[0] == TAG;
+        boolean packed = data[0] == TAG_PACKED;
+        int headerSize = HEADER_SIZE + (sha256 ? 0 : 1) + (packed ? Short.BYTES : 0)
+                + (data.length > 1 && data[1] == APPEND ? Long.BYTES : 0);
+        if (data.length < headerSize) {
+            throw new IllegalArgumentException("Truncated signature!");
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(data, 1, data.length - 1);
+        int mode = in.get();
+        int param = in.get();
+        int hash = sha256 ? MessageHash.SHA256 : in.get();
+        long length = mode == APPEND ? in.getLong() : 0;
+        byte[] elements;
+
+        if (packed) {
+            int count = in.getShort() & 0xffff;
+            if (in.remaining() != (count + 1) / 2) {
+                throw new IllegalArgumentException("Truncated signature!");
+            }
+
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            elements = GF16.unpack(bytes, count);
+        } else {
+            elements = new byte[in.remaining()];
+            in.get(elements);
+            checkElements(elements);
+        }
+
+        return new RainbowSignature(elements, mode, param, length, hash);
+    }
+
+    /**
+     * Checks that every byte of a decoded signature is a field element, so that a corrupted signature is rejected
+     * here rather than when the public map is evaluated on it.
+     */
+    private static byte[] checkElements(byte[] elements) {
+        for (byte e : elements) {
+            if ((e & 0xf0) != 0) {
+                throw new IllegalArgumentException("Not a field element!");
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Returns the field elements of this signature.
+     *
+     * @return the signature proper
+     */
+    public byte[] getElements() {
+        return elements;
+    }
+
+    /**
+     * Returns the way the signed file is hashed.
+     *
+     * @return one of {@link #PLAIN}, {@link #MERKLE} and {@link #APPEND}
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the id of the hash function the signed file is hashed with.
+     *
+     * @return the id of the hash function, see {@link MessageHash}
+     */
+    public byte getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the length of the signed prefix of the file for {@link #APPEND} signatures.
+     *
+     * @return the length of the signed prefix, 0 for the other modes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the parameter of the mode, for {@link #MERKLE} signatures the base 2 logarithm of the chunk size.
+     *
+     * @return the parameter of the mode
+     */
+    public int getParam() {
+        return param;
+    }
+}
@@ -0,0 +1,191 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.AffineMap;
+import sc1819.rainbow.util.CentralMap;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * This class signs target vectors with a secret key, reusing its working space so that a signature allocates
+ * no memory once the signer is built. {@link RainbowSecKey#sign(byte[], SecureRandom)} signs through a signer of each thread.
+ * <p>
+ * The vinegar variables are taken from a pool of {@link #POOL_SIZE} random bytes, two field elements per byte,
+ * since every {@link SecureRandom} allocates on each call: the pool is refilled by a single call once it is used up,
+ * and each byte is overwritten with zero as soon as it is used.
+ * If the signer is built to check its signatures, each signature is checked with the maps of
+ * {@link RainbowSecKey#compile()} before it is returned. This is a setting of the signer, not of the key,
+ * since a key may be shared by callers which choose differently.
+ * <p>
+ * A signer is not thread safe: each thread signing with the same key needs its own.
+ */
+public class RainbowSigner {
+
+    /**
+     * The number of random bytes drawn at a time.
+     */
+    public static final int POOL_SIZE = 4096;
+
+    private final RainbowSecKey sk;
+    private final SecureRandom random;
+    private final boolean selfCheck;
+    private final int n, m, v1;
+
+    private final byte[] pool = new byte[POOL_SIZE];
+    /**
+     * The next unused nibble of the pool.
+     */
+    private int position = 2 * POOL_SIZE;
+
+    private final byte[] vinegar, y, x, scratch;
+    private long[] checkScratch;
+
+    /**
+     * Constructor, allocates the working space for a secret key, without checking the signatures.
+     *
+     * @param sk     the secret key
+     * @param random the source of the random vinegar variables
+     */
+    public RainbowSigner(RainbowSecKey sk, SecureRandom random) {
+        this(sk, random, false);
+    }
+
+    /**
+     * Constructor, allocates the working space for a secret key.
+     *
+     * @param sk        the secret key
+     * @param random    the source of the random vinegar variables
+     * @param selfCheck whether each signature is checked before it is returned
+     */
+    public RainbowSigner(RainbowSecKey sk, SecureRandom random, boolean selfCheck) {
+        this.sk = sk;
+        this.random = random;
+        this.selfCheck = selfCheck;
+        this.n = sk.getVarNum();
+        this.m = sk.getEqNum();
+        this.v1 = n - m;
+
+        this.vinegar = new byte[v1];
+        this.y = new byte[m];
+        this.x = new byte[n];
+        this.scratch = new byte[sk.getF().getInvScratchSize()];
+    }
+
+    /**
+     * Signs a target vector, that is computes x such that P(x)=h, without allocating memory.
+     *
+     * @param h         the target vector, m field elements
+     * @param signature the array receiving the signature, n field elements
+     * @throws IllegalArgumentException if a length is wrong
+     * @throws IllegalStateException    if no signature is found in {@link CentralMap#MAX_ATTEMPTS} attempts, as for a wiped key,
+     *                                  or the signature is checked and found wrong
+     */
+    public void sign(byte[] h, byte[] signature) {
+        if (h.length != m || signature.length != n) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        AffineMap S = sk.getS(), T = sk.getT();
+        CentralMap F = sk.getF();
+
+        S.evalInv(h, 0, y, 0);
+
+        int attempt = 0;
+        do {
+            if (attempt++ == CentralMap.MAX_ATTEMPTS) {
+                Arrays.fill(vinegar, (byte) 0);
+                Arrays.fill(x, (byte) 0);
+                throw new IllegalStateException("Central map not invertible!");
+            }
+
+            draw();
+        } while (!F.invF(y, 0, vinegar, x, 0, scratch));
+        T.evalInv(x, 0, signature, 0);
+
+        Arrays.fill(vinegar, (byte) 0);
+        Arrays.fill(x, (byte) 0);
+
+        if (selfCheck) {
+            CompiledSecKey compiled = sk.compile();
+            if (checkScratch == null) {
+                checkScratch = new long[compiled.getScratchSize()];
+            }
+
+            if (!compiled.check(signature, h, checkScratch)) {
+                Arrays.fill(signature, (byte) 0);
+                throw new IllegalStateException("Signature self-check failed!");
+            }
+        }
+    }
+
+    /**
+     * Signs a target vector, allocating only the signature.
+     *
+     * @param h the target vector, m field elements
+     * @return the signature, n field elements
+     */
+    public byte[] sign(byte[] h) {
+        byte[] signature = new byte[n];
+        sign(h, signature);
+
+        return signature;
+    }
+
+    /**
+     * Returns the secret key of this signer.
+     *
+     * @return the secret key
+     */
+    public RainbowSecKey getKey() {
+        return sk;
+    }
+
+    /**
+     * Returns the source of the random vinegar variables of this signer.
+     *
+     * @return the source of randomness
+     */
+    public SecureRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns whether this signer checks each signature before returning it.
+     *
+     * @return true if the signatures are checked
+     */
+    public boolean isSelfCheck() {
+        return selfCheck;
+    }
+
+    /**
+     * Overwrites the unused random bytes and the working space with zeros.
+     */
+    public void wipe() {
+        Arrays.fill(pool, (byte) 0);
+        position = 2 * POOL_SIZE;
+        Arrays.fill(y, (byte) 0);
+        Arrays.fill(scratch, (byte) 0);
+    }
+
+    /**
+     * Takes v1 vinegar variables from the pool.
+     */
+    private void draw() {
+        for (int i = 0; i < v1; i++) {
+            if (position == 2 * POOL_SIZE) {
+                random.nextBytes(pool);
+                position = 0;
+            }
+
+            int b = position >> 1;
+            if ((position & 1) == 0) {
+                vinegar[i] = (byte) (pool[b] & 0x0f);
+            } else {
+                vinegar[i] = (byte) ((pool[b] >> 4) & 0x0f);
+                pool[b] = 0;
+            }
+            position++;
+        }
+    }
+}
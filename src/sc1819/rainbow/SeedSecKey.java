@@ -0,0 +1,187 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.SeedExpander;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * This class represents a secret key for the Rainbow Signature Scheme stored as a seed.
+ * <p>
+ * The maps {@code S}, {@code T} and {@code F} are regenerated deterministically from the seed through a {@link SeedExpander}
+ * whenever the key is opened. If the public key of the key pair is compressed, its seed is also stored,
+ * since it is needed to regenerate the central map.
+ * <p>
+ * The most recently opened keys are kept expanded in a bounded cache shared by the whole process,
+ * so opening a frequently used key costs only a lookup.
+ */
+public class SeedSecKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of expanded keys kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    /**
+     * The expanded keys, in access order, indexed by parameters and seeds.
+     */
+    private static final LinkedHashMap<ByteBuffer, RainbowSecKey> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static int cacheSize = DEFAULT_CACHE_SIZE;
+    /**
+     * Every key returned by {@link #open()} which has not been garbage collected yet.
+     */
+    private static final Set<RainbowSecKey> SHARED = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * The seed from which the maps of this key are regenerated.
+     */
+    private byte[] seed;
+    /**
+     * The seed of the compressed public key of the key pair, null if the public key is not compressed.
+     */
+    private byte[] pkSeed;
+    /**
+     * The parameters of the scheme: v1,o1,o2.
+     */
+    private int v1, o1, o2;
+    /**
+     * Whether the affine maps of this key are in standard form.
+     */
+    private boolean standard;
+
+    /**
+     * Constructor, builds a secret key from its seed.
+     *
+     * @param param    the parameters of the scheme
+     * @param seed     the seed from which the maps are regenerated
+     * @param pkSeed   the seed of the compressed public key, or null if the public key is not compressed
+     * @param standard whether the affine maps are in standard form
+     */
+    public SeedSecKey(RainbowParameters param, byte[] seed, byte[] pkSeed, boolean standard) {
+        this.seed = seed.clone();
+        this.pkSeed = pkSeed == null ? null : pkSeed.clone();
+        this.v1 = param.getv1();
+        this.o1 = param.geto1();
+        this.o2 = param.geto2();
+        this.standard = standard;
+    }
+
+    /**
+     * Regenerates the maps of this key, without looking into the cache.
+     *
+     * @return the expanded secret key
+     */
+    public RainbowSecKey expand() {
+        RainbowParameters param = new RainbowParameters(v1, o1, o2);
+        SeedExpander random = new SeedExpander(seed);
+
+        if (pkSeed != null) {
+            return CompressedPubKey.generateSecKey(param, random, pkSeed, standard);
+        }
+
+        return new RainbowSecKey(param, random, standard);
+    }
+
+    /**
+     * Returns the expanded secret key, regenerating it only if it is not in the cache.
+     * The returned key is shared with every other caller opening the same key, hence it must not be modified.
+     *
+     * @return the expanded secret key
+     */
+    public RainbowSecKey open() {
+        ByteBuffer id = cacheId();
+        RainbowSecKey sk;
+
+        synchronized (CACHE) {
+            sk = CACHE.get(id);
+        }
+
+        if (sk == null) {
+            sk = expand();
+
+            synchronized (CACHE) {
+                CACHE.put(id, sk);
+                SHARED.add(sk);
+                evict();
+            }
+        }
+
+        return sk;
+    }
+
+    /**
+     * Checks the fields of a deserialized key, which may come from an untrusted source, before it can be expanded:
+     * the parameters must be positive with at most 127 variables, as the maps index them with bytes,
+     * and the seeds must be as long as {@link SeedExpander#SEED_LENGTH}.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        if (v1 <= 0 || o1 <= 0 || o2 <= 0 || v1 + o1 + o2 > Byte.MAX_VALUE) {
+            throw new InvalidObjectException("Parameters out of range!");
+        }
+        if (seed == null || seed.length != SeedExpander.SEED_LENGTH
+                || (pkSeed != null && pkSeed.length != SeedExpander.SEED_LENGTH)) {
+            throw new InvalidObjectException("Wrong seed length!");
+        }
+    }
+
+    private ByteBuffer cacheId() {
+        int pkSeedLength = pkSeed == null ? 0 : pkSeed.length;
+        ByteBuffer id = ByteBuffer.allocate(13 + seed.length + pkSeedLength);
+
+        id.putInt(v1).putInt(o1).putInt(o2).put((byte) (standard ? 1 : 0)).put(seed);
+        if (pkSeed != null) {
+            id.put(pkSeed);
+        }
+        id.flip();
+
+        return id;
+    }
+
+    private static void evict() {
+        Iterator<ByteBuffer> eldest = CACHE.keySet().iterator();
+
+        while (CACHE.size() > cacheSize) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Sets the number of expanded keys kept in the cache, evicting the least recently opened ones if needed.
+     *
+     * @param size the maximum number of keys in the cache, 0 disables the cache
+     */
+    public static void setCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size!");
+        }
+
+        synchronized (CACHE) {
+            cacheSize = size;
+            evict();
+        }
+    }
+
+    /**
+     * Tells whether a secret key has been returned by {@link #open()}, in which case it may be shared and must not be modified.
+     *
+     * @param sk the secret key
+     * @return true if the key may be shared
+     */
+    public static boolean isShared(RainbowSecKey sk) {
+        synchronized (CACHE) {
+            return SHARED.contains(sk);
+        }
+    }
+}
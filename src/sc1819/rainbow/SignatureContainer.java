@@ -0,0 +1,268 @@
+package sc1819.rainbow;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents an append-only file holding many signatures, each one indexed by the digest of the signed artifact.
+ * <p>
+ * The file starts with {@link #MAGIC} and {@link #VERSION} as ints, followed by the records, each one made of:
+ * <ul>
+ * <li>
+ * the length of the key, as an unsigned byte, and the key, usually the SHA-256 digest of the artifact;
+ * </li>
+ * <li>
+ * the length of the signature, as an unsigned short, and the signature in the packed encoding of {@link RainbowSignature}.
+ * </li>
+ * </ul>
+ * A record is appended under an exclusive lock of the file, and a truncated last record, left by an interrupted write,
+ * is ignored by the readers and dropped by the next append.
+ * If a key appears more than once, the last record wins.
+ * <p>
+ * A container is read either through {@link #open(String)}, which maps the file into memory and indexes its records,
+ * or through {@link #forEach(String, BiConsumer)}, which streams the records using constant memory.
+ */
+public class SignatureContainer implements Closeable {
+
+    /**
+     * The first four bytes of a container, "RBSC".
+     */
+    public static final int MAGIC = 0x52425343;
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    /**
+     * The position of the signature of each key, the keys are wrapped in ByteBuffers so that they are compared by content.
+     */
+    private final Map<ByteBuffer, Integer> index = new HashMap<>();
+
+    private SignatureContainer(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        ByteBuffer in = buffer.duplicate();
+        checkHeader(in.getInt(), in.getInt());
+
+        try {
+            while (in.hasRemaining()) {
+                byte[] key = new byte[in.get() & 0xff];
+                in.get(key);
+
+                int position = in.position();
+                in.position(position + Short.BYTES + (in.getShort() & 0xffff));
+
+                index.put(ByteBuffer.wrap(key), position);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            // truncated last record
+        }
+    }
+
+    /**
+     * Maps a container into memory and indexes its records.
+     *
+     * @param path the path of the container
+     * @return the opened container
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a container
+     */
+    public static SignatureContainer open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be mapped, it can only be streamed!");
+            }
+            if (channel.size() < HEADER_SIZE) {
+                throw new IllegalArgumentException("Wrong container file!");
+            }
+
+            return new SignatureContainer(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the signature of an artifact.
+     *
+     * @param key the digest of the artifact
+     * @return the signature, or null if the container has no signature for the key
+     * @throws IllegalArgumentException if the stored signature is not valid
+     */
+    public RainbowSignature get(byte[] key) {
+        Integer position = index.get(ByteBuffer.wrap(key));
+        if (position == null) {
+            return null;
+        }
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(position);
+
+        byte[] signature = new byte[in.getShort() & 0xffff];
+        in.get(signature);
+
+        return RainbowSignature.decode(signature);
+    }
+
+    /**
+     * Returns the number of distinct keys in this container.
+     *
+     * @return the number of signatures
+     */
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Appends a signature to a container, creating the container if it does not exist.
+     *
+     * @param path      the path of the container
+     * @param key       the digest of the artifact, at most 255 bytes
+     * @param signature the signature
+     * @throws IOException              if the container cannot be written
+     * @throws IllegalArgumentException if the file is not a container
+     */
+    public static void append(String path, byte[] key, RainbowSignature signature) throws IOException {
+        if (key.length > 0xff) {
+            throw new IllegalArgumentException("Key too long!");
+        }
+
+        byte[] encoded = signature.encodePacked();
+        Path file = Paths.get(path);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the size is only meaningful once no other process can append, the lock is released with the channel
+            channel.lock();
+
+            long end;
+            ByteBuffer record;
+
+            if (channel.size() == 0) {
+                end = 0;
+                record = ByteBuffer.allocate(HEADER_SIZE + 1 + key.length + Short.BYTES + encoded.length);
+                record.putInt(MAGIC).putInt(VERSION);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+                header.flip();
+                if (header.remaining() < HEADER_SIZE) {
+                    throw new IllegalArgumentException("Wrong container file!");
+                }
+                checkHeader(header.getInt(), header.getInt());
+
+                // a record appended after a truncated one would be read as part of it
+                end = completeEnd(channel);
+                if (end < channel.size()) {
+                    channel.truncate(end);
+                }
+
+                record = ByteBuffer.allocate(1 + key.length + Short.BYTES + encoded.length);
+            }
+
+            record.put((byte) key.length).put(key).putShort((short) encoded.length).put(encoded);
+            record.flip();
+
+            while (record.hasRemaining()) {
+                end += channel.write(record, end);
+            }
+        }
+    }
+
+    /**
+     * Returns the position right after the last complete record of a container, reading the records from the header on.
+     */
+    private static long completeEnd(FileChannel channel) throws IOException {
+        // the stream is not closed, as that would close the channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(HEADER_SIZE)), 1 << 16));
+        long end = HEADER_SIZE;
+
+        while (true) {
+            int keyLength = in.read();
+            if (keyLength < 0) break;
+
+            try {
+                in.skipNBytes(keyLength);
+                int signatureLength = in.readUnsignedShort();
+                in.skipNBytes(signatureLength);
+
+                end += 1 + keyLength + Short.BYTES + signatureLength;
+            } catch (EOFException ex) {
+                break;
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Reads the records of a container in order, without mapping nor indexing it, hence using constant memory.
+     * Every record is passed to the consumer, including those whose key appears again later.
+     *
+     * @param path     the path of the container
+     * @param consumer receives the key and the signature of each record
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a container
+     */
+    public static void forEach(String path, BiConsumer<byte[], RainbowSignature> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            try {
+                checkHeader(in.readInt(), in.readInt());
+            } catch (EOFException ex) {
+                throw new IllegalArgumentException("Wrong container file!");
+            }
+
+            while (true) {
+                int keyLength = in.read();
+                if (keyLength < 0) break;
+
+                try {
+                    byte[] key = new byte[keyLength];
+                    in.readFully(key);
+
+                    byte[] signature = new byte[in.readUnsignedShort()];
+                    in.readFully(signature);
+
+                    consumer.accept(key, RainbowSignature.decode(signature));
+                } catch (EOFException ex) {
+                    // truncated last record
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void checkHeader(int magic, int version) {
+        if (magic != MAGIC || version != VERSION) {
+            throw new IllegalArgumentException("Wrong container file!");
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class verifies a stream of signed records, such as the events of a log, without ever terminating the process,
+ * so that it can be embedded in a long running service.
+ * <p>
+ * Each record is made of:
+ * <ul>
+ * <li>
+ * the id of the signing key, as an unsigned byte length followed by its UTF-8 bytes;
+ * </li>
+ * <li>
+ * the payload, as an int length followed by its bytes;
+ * </li>
+ * <li>
+ * the signature of the payload, as an unsigned short length followed by any encoding of {@link RainbowSignature}.
+ * </li>
+ * </ul>
+ * Only {@link RainbowSignature#PLAIN} signatures can be verified, the payload being hashed with the function they record.
+ * <p>
+ * The records are verified by a pipeline of stages, each one with its own threads: a thread parses the stream into batches,
+ * a pool decodes the signatures and hashes the payloads, another pool evaluates the public maps, and the calling thread
+ * receives the results, in the order of the records. The stages are connected by bounded queues, so a slow stage
+ * slows down the parser instead of letting batches pile up in memory.
+ */
+public class StreamVerifier {
+
+    /**
+     * The outcome of the verification of a record.
+     */
+    public enum Result {
+        /**
+         * The signature is valid.
+         */
+        VALID,
+        /**
+         * The signature is not valid for the payload.
+         */
+        INVALID,
+        /**
+         * The key id does not name a known key.
+         */
+        UNKNOWN_KEY,
+        /**
+         * The signature cannot be decoded, is not a plain signature, or the record cannot be verified for any other reason.
+         */
+        MALFORMED
+    }
+
+    /**
+     * Receives the result of each record, in the order of the stream.
+     */
+    public interface Listener {
+
+        /**
+         * Receives the result of a record.
+         *
+         * @param index  the position of the record in the stream, starting from 0
+         * @param keyId  the id of the signing key
+         * @param result the outcome of the verification
+         */
+        void result(long index, String keyId, Result result);
+    }
+
+    /**
+     * The default number of records in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    /**
+     * The largest payload accepted, 64 MiB, so that a corrupted length cannot exhaust the memory.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 64 << 20;
+
+    private static final Batch END = new Batch(-1, 0, 0);
+
+    private final Function<String, PublicMap> keys;
+    private final int threads;
+    private final int batchSize;
+
+    /**
+     * Constructor, sets how keys are found and the size of the pipeline.
+     *
+     * @param keys      returns the public map of a key id, or null if the id is not known; it is called concurrently
+     * @param threads   the number of threads of the hashing stage and of the evaluation stage
+     * @param batchSize the number of records in a batch
+     */
+    public StreamVerifier(Function<String, PublicMap> keys, int threads, int batchSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread number must be positive!");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive!");
+        }
+
+        this.keys = keys;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Constructor, uses a thread per available processor in each stage and batches of {@link #DEFAULT_BATCH_SIZE} records.
+     *
+     * @param keys returns the public map of a key id, or null if the id is not known; it is called concurrently
+     */
+    public StreamVerifier(Function<String, PublicMap> keys) {
+        this(keys, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Verifies all the records of a stream, passing their results to a listener in the order of the stream.
+     * The listener is called by the calling thread only.
+     *
+     * @param in       the stream of records, which is read up to its end but not closed
+     * @param listener receives the result of each record
+     * @return the number of records verified
+     * @throws IOException if the stream cannot be read or ends within a record; the results of the records before it are delivered
+     */
+    public long verify(InputStream in, Listener listener) throws IOException {
+        BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<Batch> hashed = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<Batch> verified = new ArrayBlockingQueue<>(2 * threads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(1 + 2 * threads);
+        Failure failure = new Failure();
+
+        try {
+            pool.execute(() -> parse(in, parsed, failure));
+
+            AtomicInteger hashing = new AtomicInteger(threads), evaluating = new AtomicInteger(threads);
+            for (int i = 0; i < threads; i++) {
+                pool.execute(() -> stage(parsed, hashed, hashing, failure, this::hash));
+                pool.execute(() -> stage(hashed, verified, evaluating, failure, StreamVerifier::evaluate));
+            }
+
+            // the batches are completed out of order, they are held until all the previous ones are delivered
+            Map<Long, Batch> pending = new HashMap<>();
+            long next = 0, count = 0;
+
+            for (Batch batch = verified.take(); batch != END; batch = verified.take()) {
+                pending.put(batch.sequence, batch);
+
+                for (Batch ready = pending.remove(next); ready != null; ready = pending.remove(++next)) {
+                    if (failure.error != null) break;
+
+                    for (int i = 0; i < ready.count; i++) {
+                        listener.result(ready.first + i, ready.keyIds[i], ready.results[i]);
+                    }
+                    count += ready.count;
+                }
+
+                if (failure.error != null) break;
+            }
+
+            if (failure.error != null) {
+                throw new IOException(failure.error);
+            }
+            if (failure.stream != null) {
+                throw failure.stream;
+            }
+
+            return count;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while verifying");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a record onto a stream, with the signature in the packed encoding.
+     *
+     * @param out       the stream of records
+     * @param keyId     the id of the signing key, at most 255 bytes in UTF-8
+     * @param payload   the signed payload
+     * @param signature the plain signature of the payload
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writeRecord(OutputStream out, String keyId, byte[] payload, RainbowSignature signature) throws IOException {
+        byte[] id = keyId.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = signature.encodePacked();
+
+        if (id.length > 0xff) {
+            throw new IllegalArgumentException("Key id too long!");
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(id.length);
+        data.write(id);
+        data.writeInt(payload.length);
+        data.write(payload);
+        data.writeShort(encoded.length);
+        data.write(encoded);
+        data.flush();
+    }
+
+    /**
+     * The first stage, splits the stream into batches of records.
+     */
+    private void parse(InputStream in, BlockingQueue<Batch> out, Failure failure) {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        long sequence = 0, first = 0;
+
+        try {
+            Batch batch = new Batch(sequence, first, batchSize);
+
+            while (true) {
+                int idLength = data.read();
+                if (idLength < 0) break;
+
+                try {
+                    byte[] id = new byte[idLength];
+                    data.readFully(id);
+
+                    int payloadLength = data.readInt();
+                    if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+                        throw new IOException("Record " + (first + batch.count) + " is too large!");
+                    }
+                    byte[] payload = new byte[payloadLength];
+                    data.readFully(payload);
+
+                    byte[] signature = new byte[data.readUnsignedShort()];
+                    data.readFully(signature);
+
+                    batch.add(new String(id, StandardCharsets.UTF_8), payload, signature);
+                } catch (EOFException ex) {
+                    throw new EOFException("Record " + (first + batch.count) + " is truncated!");
+                }
+
+                if (batch.count == batchSize) {
+                    out.put(batch);
+                    first += batch.count;
+                    batch = new Batch(++sequence, first, batchSize);
+                }
+            }
+
+            if (batch.count > 0) {
+                out.put(batch);
+            }
+        } catch (IOException ex) {
+            failure.stream = ex;
+        } catch (InterruptedException ex) {
+            return;
+        }
+
+        try {
+            out.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Runs a stage on the batches of a queue, the last of its threads to finish passes the end on to the next stage.
+     */
+    private static void stage(BlockingQueue<Batch> in, BlockingQueue<Batch> out, AtomicInteger live,
+                              Failure failure, Consumer<Batch> work) {
+        try {
+            for (Batch batch = in.take(); batch != END; batch = in.take()) {
+                try {
+                    work.accept(batch);
+                } catch (RuntimeException ex) {
+                    failure.error = ex;
+                }
+                out.put(batch);
+            }
+
+            // leave the end for the other threads of this stage
+            in.put(END);
+
+            if (live.decrementAndGet() == 0) {
+                out.put(END);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * The second stage, decodes the signatures, finds the keys and hashes the payloads.
+     * A record which cannot be handled is malformed, it never stops the other records.
+     */
+    private void hash(Batch batch) {
+        for (int i = 0; i < batch.count; i++) {
+            try {
+                batch.results[i] = hash(batch, i);
+            } catch (RuntimeException ex) {
+                batch.results[i] = Result.MALFORMED;
+            }
+
+            if (batch.results[i] != null) {
+                batch.keys[i] = null;
+                batch.targets[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Prepares the i-th record of a batch for the evaluation, returning its result if it is already known.
+     */
+    private Result hash(Batch batch, int i) {
+        RainbowSignature signature;
+        try {
+            signature = RainbowSignature.decode(batch.signatures[i]);
+        } catch (IllegalArgumentException ex) {
+            return Result.MALFORMED;
+        }
+
+        if (signature.getMode() != RainbowSignature.PLAIN) {
+            return Result.MALFORMED;
+        }
+
+        PublicMap pk = keys.apply(batch.keyIds[i]);
+        if (pk == null) {
+            return Result.UNKNOWN_KEY;
+        }
+
+        if (signature.getElements().length != pk.getVarNum()) {
+            return Result.INVALID;
+        }
+
+        MessageHash hash = MessageHash.getInstance(signature.getHash());
+        hash.update(batch.payloads[i]);
+
+        batch.keys[i] = pk;
+        batch.signatures[i] = signature.getElements();
+        batch.targets[i] = hash.expand(pk.getEqNum());
+        batch.payloads[i] = null;
+
+        return null;
+    }
+
+    /**
+     * The third stage, evaluates the public maps on the signatures.
+     */
+    private static void evaluate(Batch batch) {
+        for (int i = 0; i < batch.count; i++) {
+            if (batch.results[i] == null) {
+                try {
+                    batch.results[i] = batch.keys[i].verify(batch.signatures[i], batch.targets[i]) ? Result.VALID : Result.INVALID;
+                } catch (RuntimeException ex) {
+                    batch.results[i] = Result.MALFORMED;
+                }
+                batch.keys[i] = null;
+            }
+        }
+    }
+
+    /**
+     * A batch of consecutive records, which moves through the stages.
+     */
+    private static final class Batch {
+        final long sequence;
+        final long first;
+        final String[] keyIds;
+        final byte[][] payloads;
+        /**
+         * The encoded signatures, replaced by their field elements once decoded.
+         */
+        final byte[][] signatures;
+        final PublicMap[] keys;
+        final byte[][] targets;
+        final Result[] results;
+        int count;
+
+        Batch(long sequence, long first, int size) {
+            this.sequence = sequence;
+            this.first = first;
+            this.keyIds = new String[size];
+            this.payloads = new byte[size][];
+            this.signatures = new byte[size][];
+            this.keys = new PublicMap[size];
+            this.targets = new byte[size][];
+            this.results = new Result[size];
+        }
+
+        void add(String keyId, byte[] payload, byte[] signature) {
+            keyIds[count] = keyId;
+            payloads[count] = payload;
+            signatures[count] = signature;
+            count++;
+        }
+    }
+
+    /**
+     * The errors met by the stages: an error reading the stream is reported after the results of all the records before it,
+     * an unexpected error of a stage, outside of any record, stops the delivery of the results at once.
+     */
+    private static final class Failure {
+        volatile IOException stream;
+        volatile RuntimeException error;
+    }
+}
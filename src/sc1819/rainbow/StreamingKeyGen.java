@@ -0,0 +1,282 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.Layer;
+import sc1819.rainbow.util.MultQuad;
+import sc1819.rainbow.util.SeedExpander;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * This class generates a key pair writing the public key directly onto a file, in the packed encoding of {@link MappedPubKey},
+ * without ever building the whole public map in memory.
+ * <p>
+ * The public map is computed in two passes:
+ * <ol>
+ * <li>
+ * each polynomial of the central map is composed with {@code T} and the result is appended to a temporary file;
+ * </li>
+ * <li>
+ * the equations of the public key are computed a block at a time, as linear combinations given by {@code S}
+ * of the polynomials read back from the temporary file, and each finished block is written onto the key file.
+ * </li>
+ * </ol>
+ * Apart from the secret key itself, the memory used is bounded by the size of a block of equations plus one polynomial,
+ * and does not depend on the number of equations.
+ * <p>
+ * The temporary file holds F°T, from which the secret key can be recovered, hence it is created in the directory
+ * of the public key rather than in a shared temporary directory, readable by its owner only where the file system
+ * supports it, and it is overwritten with zeros before being deleted.
+ */
+public class StreamingKeyGen {
+
+    /**
+     * The default number of public equations computed at a time.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 8;
+
+    private final RainbowParameters param;
+    private final int blockSize;
+
+    /**
+     * Constructor, sets the parameters of the keys and the number of public equations computed at a time.
+     *
+     * @param param     the parameters of the scheme
+     * @param blockSize the number of public equations kept in memory
+     */
+    public StreamingKeyGen(RainbowParameters param, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+
+        this.param = param;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Generates a key pair, writing the packed public key and the serialized secret key onto two files.
+     *
+     * @param random   the source of random field elements
+     * @param standard whether the affine maps of the secret key are to be in standard form
+     * @param seeded   whether the secret key is to be stored as a seed
+     * @param pkPath   the path of the file on which the public key is written
+     * @param skPath   the path of the file on which the secret key is written
+     * @return the secret key
+     * @throws IOException if either file cannot be written
+     */
+    public RainbowSecKey generate(SecureRandom random, boolean standard, boolean seeded, String pkPath, String skPath) throws IOException {
+        byte[] skSeed = null;
+
+        if (seeded) {
+            skSeed = new byte[SeedExpander.SEED_LENGTH];
+            random.nextBytes(skSeed);
+            random = new SeedExpander(skSeed);
+        }
+
+        RainbowSecKey sk = new RainbowSecKey(param, random, standard);
+
+        writePubKey(sk, pkPath);
+        writeObject(seeded ? new SeedSecKey(param, skSeed, null, standard) : sk, skPath);
+
+        return sk;
+    }
+
+    /**
+     * Computes the public key of a secret key, writing it onto a file in the packed encoding.
+     *
+     * @param sk     the secret key
+     * @param pkPath the path of the file on which the public key is written
+     * @throws IOException if the file cannot be written
+     */
+    public void writePubKey(RainbowSecKey sk, String pkPath) throws IOException {
+        int n = sk.getVarNum();
+        int m = sk.getEqNum();
+        int size = n * (n + 1) / 2 + n + 1;
+
+        Path pk = Paths.get(pkPath).toAbsolutePath();
+        Path tmp = Files.createTempFile(pk.getParent(), pk.getFileName().toString(), ".fot");
+
+        try (FileChannel fot = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel out = FileChannel.open(pk, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // first pass: F°T, one polynomial at a time
+            byte[][] t = sk.getT().getMatrix();
+            byte[] vt = sk.getCt();
+
+            for (Layer layer : sk.getF().getLayers()) {
+                for (MultQuad[] poly : layer.getPoly()) {
+                    writeFully(fot, ByteBuffer.wrap(composeWithT(poly, layer.getVi(), layer.getOi(), t, vt)));
+                }
+            }
+
+            // second pass: S°(F°T), one block of equations at a time
+            byte[][] s = sk.getS().getMatrix();
+            byte[] vs = sk.getCs();
+            byte[][] block = new byte[Math.min(blockSize, m)][size];
+            byte[] poly = new byte[size];
+
+            ByteBuffer header = ByteBuffer.allocate(MappedPubKey.HEADER_SIZE);
+            MappedPubKey.putHeader(header, n, m);
+            header.flip();
+            writeFully(out, header);
+
+            for (int first = 0; first < m; first += block.length) {
+                int count = Math.min(block.length, m - first);
+
+                for (int i = 0; i < count; i++) {
+                    Arrays.fill(block[i], (byte) 0);
+                }
+
+                fot.position(0);
+                for (int j = 0; j < m; j++) {
+                    readFully(fot, ByteBuffer.wrap(poly));
+
+                    for (int i = 0; i < count; i++) {
+                        byte c = s[first + i][j];
+                        if (c == 0) continue;
+
+                        for (int k = 0; k < size; k++) {
+                            block[i][k] = GF16.add(block[i][k], GF16.mult(c, poly[k]));
+                        }
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    block[i][size - 1] = GF16.add(block[i][size - 1], vs[first + i]);
+                    writeFully(out, ByteBuffer.wrap(GF16.pack(block[i])));
+                }
+            }
+        } finally {
+            try {
+                wipe(tmp);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Composes a polynomial of a layer with the affine map x-{@literal >}Tx+vt.
+     * <p>
+     * Being A and g the quadratic and linear components of the polynomial and d its free term, the composition has
+     * quadratic component T<sup>t</sup>AT, linear component T<sup>t</sup>((A+A<sup>t</sup>)vt+g) and free term vt<sup>t</sup>A vt+g vt+d.
+     *
+     * @param poly the polynomial, as stored in a Layer
+     * @param vi   the number of vinegar variables of the layer
+     * @param oi   the number of oil variables of the layer
+     * @param t    the matrix of T
+     * @param vt   the vector of T
+     * @return the upper triangular quadratic coefficients in row order, followed by the linear coefficients and by the free term
+     */
+    private static byte[] composeWithT(MultQuad[] poly, int vi, int oi, byte[][] t, byte[] vt) {
+        int n = t.length;
+        byte[][] alpha = poly[0].getQuad();
+        byte[][] beta = poly[1].getQuad();
+
+        // the nonzero rows of A, that is the vinegar rows, and g
+        byte[][] a = new byte[vi][n];
+        byte[] g = new byte[n];
+        for (int i = 0; i < vi; i++) {
+            System.arraycopy(alpha[i], 0, a[i], 0, vi);
+            System.arraycopy(beta[i], 0, a[i], vi, oi);
+        }
+        System.arraycopy(poly[0].getLin(), 0, g, 0, vi);
+        System.arraycopy(poly[2].getLin(), 0, g, vi, oi);
+
+        // AT
+        byte[][] at = new byte[vi][];
+        for (int i = 0; i < vi; i++) {
+            at[i] = GF16.prodVectMat(a[i], t);
+        }
+
+        // T^t A T, only its vinegar rows contribute
+        byte[][] q = new byte[n][n];
+        for (int i = 0; i < vi; i++) {
+            for (int r = 0; r < n; r++) {
+                byte c = t[i][r];
+                if (c == 0) continue;
+
+                for (int k = 0; k < n; k++) {
+                    q[r][k] = GF16.add(q[r][k], GF16.mult(c, at[i][k]));
+                }
+            }
+        }
+
+        // (A+A^t)vt+g
+        byte[] w = g.clone();
+        for (int i = 0; i < vi; i++) {
+            for (int j = 0; j < n; j++) {
+                w[i] = GF16.add(w[i], GF16.mult(a[i][j], vt[j]));
+                w[j] = GF16.add(w[j], GF16.mult(a[i][j], vt[i]));
+            }
+        }
+
+        byte term = poly[0].getTerm();
+        for (int i = 0; i < vi; i++) {
+            term = GF16.add(term, GF16.mult(vt[i], GF16.prodVecVec(a[i], vt)));
+        }
+        term = GF16.add(term, GF16.prodVecVec(g, vt));
+
+        byte[] res = new byte[n * (n + 1) / 2 + n + 1];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            res[k++] = q[i][i];
+
+            for (int j = i + 1; j < n; j++) {
+                res[k++] = GF16.add(q[i][j], q[j][i]);
+            }
+        }
+
+        System.arraycopy(GF16.prodVectMat(w, t), 0, res, k, n);
+        res[k + n] = term;
+
+        return res;
+    }
+
+    /**
+     * Overwrites a file with zeros, so that its content does not survive in the blocks freed when it is deleted.
+     */
+    private static void wipe(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer zeros = ByteBuffer.allocate(1 << 16);
+
+            for (long position = 0, size = channel.size(); position < size; ) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), size - position));
+                position += channel.write(zeros, position);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of file!");
+            }
+        }
+    }
+
+    private static void writeObject(Serializable key, String path) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path))) {
+            oos.writeObject(key);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package sc1819.rainbow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+
+/**
+ * This class remembers the signatures found valid, so that verifying again the same signature of the same message
+ * with the same key neither loads the key nor evaluates the public map.
+ * <p>
+ * A verification is identified by an entry, the SHA-256 digest of the fingerprint of the key, the way the message
+ * was hashed, a digest of the message long enough for any number of equations and the signature, see {@link #entry}.
+ * Only valid signatures are remembered: a signature which is not valid is verified every time.
+ * <p>
+ * At most {@code capacity} entries are kept in memory, the least recently used one is evicted first.
+ * The cache can also be backed by an index file, to which each new entry is appended, so that it survives the process
+ * and is shared by all the processes using the same file. The file consists of {@link #MAGIC} and {@link #VERSION},
+ * as ints, followed by the 32 bytes of each entry; opening it loads its last {@code capacity} entries, and rewrites it
+ * with those entries only once it holds more than {@link #COMPACT_FACTOR} times as many.
+ * Entries are appended under an exclusive lock of the file, and a torn entry at the end, left by a process which crashed
+ * while appending, is dropped before the next entry is appended, so that the entries stay 32 bytes apart.
+ * Entries appended by other processes while the file is rewritten may be lost, which only costs a verification.
+ * <p>
+ * The index file must be trusted as much as the keys: an entry written by anyone else makes the cache accept a signature.
+ */
+public class VerificationCache implements Closeable {
+
+    /**
+     * The first four bytes of an index file, "RBVC".
+     */
+    public static final int MAGIC = 0x52425643;
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The default number of entries kept in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /**
+     * An index file is rewritten when opened if it holds more than this many times the entries kept in memory.
+     */
+    public static final int COMPACT_FACTOR = 4;
+    /**
+     * The number of bytes of the digest of a message, enough for the target vector of any number of equations.
+     */
+    public static final int DIGEST_SIZE = 64;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 32;
+
+    private final int capacity;
+    private final LinkedHashMap<ByteBuffer, Boolean> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FileChannel index;
+
+    private VerificationCache(int capacity, FileChannel index) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+
+        this.capacity = capacity;
+        this.index = index;
+    }
+
+    /**
+     * Constructor, builds a cache kept in memory only.
+     *
+     * @param capacity the largest number of entries kept
+     */
+    public VerificationCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Opens a cache backed by an index file, which is created if missing.
+     *
+     * @param path     the path of the index file
+     * @param capacity the largest number of entries kept in memory
+     * @return the cache, holding the last entries of the file
+     * @throws IOException              if the file cannot be read or written
+     * @throws IllegalArgumentException if the file is not an index file
+     */
+    public static VerificationCache open(String path, int capacity) throws IOException {
+        Path file = Paths.get(path).toAbsolutePath();
+
+        if (!Files.exists(file)) {
+            write(file, new byte[0][]);
+        }
+
+        byte[][] last;
+        long count;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the size is only meaningful once no other process can append, the lock is released with the channel
+            in.lock();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0) ;
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Wrong verification cache file!");
+            }
+
+            count = (in.size() - HEADER_SIZE) / ENTRY_SIZE;
+            truncate(in);
+            int kept = (int) Math.min(count, capacity);
+            ByteBuffer tail = ByteBuffer.allocate(kept * ENTRY_SIZE);
+            long position = HEADER_SIZE + (count - kept) * ENTRY_SIZE;
+            while (tail.hasRemaining()) {
+                int read = in.read(tail, position);
+                if (read < 0) break;
+                position += read;
+            }
+            tail.flip();
+
+            last = new byte[tail.remaining() / ENTRY_SIZE][ENTRY_SIZE];
+            for (byte[] entry : last) {
+                tail.get(entry);
+            }
+        }
+
+        if (count > (long) COMPACT_FACTOR * capacity) {
+            write(file, last);
+        }
+
+        VerificationCache cache = new VerificationCache(capacity,
+                FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        for (byte[] entry : last) {
+            cache.remember(ByteBuffer.wrap(entry));
+        }
+
+        return cache;
+    }
+
+    /**
+     * Computes the entry of a verification.
+     *
+     * @param keyFingerprint the fingerprint of the public key, see {@link #fingerprint(String)}
+     * @param digest         the digest of the message: the first {@link #DIGEST_SIZE} bytes of output of its hash function,
+     *                       the root for {@link RainbowSignature#MERKLE} and {@link RainbowSignature#APPEND} signatures,
+     *                       or the digest itself for a signature of a digest
+     * @param signature      the signature, which also records the way the message was hashed
+     * @return the 32 bytes of the entry
+     */
+    public static byte[] entry(byte[] keyFingerprint, byte[] digest, RainbowSignature signature) {
+        MessageDigest sha = sha256();
+
+        ByteBuffer way = ByteBuffer.allocate(3 * Integer.BYTES + Long.BYTES + 1)
+                .putInt(keyFingerprint.length).putInt(signature.getMode()).putInt(signature.getParam())
+                .putLong(signature.getLength()).put(signature.getHash());
+        way.flip();
+
+        sha.update(way);
+        sha.update(keyFingerprint);
+        sha.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, digest.length));
+        sha.update(digest);
+        sha.update(signature.getElements());
+
+        return sha.digest();
+    }
+
+    /**
+     * Computes the fingerprint of a public key file, the SHA-256 digest of its content.
+     * For a packed key it is the same fingerprint as in a {@link PubKeyStore}.
+     *
+     * @param pkPath the path of the public key
+     * @return the fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    public static byte[] fingerprint(String pkPath) throws IOException {
+        MessageDigest sha = sha256();
+        RainbowScheme.digestFile(sha, pkPath);
+
+        return sha.digest();
+    }
+
+    /**
+     * Checks whether a verification has been found valid.
+     *
+     * @param entry the entry of the verification
+     * @return true if the signature has been found valid
+     */
+    public boolean contains(byte[] entry) {
+        synchronized (entries) {
+            return entries.get(ByteBuffer.wrap(entry)) != null;
+        }
+    }
+
+    /**
+     * Remembers that a verification has been found valid, appending it to the index file if there is one.
+     *
+     * @param entry the entry of the verification
+     * @throws IOException if the entry cannot be appended to the index file
+     */
+    public void add(byte[] entry) throws IOException {
+        ByteBuffer key = ByteBuffer.wrap(entry.clone());
+
+        synchronized (entries) {
+            if (entries.get(key) != null) {
+                return;
+            }
+            remember(key);
+
+            if (index != null) {
+                append(key.duplicate());
+            }
+        }
+    }
+
+    /**
+     * Appends an entry to the index file under an exclusive lock, after the last complete entry.
+     */
+    private void append(ByteBuffer entry) throws IOException {
+        FileLock lock = index.lock();
+
+        try {
+            long end = truncate(index);
+            while (entry.hasRemaining()) {
+                end += index.write(entry, end);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Drops a torn entry at the end of a locked index file, as the entries appended after it would be read
+     * off by its length.
+     *
+     * @return the new size of the file
+     */
+    private static long truncate(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long end = HEADER_SIZE + (size - HEADER_SIZE) / ENTRY_SIZE * ENTRY_SIZE;
+
+        if (end < size) {
+            channel.truncate(end);
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns the number of entries kept in memory.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    private void remember(ByteBuffer entry) {
+        synchronized (entries) {
+            entries.put(entry, Boolean.TRUE);
+
+            if (entries.size() > capacity) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Writes an index file holding some entries on a temporary file, which then replaces {@code file}.
+     */
+    private static void write(Path file, byte[][] entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.length * ENTRY_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        for (byte[] entry : entries) {
+            buffer.put(entry);
+        }
+        buffer.flip();
+
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+
+            if (entries.length == 0) {
+                // a new file, which must not replace one created meanwhile by another process, as a rename would
+                try {
+                    Files.createLink(file, tmp);
+                } catch (FileAlreadyExistsException ex) {
+                    // the other file is used
+                }
+            } else {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package sc1819.rainbow.debug;
+
+import org.apache.commons.cli.*;
+import sc1819.rainbow.CompiledPubKey;
+import sc1819.rainbow.CompiledSecKey;
+import sc1819.rainbow.KeyCache;
+import sc1819.rainbow.PublicMap;
+import sc1819.rainbow.RainbowPubKey;
+import sc1819.rainbow.RainbowScheme;
+import sc1819.rainbow.RainbowSecKey;
+import sc1819.rainbow.RainbowSigner;
+import sc1819.rainbow.SeedSecKey;
+import sc1819.rainbow.hash.MessageHash;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.SecureRandom;
+import java.util.function.Supplier;
+
+/**
+ * Micro benchmarks of the Rainbow implementation.
+ * Each benchmark runs a number of warm-up iterations, then prints the average time of the measured iterations.
+ * <b>This is for testing only!</b>
+ */
+public class Benchmark {
+
+    private int iterations;
+
+    public Benchmark(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Runs an operation {@code iterations} times after as many warm-up runs and prints its average time.
+     *
+     * @param name      the name of the operation
+     * @param operation the operation to be measured
+     * @return the average time of the operation in nanoseconds
+     */
+    public long measure(String name, Supplier<?> operation) {
+        Object sink = null;
+
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.get();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.get();
+        }
+        long avg = (System.nanoTime() - start) / iterations;
+
+        System.out.println(String.format("%-40s %12.1f us", name, avg / 1000.0) + (sink == null ? " (null)" : ""));
+
+        return avg;
+    }
+
+    /**
+     * Runs an operation {@code iterations} times after as many warm-up runs and prints the average number of bytes
+     * it allocates, as counted for the current thread by {@link com.sun.management.ThreadMXBean}.
+     *
+     * @param name      the name of the operation
+     * @param operation the operation to be measured
+     * @param budget    the largest average number of bytes allowed
+     * @return true if the operation is within its budget
+     */
+    public boolean allocated(String name, Supplier<?> operation, double budget) {
+        return allocated(name, operation, budget, iterations);
+    }
+
+    /**
+     * Runs an operation a given number of times after as many warm-up runs and prints the average number of bytes
+     * it allocates, see {@link #allocated(String, Supplier, double)}.
+     *
+     * @param name      the name of the operation
+     * @param operation the operation to be measured
+     * @param budget    the largest average number of bytes allowed
+     * @param runs      the number of measured runs
+     * @return true if the operation is within its budget
+     */
+    public boolean allocated(String name, Supplier<?> operation, double budget, int runs) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Object sink = null;
+
+        for (int i = 0; i < runs; i++) {
+            sink = operation.get();
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++) {
+            sink = operation.get();
+        }
+        double avg = (double) (threads.getThreadAllocatedBytes(thread) - start) / runs;
+
+        boolean ok = avg <= budget;
+        System.out.println(String.format("%-40s %12.1f B", name, avg)
+                + (budget == Double.POSITIVE_INFINITY ? "" : String.format("  (budget %.1f B)", budget))
+                + (ok ? "" : " OVER BUDGET") + (sink == null ? " (null)" : ""));
+
+        return ok;
+    }
+
+    /**
+     * Checks that signing with a {@link RainbowSigner} and verifying allocate nothing once warm, and that
+     * {@link RainbowSecKey#sign(byte[], SecureRandom)} allocates only the signature.
+     * Every {@link SecureRandom} allocates while generating bytes, so the signers are checked with a {@link CounterRand};
+     * signing with a default {@link SecureRandom}, which the signer calls once every {@link RainbowSigner#POOL_SIZE}
+     * random bytes, is measured for comparison only, over enough signatures to refill the pool many times.
+     *
+     * @param skPath the path of a secret key
+     * @param pkPath the path of the matching public key
+     * @return true if every operation is within its budget
+     * @throws IOException if the public key cannot be loaded
+     */
+    public boolean allocations(String skPath, String pkPath) throws IOException {
+        RainbowSecKey sk = RainbowSecKey.loadKey(skPath);
+        PublicMap pk = RainbowScheme.openPublicMap(pkPath);
+        CompiledPubKey compiled = CompiledPubKey.compile(pk);
+        CompiledSecKey compiledSk = sk.compile();
+        SecureRandom random = new SecureRandom();
+        SecureRandom counter = new CounterRand();
+        RainbowSigner signer = new RainbowSigner(sk, counter);
+        RainbowSigner secureSigner = new RainbowSigner(sk, random);
+
+        byte[] h = new byte[sk.getEqNum()];
+        for (int i = 0; i < h.length; i++) {
+            h[i] = (byte) random.nextInt(16);
+        }
+        byte[] signature = new byte[sk.getVarNum()];
+        long[] verifyScratch = new long[compiled.getScratchSize()];
+        long[] checkScratch = new long[compiledSk.getScratchSize()];
+
+        // each signature takes about n-m vinegar nibbles, two per random byte
+        int refills = 16 * 2 * RainbowSigner.POOL_SIZE / (sk.getVarNum() - sk.getEqNum());
+        allocated("sign RainbowSigner, SecureRandom", () -> {
+            secureSigner.sign(h, signature);
+            return signature;
+        }, Double.POSITIVE_INFINITY, Math.max(iterations, refills));
+
+        boolean ok = allocated("sign RainbowSigner", () -> {
+            signer.sign(h, signature);
+            return signature;
+        }, 0);
+        // a byte array is a 16 bytes header and its elements, rounded up to 8 bytes
+        ok &= allocated("sign RainbowSecKey", () -> sk.sign(h, counter), 16 + (sk.getVarNum() + 7) / 8 * 8);
+        ok &= allocated("self-check", () -> compiledSk.check(signature, h, checkScratch) ? Boolean.TRUE : null, 0);
+        ok &= allocated("verify CompiledPubKey", () -> compiled.verify(signature, h, verifyScratch) ? Boolean.TRUE : null, 0);
+        if (pk instanceof RainbowPubKey) {
+            ok &= allocated("verify RainbowPubKey", () -> pk.verify(signature, h) ? Boolean.TRUE : null, 0);
+        }
+
+        return ok;
+    }
+
+    /**
+     * Compares loading a serialized secret key with regenerating a secret key stored as a seed, with and without the cache.
+     *
+     * @param skPath       the path of a serialized secret key
+     * @param seededSkPath the path of a secret key stored as a seed
+     */
+    public void keyLoad(String skPath, String seededSkPath) {
+        measure("ObjectInputStream load", () -> RainbowSecKey.loadKey(skPath));
+
+        SeedSecKey.setCacheSize(0);
+        measure("seed regeneration", () -> RainbowSecKey.loadKey(seededSkPath));
+
+        SeedSecKey.setCacheSize(SeedSecKey.DEFAULT_CACHE_SIZE);
+        measure("seed regeneration, warm cache", () -> RainbowSecKey.loadKey(seededSkPath));
+    }
+
+    /**
+     * Measures the signing kernel, that is the inversion of S, F and T, on random digests,
+     * and the cost of checking each signature with {@link CompiledSecKey#check(byte[], byte[], long[])}.
+     *
+     * @param skPath the path of a secret key
+     */
+    public void sign(String skPath) {
+        RainbowSecKey sk = RainbowSecKey.loadKey(skPath);
+        SecureRandom random = new SecureRandom();
+        byte[] h = new byte[sk.getEqNum()];
+
+        long signTime = measure("sign " + (sk.getS().isStandard() ? "(standard form)" : "(dense)"), () -> {
+            for (int i = 0; i < h.length; i++) {
+                h[i] = (byte) random.nextInt(16);
+            }
+
+            byte[] signature = sk.getS().evalInv(h);
+            signature = sk.getF().invF(signature, random);
+            return sk.getT().evalInv(signature);
+        });
+
+        byte[] signature = sk.sign(h, random);
+        CompiledSecKey compiled = sk.compile();
+        long[] scratch = new long[compiled.getScratchSize()];
+        long checkTime = measure("self-check", () -> compiled.check(signature, h, scratch) ? Boolean.TRUE : null);
+
+        System.out.println(String.format("%-40s %12.1f %%", "self-check overhead", 100.0 * checkTime / signTime));
+    }
+
+    /**
+     * Compares loading and evaluating a public key as stored with the layout of {@link CompiledPubKey},
+     * and loading it through a warm {@link KeyCache}.
+     *
+     * @param pkPath the path of a public key, packed or serialized
+     * @throws IOException if the key cannot be loaded
+     */
+    public void verify(String pkPath) throws IOException {
+        PublicMap pk = RainbowScheme.openPublicMap(pkPath);
+        PublicMap compiled = CompiledPubKey.compile(pk);
+        SecureRandom random = new SecureRandom();
+        byte[] x = new byte[pk.getVarNum()];
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (byte) random.nextInt(16);
+        }
+
+        measure("load " + pk.getClass().getSimpleName(), () -> {
+            try {
+                return RainbowScheme.openPublicMap(pkPath);
+            } catch (IOException ex) {
+                return null;
+            }
+        });
+        measure("compile", () -> CompiledPubKey.compile(pk));
+
+        KeyCache<PublicMap> cache = KeyCache.publicKeys(1);
+        measure("load, warm cache", () -> {
+            try {
+                return cache.get(pkPath);
+            } catch (IOException ex) {
+                return null;
+            }
+        });
+
+        measure("eval " + pk.getClass().getSimpleName(), () -> pk.eval(x));
+        measure("eval CompiledPubKey", () -> compiled.eval(x));
+    }
+
+    /**
+     * Measures hashing a file into a target vector of {@code size} field elements with each available hash function.
+     *
+     * @param filePath the path of the hashed file
+     * @param size     the number of field elements
+     */
+    public void hash(String filePath, int size) {
+        for (int id = 0; id < MessageHash.NAMES.length; id++) {
+            int hash = id;
+            measure("hash " + MessageHash.NAMES[id] + " (" + size + " elements)",
+                    () -> RainbowScheme.hashFile(filePath, size, MessageHash.getInstance(hash)));
+        }
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options();
+
+        Option keyLoad = Option.builder("k")
+                .argName("sk seeded-sk")
+                .hasArgs()
+                .numberOfArgs(2)
+                .valueSeparator(' ')
+                .desc("Compare loading the serialized secret key <sk> with regenerating the seeded secret key <seeded-sk>")
+                .longOpt("key-load")
+                .build();
+        options.addOption(keyLoad);
+
+        Option sign = Option.builder("s")
+                .argName("sk")
+                .hasArg()
+                .desc("Measure signing with the secret key <sk>")
+                .longOpt("sign")
+                .build();
+        options.addOption(sign);
+
+        Option verify = Option.builder("v")
+                .argName("pk")
+                .hasArg()
+                .desc("Measure loading and evaluating the public key <pk>, as stored and compiled")
+                .longOpt("verify")
+                .build();
+        options.addOption(verify);
+
+        Option allocations = Option.builder("a")
+                .argName("sk pk")
+                .hasArgs()
+                .numberOfArgs(2)
+                .valueSeparator(' ')
+                .desc("Check that signing with <sk> and verifying with <pk> stay within their allocation budgets, failing otherwise")
+                .longOpt("allocations")
+                .build();
+        options.addOption(allocations);
+
+        Option hash = Option.builder("h")
+                .argName("file")
+                .hasArg()
+                .desc("Measure hashing <file> with each hash function")
+                .longOpt("hash")
+                .build();
+        options.addOption(hash);
+
+        Option elements = Option.builder("e")
+                .argName("size")
+                .hasArg()
+                .desc("Number of field elements produced by --hash, default 64")
+                .longOpt("elements")
+                .build();
+        options.addOption(elements);
+
+        Option iterations = Option.builder("n")
+                .argName("iterations")
+                .hasArg()
+                .desc("Number of measured iterations, default 100")
+                .longOpt("iterations")
+                .build();
+        options.addOption(iterations);
+
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine cmd;
+
+        try {
+            cmd = parser.parse(options, args);
+        } catch (ParseException ex) {
+            System.out.println(ex.getMessage());
+            formatter.printHelp("Benchmark", options, true);
+
+            System.exit(1);
+            return;
+        }
+
+        Benchmark benchmark = new Benchmark(Integer.parseInt(cmd.getOptionValue("iterations", "100")));
+
+        boolean run = false;
+
+        if (cmd.hasOption("key-load")) {
+            benchmark.keyLoad(cmd.getOptionValues("key-load")[0], cmd.getOptionValues("key-load")[1]);
+            run = true;
+        }
+        if (cmd.hasOption("sign")) {
+            benchmark.sign(cmd.getOptionValue("sign"));
+            run = true;
+        }
+        if (cmd.hasOption("verify")) {
+            try {
+                benchmark.verify(cmd.getOptionValue("verify"));
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+                System.exit(1);
+            }
+            run = true;
+        }
+        if (cmd.hasOption("allocations")) {
+            boolean ok = false;
+            try {
+                ok = benchmark.allocations(cmd.getOptionValues("allocations")[0], cmd.getOptionValues("allocations")[1]);
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+            }
+            if (!ok) {
+                System.exit(1);
+            }
+            run = true;
+        }
+
+        if (cmd.hasOption("hash")) {
+            benchmark.hash(cmd.getOptionValue("hash"), Integer.parseInt(cmd.getOptionValue("elements", "64")));
+            run = true;
+        }
+
+        if (!run) {
+            formatter.printHelp("Benchmark", options, true);
+        }
+    }
+}
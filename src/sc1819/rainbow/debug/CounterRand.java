@@ -0,0 +1,25 @@
+package sc1819.rainbow.debug;
+
+import java.security.SecureRandom;
+
+/**
+ * Create a SecureRandom which allocates no memory while generating bytes, so that the allocations of the code using it
+ * can be measured alone. Every {@link SecureRandom} provided by the JDK allocates on each call.
+ * <b>Its output is predictable, this is for testing only!</b>
+ */
+public class CounterRand extends SecureRandom {
+    private static final long serialVersionUID = 1L;
+
+    private long state = System.nanoTime();
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            // splitmix64
+            long z = (state += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            bytes[i] = (byte) (z ^ (z >>> 31));
+        }
+    }
+}
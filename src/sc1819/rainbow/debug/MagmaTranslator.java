@@ -5,6 +5,7 @@ import sc1819.rainbow.RainbowKeyPair;
 import sc1819.rainbow.RainbowPubKey;
 import sc1819.rainbow.RainbowScheme;
 import sc1819.rainbow.RainbowSecKey;
+import sc1819.rainbow.RainbowSignature;
 import sc1819.rainbow.util.*;
 
 import java.io.File;
@@ -147,7 +148,8 @@ public class MagmaTranslator {
         sb.append("//");
         sb.append(System.lineSeparator());
 
-        byte[] digest = RainbowScheme.hashFile(filePath, this.m);
+        RainbowSignature rainbowSignature = RainbowScheme.readSignature(signaturePath);
+        byte[] digest = RainbowScheme.hashFile(filePath, this.m, rainbowSignature);
         sb.append("hash := [");
         for (byte elem : digest) {
             sb.append(byteToField(elem));
@@ -166,7 +168,7 @@ public class MagmaTranslator {
         sb.append("//");
         sb.append(System.lineSeparator());
 
-        byte[] signature = RainbowScheme.loadSignature(signaturePath);
+        byte[] signature = rainbowSignature.getElements();
         sb.append("sign := [");
         for (byte elem : signature) {
             sb.append(byteToField(elem));
@@ -0,0 +1,144 @@
+package sc1819.rainbow.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * This class is a pure Java implementation of BLAKE2b-512 (RFC 7693), unkeyed,
+ * which on 64-bit machines is usually faster than the SHA-2 functions without hardware support.
+ */
+public class Blake2b extends FixedHash {
+
+    private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+
+    private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}
+    };
+
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int BLOCK_SIZE = 128;
+    private static final int DIGEST_SIZE = 64;
+
+    private final long[] h = IV.clone();
+    private final long[] v = new long[16];
+    private final long[] m = new long[16];
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private int fill;
+    /**
+     * The number of bytes compressed so far.
+     */
+    private long counter;
+
+    /**
+     * Constructor, starts a computation of BLAKE2b-512.
+     */
+    public Blake2b() {
+        h[0] ^= 0x01010000L ^ DIGEST_SIZE;
+    }
+
+    @Override
+    public byte getId() {
+        return BLAKE2B;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int len) {
+        while (len > 0) {
+            // the last block is compressed only when the message ends
+            if (fill == BLOCK_SIZE) {
+                counter += BLOCK_SIZE;
+                compress(buffer, 0, false);
+                fill = 0;
+            }
+
+            if (fill == 0) {
+                for (; len > BLOCK_SIZE; offset += BLOCK_SIZE, len -= BLOCK_SIZE) {
+                    counter += BLOCK_SIZE;
+                    compress(data, offset, false);
+                }
+            }
+
+            int n = Math.min(len, BLOCK_SIZE - fill);
+            System.arraycopy(data, offset, buffer, fill, n);
+            fill += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public byte[] digest() {
+        counter += fill;
+        for (int i = fill; i < BLOCK_SIZE; i++) {
+            buffer[i] = 0;
+        }
+        compress(buffer, 0, true);
+
+        byte[] res = new byte[DIGEST_SIZE];
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            res[i] = (byte) (h[i >> 3] >>> ((i & 7) << 3));
+        }
+
+        return res;
+    }
+
+    @Override
+    protected FixedHash newInstance() {
+        return new Blake2b();
+    }
+
+    private void compress(byte[] block, int offset, boolean last) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = (long) WORD.get(block, offset + 8 * i);
+        }
+
+        System.arraycopy(h, 0, v, 0, 8);
+        System.arraycopy(IV, 0, v, 8, 8);
+        v[12] ^= counter;
+        if (last) {
+            v[14] = ~v[14];
+        }
+
+        for (int r = 0; r < 12; r++) {
+            byte[] s = SIGMA[r % 10];
+
+            g(0, 4, 8, 12, m[s[0]], m[s[1]]);
+            g(1, 5, 9, 13, m[s[2]], m[s[3]]);
+            g(2, 6, 10, 14, m[s[4]], m[s[5]]);
+            g(3, 7, 11, 15, m[s[6]], m[s[7]]);
+            g(0, 5, 10, 15, m[s[8]], m[s[9]]);
+            g(1, 6, 11, 12, m[s[10]], m[s[11]]);
+            g(2, 7, 8, 13, m[s[12]], m[s[13]]);
+            g(3, 4, 9, 14, m[s[14]], m[s[15]]);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            h[i] ^= v[i] ^ v[i + 8];
+        }
+    }
+
+    private void g(int a, int b, int c, int d, long x, long y) {
+        v[a] += v[b] + x;
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] += v[d];
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] += v[b] + y;
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] += v[d];
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+}
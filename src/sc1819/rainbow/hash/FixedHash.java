@@ -0,0 +1,56 @@
+package sc1819.rainbow.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class turns a hash function with a fixed size digest into a {@link MessageHash} with output of any length.
+ * <p>
+ * The output is the digest d of the message, followed, if more bytes are needed, by the blocks H(d || i) for i=1,2,...,
+ * where i is a big endian int. Hence, as long as the digest is long enough, the output is just the digest.
+ */
+public abstract class FixedHash implements MessageHash {
+
+    /**
+     * Ends the computation and returns the digest of the message.
+     *
+     * @return the digest
+     */
+    public abstract byte[] digest();
+
+    /**
+     * Returns a new computation of the same hash function.
+     *
+     * @return the hash function, ready to be fed
+     */
+    protected abstract FixedHash newInstance();
+
+    @Override
+    public byte[] squeeze(int len) {
+        return extend(digest(), len, this);
+    }
+
+    /**
+     * Extends a digest to a given length, as described in the documentation of this class.
+     *
+     * @param digest the digest
+     * @param len    the number of output bytes
+     * @param hash   the hash function used to compute the digest, only used to get new computations
+     * @return the output bytes
+     */
+    public static byte[] extend(byte[] digest, int len, FixedHash hash) {
+        byte[] res = new byte[len];
+        System.arraycopy(digest, 0, res, 0, Math.min(len, digest.length));
+
+        for (int i = 1, position = digest.length; position < len; i++) {
+            FixedHash block = hash.newInstance();
+            block.update(digest);
+            block.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, i));
+
+            byte[] out = block.digest();
+            System.arraycopy(out, 0, res, position, Math.min(out.length, len - position));
+            position += out.length;
+        }
+
+        return res;
+    }
+}
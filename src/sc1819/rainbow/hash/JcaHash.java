@@ -0,0 +1,57 @@
+package sc1819.rainbow.hash;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class provides a hash function of the Java runtime, such as SHA-256 or SHA-512, as a {@link MessageHash}.
+ */
+public class JcaHash extends FixedHash {
+
+    private final String algorithm;
+    private final byte id;
+    private final MessageDigest digest;
+
+    /**
+     * Constructor, starts a computation of a hash function of the Java runtime.
+     *
+     * @param algorithm the name of the algorithm, as known to {@link MessageDigest#getInstance(String)}
+     * @param id        the id of the hash function
+     */
+    public JcaHash(String algorithm, byte id) {
+        try {
+            this.digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("can't find " + algorithm + "!", ex);
+        }
+
+        this.algorithm = algorithm;
+        this.id = id;
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int len) {
+        digest.update(data, offset, len);
+    }
+
+    @Override
+    public void update(ByteBuffer data) {
+        digest.update(data);
+    }
+
+    @Override
+    public byte[] digest() {
+        return digest.digest();
+    }
+
+    @Override
+    protected FixedHash newInstance() {
+        return new JcaHash(algorithm, id);
+    }
+}
@@ -0,0 +1,166 @@
+package sc1819.rainbow.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface represents a hash function used to turn a message into the target vector of a signature,
+ * that is into as many field elements as the public map has equations.
+ * <p>
+ * The message is fed through the {@code update} methods, then {@link #squeeze(int)} produces any number of output bytes,
+ * either directly for an extendable output function or by extending a fixed size digest, see {@link FixedHash}.
+ * The output bytes are turned into field elements by {@link #split(byte[], int)}.
+ * <p>
+ * Each hash function has an id, which is recorded in the signatures computed with it.
+ */
+public interface MessageHash {
+
+    /**
+     * The ids of the available hash functions.
+     */
+    byte SHA256 = 0, SHA512 = 1, SHAKE128 = 2, SHAKE256 = 3, BLAKE2B = 4;
+
+    /**
+     * The names of the available hash functions, indexed by id.
+     */
+    String[] NAMES = {"SHA-256", "SHA-512", "SHAKE128", "SHAKE256", "BLAKE2b"};
+
+    /**
+     * Returns the id of this hash function.
+     *
+     * @return the id
+     */
+    byte getId();
+
+    /**
+     * Returns the name of this hash function.
+     *
+     * @return the name
+     */
+    default String getName() {
+        return NAMES[getId()];
+    }
+
+    /**
+     * Adds bytes to the hashed message.
+     *
+     * @param data   the array containing the bytes
+     * @param offset the first byte to be added
+     * @param len    the number of bytes to be added
+     */
+    void update(byte[] data, int offset, int len);
+
+    /**
+     * Adds bytes to the hashed message.
+     *
+     * @param data the bytes to be added
+     */
+    default void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * Adds the remaining bytes of a buffer to the hashed message, consuming them.
+     *
+     * @param data the buffer containing the bytes to be added
+     */
+    default void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(data.remaining(), 1 << 16)];
+        while (data.hasRemaining()) {
+            int n = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, n);
+            update(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Ends the computation and returns the output of the hash function.
+     *
+     * @param len the number of output bytes
+     * @return the output bytes
+     */
+    byte[] squeeze(int len);
+
+    /**
+     * Ends the computation and returns the target vector of the hashed message.
+     *
+     * @param size the number of field elements of the target
+     * @return the target vector
+     */
+    default byte[] expand(int size) {
+        return split(squeeze((size + 1) / 2), size);
+    }
+
+    /**
+     * Splits bytes into field elements: the high nibbles of the first (size+1)/2 bytes make the first half of the result,
+     * their low nibbles the second half.
+     *
+     * @param bytes the bytes to be split
+     * @param size  the number of field elements
+     * @return the field elements
+     * @throws IllegalArgumentException if there are not enough bytes
+     */
+    static byte[] split(byte[] bytes, int size) {
+        int half = (size + 1) / 2;
+
+        if (bytes.length < half) {
+            throw new IllegalArgumentException("Digest too short!");
+        }
+
+        byte[] res = new byte[size];
+        for (int i = 0; i < half; i++) {
+            res[i] = (byte) ((bytes[i] & 0xf0) >> 4);
+            if (half + i < size) {
+                res[half + i] = (byte) (bytes[i] & 0x0f);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Returns a new computation of a hash function.
+     *
+     * @param id the id of the hash function
+     * @return the hash function, ready to be fed
+     * @throws IllegalArgumentException if the id is unknown
+     */
+    static MessageHash getInstance(int id) {
+        switch (id) {
+            case SHA256:
+                return new JcaHash("SHA-256", SHA256);
+            case SHA512:
+                return new JcaHash("SHA-512", SHA512);
+            case SHAKE128:
+                return new Shake(128);
+            case SHAKE256:
+                return new Shake(256);
+            case BLAKE2B:
+                return new Blake2b();
+            default:
+                throw new IllegalArgumentException("Unknown hash function!");
+        }
+    }
+
+    /**
+     * Returns a new computation of a hash function.
+     *
+     * @param name the name of the hash function, case insensitive
+     * @return the hash function, ready to be fed
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static MessageHash getInstance(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(name)) {
+                return getInstance(i);
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown hash function!");
+    }
+}
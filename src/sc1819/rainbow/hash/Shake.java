@@ -0,0 +1,167 @@
+package sc1819.rainbow.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * This class is a pure Java implementation of the extendable output functions SHAKE128 and SHAKE256 (FIPS 202),
+ * built on the Keccak-f[1600] permutation, since the Java runtime does not provide them.
+ */
+public class Shake implements MessageHash {
+
+    private static final long[] RC = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL, 0x8000000080008000L,
+            0x000000000000808bL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008aL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000aL,
+            0x000000008000808bL, 0x800000000000008bL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800aL, 0x800000008000000aL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    /**
+     * The rotation of each lane, indexed by x+5y.
+     */
+    private static final int[] RHO = {
+            0, 1, 62, 28, 27,
+            36, 44, 6, 55, 20,
+            3, 10, 43, 25, 39,
+            41, 45, 15, 21, 8,
+            18, 2, 61, 56, 14
+    };
+
+    /**
+     * The destination of each lane in the pi step, indexed by x+5y.
+     */
+    private static final int[] PI = new int[25];
+
+    static {
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 5; y++) {
+                PI[x + 5 * y] = y + 5 * ((2 * x + 3 * y) % 5);
+            }
+        }
+    }
+
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int strength;
+    /**
+     * The number of bytes absorbed or squeezed by each permutation.
+     */
+    private final int rate;
+    private final long[] state = new long[25];
+    private final long[] b = new long[25];
+    /**
+     * The position in the current block of the next byte to be absorbed.
+     */
+    private int position;
+
+    /**
+     * Constructor, starts a computation of SHAKE128 or SHAKE256.
+     *
+     * @param strength either 128 or 256
+     */
+    public Shake(int strength) {
+        if (strength != 128 && strength != 256) {
+            throw new IllegalArgumentException("Unknown SHAKE strength!");
+        }
+
+        this.strength = strength;
+        this.rate = 200 - strength / 4;
+    }
+
+    @Override
+    public byte getId() {
+        return strength == 128 ? SHAKE128 : SHAKE256;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int len) {
+        int end = offset + len;
+
+        while (offset < end) {
+            // whole lanes are absorbed at once when aligned
+            if ((position & 7) == 0 && end - offset >= 8) {
+                state[position >> 3] ^= (long) LANE.get(data, offset);
+                offset += 8;
+                position += 8;
+            } else {
+                state[position >> 3] ^= (data[offset++] & 0xffL) << ((position & 7) << 3);
+                position++;
+            }
+
+            if (position == rate) {
+                permute();
+                position = 0;
+            }
+        }
+    }
+
+    @Override
+    public byte[] squeeze(int len) {
+        state[position >> 3] ^= 0x1fL << ((position & 7) << 3);
+        state[(rate - 1) >> 3] ^= 0x80L << (((rate - 1) & 7) << 3);
+        permute();
+
+        byte[] res = new byte[len];
+        for (int i = 0, j = 0; i < len; i++, j++) {
+            if (j == rate) {
+                permute();
+                j = 0;
+            }
+
+            res[i] = (byte) (state[j >> 3] >>> ((j & 7) << 3));
+        }
+
+        return res;
+    }
+
+    /**
+     * The Keccak-f[1600] permutation.
+     */
+    private void permute() {
+        long[] a = state;
+
+        for (long rc : RC) {
+            // theta
+            long c0 = a[0] ^ a[5] ^ a[10] ^ a[15] ^ a[20];
+            long c1 = a[1] ^ a[6] ^ a[11] ^ a[16] ^ a[21];
+            long c2 = a[2] ^ a[7] ^ a[12] ^ a[17] ^ a[22];
+            long c3 = a[3] ^ a[8] ^ a[13] ^ a[18] ^ a[23];
+            long c4 = a[4] ^ a[9] ^ a[14] ^ a[19] ^ a[24];
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+            for (int y = 0; y < 25; y += 5) {
+                a[y] ^= d0;
+                a[y + 1] ^= d1;
+                a[y + 2] ^= d2;
+                a[y + 3] ^= d3;
+                a[y + 4] ^= d4;
+            }
+
+            // rho and pi
+            for (int i = 0; i < 25; i++) {
+                b[PI[i]] = Long.rotateLeft(a[i], RHO[i]);
+            }
+
+            // chi
+            for (int y = 0; y < 25; y += 5) {
+                long b0 = b[y], b1 = b[y + 1], b2 = b[y + 2], b3 = b[y + 3], b4 = b[y + 4];
+
+                a[y] = b0 ^ (~b1 & b2);
+                a[y + 1] = b1 ^ (~b2 & b3);
+                a[y + 2] = b2 ^ (~b3 & b4);
+                a[y + 3] = b3 ^ (~b4 & b0);
+                a[y + 4] = b4 ^ (~b0 & b1);
+            }
+
+            // iota
+            a[0] ^= rc;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package sc1819.rainbow.jca;
+
+import java.io.InvalidObjectException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactorySpi;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.EncodedKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * This class converts Rainbow keys from and to their encodings through {@link java.security.KeyFactory}.
+ * <p>
+ * The encodings are the ones returned by {@link RainbowPublicKey#getEncoded()} and {@link RainbowPrivateKey#getEncoded()},
+ * carried by any {@link EncodedKeySpec}, usually an {@link X509EncodedKeySpec} for public keys and
+ * a {@link PKCS8EncodedKeySpec} for private keys, although they are not in those standard formats.
+ */
+public class RainbowKeyFactorySpi extends KeyFactorySpi {
+
+    @Override
+    protected PublicKey engineGeneratePublic(KeySpec keySpec) throws InvalidKeySpecException {
+        if (!(keySpec instanceof EncodedKeySpec)) {
+            throw new InvalidKeySpecException("Not an EncodedKeySpec!");
+        }
+
+        try {
+            return new RainbowPublicKey(((EncodedKeySpec) keySpec).getEncoded());
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidKeySpecException("Not a valid public key!", ex);
+        }
+    }
+
+    @Override
+    protected PrivateKey engineGeneratePrivate(KeySpec keySpec) throws InvalidKeySpecException {
+        if (!(keySpec instanceof EncodedKeySpec)) {
+            throw new InvalidKeySpecException("Not an EncodedKeySpec!");
+        }
+
+        try {
+            return new RainbowPrivateKey(((EncodedKeySpec) keySpec).getEncoded());
+        } catch (InvalidObjectException ex) {
+            throw new InvalidKeySpecException("Not a valid private key!", ex);
+        }
+    }
+
+    @Override
+    protected <T extends KeySpec> T engineGetKeySpec(Key key, Class<T> keySpec) throws InvalidKeySpecException {
+        if (key instanceof RainbowPublicKey && keySpec.isAssignableFrom(X509EncodedKeySpec.class)) {
+            return keySpec.cast(new X509EncodedKeySpec(key.getEncoded()));
+        }
+        if (key instanceof RainbowPrivateKey && keySpec.isAssignableFrom(PKCS8EncodedKeySpec.class)) {
+            return keySpec.cast(new PKCS8EncodedKeySpec(key.getEncoded()));
+        }
+
+        throw new InvalidKeySpecException("Unsupported key or key spec!");
+    }
+
+    @Override
+    protected Key engineTranslateKey(Key key) throws InvalidKeyException {
+        if (key instanceof RainbowPublicKey || key instanceof RainbowPrivateKey) {
+            return key;
+        }
+        if (key.getEncoded() == null) {
+            throw new InvalidKeyException("Not a Rainbow key!");
+        }
+
+        try {
+            if (key instanceof PublicKey) {
+                return engineGeneratePublic(new X509EncodedKeySpec(key.getEncoded()));
+            }
+            if (key instanceof PrivateKey) {
+                return engineGeneratePrivate(new PKCS8EncodedKeySpec(key.getEncoded()));
+            }
+        } catch (InvalidKeySpecException ex) {
+            throw new InvalidKeyException("Not a Rainbow key!", ex);
+        }
+
+        throw new InvalidKeyException("Not a Rainbow key!");
+    }
+}
@@ -0,0 +1,60 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.RainbowKeyPair;
+import sc1819.rainbow.RainbowParameters;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGeneratorSpi;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * This class generates Rainbow key pairs through {@link java.security.KeyPairGenerator}.
+ * <p>
+ * Keys are generated with the default parameters of {@link RainbowParameters} unless the generator is initialized
+ * with a {@link RainbowParameterSpec}; the key size, if given, is the number of variables, which must be the one
+ * of the default parameters.
+ */
+public class RainbowKeyPairGeneratorSpi extends KeyPairGeneratorSpi {
+
+    private RainbowParameters param = new RainbowParameters();
+    private boolean standard = false;
+    private SecureRandom random;
+
+    @Override
+    public void initialize(int keysize, SecureRandom random) {
+        RainbowParameters defaults = new RainbowParameters();
+
+        if (keysize != defaults.getv1() + defaults.geto1() + defaults.geto2()) {
+            throw new InvalidParameterException("Use a RainbowParameterSpec for other parameters!");
+        }
+
+        this.param = defaults;
+        this.standard = false;
+        this.random = random;
+    }
+
+    @Override
+    public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+        if (!(params instanceof RainbowParameterSpec)) {
+            throw new InvalidAlgorithmParameterException("Not a RainbowParameterSpec!");
+        }
+
+        this.param = ((RainbowParameterSpec) params).getParameters();
+        this.standard = ((RainbowParameterSpec) params).isStandard();
+        this.random = random;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        if (random == null) {
+            random = new SecureRandom();
+        }
+
+        RainbowKeyPair keys = new RainbowKeyPair(param, random, false, false, standard);
+
+        return new KeyPair(new RainbowPublicKey(keys.getPk()), new RainbowPrivateKey(keys.getSk()));
+    }
+}
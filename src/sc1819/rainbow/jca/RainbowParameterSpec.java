@@ -0,0 +1,61 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.RainbowParameters;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * This class specifies the parameters of the keys generated by {@link RainbowKeyPairGeneratorSpi}.
+ */
+public class RainbowParameterSpec implements AlgorithmParameterSpec {
+
+    private final RainbowParameters param;
+    private final boolean standard;
+
+    /**
+     * Constructor, sets the parameters of the scheme.
+     *
+     * @param v1 the number of vinegar variables of the first layer
+     * @param o1 the number of oil variables of the first layer
+     * @param o2 the number of oil variables of the second layer
+     */
+    public RainbowParameterSpec(int v1, int o1, int o2) {
+        this(v1, o1, o2, false);
+    }
+
+    /**
+     * Constructor, sets the parameters of the scheme and whether the affine maps of the secret key are in standard form.
+     *
+     * @param v1       the number of vinegar variables of the first layer
+     * @param o1       the number of oil variables of the first layer
+     * @param o2       the number of oil variables of the second layer
+     * @param standard whether the affine maps of the secret key are to be in standard form
+     * @throws IllegalArgumentException if a parameter is not positive or there are more than 127 variables
+     */
+    public RainbowParameterSpec(int v1, int o1, int o2, boolean standard) {
+        if (v1 <= 0 || o1 <= 0 || o2 <= 0 || v1 + o1 + o2 > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Parameters out of range!");
+        }
+
+        this.param = new RainbowParameters(v1, o1, o2);
+        this.standard = standard;
+    }
+
+    /**
+     * Returns the parameters of the scheme.
+     *
+     * @return the parameters
+     */
+    public RainbowParameters getParameters() {
+        return param;
+    }
+
+    /**
+     * Returns whether the affine maps of the secret key are in standard form.
+     *
+     * @return true if they are in standard form
+     */
+    public boolean isStandard() {
+        return standard;
+    }
+}
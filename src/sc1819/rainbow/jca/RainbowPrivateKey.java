@@ -0,0 +1,119 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.RainbowSecKey;
+import sc1819.rainbow.SeedSecKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.security.PrivateKey;
+
+/**
+ * This class represents a Rainbow secret key for the Java Cryptography Architecture.
+ * <p>
+ * The key is encoded as it is stored on file by {@link sc1819.rainbow.RainbowKeyPair#saveKeys(String, String)},
+ * that is as a serialized {@link RainbowSecKey}, or {@link SeedSecKey} for a key read from a seeded file.
+ * Decoding accepts only the classes of the scheme, so that untrusted encodings cannot instantiate other classes.
+ */
+public class RainbowPrivateKey implements PrivateKey {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Only the classes of the scheme, arrays of primitive types and the boxed types they use may be decoded,
+     * with bounds on the length of the arrays and on the size of the encoding well above those of a key of 127 variables.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=16;maxarray=65536;maxbytes=16777216;sc1819.rainbow.**;java.lang.Number;java.lang.Integer;!*");
+
+    private final RainbowSecKey sk;
+    private transient volatile boolean destroyed;
+
+    /**
+     * Constructor, wraps a secret key.
+     *
+     * @param sk the secret key
+     */
+    public RainbowPrivateKey(RainbowSecKey sk) {
+        this.sk = sk;
+    }
+
+    /**
+     * Constructor, decodes a serialized secret key.
+     *
+     * @param encoded the serialized secret key, either a {@link RainbowSecKey} or a {@link SeedSecKey}
+     * @throws InvalidObjectException if the encoding is not a valid secret key
+     */
+    public RainbowPrivateKey(byte[] encoded) throws InvalidObjectException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            ois.setObjectInputFilter(FILTER);
+            Object key = ois.readObject();
+            this.sk = key instanceof SeedSecKey ? ((SeedSecKey) key).expand() : (RainbowSecKey) key;
+        } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+            // the encoding is untrusted, any failure while decoding or expanding it means it is not a key
+            throw new InvalidObjectException("Not a valid private key!");
+        }
+    }
+
+    /**
+     * Returns the secret key.
+     *
+     * @return the secret key
+     * @throws IllegalStateException if this key has been destroyed
+     */
+    public RainbowSecKey getSecretKey() {
+        if (destroyed) {
+            throw new IllegalStateException("The key has been destroyed!");
+        }
+
+        return sk;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return RainbowProvider.ALGORITHM;
+    }
+
+    /**
+     * Returns the name of the encoding, which is {@code RAW} since it is not a standard one.
+     *
+     * @return "RAW"
+     */
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(getSecretKey());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Overwrites the maps of the secret key with zeros, see {@link RainbowSecKey#wipe()}.
+     */
+    @Override
+    public void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+            sk.wipe();
+        }
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+}
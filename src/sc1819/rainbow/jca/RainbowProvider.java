@@ -0,0 +1,58 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.security.Provider;
+
+/**
+ * This class is a provider of the Java Cryptography Architecture for the Rainbow signature scheme, so that keys can be
+ * generated and messages signed and verified through {@link java.security.KeyPairGenerator}, {@link java.security.KeyFactory}
+ * and {@link java.security.Signature}.
+ * <p>
+ * It provides:
+ * <ul>
+ * <li>
+ * the key pair generator and the key factory {@code Rainbow}, see {@link RainbowKeyPairGeneratorSpi} and {@link RainbowKeyFactorySpi};
+ * </li>
+ * <li>
+ * a signature for each hash function of {@link MessageHash}, named after it as {@code SHA256withRainbow}, {@code SHA512withRainbow},
+ * {@code SHAKE128withRainbow}, {@code SHAKE256withRainbow} and {@code BLAKE2bwithRainbow}, see {@link RainbowSignatureSpi};
+ * {@code Rainbow} is an alias of {@code SHA256withRainbow}.
+ * </li>
+ * </ul>
+ * The provider can be registered with {@link java.security.Security#addProvider(Provider)} or passed to the {@code getInstance} methods.
+ */
+public class RainbowProvider extends Provider {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of this provider.
+     */
+    public static final String NAME = "Rainbow";
+    /**
+     * The name of the keys of this provider.
+     */
+    public static final String ALGORITHM = "Rainbow";
+
+    /**
+     * Constructor, registers all the services.
+     */
+    public RainbowProvider() {
+        super(NAME, "1.0", "Rainbow signature scheme over GF(16)");
+
+        put("KeyPairGenerator." + ALGORITHM, RainbowKeyPairGeneratorSpi.class.getName());
+        put("KeyFactory." + ALGORITHM, RainbowKeyFactorySpi.class.getName());
+
+        put("Signature.SHA256with" + ALGORITHM, RainbowSignatureSpi.SHA256.class.getName());
+        put("Signature.SHA512with" + ALGORITHM, RainbowSignatureSpi.SHA512.class.getName());
+        put("Signature.SHAKE128with" + ALGORITHM, RainbowSignatureSpi.SHAKE128.class.getName());
+        put("Signature.SHAKE256with" + ALGORITHM, RainbowSignatureSpi.SHAKE256.class.getName());
+        put("Signature.BLAKE2bwith" + ALGORITHM, RainbowSignatureSpi.BLAKE2b.class.getName());
+        put("Alg.Alias.Signature." + ALGORITHM, "SHA256with" + ALGORITHM);
+
+        for (String type : new String[]{"SHA256", "SHA512", "SHAKE128", "SHAKE256", "BLAKE2b"}) {
+            put("Signature." + type + "with" + ALGORITHM + " SupportedKeyClasses",
+                    RainbowPublicKey.class.getName() + "|" + RainbowPrivateKey.class.getName());
+        }
+    }
+}
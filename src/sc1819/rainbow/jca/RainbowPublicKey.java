@@ -0,0 +1,114 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.CompiledPubKey;
+import sc1819.rainbow.CompressedPubKey;
+import sc1819.rainbow.MappedPubKey;
+import sc1819.rainbow.PublicMap;
+import sc1819.rainbow.RainbowPubKey;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+/**
+ * This class represents a Rainbow public key for the Java Cryptography Architecture.
+ * <p>
+ * The key is encoded in the packed encoding of {@link MappedPubKey}, which is what {@link #getEncoded()} returns
+ * and what {@link RainbowKeyFactorySpi} accepts. The public map is laid out for fast evaluation, see {@link CompiledPubKey},
+ * the first time the key is used and then kept, so that a key verifies any number of signatures at the cost of one layout.
+ */
+public class RainbowPublicKey implements PublicKey {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] encoded;
+    private transient volatile PublicMap map;
+
+    /**
+     * Constructor, wraps a public map.
+     *
+     * @param pk the public map, a public key or a compressed public key
+     * @throws IllegalArgumentException if the public map is of another kind
+     */
+    public RainbowPublicKey(PublicMap pk) {
+        if (pk instanceof CompressedPubKey) {
+            pk = ((CompressedPubKey) pk).expand();
+        }
+        if (!(pk instanceof RainbowPubKey)) {
+            throw new IllegalArgumentException("Unknown public key!");
+        }
+
+        ByteBuffer packed = MappedPubKey.encode((RainbowPubKey) pk);
+        this.encoded = new byte[packed.remaining()];
+        packed.get(encoded);
+    }
+
+    /**
+     * Constructor, decodes the packed encoding of a public key.
+     *
+     * @param encoded the packed encoding
+     * @throws IllegalArgumentException if the encoding is not valid
+     */
+    public RainbowPublicKey(byte[] encoded) {
+        this.encoded = encoded.clone();
+        new MappedPubKey(ByteBuffer.wrap(this.encoded));
+    }
+
+    /**
+     * Returns the public map of this key, laid out for fast evaluation.
+     *
+     * @return the public map
+     */
+    public PublicMap getPublicMap() {
+        PublicMap res = map;
+
+        if (res == null) {
+            res = CompiledPubKey.compile(new MappedPubKey(ByteBuffer.wrap(encoded)));
+            map = res;
+        }
+
+        return res;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        try {
+            new MappedPubKey(ByteBuffer.wrap(encoded));
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidObjectException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return RainbowProvider.ALGORITHM;
+    }
+
+    /**
+     * Returns the name of the encoding, which is {@code RAW} since it is not a standard one.
+     *
+     * @return "RAW"
+     */
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        return encoded.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RainbowPublicKey && Arrays.equals(encoded, ((RainbowPublicKey) o).encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(encoded);
+    }
+}
@@ -0,0 +1,197 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.PublicMap;
+import sc1819.rainbow.RainbowSigner;
+import sc1819.rainbow.RainbowSignature;
+import sc1819.rainbow.hash.MessageHash;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+
+/**
+ * This class signs and verifies messages with Rainbow through {@link java.security.Signature}.
+ * <p>
+ * The message is hashed while it is fed through {@code update}, so it is never held in memory. Signatures are encoded
+ * as they are stored on file by {@link RainbowSignature#encode()}, recording the hash function, so a signature computed
+ * here verifies as the signature of a file with the same content and vice versa.
+ * <p>
+ * An instance keeps its key after {@code sign} or {@code verify}, and can go on signing or verifying further messages
+ * without being initialized again; a public key is laid out for fast evaluation only once, see {@link RainbowPublicKey#getPublicMap()},
+ * and a private key signs through a {@link RainbowSigner} reusing its working space.
+ * There is a subclass for each hash function, registered by {@link RainbowProvider}.
+ */
+public abstract class RainbowSignatureSpi extends SignatureSpi {
+
+    private final byte hashId;
+    private MessageHash hash;
+
+    private RainbowPrivateKey privateKey;
+    private RainbowSigner signer;
+    private PublicMap pk;
+
+    /**
+     * Constructor, sets the hash function.
+     *
+     * @param hashId the id of the hash function, see {@link MessageHash}
+     */
+    protected RainbowSignatureSpi(byte hashId) {
+        this.hashId = hashId;
+        this.hash = MessageHash.getInstance(hashId);
+    }
+
+    @Override
+    protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+        if (!(publicKey instanceof RainbowPublicKey)) {
+            throw new InvalidKeyException("Not a Rainbow public key!");
+        }
+
+        this.pk = ((RainbowPublicKey) publicKey).getPublicMap();
+        this.privateKey = null;
+        this.signer = null;
+        this.hash = MessageHash.getInstance(hashId);
+    }
+
+    @Override
+    protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+        engineInitSign(privateKey, appRandom != null ? appRandom : new SecureRandom());
+    }
+
+    @Override
+    protected void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+        if (!(privateKey instanceof RainbowPrivateKey)) {
+            throw new InvalidKeyException("Not a Rainbow private key!");
+        }
+        if (((RainbowPrivateKey) privateKey).isDestroyed()) {
+            throw new InvalidKeyException("The key has been destroyed!");
+        }
+
+        this.privateKey = (RainbowPrivateKey) privateKey;
+        this.signer = new RainbowSigner(this.privateKey.getSecretKey(), random);
+        this.pk = null;
+        this.hash = MessageHash.getInstance(hashId);
+    }
+
+    @Override
+    protected void engineUpdate(byte b) throws SignatureException {
+        hash.update(new byte[]{b}, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+        hash.update(b, off, len);
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        hash.update(input);
+    }
+
+    @Override
+    protected byte[] engineSign() throws SignatureException {
+        if (signer == null) {
+            throw new SignatureException("Not initialized for signing!");
+        }
+
+        byte[] h = hash.expand(signer.getKey().getEqNum());
+        hash = MessageHash.getInstance(hashId);
+
+        // the signer keeps the maps, which are zeros once the key is destroyed
+        if (privateKey.isDestroyed()) {
+            throw new SignatureException("The key has been destroyed!");
+        }
+
+        try {
+            return new RainbowSignature(signer.sign(h), RainbowSignature.PLAIN, 0, 0, hashId).encode();
+        } catch (IllegalStateException ex) {
+            throw new SignatureException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+        if (pk == null) {
+            throw new SignatureException("Not initialized for verifying!");
+        }
+
+        byte[] h = hash.expand(pk.getEqNum());
+        hash = MessageHash.getInstance(hashId);
+
+        RainbowSignature signature;
+        try {
+            signature = RainbowSignature.decode(sigBytes);
+        } catch (IllegalArgumentException ex) {
+            throw new SignatureException("Not a valid signature!", ex);
+        }
+
+        // decode rejects the bytes which are not field elements, which the public map cannot be evaluated on
+        if (signature.getMode() != RainbowSignature.PLAIN || signature.getHash() != hashId
+                || signature.getElements().length != pk.getVarNum()) {
+            return false;
+        }
+
+        return pk.verify(signature.getElements(), h);
+    }
+
+    @Override
+    @Deprecated
+    protected void engineSetParameter(String param, Object value) {
+        throw new InvalidParameterException("No parameters!");
+    }
+
+    @Override
+    @Deprecated
+    protected Object engineGetParameter(String param) {
+        throw new InvalidParameterException("No parameters!");
+    }
+
+    /**
+     * Rainbow with SHA-256.
+     */
+    public static final class SHA256 extends RainbowSignatureSpi {
+        public SHA256() {
+            super(MessageHash.SHA256);
+        }
+    }
+
+    /**
+     * Rainbow with SHA-512.
+     */
+    public static final class SHA512 extends RainbowSignatureSpi {
+        public SHA512() {
+            super(MessageHash.SHA512);
+        }
+    }
+
+    /**
+     * Rainbow with SHAKE128.
+     */
+    public static final class SHAKE128 extends RainbowSignatureSpi {
+        public SHAKE128() {
+            super(MessageHash.SHAKE128);
+        }
+    }
+
+    /**
+     * Rainbow with SHAKE256.
+     */
+    public static final class SHAKE256 extends RainbowSignatureSpi {
+        public SHAKE256() {
+            super(MessageHash.SHAKE256);
+        }
+    }
+
+    /**
+     * Rainbow with BLAKE2b.
+     */
+    public static final class BLAKE2b extends RainbowSignatureSpi {
+        public BLAKE2b() {
+            super(MessageHash.BLAKE2B);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package sc1819.rainbow.util;
 
 import java.io.Serializable;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * This class represents an affine map in G16, consisting of a matrix part M and a vectorial part v, hence evaluating such a map on x would mean computing Mx+v.
  * <p>
  * The matrix and vector part are stored separately, as well as the matricial component of the inverse.
  * <p>
+ * An affine map can also be in standard form, that is M is block upper triangular with identity blocks on the diagonal,
+ * like [I X; 0 I]. In this case only the blocks above the diagonal are stored, and the map is inverted by back substitution.
+ * <p>
  * This class also provides a method for evaluating the map on a vector of G16 elements.
  */
 public class AffineMap implements Serializable {
@@ -15,17 +19,26 @@ public class AffineMap implements Serializable {
 
 
     /**
-     * Contains the matrix part of this affine map.
+     * Contains the matrix part of this affine map, null if this map is in standard form.
      */
     private byte[][] matrix;
     /**
-     * Contains the inverse of the matrix representing this affine map.
+     * Contains the inverse of the matrix representing this affine map, null if this map is in standard form.
      */
     private byte[][] inverse;
     /**
      * Contains the vector part of this affine map.
      */
     private byte[] vector;
+    /**
+     * The sizes of the diagonal blocks if this map is in standard form, null otherwise.
+     */
+    private int[] blocks;
+    /**
+     * If this map is in standard form, the i-th row contains the entries of the i-th row of the matrix
+     * to the right of the diagonal block of i, null otherwise.
+     */
+    private byte[][] upper;
 
     /**
      * Constructor, builds an affine map as follows:
@@ -55,6 +68,54 @@ public class AffineMap implements Serializable {
         }
     }
 
+    /**
+     * Constructor, builds an affine map in standard form as follows:
+     * generates random field elements for the blocks above the diagonal of the matrix, whose diagonal blocks are identities,
+     * then generates a vector of random field elements.
+     * Such a matrix is always invertible.
+     *
+     * @param blocks the sizes of the diagonal blocks, their sum is the dimension of the map
+     * @param random needed to generate random coefficients from F16
+     */
+    public AffineMap(int[] blocks, SecureRandom random) {
+        int size = 0;
+        for (int block : blocks) {
+            size += block;
+        }
+
+        this.blocks = blocks.clone();
+        this.upper = new byte[size][];
+
+        int row = 0;
+        for (int block : blocks) {
+            int end = row + block;
+
+            for (int i = row; i < end; i++) {
+                upper[i] = new byte[size - end];
+
+                for (int j = 0; j < upper[i].length; j++) {
+                    upper[i][j] = (byte) random.nextInt(16);
+                }
+            }
+
+            row = end;
+        }
+
+        this.vector = new byte[size];
+        for (int i = 0; i < size; i++) {
+            vector[i] = (byte) random.nextInt(16);
+        }
+    }
+
+    /**
+     * Tells whether this map is in standard form.
+     *
+     * @return true if the matrix of this map is block upper triangular with identity blocks on the diagonal
+     */
+    public boolean isStandard() {
+        return blocks != null;
+    }
+
     /**
      * This method evaluates this affine map on a vector of appropriate length,
      * computing {@code this.matrix}*{@code x}+{@code this.vector}.
@@ -64,12 +125,25 @@ public class AffineMap implements Serializable {
      * @throws IllegalArgumentException if x's length does not match the matrix's dimensions
      */
     public byte[] eval(byte[] x) {
-        if (matrix.length != x.length) {
+        if (vector.length != x.length) {
             throw new IllegalArgumentException("Wrong dimensions!");
         }
         byte[] res;
 
-        res = GF16.prodMatVec(matrix, x);
+        if (isStandard()) {
+            res = new byte[x.length];
+
+            for (int i = 0; i < res.length; i++) {
+                int start = x.length - upper[i].length;
+                res[i] = x[i];
+
+                for (int j = 0; j < upper[i].length; j++) {
+                    res[i] = GF16.add(res[i], GF16.mult(upper[i][j], x[start + j]));
+                }
+            }
+        } else {
+            res = GF16.prodMatVec(matrix, x);
+        }
 
         for (int i = 0; i < res.length; i++) {
             res[i] = GF16.add(res[i], vector[i]);
@@ -80,41 +154,116 @@ public class AffineMap implements Serializable {
     /**
      * This method evaluates the inverse of this affine map on a vector of appropriate length,
      * computing {@code this.inverse}*({@code x}+{@code this.vector}).
+     * If this map is in standard form, the inverse is computed by back substitution,
+     * since each row only depends on the rows of the following blocks.
      *
      * @param x the vector on which we wish to evaluate the inverse
      * @return result of the evaluation of x
      * @throws IllegalArgumentException if x's length does not match the inverse matrix's dimensions
      */
     public byte[] evalInv(byte[] x) {
-        if (inverse.length != x.length) {
+        if (vector.length != x.length) {
             throw new IllegalArgumentException("Wrong dimensions!");
         }
-        byte[] res = new byte[inverse.length];
+        byte[] res = new byte[vector.length];
+        evalInv(x, 0, res, 0);
 
-        for (int i = 0; i < res.length; i++) {
-            res[i] = GF16.add(x[i], vector[i]);
+        return res;
+    }
+
+    /**
+     * Evaluates the inverse of this affine map as {@link #evalInv(byte[])} does on a range of an array, writing the result
+     * into another range, without allocating memory. The two ranges must not overlap.
+     *
+     * @param x      the array containing the vector on which we wish to evaluate the inverse
+     * @param xOff   the position in x of the vector
+     * @param out    the array receiving the result
+     * @param outOff the position in out of the result
+     * @throws IllegalArgumentException if a range exceeds its array
+     */
+    public void evalInv(byte[] x, int xOff, byte[] out, int outOff) {
+        int size = vector.length;
+        if (xOff < 0 || outOff < 0 || x.length - xOff < size || out.length - outOff < size) {
+            throw new IllegalArgumentException("Wrong dimensions!");
         }
 
-        res = GF16.prodMatVec(inverse, res);
+        if (isStandard()) {
+            for (int i = 0; i < size; i++) {
+                out[outOff + i] = GF16.add(x[xOff + i], vector[i]);
+            }
+
+            // back substitution in place, each row only depends on the rows after it
+            for (int i = size - 1; i >= 0; i--) {
+                byte[] row = upper[i];
+                int start = outOff + size - row.length;
+                byte res = out[outOff + i];
 
-        return res;
+                for (int j = 0; j < row.length; j++) {
+                    res = GF16.add(res, GF16.mult(row[j], out[start + j]));
+                }
+
+                out[outOff + i] = res;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                byte[] row = inverse[i];
+                byte res = 0;
+
+                for (int j = 0; j < size; j++) {
+                    res = GF16.add(res, GF16.mult(row[j], GF16.add(x[xOff + j], vector[j])));
+                }
+
+                out[outOff + i] = res;
+            }
+        }
     }
 
     /**
-     * Returns the matrix representing the inverse of this map
+     * Overwrites the matrix, the inverse and the vector of this affine map with zeros.
+     */
+    public void wipe() {
+        for (byte[][] mat : new byte[][][]{matrix, inverse, upper}) {
+            if (mat != null) {
+                for (byte[] row : mat) {
+                    Arrays.fill(row, (byte) 0);
+                }
+            }
+        }
+        Arrays.fill(vector, (byte) 0);
+    }
+
+    /**
+     * Returns the matrix representing the inverse of this map.
+     * If this map is in standard form, the inverse is computed on every call.
      *
      * @return the inverse of this affine map
      */
     public byte[][] getInverse() {
+        if (isStandard()) {
+            return GF16.matrixInverse(getMatrix());
+        }
+
         return inverse;
     }
 
     /**
-     * Returns the matrix part of this affine map
+     * Returns the matrix part of this affine map.
+     * If this map is in standard form, the matrix is built on every call.
      *
      * @return the matrix of this affine map
      */
     public byte[][] getMatrix() {
+        if (isStandard()) {
+            byte[][] res = new byte[vector.length][vector.length];
+
+            for (int i = 0; i < res.length; i++) {
+                res[i][i] = 1;
+                System.arraycopy(upper[i], 0, res[i], res.length - upper[i].length, upper[i].length);
+            }
+
+            return res;
+        }
+
         return matrix;
     }
 
@@ -15,6 +15,11 @@ import java.security.SecureRandom;
 public class CentralMap implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The largest number of vinegar vectors tried by {@link #invF(byte[], SecureRandom)}. A linear system is singular
+     * with probability about 1/15, so only a broken map, for instance a wiped one, needs them all.
+     */
+    public static final int MAX_ATTEMPTS = 256;
 
     /**
      * Contains the two layers of this central map.
@@ -42,6 +47,28 @@ public class CentralMap implements Serializable {
         layers[1] = new Layer(v1 + o1, o2, random);
     }
 
+    /**
+     * Constructor, builds a central map from its two layers.
+     *
+     * @param v1     the number of vinegar variables of the first layer of this central map
+     * @param o1     the number of oil variables and of polynomials of the first layer of this central map
+     * @param o2     the number of oil variables and of polynomials of the second layer of this central map
+     * @param first  the first layer, with v1 vinegar and o1 oil variables
+     * @param second the second layer, with v1+o1 vinegar and o2 oil variables
+     */
+    public CentralMap(int v1, int o1, int o2, Layer first, Layer second) {
+        if (first.getVi() != v1 || first.getOi() != o1 || second.getVi() != v1 + o1 || second.getOi() != o2) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        this.v1 = v1;
+        this.o1 = o1;
+        this.o2 = o2;
+
+        layers[0] = first;
+        layers[1] = second;
+    }
+
     /**
      * Returns the result of evaluating the central map on an array of field elements.
      *
@@ -49,21 +76,33 @@ public class CentralMap implements Serializable {
      * @return the result of the evaluation
      */
     public byte[] eval(byte[] x) {
-        byte[] x1, x2, res1, res2, res;
-        x1 = new byte[v1 + o1];
-        x2 = new byte[x.length];
-
-        System.arraycopy(x, 0, x1, 0, v1 + o1);
-        System.arraycopy(x, 0, x2, 0, x.length);
+        byte[] res = new byte[o1 + o2];
+        eval(x, res, 0);
 
-        res = new byte[o1 + o2];
-        res1 = layers[0].eval(x1);
-        res2 = layers[1].eval(x2);
+        return res;
+    }
 
-        System.arraycopy(res1, 0, res, 0, o1);
-        System.arraycopy(res2, 0, res, o1, o2);
+    /**
+     * Evaluates the central map on an array of field elements, writing the result into another array,
+     * without allocating memory.
+     *
+     * @param x      the array on which the map is to be evaluated, whose first n elements are used
+     * @param out    the array receiving the m elements of the result, distinct from x
+     * @param outOff the position in out of the first element of the result
+     */
+    public void eval(byte[] x, byte[] out, int outOff) {
+        // each layer reads its vinegar and oil variables from the start of x
+        layers[0].eval(x, out, outOff);
+        layers[1].eval(x, out, outOff + o1);
+    }
 
-        return res;
+    /**
+     * Overwrites the coefficients of both layers of this central map with zeros.
+     */
+    public void wipe() {
+        for (Layer layer : layers) {
+            layer.wipe();
+        }
     }
 
     /**
@@ -81,77 +120,105 @@ public class CentralMap implements Serializable {
      * @param y the result of an evaluation of this map
      * @param random the source of random field elements
      * @return an array such that when this map is evaluated on it the result is {@code input}
+     * @throws IllegalStateException if no solution is found in {@link #MAX_ATTEMPTS} attempts
      */
     public byte[] invF(byte[] y, SecureRandom random) {
-        byte[] randomVector = new byte[v1];
-
-        byte[] resOil1;
-        byte[] resOil2 = null;
-
-        byte[] partialSolution = new byte[v1 + o1];
+        byte[] vinegar = new byte[v1];
         byte[] solution = new byte[v1 + o1 + o2];
-
-        byte[] y1 = new byte[o1];
-        byte[] y2 = new byte[o2];
-
-        System.arraycopy(y, 0, y1, 0, y1.length);
-        System.arraycopy(y, y1.length, y2, 0, y2.length);
+        byte[] scratch = new byte[getInvScratchSize()];
 
         // repeat until we find a solution
-        do {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
             // generate a random vector of length v1
             for (int i = 0; i < v1; i++) {
-                randomVector[i] = (byte) random.nextInt(16);
+                vinegar[i] = (byte) random.nextInt(16);
             }
 
-            // try to solve the system
-            // the solution would be the oil variables of the first layer
-            resOil1 = getLinearSystemSolution(layers[0], randomVector, y1);
+            if (invF(y, 0, vinegar, solution, 0, scratch)) {
+                return solution;
+            }
+        }
 
-            // if a solution is found try to solve the second layer
-            if (resOil1 != null) {
-                System.arraycopy(randomVector, 0, partialSolution, 0, randomVector.length);
-                System.arraycopy(resOil1, 0, partialSolution, randomVector.length, resOil1.length);
+        throw new IllegalStateException("Central map not invertible!");
+    }
 
-                // try to solve the system
-                // the solution would be the oil variables of the second layer
-                resOil2 = getLinearSystemSolution(layers[1], partialSolution, y2);
-            }
-        } while (resOil2 == null);
+    /**
+     * Tries to find an array x such that y=F(x) whose first v1 elements are given vinegar variables, without allocating memory.
+     * This is a single attempt of {@link #invF(byte[], SecureRandom)}, which fails if a linear system is singular.
+     *
+     * @param y       the array containing the result of an evaluation of this map
+     * @param yOff    the position in y of the m elements of the result
+     * @param vinegar the v1 vinegar variables
+     * @param out     the array receiving the n elements of x
+     * @param outOff  the position in out of x
+     * @param scratch the working space, at least {@link #getInvScratchSize()} bytes, overwritten
+     * @return true if x has been found, false if other vinegar variables are needed
+     * @throws IllegalArgumentException if an array is too short
+     */
+    public boolean invF(byte[] y, int yOff, byte[] vinegar, byte[] out, int outOff, byte[] scratch) {
+        if (y.length - yOff < o1 + o2 || vinegar.length < v1 || out.length - outOff < v1 + o1 + o2
+                || scratch.length < getInvScratchSize()) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
 
-        System.arraycopy(partialSolution, 0, solution, 0, partialSolution.length);
-        System.arraycopy(resOil2, 0, solution, partialSolution.length, resOil2.length);
+        System.arraycopy(vinegar, 0, out, outOff, v1);
 
-        return solution;
+        // the oil variables of the first layer are the vinegar variables of the second one
+        return solveLayer(layers[0], out, outOff, y, yOff, scratch)
+                && solveLayer(layers[1], out, outOff, y, yOff + o1, scratch);
     }
 
-    private byte[] getLinearSystemSolution(Layer layer, byte[] partialSolution, byte[] input) {
+    /**
+     * Returns the size of the working space needed by {@link #invF(byte[], int, byte[], byte[], int, byte[])}.
+     *
+     * @return the number of bytes of the working space
+     */
+    public int getInvScratchSize() {
+        int o = Math.max(o1, o2);
+
+        return o * (o + 1);
+    }
+
+    /**
+     * Computes the oil variables of a layer, given its vinegar variables at the start of x, writing them after those.
+     * The linear system is assembled by evaluating the layer with the vinegar variables, as the augmented matrix of
+     * {@link GF16#solveInPlace(byte[], int, int)} in the working space.
+     */
+    private boolean solveLayer(Layer layer, byte[] x, int xOff, byte[] y, int yOff, byte[] a) {
         int oi = layer.getOi();
         int vi = layer.getVi();
-
-        byte[][] matrix = new byte[oi][oi];
-        byte[] matrixRow;
-        byte[] vector = new byte[vi];
+        int w = oi + 1;
 
         MultQuad[][] layerPolynomials = layer.getPoly();
-        MultQuad[] poly;
 
-        // assemble the linear system by evaluating the layer with the partial solution
         for (int i = 0; i < oi; i++) {
-            poly = layerPolynomials[i];
-
-            // evaluate the vingard part of the polynomial
-            vector[i] = GF16.add(poly[0].eval(partialSolution, partialSolution), input[i]);
+            MultQuad[] poly = layerPolynomials[i];
+            byte[][] beta = poly[1].getQuad();
+            int row = i * w;
 
             // evaluate the mixed part
-            matrixRow = GF16.addVectors(
-                    GF16.prodVectMat(partialSolution, poly[1].getQuad()),
-                    poly[2].getLin()
-            );
+            System.arraycopy(poly[2].getLin(), 0, a, row, oi);
+            for (int j = 0; j < vi; j++) {
+                byte xj = x[xOff + j];
+                if (xj == 0) continue;
+
+                for (int k = 0; k < oi; k++) {
+                    a[row + k] = GF16.add(a[row + k], GF16.mult(xj, beta[j][k]));
+                }
+            }
+
+            // evaluate the vinegar part of the polynomial
+            a[row + oi] = GF16.add(poly[0].eval(x, xOff, xOff), y[yOff + i]);
+        }
 
-            System.arraycopy(matrixRow, 0, matrix[i], 0, matrixRow.length);
+        if (!GF16.solveInPlace(a, 0, oi)) {
+            return false;
+        }
+
+        for (int i = 0; i < oi; i++) {
+            x[xOff + vi + i] = a[i * w + oi];
         }
 
-        return GF16.SolveSys(matrix, vector);
+        return true;
     }
 }
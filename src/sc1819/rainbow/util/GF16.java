@@ -28,6 +28,19 @@ public class GF16 {
      * multiplicative inverse
      */
     public static final byte[] logsTable = {-1, 0, 1, 4, 2, 8, 5, 10, 3, 14, 9, 7, 6, 13, 11, 12};
+    /**
+     * this lookup table contains the product of every pair of field elements,
+     * the product of x and y is stored at index 16*x+y
+     */
+    private static final byte[] multTable = new byte[256];
+
+    static {
+        for (int x = 1; x < 16; x++) {
+            for (int y = 1; y < 16; y++) {
+                multTable[(x << 4) | y] = expsTable[(logsTable[x] + logsTable[y]) % 15];
+            }
+        }
+    }
 
     /**
      * Returns the sum of two field elements, computed casting into byte.
@@ -41,19 +54,20 @@ public class GF16 {
     }
 
     /**
-     * Product of field elements, computed using the log and exp tables.
-     * The cases x=0 or y=0 are handled separately to return 0.
+     * Product of field elements, looked up in a table precomputed from the log and exp tables.
+     * Field elements are the values from 0 to 15.
      *
      * @param x the first element of GF16 to be multiplied
      * @param y the second element of GF16 to be multiplied
      * @return the product of x and y in GF16
+     * @throws IllegalArgumentException if x or y is not a field element
      */
     static public byte mult(byte x, byte y) {
-        if (x == 0 || y == 0) {
-            return 0;
-        } else {
-            return expsTable[(logsTable[x] + logsTable[y]) % 15];
+        if (((x | y) & 0xf0) != 0) {
+            throw new IllegalArgumentException("Not a field element!");
         }
+
+        return multTable[(x << 4) | y];
     }
 
     /**
@@ -73,133 +87,208 @@ public class GF16 {
 
     /**
      * Computes the inverse of a matrix, both with coefficients in GF16.
-     * This is obtained through Gaussian-elimination, operating on a matrix A to get A=[id|inv] with inv = mat^(-1).
+     * This is obtained through Gaussian-elimination with row pivoting, operating on a matrix A to get A=[id|inv] with inv = mat^(-1).
      *
      * @param mat the matrix with coefficients in GF16 of which the inverse is to be calculated
-     * @return the inverse matrix of mat in GF16
+     * @return the inverse matrix of mat in GF16, or null if mat is singular
      */
     static public byte[][] matrixInverse(byte[][] mat) {
-        byte[][] inv;
-        byte[][] A = new byte[mat.length][2 * mat.length];
+        byte[][] id = new byte[mat.length][mat.length];
 
-        //Copy mat in a=[mat|id]
         for (int i = 0; i < mat.length; i++) {
-            System.arraycopy(mat[i], 0, A[i], 0, mat.length);
+            id[i][i] = 1;
+        }
 
-            for (int j = mat.length; j < (2 * mat.length); j++) {
-                A[i][j] = 0;
-            }
+        return solveSystems(mat, id);
+    }
 
-            A[i][i + mat.length] = 1;
+    /**
+     * Solves a linear system in GF16 of the form (mat)*x=vec through Gaussian-elimination with row pivoting.
+     *
+     * @param mat the matrix part of the system (coefficients in GF16)
+     * @param vec the vector part of the system (elements of GF16)
+     * @return the solution to the linear system in GF16, or null if mat is singular
+     */
+    public static byte[] SolveSys(byte[][] mat, byte[] vec) {
+        int n = mat.length;
+        int m = mat[0].length;
+        if (n != m) {
+            throw new IllegalArgumentException("Matrici quadrate pls");
         }
 
-        //Apply Gaussian-elimnation to obtain a=[id|inv] with inv = mat^(-1)
-        byte c, t;
-        //Apply rows operations to to the left matrix to obtain an upper triangular matrix
-        //R_i -> R_i + a[i][j]/a[j][j]*R_j
-        for (int i = 1; i < mat.length; i++) {
-            for (int j = 0; j < i; j++) {
-                c = GF16.inv(A[j][j]);
-                if (c == 0) {
-                    return null;
+        byte[][] col = new byte[n][1];
+        for (int i = 0; i < n; i++) {
+            col[i][0] = vec[i];
+        }
+
+        col = solveSystems(mat, col);
+        if (col == null) {
+            return null;
+        }
+
+        byte[] res = new byte[n];
+        for (int i = 0; i < n; i++) {
+            res[i] = col[i][0];
+        }
+        return res;
+    }
+
+    /**
+     * Solves a linear system in GF16 as {@link #SolveSys(byte[][], byte[])} does, in place and without allocating memory.
+     * The system is given as the augmented matrix [mat|vec], stored row by row in n rows of n+1 elements.
+     *
+     * @param a   the augmented matrix, overwritten: if the system is solved its last column holds the solution
+     * @param off the position in a of the first element of the augmented matrix
+     * @param n   the number of equations and of variables
+     * @return true if the system has been solved, false if mat is singular
+     */
+    public static boolean solveInPlace(byte[] a, int off, int n) {
+        int w = n + 1;
+        byte c, tmp;
+
+        for (int j = 0; j < n; j++) {
+            //find a nonzero pivot in column j and swap it into row j
+            int p = j;
+            while (p < n && a[off + p * w + j] == 0) p++;
+            if (p == n) {
+                return false;
+            }
+
+            int rj = off + j * w;
+            if (p != j) {
+                //the columns before j are zero in both rows
+                int rp = off + p * w;
+                for (int k = j; k < w; k++) {
+                    tmp = a[rp + k];
+                    a[rp + k] = a[rj + k];
+                    a[rj + k] = tmp;
                 }
-                c = GF16.mult(c, A[i][j]); //A[i][j]/A[j][j]
+            }
+
+            //R_j -> R_j / a[j][j]
+            c = GF16.inv(a[rj + j]);
+            for (int k = j; k < w; k++) {
+                a[rj + k] = GF16.mult(c, a[rj + k]);
+            }
 
-                for (int k = j; k < (2 * mat.length); k++) {
-                    t = GF16.mult(c, A[j][k]);
-                    A[i][k] = GF16.add(A[i][k], t);
+            //R_i -> R_i + a[i][j]*R_j for every other row
+            for (int i = 0; i < n; i++) {
+                int ri = off + i * w;
+                c = a[ri + j];
+                if (i == j || c == 0) continue;
+
+                for (int k = j; k < w; k++) {
+                    a[ri + k] = GF16.add(a[ri + k], GF16.mult(c, a[rj + k]));
                 }
             }
         }
 
-        //Multiply each row by A[i][i] to get 1 on the diagonal
-        //R_i -> R_i / a[i][i]
-        for (int i = 0; i < mat.length; i++) {
-            c = GF16.inv(A[i][i]);
-            if (c == 0) {
+        return true;
+    }
+
+    /**
+     * Solves a family of linear systems in GF16 sharing the same matrix, of the form (mat)*X=rhs, through Gaussian-elimination with row pivoting.
+     * Each column of rhs is the vector part of one of the systems.
+     *
+     * @param mat the square matrix part of the systems (coefficients in GF16)
+     * @param rhs the vector parts of the systems, as the columns of a matrix with as many rows as mat
+     * @return the matrix X whose columns are the solutions of the systems, or null if mat is singular
+     */
+    public static byte[][] solveSystems(byte[][] mat, byte[][] rhs) {
+        int n = mat.length;
+        if (n != mat[0].length || n != rhs.length) {
+            throw new IllegalArgumentException("Matrici di dim diversa");
+        }
+        int w = rhs[0].length;
+
+        //Copy mat in a=[mat|rhs]
+        byte[][] A = new byte[n][n + w];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(mat[i], 0, A[i], 0, n);
+            System.arraycopy(rhs[i], 0, A[i], n, w);
+        }
+
+        byte c;
+        byte[] tmp;
+        for (int j = 0; j < n; j++) {
+            //find a nonzero pivot in column j and swap it into row j
+            int p = j;
+            while (p < n && A[p][j] == 0) p++;
+            if (p == n) {
                 return null;
             }
-
-            for (int k = 0; k < (2 * mat.length); k++) {
-                A[i][k] = GF16.mult(A[i][k], c);
+            tmp = A[p];
+            A[p] = A[j];
+            A[j] = tmp;
+
+            //R_j -> R_j / a[j][j]
+            c = GF16.inv(A[j][j]);
+            for (int k = j; k < n + w; k++) {
+                A[j][k] = GF16.mult(c, A[j][k]);
             }
-        }
 
-        //Apply rows operation to the left matrix to obtain the identity matrix
-        for (int i = mat.length - 2; i >= 0; i--) {
-            for (int j = mat.length - 1; j > i; j--) {
+            //R_i -> R_i + a[i][j]*R_j for every other row
+            for (int i = 0; i < n; i++) {
                 c = A[i][j];
+                if (i == j || c == 0) continue;
 
-                for (int k = j; k < (2 * mat.length); k++) {
-                    t = GF16.mult(c, A[j][k]);
-                    A[i][k] = GF16.add(A[i][k], t);
+                for (int k = j; k < n + w; k++) {
+                    A[i][k] = GF16.add(A[i][k], GF16.mult(c, A[j][k]));
                 }
             }
         }
 
-        inv = new byte[mat.length][mat.length];
-        for (int i = 0; i < mat.length; i++) {
-            System.arraycopy(A[i], mat.length, inv[i], 0, mat.length);
+        byte[][] res = new byte[n][w];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(A[i], n, res[i], 0, w);
         }
 
-        return inv;
+        return res;
     }
 
     /**
-     * Solves a linear system in GF16 of the form (mat)*x=vec through Gaussian-elimination.
+     * Computes the product of two matrices in GF16.
      *
-     * @param mat the matrix part of the system (coefficients in GF16)
-     * @param vec the vector part of the system (elements of GF16)
-     * @return the solution to the linear system in GF16
+     * @param mat1 the first matrix with GF16 coefficients that is to be multiplied
+     * @param mat2 the second matrix with GF16 coefficients that is to be multiplied
+     * @return the product (mat1)*(mat2)
      */
-    public static byte[] SolveSys(byte[][] mat, byte[] vec) {
-        int n = mat.length;
-        int m = mat[0].length;
-        if (n != m) {
-            throw new IllegalArgumentException("Matrici quadrate pls");
+    static public byte[][] prodMatMat(byte[][] mat1, byte[][] mat2) {
+        if (mat1[0].length != mat2.length) {
+            throw new IllegalArgumentException("Matrici di dim diversa");
         }
-        byte[] res = new byte[n];
-        //gaussian elimination
-        byte[][] A = new byte[n][n + 1];
 
-        //Copy mat in a=[mat|b]
-        for (int i = 0; i < n; i++) {
-            System.arraycopy(mat[i], 0, A[i], 0, n);
-            A[i][n] = vec[i];
-        }
+        byte[][] res = new byte[mat1.length][mat2[0].length];
 
-        //Apply Gaussian-elimnation to obtain a=[id|b]
-        byte c, t;
-        //Apply rows operations to to the left matrix to obtain an upper triangular matrix
-        //R_i -> R_i + a[i][j]/a[j][j]*R_j
-        for (int i = 1; i < n; i++) {
-            for (int j = 0; j < i; j++) {
-                c = GF16.inv(A[j][j]);
-                if (c == 0) {
-                    return null;
-                }
-                c = GF16.mult(c, A[i][j]); //A[i][j]/A[j][j]
+        for (int i = 0; i < mat1.length; i++) {
+            for (int k = 0; k < mat2.length; k++) {
+                if (mat1[i][k] == 0) continue;
 
-                for (int k = j; k < n + 1; k++) {
-                    t = GF16.mult(c, A[j][k]);
-                    A[i][k] = GF16.add(A[i][k], t);
+                for (int j = 0; j < mat2[0].length; j++) {
+                    res[i][j] = GF16.add(res[i][j], GF16.mult(mat1[i][k], mat2[k][j]));
                 }
             }
         }
-        //solve the upper triangular system
-
-        if (A[n - 1][n - 1] != 0) res[n - 1] = GF16.mult(GF16.inv(A[n - 1][n - 1]), A[n - 1][n]);
-        else return null;
-        for (int k = n - 2; k >= 0; k--) {
-            byte tmp = 0;
-            for (int i = k + 1; i < n; i++) {
-                tmp = GF16.add(tmp, GF16.mult(A[k][i], res[i]));
-            }
 
-            res[k] = GF16.mult(GF16.add(A[k][n], tmp), GF16.inv(A[k][k]));
-        }
         return res;
+    }
+
+    /**
+     * Computes the transpose of a matrix.
+     *
+     * @param mat the matrix to be transposed
+     * @return the transpose of mat
+     */
+    static public byte[][] transpose(byte[][] mat) {
+        byte[][] res = new byte[mat[0].length][mat.length];
 
+        for (int i = 0; i < mat.length; i++) {
+            for (int j = 0; j < mat[0].length; j++) {
+                res[j][i] = mat[i][j];
+            }
+        }
+
+        return res;
     }
 
     /**
@@ -292,6 +381,44 @@ public class GF16 {
         return res;
     }
 
+    /**
+     * Packs an array of field elements two per byte.
+     * The element of index 2i is stored in the low nibble of the i-th byte, the element of index 2i+1 in the high nibble.
+     *
+     * @param elems the array of GF16 elements to be packed
+     * @return an array of length ceil(elems.length/2) containing the packed elements
+     */
+    static public byte[] pack(byte[] elems) {
+        byte[] res = new byte[(elems.length + 1) / 2];
+
+        for (int i = 0; i < elems.length; i++) {
+            res[i >> 1] |= (byte) ((elems[i] & 0x0f) << ((i & 1) << 2));
+        }
+
+        return res;
+    }
+
+    /**
+     * Unpacks an array of field elements stored two per byte, as produced by {@link #pack(byte[])}.
+     *
+     * @param packed the array of packed elements
+     * @param length the number of field elements to be unpacked
+     * @return an array containing the unpacked GF16 elements
+     */
+    static public byte[] unpack(byte[] packed, int length) {
+        if (packed.length < (length + 1) / 2) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        byte[] res = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            res[i] = (byte) ((packed[i >> 1] >> ((i & 1) << 2)) & 0x0f);
+        }
+
+        return res;
+    }
+
     static public String toHex(byte[] data) {
         String digits = "0123456789abcdef";
 
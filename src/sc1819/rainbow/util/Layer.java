@@ -2,6 +2,7 @@ package sc1819.rainbow.util;
 
 import java.io.Serializable;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 
 /**
@@ -37,7 +38,7 @@ public class Layer implements Serializable {
     public Layer(int vi, int oi, SecureRandom random) {
         this.vi = vi;
         this.oi = oi;
-        byte[][][] alpha = new byte[oi][vi][vi];
+        byte[] alpha = new byte[vi * (vi + 1) / 2];
         byte[][][] beta = new byte[oi][vi][oi];
         byte[][] gammav = new byte[oi][vi];
         byte[][] gammao = new byte[oi][oi];
@@ -45,9 +46,12 @@ public class Layer implements Serializable {
         poly = new MultQuad[oi][3];
 
         for (int i = 0; i < oi; i++) {
+            // alpha is upper triangular, its coefficients are stored in row order
+            int t = 0;
+
             for (int j = 0; j < vi; j++) {
-                for (int k = 0; k < vi; k++) {
-                    if (j <= k) alpha[i][j][k] = (byte) random.nextInt(16);
+                for (int k = j; k < vi; k++) {
+                    alpha[t++] = (byte) random.nextInt(16);
                 }
 
                 for (int k = 0; k < oi; k++) {
@@ -63,7 +67,34 @@ public class Layer implements Serializable {
 
             delta[i] = (byte) random.nextInt(16);
 
-            poly[i][0] = new MultQuad(alpha[i], gammav[i], delta[i]);
+            poly[i][0] = new MultQuad(GF16.pack(alpha), vi, gammav[i], delta[i]);
+            poly[i][1] = new MultQuad(beta[i]);
+            poly[i][2] = new MultQuad(gammao[i]);
+        }
+
+        Arrays.fill(alpha, (byte) 0);
+    }
+
+    /**
+     * Constructor, builds a layer from the coefficients of its polynomials.
+     * The i-th polynomial of the layer is given by the quadratic components alpha[i] (vinegar-vinegar) and beta[i] (vinegar-oil),
+     * the linear components gammav[i] (vinegar) and gammao[i] (oil) and the free term delta[i].
+     *
+     * @param vi     the number of vinegar variables in this Layer.
+     * @param oi     the number of oil variables in this Layer.
+     * @param alpha  the oi x vi x vi coefficients of the vinegar-vinegar components, upper triangular
+     * @param beta   the oi x vi x oi coefficients of the vinegar-oil components
+     * @param gammav the oi x vi coefficients of the vinegar linear components
+     * @param gammao the oi x oi coefficients of the oil linear components
+     * @param delta  the oi free terms
+     */
+    public Layer(int vi, int oi, byte[][][] alpha, byte[][][] beta, byte[][] gammav, byte[][] gammao, byte[] delta) {
+        this.vi = vi;
+        this.oi = oi;
+        poly = new MultQuad[oi][3];
+
+        for (int i = 0; i < oi; i++) {
+            poly[i][0] = new MultQuad(MultQuad.packUpper(alpha[i]), vi, gammav[i], delta[i]);
             poly[i][1] = new MultQuad(beta[i]);
             poly[i][2] = new MultQuad(gammao[i]);
         }
@@ -77,15 +108,10 @@ public class Layer implements Serializable {
      * @return the result of the evaluation
      */
     public byte polyEval(MultQuad[] poly, byte[] x) {
-        byte[] xv = new byte[vi];
-        byte[] xo = new byte[oi];
-
-        System.arraycopy(x, 0, xv, 0, vi);
-        System.arraycopy(x, vi, xo, 0, oi);
-
-        byte res = poly[0].eval(xv, xv);
-        res = GF16.add(res, poly[1].eval(xv, xo));
-        res = GF16.add(res, poly[2].eval(xo));
+        // the vinegar variables are the first vi elements of x, the oil variables the following oi
+        byte res = poly[0].eval(x, 0, 0);
+        res = GF16.add(res, poly[1].eval(x, 0, vi));
+        res = GF16.add(res, poly[2].eval(x, vi, 0));
 
         return res;
     }
@@ -98,12 +124,34 @@ public class Layer implements Serializable {
      */
     public byte[] eval(byte[] x) {
         byte[] res = new byte[oi];
+        eval(x, res, 0);
+
+        return res;
+    }
 
+    /**
+     * Computes the evaluation of each polynomial of this layer on an array of field elements, writing the results
+     * into another array, without allocating memory.
+     *
+     * @param x      the array on which the polynomials are evaluated, whose first vi+oi elements are used
+     * @param out    the array receiving the oi results
+     * @param outOff the position in out of the first result
+     */
+    public void eval(byte[] x, byte[] out, int outOff) {
         for (int i = 0; i < oi; i++) {
-            res[i] = polyEval(poly[i], x);
+            out[outOff + i] = polyEval(poly[i], x);
         }
+    }
 
-        return res;
+    /**
+     * Overwrites the coefficients of all the polynomials of this Layer with zeros.
+     */
+    public void wipe() {
+        for (MultQuad[] p : poly) {
+            for (MultQuad component : p) {
+                component.wipe();
+            }
+        }
     }
 
     /**
@@ -1,6 +1,7 @@
 package sc1819.rainbow.util;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * This class is used to represent multivariate quadratic polynomials,
@@ -15,7 +16,10 @@ import java.io.Serializable;
  * {@code 1} if consisting of only a quadratic component;
  * </li>
  * <li>
- * {@code 2} if consisting of only a linear component.
+ * {@code 2} if consisting of only a linear component;
+ * </li>
+ * <li>
+ * {@code 3} if total, with an upper triangular quadratic component stored packed.
  * </li>
  * </ul>
  * <p>
@@ -32,6 +36,17 @@ public class MultQuad implements Serializable {
      */
     private byte[][] quad;
 
+    /**
+     * The upper triangular coefficients of the quadratic component of a MultQuad of type=3, in row order,
+     * packed two per byte as in {@link GF16#pack(byte[])}.
+     */
+    private byte[] triangle;
+
+    /**
+     * The number of rows, and columns, of the quadratic component of a MultQuad of type=3.
+     */
+    private int size;
+
     /**
      * An array of elements of GF16, containing the coefficients of the linear component of this MultQuad.
      */
@@ -53,11 +68,14 @@ public class MultQuad implements Serializable {
      * {@code type=1} if this MultQuad consists of only a quadratic component;
      * </li>
      * <li>
-     * {@code type=02} if this MultQuad consists of only a linear component.
+     * {@code type=02} if this MultQuad consists of only a linear component;
+     * </li>
+     * <li>
+     * {@code type=3} if this MultQuad is total and its quadratic component is upper triangular, stored in {@code triangle}.
      * </li>
      * </ul>
      */
-    private int type; //0 total; 1 onlyQuad; 2 onlyLin
+    private int type; //0 total; 1 onlyQuad; 2 onlyLin; 3 total, packed triangular quad
 
 
     /**
@@ -94,6 +112,45 @@ public class MultQuad implements Serializable {
         this.lin = lin;
     }
 
+    /**
+     * Constructor, builds a MultQuad of type=3, that is with all components, whose quadratic component is upper triangular.
+     *
+     * @param triangle the upper triangular coefficients of the quadratic component in row order, packed as in {@link GF16#pack(byte[])}
+     * @param size     the number of rows of the quadratic component
+     * @param lin      the array representing the coefficients of the linear component
+     * @param term     the field element representing the free term
+     */
+    public MultQuad(byte[] triangle, int size, byte[] lin, byte term) {
+        if (triangle.length != (size * (size + 1) / 2 + 1) / 2) {
+            throw new IllegalArgumentException("Wrong dimensions!");
+        }
+
+        this.type = 3;
+        this.triangle = triangle;
+        this.size = size;
+        this.lin = lin;
+        this.term = term;
+    }
+
+    /**
+     * Packs the upper triangular part of a square matrix, in row order, as expected by the constructor of a MultQuad of type=3.
+     *
+     * @param quad the square matrix, its entries below the diagonal are ignored
+     * @return the packed upper triangular coefficients
+     */
+    public static byte[] packUpper(byte[][] quad) {
+        byte[] coeffs = new byte[quad.length * (quad.length + 1) / 2];
+        int k = 0;
+
+        for (int i = 0; i < quad.length; i++) {
+            for (int j = i; j < quad.length; j++) {
+                coeffs[k++] = quad[i][j];
+            }
+        }
+
+        return GF16.pack(coeffs);
+    }
+
     /**
      * Returns the result of evaluating the linear part of this MultQuad.
      *
@@ -111,7 +168,10 @@ public class MultQuad implements Serializable {
      * if {@code type=0} the result is given by (x1*{@code this.quad})*x2+(x1*{@code this.lin})+{@code this.term};
      * </li>
      * <li>
-     * if {@code type=1} the result is given by (x1*{@code this.quad})*x2.
+     * if {@code type=1} the result is given by (x1*{@code this.quad})*x2;
+     * </li>
+     * <li>
+     * if {@code type=3} the result is computed as for {@code type=0}, running only over the upper triangle of the quadratic component.
      * </li>
      * </ul>
      *
@@ -120,7 +180,7 @@ public class MultQuad implements Serializable {
      * @return the result of the computation
      */
     public byte eval(byte[] x1, byte[] x2) {
-        byte scal1 = GF16.prodVecVec(GF16.prodVectMat(x1, quad), x2);
+        byte scal1 = type == 3 ? evalTriangle(x1, 0, x2, 0) : GF16.prodVecVec(GF16.prodVectMat(x1, quad), x2);
 
         if (type == 1) {
             return scal1;
@@ -134,6 +194,79 @@ public class MultQuad implements Serializable {
     }
 
 
+    /**
+     * Returns the result of evaluating this MultQuad as {@link #eval(byte[], byte[])} does, or as {@link #eval(byte[])}
+     * if {@code type=2}, with both arrays of field elements taken from the same array, without allocating memory.
+     *
+     * @param x    the array containing the field elements
+     * @param off1 the position in x of the first array, as long as the rows of the quadratic component or the linear component
+     * @param off2 the position in x of the second array, as long as the columns of the quadratic component
+     * @return the result of the computation
+     */
+    public byte eval(byte[] x, int off1, int off2) {
+        if (type == 2) {
+            return evalLin(x, off1);
+        }
+
+        byte res = 0;
+
+        if (type == 3) {
+            res = evalTriangle(x, off1, x, off2);
+        } else {
+            for (int i = 0; i < quad.length; i++) {
+                byte[] coeffs = quad[i];
+                byte row = 0;
+
+                for (int j = 0; j < coeffs.length; j++) {
+                    row = GF16.add(row, GF16.mult(coeffs[j], x[off2 + j]));
+                }
+
+                res = GF16.add(res, GF16.mult(x[off1 + i], row));
+            }
+        }
+
+        if (type == 1) {
+            return res;
+        }
+
+        return GF16.add(GF16.add(res, evalLin(x, off1)), term);
+    }
+
+    /**
+     * Returns the result of evaluating the linear part of this MultQuad on the field elements of an array from a given position.
+     */
+    private byte evalLin(byte[] x, int off) {
+        byte res = 0;
+
+        for (int i = 0; i < lin.length; i++) {
+            res = GF16.add(res, GF16.mult(lin[i], x[off + i]));
+        }
+
+        return res;
+    }
+
+    /**
+     * Computes the sum of c_ij*x1_i*x2_j over the upper triangle of the quadratic component of a MultQuad of type=3,
+     * reading the coefficients directly from their packed form.
+     */
+    private byte evalTriangle(byte[] x1, int off1, byte[] x2, int off2) {
+        byte res = 0;
+        int k = 0;
+
+        for (int i = 0; i < size; i++) {
+            byte row = 0;
+
+            for (int j = i; j < size; j++, k++) {
+                byte coeff = (byte) ((triangle[k >> 1] >> ((k & 1) << 2)) & 0x0F);
+                row = GF16.add(row, GF16.mult(coeff, x2[off2 + j]));
+            }
+
+            res = GF16.add(res, GF16.mult(x1[off1 + i], row));
+        }
+
+        return res;
+    }
+
     /**
      * Combines two MultQuads by adding their coefficients one by one.
      *
@@ -205,15 +338,70 @@ public class MultQuad implements Serializable {
         term = GF16.add(term, v);
     }
 
+    /**
+     * Overwrites all the coefficients of this MultQuad with zeros.
+     */
+    public void wipe() {
+        if (quad != null) {
+            for (byte[] row : quad) {
+                Arrays.fill(row, (byte) 0);
+            }
+        }
+        if (triangle != null) {
+            Arrays.fill(triangle, (byte) 0);
+        }
+        if (lin != null) {
+            Arrays.fill(lin, (byte) 0);
+        }
+        term = 0;
+    }
+
     /**
      * Returns the quadratic part of this MultQuad.
+     * If this MultQuad is of type=3 the matrix is unpacked on every call, with zeros below the diagonal.
      *
      * @return the {@code quad} of this MultQuad
      */
     public byte[][] getQuad() {
+        if (type == 3) {
+            byte[] coeffs = GF16.unpack(triangle, size * (size + 1) / 2);
+            byte[][] res = new byte[size][size];
+            int k = 0;
+
+            for (int i = 0; i < size; i++) {
+                for (int j = i; j < size; j++) {
+                    res[i][j] = coeffs[k++];
+                }
+            }
+
+            return res;
+        }
+
         return quad;
     }
 
+    /**
+     * Returns a coefficient of the quadratic part of this MultQuad without allocating memory,
+     * reading it from the packed form if this MultQuad is of type=3.
+     *
+     * @param i the row of the coefficient
+     * @param j the column of the coefficient
+     * @return the coefficient of x1_i*x2_j
+     */
+    public byte getQuad(int i, int j) {
+        if (type == 3) {
+            if (j < i) {
+                return 0;
+            }
+
+            // the rows before i hold size+(size-1)+...+(size-i+1) coefficients
+            int k = i * size - i * (i - 1) / 2 + j - i;
+            return (byte) ((triangle[k >> 1] >> ((k & 1) << 2)) & 0x0F);
+        }
+
+        return quad[i][j];
+    }
+
     /**
      * Returns the linear part of this MultQuad.
      *
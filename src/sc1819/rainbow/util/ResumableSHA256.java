@@ -0,0 +1,230 @@
+package sc1819.rainbow.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class computes SHA-256 (FIPS 180-4) incrementally, like a MessageDigest, but its internal state can be exported
+ * and imported back, so that hashing a growing input can be resumed later, possibly by another process,
+ * from where it stopped.
+ * <p>
+ * The exported state is made of the number of bytes hashed so far as a long, the eight words of the midstate as ints
+ * and the bytes of the last, incomplete, block.
+ * <p>
+ * Computing a digest does not alter the state, so more data can be added afterwards.
+ */
+public class ResumableSHA256 {
+
+    private static final int[] INIT = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    /**
+     * The length in bytes of a block.
+     */
+    public static final int BLOCK_SIZE = 64;
+
+    private final int[] state = INIT.clone();
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private final int[] w = new int[64];
+    private long length;
+
+    /**
+     * Constructor, starts hashing from the empty input.
+     */
+    public ResumableSHA256() {
+    }
+
+    /**
+     * Adds bytes to the hashed input.
+     *
+     * @param data   the array containing the bytes
+     * @param offset the first byte to be added
+     * @param len    the number of bytes to be added
+     */
+    public void update(byte[] data, int offset, int len) {
+        int fill = (int) (length % BLOCK_SIZE);
+        length += len;
+
+        if (fill > 0) {
+            int n = Math.min(len, BLOCK_SIZE - fill);
+            System.arraycopy(data, offset, buffer, fill, n);
+            offset += n;
+            len -= n;
+
+            if (fill + n < BLOCK_SIZE) return;
+            compress(buffer, 0);
+        }
+
+        for (; len >= BLOCK_SIZE; offset += BLOCK_SIZE, len -= BLOCK_SIZE) {
+            compress(data, offset);
+        }
+
+        System.arraycopy(data, offset, buffer, 0, len);
+    }
+
+    /**
+     * Adds bytes to the hashed input.
+     *
+     * @param data the bytes to be added
+     */
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * Adds the remaining bytes of a buffer to the hashed input, consuming them.
+     *
+     * @param data the buffer containing the bytes to be added
+     */
+    public void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(data.remaining(), 1 << 16)];
+        while (data.hasRemaining()) {
+            int n = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, n);
+            update(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Computes the digest of the input hashed so far, leaving the state unaltered.
+     *
+     * @return the 32 bytes of the digest
+     */
+    public byte[] digest() {
+        ResumableSHA256 copy = importState(exportState());
+
+        byte[] pad = new byte[(int) (BLOCK_SIZE - (length + 8) % BLOCK_SIZE) + 8];
+        pad[0] = (byte) 0x80;
+        ByteBuffer.wrap(pad).putLong(pad.length - 8, length << 3);
+        copy.update(pad, 0, pad.length);
+
+        ByteBuffer res = ByteBuffer.allocate(32);
+        for (int word : copy.state) {
+            res.putInt(word);
+        }
+
+        return res.array();
+    }
+
+    /**
+     * Returns the number of bytes hashed so far.
+     *
+     * @return the length of the input
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Exports the state of this computation.
+     *
+     * @return the length of the input, the midstate and the pending bytes
+     */
+    public byte[] exportState() {
+        int pending = (int) (length % BLOCK_SIZE);
+        ByteBuffer res = ByteBuffer.allocate(Long.BYTES + 4 * state.length + pending);
+
+        res.putLong(length);
+        for (int word : state) {
+            res.putInt(word);
+        }
+        res.put(buffer, 0, pending);
+
+        return res.array();
+    }
+
+    /**
+     * Resumes a computation from an exported state.
+     *
+     * @param exported the state returned by {@link #exportState()}
+     * @return a computation which continues the exported one
+     * @throws IllegalArgumentException if the state is not valid
+     */
+    public static ResumableSHA256 importState(byte[] exported) {
+        ByteBuffer in = ByteBuffer.wrap(exported);
+        ResumableSHA256 res = new ResumableSHA256();
+
+        if (exported.length < Long.BYTES + 4 * INIT.length) {
+            throw new IllegalArgumentException("Stato non valido!");
+        }
+
+        res.length = in.getLong();
+        for (int i = 0; i < res.state.length; i++) {
+            res.state[i] = in.getInt();
+        }
+
+        if (res.length < 0 || in.remaining() != res.length % BLOCK_SIZE) {
+            throw new IllegalArgumentException("Stato non valido!");
+        }
+        in.get(res.buffer, 0, in.remaining());
+
+        return res;
+    }
+
+    /**
+     * Returns the pending bytes, that is the last {@code length % 64} bytes of the input.
+     *
+     * @return a copy of the pending bytes
+     */
+    public byte[] getPending() {
+        return Arrays.copyOf(buffer, (int) (length % BLOCK_SIZE));
+    }
+
+    private void compress(byte[] block, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int j = offset + 4 * i;
+            w[i] = (block[j] << 24) | ((block[j + 1] & 0xff) << 16) | ((block[j + 2] & 0xff) << 8) | (block[j + 3] & 0xff);
+        }
+        for (int i = 16; i < 64; i++) {
+            int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18) ^ (w[i - 15] >>> 3);
+            int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19) ^ (w[i - 2] >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0], b = state[1], c = state[2], d = state[3];
+        int e = state[4], f = state[5], g = state[6], h = state[7];
+
+        for (int i = 0; i < 64; i++) {
+            int t1 = h + (Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25))
+                    + ((e & f) ^ (~e & g)) + K[i] + w[i];
+            int t2 = (Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22))
+                    + ((a & b) ^ (a & c) ^ (b & c));
+
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+}
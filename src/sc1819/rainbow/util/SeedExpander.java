@@ -0,0 +1,114 @@
+package sc1819.rainbow.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * This class expands a short seed into an arbitrarily long stream of bytes and field elements.
+ * <p>
+ * The stream is made of the blocks SHA-256(seed||i), where i is a 64-bit big-endian counter starting from zero,
+ * hence the same seed always produces the same stream.
+ * When field elements are drawn through {@code nextInt(16)}, each byte of the stream gives two elements, the low nibble first.
+ * <p>
+ * Being a SecureRandom, a SeedExpander can be passed to every constructor which generates key material
+ * in order to regenerate it deterministically from the seed.
+ */
+public class SeedExpander extends SecureRandom {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The length in bytes of a seed.
+     */
+    public static final int SEED_LENGTH = 32;
+
+    private final MessageDigest sha;
+    /**
+     * The input of the next block: the seed followed by the counter.
+     */
+    private final byte[] input;
+    private final byte[] block;
+    private long counter;
+    /**
+     * The index of the next nibble of the current block to be returned, the current block is exhausted when it reaches twice its length.
+     */
+    private int position;
+
+    /**
+     * Constructor, sets up the stream of a seed.
+     *
+     * @param seed the seed to be expanded
+     */
+    public SeedExpander(byte[] seed) {
+        try {
+            this.sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("can't find SHA-256!");
+        }
+
+        this.input = new byte[seed.length + 8];
+        System.arraycopy(seed, 0, input, 0, seed.length);
+        this.block = new byte[sha.getDigestLength()];
+        this.counter = 0;
+        this.position = 2 * block.length;
+    }
+
+    private void nextBlock() {
+        for (int i = 0; i < 8; i++) {
+            input[input.length - 1 - i] = (byte) (counter >>> (8 * i));
+        }
+        sha.update(input);
+        counter++;
+
+        try {
+            sha.digest(block, 0, block.length);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+
+        position = 0;
+    }
+
+    /**
+     * Returns the next field element of the stream.
+     *
+     * @return a field element
+     */
+    public byte nextElement() {
+        if (position >= 2 * block.length) {
+            nextBlock();
+        }
+
+        byte res = (byte) ((block[position >> 1] >> ((position & 1) << 2)) & 0x0f);
+        position++;
+
+        return res;
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        // realign to a whole byte
+        if ((position & 1) == 1) {
+            position++;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (position >= 2 * block.length) {
+                nextBlock();
+            }
+
+            bytes[i] = block[position >> 1];
+            position += 2;
+        }
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound == 16) {
+            return nextElement();
+        }
+
+        return super.nextInt(bound);
+    }
+}
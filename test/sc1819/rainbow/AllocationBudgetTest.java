@@ -0,0 +1,140 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.debug.CounterRand;
+
+import java.lang.management.ManagementFactory;
+import java.security.SecureRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Regression tests of the allocation budgets of the sign and verify hot paths, which must allocate nothing once warm
+ * but the signature returned by {@link RainbowSecKey#sign(byte[], SecureRandom)}.
+ * The allocations are counted for the current thread by {@link com.sun.management.ThreadMXBean}; signatures are drawn
+ * with a {@link CounterRand}, since every {@link SecureRandom} of the JDK allocates on each call.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class AllocationBudgetTest {
+
+    /**
+     * The number of warm-up runs, then of measured runs, of each operation.
+     */
+    private static final int RUNS = 2000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final RainbowSecKey sk;
+    private final RainbowPubKey pk;
+    private final CompiledPubKey compiled;
+    private final byte[] h, signature;
+
+    private int failures = 0;
+
+    private AllocationBudgetTest(RainbowParameters param) {
+        RainbowKeyPair keyPair = new RainbowKeyPair(param, new SecureRandom());
+
+        this.sk = keyPair.getSk();
+        this.pk = keyPair.getPk();
+        this.compiled = CompiledPubKey.compile(pk);
+        this.h = new byte[sk.getEqNum()];
+        this.signature = new byte[sk.getVarNum()];
+
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < h.length; i++) {
+            h[i] = (byte) random.nextInt(16);
+        }
+    }
+
+    public static void main(String[] args) {
+        AllocationBudgetTest test = new AllocationBudgetTest(new RainbowParameters());
+
+        if (!test.threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Allocated bytes are not counted by this JVM!");
+            System.exit(1);
+        }
+        test.threads.setThreadAllocatedMemoryEnabled(true);
+
+        test.signerAllocatesNothing();
+        test.secretKeyAllocatesOnlyTheSignature();
+        test.selfCheckAllocatesNothing();
+        test.verifyAllocatesNothing();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void signerAllocatesNothing() {
+        RainbowSigner signer = new RainbowSigner(sk, new CounterRand());
+
+        check("RainbowSigner.sign", () -> {
+            signer.sign(h, signature);
+            return true;
+        }, 0);
+        check("RainbowSigner.sign is valid", pk.verify(signature, h));
+    }
+
+    private void secretKeyAllocatesOnlyTheSignature() {
+        SecureRandom random = new CounterRand();
+
+        // a byte array is a 16 bytes header and its elements, rounded up to 8 bytes
+        check("RainbowSecKey.sign", () -> sk.sign(h, random).length == sk.getVarNum(), 16 + (sk.getVarNum() + 7) / 8 * 8);
+        check("RainbowSecKey.sign is valid", pk.verify(sk.sign(h, random), h));
+    }
+
+    private void selfCheckAllocatesNothing() {
+        CompiledSecKey key = sk.compile();
+        long[] scratch = new long[key.getScratchSize()];
+        byte[] valid = sk.sign(h, new CounterRand());
+
+        check("CompiledSecKey.check", () -> key.check(valid, h, scratch), 0);
+
+        RainbowSigner signer = new RainbowSigner(sk, new CounterRand(), true);
+        check("RainbowSigner.sign with self-check", () -> {
+            signer.sign(h, signature);
+            return true;
+        }, 0);
+
+        SecureRandom random = new CounterRand();
+        check("RainbowSecKey.sign with self-check", () -> sk.sign(h, random, true).length == sk.getVarNum(),
+                16 + (sk.getVarNum() + 7) / 8 * 8);
+    }
+
+    private void verifyAllocatesNothing() {
+        byte[] valid = sk.sign(h, new CounterRand());
+        long[] scratch = new long[compiled.getScratchSize()];
+
+        check("RainbowPubKey.verify", () -> pk.verify(valid, h), 0);
+        check("CompiledPubKey.verify", () -> compiled.verify(valid, h, scratch), 0);
+    }
+
+    /**
+     * Runs an operation {@link #RUNS} times after as many warm-up runs, and checks that it succeeds and that on average
+     * it allocates at most the budget.
+     */
+    private void check(String name, BooleanSupplier operation, double budget) {
+        long thread = Thread.currentThread().getId();
+        boolean ok = true;
+
+        for (int i = 0; i < RUNS; i++) {
+            ok &= operation.getAsBoolean();
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < RUNS; i++) {
+            ok &= operation.getAsBoolean();
+        }
+        double allocated = (double) (threads.getThreadAllocatedBytes(thread) - start) / RUNS;
+
+        check(String.format("%s, %.1f B (budget %.1f B)", name, allocated, budget), ok && allocated <= budget);
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Regression tests of {@link AppendHash}: a resumed hash must equal the hash of the whole file,
+ * and a checkpoint must not be resumed on another file or on a file whose hashed prefix was rewritten.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class AppendHashTest {
+
+    private final Random random = new Random(1);
+    private final Path dir;
+
+    private int failures = 0;
+
+    private AppendHashTest() throws IOException {
+        this.dir = Files.createTempDirectory("append-hash-test");
+    }
+
+    public static void main(String[] args) throws IOException, NoSuchAlgorithmException {
+        AppendHashTest test = new AppendHashTest();
+
+        test.resumeMatchesFullHash();
+        test.resumeAcrossChunks();
+        test.rewrittenPrefixFails();
+        test.rewrittenChunkFails();
+        test.otherFileFails();
+        test.truncatedFileFails();
+        test.removedStateRestarts();
+        test.clean();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void resumeMatchesFullHash() throws IOException, NoSuchAlgorithmException {
+        Path log = file("log1", 6000);
+        AppendHash hash = new AppendHash(dir.resolve("st1").toString());
+
+        check("first hash", Arrays.equals(hash.hash(log.toString()), expected(log)));
+        append(log, 1234);
+        check("resumed hash", Arrays.equals(hash.hash(log.toString()), expected(log)) && hash.getLength() == 7234);
+        check("resumed hash without new bytes", Arrays.equals(hash.hash(log.toString()), expected(log)));
+    }
+
+    private void resumeAcrossChunks() throws IOException, NoSuchAlgorithmException {
+        Path log = file("log2", AppendHash.CHUNK_SIZE);
+        AppendHash hash = new AppendHash(dir.resolve("st2").toString());
+
+        check("hash of a complete chunk", Arrays.equals(hash.hash(log.toString()), expected(log)));
+        append(log, 2 * AppendHash.CHUNK_SIZE + 77);
+        check("hash resumed across chunks", Arrays.equals(hash.hash(log.toString()), expected(log)));
+        append(log, 5);
+        check("hash resumed in a chunk", Arrays.equals(hash.hash(log.toString()), expected(log)));
+    }
+
+    private void rewrittenPrefixFails() throws IOException {
+        Path log = file("log3", 6000);
+        AppendHash hash = new AppendHash(dir.resolve("st3").toString());
+
+        hash.hash(log.toString());
+        overwrite(log, 10);
+        append(log, 100);
+        check("rewritten prefix is refused", fails(hash, log));
+    }
+
+    private void rewrittenChunkFails() throws IOException {
+        Path log = file("log4", 3 * AppendHash.CHUNK_SIZE + 100);
+        AppendHash hash = new AppendHash(dir.resolve("st4").toString());
+
+        hash.hash(log.toString());
+        overwrite(log, AppendHash.CHUNK_SIZE + 10);
+        append(log, 100);
+        check("rewritten complete chunk is refused", fails(hash, log));
+    }
+
+    private void otherFileFails() throws IOException {
+        Path log = file("log5", 6000);
+        Path copy = dir.resolve("log5.copy");
+        AppendHash hash = new AppendHash(dir.resolve("st5").toString());
+
+        hash.hash(log.toString());
+        Files.copy(log, copy);
+        check("state of another file is refused", fails(hash, copy));
+    }
+
+    private void truncatedFileFails() throws IOException {
+        Path log = file("log6", 6000);
+        AppendHash hash = new AppendHash(dir.resolve("st6").toString());
+
+        hash.hash(log.toString());
+        try (RandomAccessFile f = new RandomAccessFile(log.toFile(), "rw")) {
+            f.setLength(3000);
+        }
+        check("truncated file is refused", fails(hash, log));
+    }
+
+    private void removedStateRestarts() throws IOException, NoSuchAlgorithmException {
+        Path log = file("log7", 6000);
+        Path state = dir.resolve("st7");
+        AppendHash hash = new AppendHash(state.toString());
+
+        hash.hash(log.toString());
+        overwrite(log, 10);
+        Files.delete(state);
+        check("hash from the start once the state is removed", Arrays.equals(hash.hash(log.toString()), expected(log)));
+    }
+
+    private void clean() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private Path file(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+
+        return Files.write(dir.resolve(name), data);
+    }
+
+    private void append(Path file, int size) throws IOException {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+
+        Files.write(file, data, StandardOpenOption.APPEND);
+    }
+
+    private static void overwrite(Path file, long position) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+            f.seek(position);
+            int b = f.read();
+            f.seek(position);
+            f.write(b ^ 0xff);
+        }
+    }
+
+    private static byte[] expected(Path file) throws IOException, NoSuchAlgorithmException {
+        byte[] data = Files.readAllBytes(file);
+
+        return AppendHash.target(data.length, MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    private static boolean fails(AppendHash hash, Path file) {
+        try {
+            hash.hash(file.toString());
+            return false;
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
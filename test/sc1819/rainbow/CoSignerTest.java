@@ -0,0 +1,175 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Round trip tests of {@link CoSigner}: the signatures made in a single pass by keys with different parameters
+ * must verify one by one against their own hash of the file, and all together, also next to signatures
+ * hashed in other ways, while the signatures of a changed file or given to the wrong key must not.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class CoSignerTest {
+
+    private final SecureRandom random = new SecureRandom();
+    private final List<RainbowKeyPair> keyPairs = new ArrayList<>();
+    private final Path dir;
+
+    private int failures = 0;
+
+    private CoSignerTest() throws IOException {
+        this.dir = Files.createTempDirectory("cosigner-test");
+
+        // keys with different numbers of equations, whose targets are split from the same output
+        keyPairs.add(new RainbowKeyPair(new RainbowParameters(4, 3, 5), random));
+        keyPairs.add(new RainbowKeyPair(new RainbowParameters(6, 4, 4), random));
+        keyPairs.add(new RainbowKeyPair(new RainbowParameters(), random));
+    }
+
+    public static void main(String[] args) throws IOException {
+        CoSignerTest test = new CoSignerTest();
+
+        try {
+            test.coSignatureRoundTrip(MessageHash.SHAKE128, 1);
+            test.coSignatureRoundTrip(MessageHash.SHA256, 3);
+            test.mixedSignaturesVerify();
+            test.signatureCountMustMatch();
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void coSignatureRoundTrip(byte hashId, int threads) throws IOException {
+        String name = "hash " + hashId + ", " + threads + " threads";
+        String file = write("file", 100000);
+        CoSigner coSigner = new CoSigner(threads);
+
+        RainbowSignature[] signatures = coSigner.sign(secretKeys(), file, hashId, random, true);
+
+        boolean alone = signatures.length == keyPairs.size();
+        for (int i = 0; alone && i < signatures.length; i++) {
+            RainbowPubKey pk = keyPairs.get(i).getPk();
+            MessageHash hash = MessageHash.getInstance(hashId);
+            hash.update(Files.readAllBytes(Path.of(file)));
+
+            alone = signatures[i].getMode() == RainbowSignature.PLAIN && signatures[i].getHash() == hashId
+                    && pk.verify(signatures[i].getElements(), hash.expand(pk.getEqNum()));
+        }
+        check(name + ": each signature verifies alone", alone);
+        check(name + ": signatures verify together", allTrue(coSigner.verify(publicKeys(), file, List.of(signatures))));
+
+        List<RainbowSignature> swapped = new ArrayList<>(List.of(signatures));
+        swapped.set(0, signatures[1]);
+        swapped.set(1, signatures[0]);
+        boolean[] valid = coSigner.verify(publicKeys(), file, swapped);
+        check(name + ": signatures given to the wrong keys fail", !valid[0] && !valid[1] && valid[2]);
+
+        flip(file, 54321);
+        valid = coSigner.verify(publicKeys(), file, List.of(signatures));
+        check(name + ": changed file fails", !valid[0] && !valid[1] && !valid[2]);
+    }
+
+    private void mixedSignaturesVerify() throws IOException {
+        String file = write("mixed", (int) (3 * (1L << MerkleHash.DEFAULT_CHUNK_BITS) / 2));
+        String pk = dir.resolve("pk").toString(), sk = dir.resolve("sk").toString(), merkle = dir.resolve("mixed.sig").toString();
+
+        RainbowKeyPair keyPair = new RainbowKeyPair(new RainbowParameters(), random);
+        keyPair.writeKeys(pk, sk);
+        RainbowScheme.sign(sk, file, merkle, true);
+
+        CoSigner coSigner = new CoSigner();
+        RainbowSignature[] plain = coSigner.sign(secretKeys(), file, MessageHash.BLAKE2B, random);
+
+        List<PublicMap> keys = new ArrayList<>(publicKeys());
+        keys.add(keyPair.getPk());
+        List<RainbowSignature> signatures = new ArrayList<>(List.of(plain));
+        signatures.add(RainbowScheme.readSignature(merkle));
+
+        check("plain and Merkle signatures verify together", allTrue(coSigner.verify(keys, file, signatures)));
+    }
+
+    private void signatureCountMustMatch() throws IOException {
+        String file = write("count", 100);
+
+        try {
+            new CoSigner().verify(publicKeys(), file, List.of());
+            check("missing signatures are rejected", false);
+        } catch (IllegalArgumentException ex) {
+            check("missing signatures are rejected", true);
+        }
+    }
+
+    private List<RainbowSecKey> secretKeys() {
+        List<RainbowSecKey> keys = new ArrayList<>();
+        for (RainbowKeyPair keyPair : keyPairs) {
+            keys.add(keyPair.getSk());
+        }
+
+        return keys;
+    }
+
+    private List<PublicMap> publicKeys() {
+        List<PublicMap> keys = new ArrayList<>();
+        for (RainbowKeyPair keyPair : keyPairs) {
+            keys.add(keyPair.getPk());
+        }
+
+        return keys;
+    }
+
+    private static boolean allTrue(boolean[] values) {
+        for (boolean value : values) {
+            if (!value) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String write(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+
+        return Files.write(dir.resolve(name), content).toString();
+    }
+
+    private static void flip(String file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+    }
+
+    private void clean() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
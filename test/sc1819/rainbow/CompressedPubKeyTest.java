@@ -0,0 +1,175 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.util.GF16;
+import sc1819.rainbow.util.MultQuad;
+import sc1819.rainbow.util.SeedExpander;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Regression tests of {@link CompressedPubKey}: a compressed key must expand to the public key of the secret key
+ * generated for its seed, its seeded coefficients must be the output of the {@link SeedExpander},
+ * and signatures must verify with the compressed key as with the expanded one.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class CompressedPubKeyTest {
+
+    /**
+     * The number of signatures checked for each key.
+     */
+    private static final int SIGNATURES = 20;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        CompressedPubKeyTest test = new CompressedPubKeyTest();
+
+        test.run(new RainbowParameters(4, 3, 5), false);
+        test.run(new RainbowParameters(4, 3, 5), true);
+        test.run(new RainbowParameters(), false);
+        test.wrongSeedIsRejected();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void run(RainbowParameters param, boolean standard) throws IOException, ClassNotFoundException {
+        String name = param.getParamString() + (standard ? " standard" : "");
+        int v1 = param.getv1(), o1 = param.geto1();
+
+        byte[] seed = new byte[SeedExpander.SEED_LENGTH];
+        random.nextBytes(seed);
+        RainbowSecKey sk = CompressedPubKey.generateSecKey(param, random, seed, standard);
+        RainbowPubKey pk = new RainbowPubKey(sk);
+
+        CompressedPubKey compressed = roundTrip(new CompressedPubKey(pk, seed, v1, o1));
+        RainbowPubKey expanded = compressed.expand();
+
+        check(name + ": expanded key equals the public key", sameKey(pk, expanded));
+        check(name + ": seeded coefficients are expanded from the seed", seededFromSeed(expanded, seed, v1, o1));
+
+        boolean valid = true, evaluated = true;
+        for (int s = 0; s < SIGNATURES; s++) {
+            byte[] h = elements(sk.getEqNum());
+            byte[] signature = sk.sign(h, random);
+            byte[] x = elements(sk.getVarNum());
+
+            valid &= compressed.verify(signature, h) && expanded.verify(signature, h) && pk.verify(signature, h);
+            evaluated &= Arrays.equals(compressed.eval(x), pk.eval(x));
+        }
+        check(name + ": signatures verify with the compressed key", valid);
+        check(name + ": compressed key evaluates as the public key", evaluated);
+
+        byte[] h = elements(sk.getEqNum());
+        byte[] signature = sk.sign(h, random);
+        signature[0] = GF16.add(signature[0], (byte) 1);
+        check(name + ": altered signature fails", !compressed.verify(signature, h));
+    }
+
+    private void wrongSeedIsRejected() {
+        RainbowParameters param = new RainbowParameters(4, 3, 5);
+        byte[] seed = new byte[SeedExpander.SEED_LENGTH];
+        random.nextBytes(seed);
+        RainbowPubKey pk = new RainbowPubKey(CompressedPubKey.generateSecKey(param, random, seed, false));
+
+        seed[0] ^= 1;
+        try {
+            new CompressedPubKey(pk, seed, param.getv1(), param.geto1());
+            check("key of another seed is rejected", false);
+        } catch (IllegalArgumentException ex) {
+            check("key of another seed is rejected", true);
+        }
+    }
+
+    /**
+     * Compares two public keys coefficient by coefficient, folding the quadratic parts into upper triangular ones.
+     */
+    private static boolean sameKey(RainbowPubKey a, RainbowPubKey b) {
+        if (a.getVarNum() != b.getVarNum() || a.getEqNum() != b.getEqNum()) {
+            return false;
+        }
+
+        int n = a.getVarNum();
+        MultQuad[] p = a.getPoly(), q = b.getPoly();
+        for (int k = 0; k < p.length; k++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    if (upper(p[k], i, j) != upper(q[k], i, j)) {
+                        return false;
+                    }
+                }
+            }
+
+            if (!Arrays.equals(p[k].getLin(), q[k].getLin()) || p[k].getTerm() != q[k].getTerm()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks that the coefficients of the seeded monomials are the stream of the seed, in equation and row order.
+     */
+    private static boolean seededFromSeed(RainbowPubKey pk, byte[] seed, int v1, int o1) {
+        SeedExpander expander = new SeedExpander(seed);
+        int n = pk.getVarNum(), count = 0;
+
+        for (MultQuad poly : pk.getPoly()) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    if (CompressedPubKey.isSeeded(i, j, v1, o1)) {
+                        count++;
+                        if (upper(poly, i, j) != expander.nextElement()) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+
+        return count == pk.getEqNum() * CompressedPubKey.seededNum(v1, o1);
+    }
+
+    private static byte upper(MultQuad poly, int i, int j) {
+        return i == j ? poly.getQuad(i, i) : GF16.add(poly.getQuad(i, j), poly.getQuad(j, i));
+    }
+
+    private static CompressedPubKey roundTrip(CompressedPubKey pk) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(pk);
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            return (CompressedPubKey) ois.readObject();
+        }
+    }
+
+    private byte[] elements(int length) {
+        byte[] x = new byte[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = (byte) random.nextInt(16);
+        }
+
+        return x;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+
+/**
+ * Regression tests of {@link DirectoryManifest}: a manifest must round-trip through its encoding, and checking a tree
+ * must report every file and symbolic link which was changed, added or removed since the manifest was made.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class DirectoryManifestTest {
+
+    private final DirectoryManifest manifest = new DirectoryManifest(2);
+    private final Path root;
+
+    private int failures = 0;
+
+    private DirectoryManifestTest() throws IOException {
+        this.root = Files.createTempDirectory("manifest-test");
+
+        Files.createDirectories(root.resolve("sub"));
+        Files.writeString(root.resolve("a"), "a\n");
+        Files.writeString(root.resolve("sub/b c"), "b\n");
+        Files.createSymbolicLink(root.resolve("sub/link"), Paths.get("../a b\\x"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        DirectoryManifestTest test = new DirectoryManifestTest();
+
+        try {
+            test.roundTrip();
+            test.unchangedTreeMatches();
+            test.changedFileFails();
+            test.addedLinkFails();
+            test.changedLinkFails();
+            test.malformedLinesAreRejected();
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void roundTrip() throws IOException {
+        SortedMap<String, String> fields = manifest.hash(root, Set.of());
+        String encoded = new String(DirectoryManifest.encode(fields), StandardCharsets.UTF_8);
+
+        check("files and links are listed", fields.keySet().equals(Set.of("a", "sub/b c", "sub/link")));
+        check("link target is escaped", encoded.contains(DirectoryManifest.LINK + "../a\\sb\\\\x  sub/link\n"));
+        check("manifest round-trips", DirectoryManifest.decode(DirectoryManifest.encode(fields)).equals(fields));
+    }
+
+    private void unchangedTreeMatches() throws IOException {
+        SortedMap<String, String> fields = manifest.hash(root, Set.of());
+
+        check("unchanged tree matches", manifest.check(root, fields, Set.of()).isEmpty());
+    }
+
+    private void changedFileFails() throws IOException {
+        SortedMap<String, String> fields = manifest.hash(root, Set.of());
+        Files.writeString(root.resolve("a"), "changed\n");
+
+        check("changed file is reported", manifest.check(root, fields, Set.of()).equals(List.of("a")));
+        Files.writeString(root.resolve("a"), "a\n");
+    }
+
+    private void addedLinkFails() throws IOException {
+        SortedMap<String, String> fields = manifest.hash(root, Set.of());
+        Files.createSymbolicLink(root.resolve("link"), Paths.get("/etc/passwd"));
+
+        check("added link is reported", manifest.check(root, fields, Set.of()).equals(List.of("link")));
+        Files.delete(root.resolve("link"));
+    }
+
+    private void changedLinkFails() throws IOException {
+        SortedMap<String, String> fields = manifest.hash(root, Set.of());
+        Files.delete(root.resolve("sub/link"));
+        Files.createSymbolicLink(root.resolve("sub/link"), Paths.get("/etc/passwd"));
+
+        check("changed link is reported", manifest.check(root, fields, Set.of()).equals(List.of("sub/link")));
+    }
+
+    private void malformedLinesAreRejected() {
+        check("short digest is rejected", rejected("abcd  a\n"));
+        check("single space is rejected", rejected("0".repeat(64) + " a\n"));
+        check("wrong escape is rejected", rejected(DirectoryManifest.LINK + "a\\t  a\n"));
+        check("trailing backslash is rejected", rejected(DirectoryManifest.LINK + "a\\  a\n"));
+    }
+
+    private static boolean rejected(String line) {
+        try {
+            DirectoryManifest.decode(line.getBytes(StandardCharsets.UTF_8));
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    private void clean() throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
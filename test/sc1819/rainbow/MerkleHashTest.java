@@ -0,0 +1,206 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Regression tests of {@link MerkleHash}: the root must be the one described by the class, for any number of threads,
+ * and {@link MerkleHash#rangeRoot} must give the same root for any range of an unchanged file, while a changed chunk
+ * in the range or a tampered hash on its path in the tree file must give another root, or none.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class MerkleHashTest {
+
+    private static final int CHUNK_BITS = MerkleHash.MIN_CHUNK_BITS;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int HASH_SIZE = 32;
+    private static final int TREE_HEADER_SIZE = 16;
+
+    private final Random random = new Random(1);
+    private final Path dir;
+
+    private int failures = 0;
+
+    private MerkleHashTest() throws IOException {
+        this.dir = Files.createTempDirectory("merkle-test");
+    }
+
+    public static void main(String[] args) throws IOException {
+        MerkleHashTest test = new MerkleHashTest();
+
+        try {
+            test.rootMatchesTheDefinition();
+            test.rangesGiveTheRoot();
+            test.modifiedChunkIsDetected();
+            test.tamperedSiblingIsDetected();
+            test.wrongArgumentsAreRejected();
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void rootMatchesTheDefinition() throws IOException {
+        // no chunks, a partial chunk, whole chunks, and odd leaf counts which leave a node without a sibling
+        int[] sizes = {0, 1, CHUNK_SIZE, 2 * CHUNK_SIZE, 5 * CHUNK_SIZE + 300, 7 * CHUNK_SIZE - 1};
+
+        for (int size : sizes) {
+            byte[] content = content(size);
+            Path file = Files.write(dir.resolve("file"), content);
+
+            byte[] expected = reference(content);
+            check(size + " bytes: root matches the definition", Arrays.equals(new MerkleHash(CHUNK_BITS, 1).root(file.toString()), expected));
+            check(size + " bytes: root does not depend on the threads", Arrays.equals(new MerkleHash(CHUNK_BITS, 3).root(file.toString()), expected));
+        }
+    }
+
+    private void rangesGiveTheRoot() throws IOException {
+        int size = 5 * CHUNK_SIZE + 300;
+        Path file = Files.write(dir.resolve("file"), content(size));
+        String tree = dir.resolve("tree").toString();
+        byte[] root = new MerkleHash(CHUNK_BITS).root(file.toString(), tree);
+
+        boolean ok = true;
+        for (int chunk = 0; chunk * CHUNK_SIZE < size; chunk++) {
+            ok &= Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, (long) chunk * CHUNK_SIZE, 1), root);
+        }
+        check("range of each chunk gives the root", ok);
+        check("range of the last chunk without a sibling gives the root",
+                Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, size - 1, 1), root));
+        check("range spanning chunks gives the root",
+                Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, CHUNK_SIZE - 10, 2 * CHUNK_SIZE + 20), root));
+        check("full range gives the root",
+                Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, 0, size), root));
+    }
+
+    private void modifiedChunkIsDetected() throws IOException {
+        int size = 5 * CHUNK_SIZE + 300;
+        Path file = Files.write(dir.resolve("file"), content(size));
+        String tree = dir.resolve("tree").toString();
+        byte[] root = new MerkleHash(CHUNK_BITS).root(file.toString(), tree);
+
+        flip(file, 3L * CHUNK_SIZE + 5);
+
+        check("modified chunk in the range is detected",
+                !Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, 3L * CHUNK_SIZE, 10), root));
+        check("modified chunk in a spanning range is detected",
+                !Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, 2L * CHUNK_SIZE, 2 * CHUNK_SIZE), root));
+        check("chunk out of the range is not read",
+                Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree, CHUNK_BITS, 0, CHUNK_SIZE), root));
+    }
+
+    private void tamperedSiblingIsDetected() throws IOException {
+        int size = 5 * CHUNK_SIZE + 300;
+        Path file = Files.write(dir.resolve("file"), content(size));
+        Path tree = dir.resolve("tree");
+        byte[] root = new MerkleHash(CHUNK_BITS).root(file.toString(), tree.toString());
+
+        // the sibling of chunk 2 is leaf 3
+        flip(tree, TREE_HEADER_SIZE + 3L * HASH_SIZE);
+
+        check("tampered sibling is detected",
+                !Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree.toString(), CHUNK_BITS, 2L * CHUNK_SIZE, 1), root));
+        check("tampered sibling in a spanning range is detected", MerkleHash.rangeRoot(file.toString(), tree.toString(),
+                CHUNK_BITS, 2L * CHUNK_SIZE, 2 * CHUNK_SIZE) == null);
+        check("hashes off the path are not read",
+                Arrays.equals(MerkleHash.rangeRoot(file.toString(), tree.toString(), CHUNK_BITS, 0, 1), root));
+    }
+
+    private void wrongArgumentsAreRejected() throws IOException {
+        int size = 3 * CHUNK_SIZE;
+        Path file = Files.write(dir.resolve("file"), content(size));
+        String tree = dir.resolve("tree").toString();
+        new MerkleHash(CHUNK_BITS).root(file.toString(), tree);
+
+        check("other chunk size is rejected", rejected(file, tree, CHUNK_BITS + 1, 0, 1));
+        check("range past the end is rejected", rejected(file, tree, CHUNK_BITS, size - 1, 2));
+        check("empty range is rejected", rejected(file, tree, CHUNK_BITS, 0, 0));
+        check("negative offset is rejected", rejected(file, tree, CHUNK_BITS, -1, 1));
+    }
+
+    private static boolean rejected(Path file, String tree, int chunkBits, long offset, long length) throws IOException {
+        try {
+            MerkleHash.rangeRoot(file.toString(), tree, chunkBits, offset, length);
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Computes the root as described by {@link MerkleHash}, independently of it.
+     */
+    private static byte[] reference(byte[] content) {
+        int chunks = Math.max(1, (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        byte[][] level = new byte[chunks][];
+
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = Arrays.copyOfRange(content, i * CHUNK_SIZE, Math.min(content.length, (i + 1) * CHUNK_SIZE));
+            level[i] = sha256(new byte[]{0}, chunk);
+        }
+
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = 2 * i + 1 < level.length ? sha256(new byte[]{1}, level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            level = next;
+        }
+
+        return sha256(new byte[]{2}, ByteBuffer.allocate(Long.BYTES).putLong(0, content.length).array(), level[0]);
+    }
+
+    private static byte[] sha256(byte[]... parts) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                sha.update(part);
+            }
+
+            return sha.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private byte[] content(int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+
+        return content;
+    }
+
+    private static void flip(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+    }
+
+    private void clean() throws IOException {
+        Files.deleteIfExists(dir.resolve("file"));
+        Files.deleteIfExists(dir.resolve("tree"));
+        Files.delete(dir);
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Regression tests of {@link OffHeapSecKey}: the maps copied into the buffer must sign valid signatures for every form
+ * of secret key, also from many threads at once, and a key stored as a seed must be read without going through the cache
+ * of {@link SeedSecKey}.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class OffHeapSecKeyTest {
+
+    /**
+     * The number of signatures checked for each key.
+     */
+    private static final int SIGNATURES = 50;
+    /**
+     * The number of threads signing with the same key at once.
+     */
+    private static final int THREADS = 4;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Path dir;
+
+    private int failures = 0;
+
+    private OffHeapSecKeyTest() throws IOException {
+        this.dir = Files.createTempDirectory("off-heap-test");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        OffHeapSecKeyTest test = new OffHeapSecKeyTest();
+
+        for (int form = 0; form < 8; form++) {
+            test.signaturesAreValid((form & 1) != 0, (form & 2) != 0, (form & 4) != 0);
+        }
+        test.threadsSignInParallel();
+        test.seedsBypassTheCache();
+
+        Files.delete(test.dir);
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void signaturesAreValid(boolean compressed, boolean seeded, boolean standard) throws IOException {
+        String name = String.format("compressed=%b seeded=%b standard=%b", compressed, seeded, standard);
+        RainbowKeyPair keyPair = new RainbowKeyPair(new RainbowParameters(), random, compressed, seeded, standard);
+        RainbowPubKey pk = keyPair.getPk();
+        Path pkPath = dir.resolve("pk"), skPath = dir.resolve("sk");
+
+        keyPair.writeKeys(pkPath.toString(), skPath.toString());
+
+        OffHeapSecKey key = OffHeapSecKey.readKey(skPath.toString());
+        Files.delete(pkPath);
+        Files.delete(skPath);
+
+        boolean ok = key.getVarNum() == pk.getVarNum() && key.getEqNum() == pk.getEqNum();
+        for (int i = 0; i < SIGNATURES; i++) {
+            byte[] h = target(key.getEqNum());
+            ok &= pk.verify(key.sign(h, random), h);
+        }
+        check("off-heap signatures are valid, " + name, ok);
+
+        key.close();
+        check("closed key cannot sign, " + name, fails(key));
+    }
+
+    private void threadsSignInParallel() throws InterruptedException {
+        RainbowKeyPair keyPair = new RainbowKeyPair(new RainbowParameters(), random);
+        RainbowPubKey pk = keyPair.getPk();
+        OffHeapSecKey key = new OffHeapSecKey(keyPair.getSk());
+        AtomicBoolean ok = new AtomicBoolean(true);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < SIGNATURES; i++) {
+                    byte[] h = target(key.getEqNum());
+                    if (!pk.verify(key.sign(h, random), h)) {
+                        ok.set(false);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        check("signatures of threads sharing a key are valid", ok.get());
+        key.close();
+    }
+
+    private void seedsBypassTheCache() throws IOException {
+        RainbowKeyPair keyPair = new RainbowKeyPair(new RainbowParameters(), random, true, true);
+        Path pkPath = dir.resolve("pk"), skPath = dir.resolve("sk");
+
+        keyPair.writeKeys(pkPath.toString(), skPath.toString());
+
+        try {
+            check("cached seed key is shared", SeedSecKey.isShared(RainbowSecKey.readKey(skPath.toString())));
+            check("uncached seed key is not shared", !SeedSecKey.isShared(RainbowSecKey.readKey(skPath.toString(), false)));
+        } finally {
+            Files.delete(pkPath);
+            Files.delete(skPath);
+        }
+    }
+
+    private byte[] target(int m) {
+        byte[] h = new byte[m];
+        for (int i = 0; i < m; i++) {
+            h[i] = (byte) random.nextInt(16);
+        }
+
+        return h;
+    }
+
+    private boolean fails(OffHeapSecKey key) {
+        try {
+            key.sign(target(key.getEqNum()), random);
+            return false;
+        } catch (IllegalStateException ex) {
+            return true;
+        }
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trip tests of {@link PubKeyStore}: every key written in a store must be found by id and by fingerprint,
+ * and must verify the signatures of its secret key, while unknown ids and fingerprints and other files are rejected.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class PubKeyStoreTest {
+
+    private static final List<String> IDS = List.of("alice", "bob", "carol, with a longer id: \u00e8\u00e9");
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, RainbowKeyPair> keyPairs = new LinkedHashMap<>();
+    private final Path dir;
+
+    private int failures = 0;
+
+    private PubKeyStoreTest() throws IOException {
+        this.dir = Files.createTempDirectory("keystore-test");
+
+        // keys of different parameters, which the packed encoding records
+        keyPairs.put(IDS.get(0), new RainbowKeyPair(new RainbowParameters(4, 3, 5), random));
+        keyPairs.put(IDS.get(1), new RainbowKeyPair(new RainbowParameters(6, 4, 4), random));
+        keyPairs.put(IDS.get(2), new RainbowKeyPair(new RainbowParameters(), random));
+    }
+
+    public static void main(String[] args) throws IOException {
+        PubKeyStoreTest test = new PubKeyStoreTest();
+
+        try {
+            test.keysRoundTrip();
+            test.unknownKeysAreNotFound();
+            test.wrongFileIsRejected();
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void keysRoundTrip() throws IOException {
+        Map<String, ByteBuffer> packed = new LinkedHashMap<>();
+        for (Map.Entry<String, RainbowKeyPair> keyPair : keyPairs.entrySet()) {
+            packed.put(keyPair.getKey(), MappedPubKey.encode(keyPair.getValue().getPk()));
+        }
+
+        String path = dir.resolve("store").toString();
+        PubKeyStore.write(path, packed);
+
+        try (PubKeyStore store = PubKeyStore.open(path)) {
+            check("store is recognized", PubKeyStore.isStore(path));
+            check("ids round-trip in order", store.size() == IDS.size() && List.copyOf(store.ids()).equals(IDS));
+
+            for (String id : IDS) {
+                RainbowSecKey sk = keyPairs.get(id).getSk();
+                byte[] h = elements(sk.getEqNum());
+                byte[] signature = sk.sign(h, random);
+
+                MappedPubKey byId = store.get(id);
+                MappedPubKey byFingerprint = store.getByFingerprint(PubKeyStore.fingerprint(packed.get(id)));
+
+                check(id + ": key found by id verifies", byId != null && byId.verify(signature, h));
+                check(id + ": key found by fingerprint verifies", byFingerprint != null && byFingerprint.verify(signature, h));
+            }
+        }
+    }
+
+    private void unknownKeysAreNotFound() throws IOException {
+        String path = dir.resolve("store").toString();
+
+        try (PubKeyStore store = PubKeyStore.open(path)) {
+            check("unknown id is not found", store.get("dave") == null);
+            check("unknown fingerprint is not found", store.getByFingerprint(new byte[32]) == null);
+        }
+    }
+
+    private void wrongFileIsRejected() throws IOException {
+        Path file = Files.write(dir.resolve("other"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+        check("other file is not recognized", !PubKeyStore.isStore(file.toString()));
+        try {
+            PubKeyStore.open(file.toString()).close();
+            check("other file is rejected", false);
+        } catch (IllegalArgumentException ex) {
+            check("other file is rejected", true);
+        }
+    }
+
+    private byte[] elements(int length) {
+        byte[] x = new byte[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = (byte) random.nextInt(16);
+        }
+
+        return x;
+    }
+
+    private void clean() throws IOException {
+        Files.deleteIfExists(dir.resolve("store"));
+        Files.deleteIfExists(dir.resolve("other"));
+        Files.delete(dir);
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
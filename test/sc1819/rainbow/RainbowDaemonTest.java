@@ -0,0 +1,146 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Round trip tests of {@link RainbowDaemon} through {@link RainbowClient}: digests signed by the daemon, with keys
+ * on or outside of the heap and by many clients at once, must verify both through the daemon and with the public key,
+ * and requests which cannot be served must fail alone.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class RainbowDaemonTest {
+
+    /**
+     * The number of clients connected at once, and the number of digests each one signs.
+     */
+    private static final int CLIENTS = 4, DIGESTS = 50;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Path dir;
+    private final String pk, sk;
+    private final RainbowPubKey publicKey;
+
+    private int failures = 0;
+
+    private RainbowDaemonTest() throws IOException {
+        this.dir = Files.createTempDirectory("daemon-test");
+        this.pk = dir.resolve("pk").toString();
+        this.sk = dir.resolve("sk").toString();
+
+        RainbowKeyPair keyPair = new RainbowKeyPair(new RainbowParameters(), random);
+        keyPair.writeKeys(pk, sk);
+        this.publicKey = keyPair.getPk();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        RainbowDaemonTest test = new RainbowDaemonTest();
+
+        try {
+            test.run(false);
+            test.run(true);
+        } finally {
+            Files.delete(test.dir.resolve("pk"));
+            Files.delete(test.dir.resolve("sk"));
+            Files.delete(test.dir);
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void run(boolean offHeap) throws IOException, InterruptedException {
+        String name = offHeap ? "off-heap" : "on heap";
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(dir.resolve("socket"));
+
+        RainbowDaemon daemon = new RainbowDaemon(address, List.of(sk), offHeap, false, CLIENTS, 2, random);
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException ignored) {
+                // the daemon was closed
+            }
+        });
+        server.start();
+
+        try {
+            AtomicBoolean signed = new AtomicBoolean(true), verified = new AtomicBoolean(true), tampered = new AtomicBoolean(true);
+            List<Thread> clients = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.add(new Thread(() -> {
+                    try (RainbowClient client = new RainbowClient(address)) {
+                        for (int i = 0; i < DIGESTS; i++) {
+                            byte[] digest = digest();
+                            byte[] signature = client.signDigest(sk, digest);
+
+                            signed.compareAndSet(true, publicKey.verifyDigest(signature, digest));
+                            verified.compareAndSet(true, client.verifyDigest(pk, digest, signature));
+
+                            digest[0] ^= 1;
+                            tampered.compareAndSet(true, !client.verifyDigest(pk, digest, signature));
+                        }
+                    } catch (IOException ex) {
+                        signed.set(false);
+                    }
+                }));
+            }
+            for (Thread client : clients) {
+                client.start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+
+            check(name + ": signatures of the daemon verify with the public key", signed.get());
+            check(name + ": signatures of the daemon verify through the daemon", verified.get());
+            check(name + ": signature of another digest fails", tampered.get());
+
+            try (RainbowClient client = new RainbowClient(address)) {
+                check(name + ": unknown signing key fails", fails(() -> client.signDigest(pk, digest())));
+                check(name + ": malformed signature fails", fails(() -> client.verifyDigest(pk, digest(), new byte[]{16})));
+                byte[] digest = digest();
+                check(name + ": connection survives failed requests", client.verifyDigest(pk, digest, client.signDigest(sk, digest)));
+                check(name + ": signatures are counted", client.stats().contains("signed=" + (CLIENTS * DIGESTS + 1) + "\n"));
+            }
+        } finally {
+            daemon.close();
+            server.join();
+        }
+    }
+
+    private interface Request {
+        void run() throws IOException;
+    }
+
+    private static boolean fails(Request request) {
+        try {
+            request.run();
+            return false;
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    private byte[] digest() {
+        byte[] digest = new byte[32];
+        random.nextBytes(digest);
+
+        return digest;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
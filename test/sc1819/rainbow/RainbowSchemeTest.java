@@ -0,0 +1,99 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Round trip tests of the file signatures of {@link RainbowScheme}: a file signed as a Merkle tree must verify,
+ * also by range against the saved tree, and must not verify once changed.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class RainbowSchemeTest {
+
+    private final Random random = new Random(1);
+    private final Path dir;
+    private final String pk, sk;
+
+    private int failures = 0;
+
+    private RainbowSchemeTest() throws IOException {
+        this.dir = Files.createTempDirectory("scheme-test");
+        this.pk = dir.resolve("pk").toString();
+        this.sk = dir.resolve("sk").toString();
+
+        RainbowScheme.keygen(pk, sk);
+    }
+
+    public static void main(String[] args) throws IOException {
+        RainbowSchemeTest test = new RainbowSchemeTest();
+
+        try {
+            test.merkleSignatureRoundTrip();
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void merkleSignatureRoundTrip() throws IOException {
+        // more than two chunks of the default size, the last one partial
+        long chunk = 1L << MerkleHash.DEFAULT_CHUNK_BITS;
+        String file = write("merkle", (int) (2 * chunk + 12345));
+        String signature = dir.resolve("merkle.sig").toString(), tree = dir.resolve("merkle.tree").toString();
+
+        RainbowScheme.sign(sk, file, signature, true, tree);
+
+        RainbowSignature read = RainbowScheme.readSignature(signature);
+        check("Merkle signature records its mode", read.getMode() == RainbowSignature.MERKLE
+                && read.getParam() == MerkleHash.DEFAULT_CHUNK_BITS);
+        check("Merkle signature verifies", RainbowScheme.verify(pk, file, signature));
+        check("Merkle signature verifies by range",
+                RainbowScheme.verifyRange(pk, file, signature, tree, chunk - 10, chunk + 20));
+
+        flip(file, 2 * chunk + 100);
+        check("changed file fails", !RainbowScheme.verify(pk, file, signature));
+        check("range off the change still verifies", RainbowScheme.verifyRange(pk, file, signature, tree, 0, chunk));
+        check("range over the change fails", !RainbowScheme.verifyRange(pk, file, signature, tree, 2 * chunk, 200));
+    }
+
+    private String write(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+
+        return Files.write(dir.resolve(name), content).toString();
+    }
+
+    private static void flip(String file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+    }
+
+    private void clean() throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
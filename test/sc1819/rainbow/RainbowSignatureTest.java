@@ -0,0 +1,113 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Regression tests of {@link RainbowSignature}: every signature must round-trip through both its encodings,
+ * and decoding must reject bytes which are not field elements and truncated encodings.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class RainbowSignatureTest {
+
+    private final Random random = new Random(1);
+
+    private int failures = 0;
+
+    public static void main(String[] args) {
+        RainbowSignatureTest test = new RainbowSignatureTest();
+
+        test.roundTrips();
+        test.plainEncodingIsTheOriginalOne();
+        test.nonFieldElementsAreRejected();
+        test.truncatedEncodingsAreRejected();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void roundTrips() {
+        // an odd number of elements leaves the last packed byte half empty
+        for (int n : new int[]{96, 33}) {
+            RainbowSignature[] signatures = {
+                    new RainbowSignature(elements(n)),
+                    new RainbowSignature(elements(n), RainbowSignature.PLAIN, 0, 0, MessageHash.SHAKE256),
+                    new RainbowSignature(elements(n), RainbowSignature.MERKLE, MerkleHash.DEFAULT_CHUNK_BITS),
+                    new RainbowSignature(elements(n), RainbowSignature.APPEND, 0, 0x123456789aL)
+            };
+
+            for (RainbowSignature signature : signatures) {
+                String name = n + " elements, mode " + signature.getMode() + ", " + MessageHash.NAMES[signature.getHash()];
+
+                check(name + ": tagged encoding round-trips", same(RainbowSignature.decode(signature.encode()), signature));
+                check(name + ": packed encoding round-trips", same(RainbowSignature.decode(signature.encodePacked()), signature));
+                check(name + ": packed encoding is smaller",
+                        n < 64 || signature.encodePacked().length < signature.encode().length);
+            }
+        }
+    }
+
+    private void plainEncodingIsTheOriginalOne() {
+        byte[] elements = elements(96);
+
+        check("plain SHA-256 signature is encoded as its elements", Arrays.equals(new RainbowSignature(elements).encode(), elements));
+    }
+
+    private void nonFieldElementsAreRejected() {
+        byte[] plain = elements(96);
+        plain[50] = 16;
+        check("plain byte above 15 is rejected", rejected(plain));
+
+        byte[] tagged = new RainbowSignature(elements(96), RainbowSignature.MERKLE, MerkleHash.DEFAULT_CHUNK_BITS).encode();
+        tagged[tagged.length - 1] = (byte) 0x7f;
+        check("tagged byte above 15 is rejected", rejected(tagged));
+
+        byte[] hashed = new RainbowSignature(elements(96), RainbowSignature.PLAIN, 0, 0, MessageHash.BLAKE2B).encode();
+        hashed[10] = (byte) 0xf0;
+        check("byte above 15 of a signature with another hash is rejected", rejected(hashed));
+    }
+
+    private void truncatedEncodingsAreRejected() {
+        byte[] packed = new RainbowSignature(elements(96), RainbowSignature.APPEND, 0, 100).encodePacked();
+
+        check("truncated packed elements are rejected", rejected(Arrays.copyOf(packed, packed.length - 1)));
+        check("truncated packed header is rejected", rejected(Arrays.copyOf(packed, 6)));
+        check("truncated tagged header is rejected", rejected(new byte[]{RainbowSignature.TAG, RainbowSignature.APPEND, 0, 0}));
+        check("unknown mode is rejected", rejected(new byte[]{RainbowSignature.TAG, 7, 0, 1, 2}));
+    }
+
+    private static boolean same(RainbowSignature a, RainbowSignature b) {
+        return Arrays.equals(a.getElements(), b.getElements()) && a.getMode() == b.getMode() && a.getParam() == b.getParam()
+                && a.getLength() == b.getLength() && a.getHash() == b.getHash();
+    }
+
+    private static boolean rejected(byte[] data) {
+        try {
+            RainbowSignature.decode(data);
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    private byte[] elements(int n) {
+        byte[] elements = new byte[n];
+        for (int i = 0; i < n; i++) {
+            elements[i] = (byte) random.nextInt(16);
+        }
+
+        return elements;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Regression tests of {@link SignatureContainer}: signatures must round-trip through a container, whether it is mapped
+ * or streamed, the last record of a key must win, and a torn last record must be ignored by the readers
+ * and dropped by the next append, so that the records appended after it are read back.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class SignatureContainerTest {
+
+    private final Random random = new Random(1);
+    private final Path dir;
+
+    private int failures = 0;
+
+    private SignatureContainerTest() throws IOException {
+        this.dir = Files.createTempDirectory("container-test");
+    }
+
+    public static void main(String[] args) throws IOException {
+        SignatureContainerTest test = new SignatureContainerTest();
+
+        test.signaturesRoundTrip();
+        test.lastRecordWins();
+        test.tornRecordIsDropped();
+        test.wrongFileIsRejected();
+
+        Files.delete(test.dir);
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void signaturesRoundTrip() throws IOException {
+        Path file = dir.resolve("container1");
+        byte[] k1 = key(), k2 = key();
+        RainbowSignature s1 = new RainbowSignature(elements()), s2 = new RainbowSignature(elements(), RainbowSignature.APPEND, 0, 42);
+
+        SignatureContainer.append(file.toString(), k1, s1);
+        SignatureContainer.append(file.toString(), k2, s2);
+
+        try (SignatureContainer container = SignatureContainer.open(file.toString())) {
+            check("mapped signatures round-trip", container.size() == 2
+                    && same(container.get(k1), s1) && same(container.get(k2), s2));
+            check("unknown key has no signature", container.get(key()) == null);
+        }
+
+        List<RainbowSignature> streamed = new ArrayList<>();
+        SignatureContainer.forEach(file.toString(), (key, signature) -> streamed.add(signature));
+        check("streamed signatures round-trip", streamed.size() == 2 && same(streamed.get(0), s1) && same(streamed.get(1), s2));
+
+        Files.delete(file);
+    }
+
+    private void lastRecordWins() throws IOException {
+        Path file = dir.resolve("container2");
+        byte[] k = key();
+        RainbowSignature s1 = new RainbowSignature(elements()), s2 = new RainbowSignature(elements());
+
+        SignatureContainer.append(file.toString(), k, s1);
+        SignatureContainer.append(file.toString(), k, s2);
+
+        try (SignatureContainer container = SignatureContainer.open(file.toString())) {
+            check("last record of a key wins", container.size() == 1 && same(container.get(k), s2));
+        }
+
+        Files.delete(file);
+    }
+
+    private void tornRecordIsDropped() throws IOException {
+        Path file = dir.resolve("container3");
+        byte[] k1 = key(), k2 = key(), k3 = key();
+        RainbowSignature s1 = new RainbowSignature(elements()), s2 = new RainbowSignature(elements());
+
+        SignatureContainer.append(file.toString(), k1, s1);
+        long complete = Files.size(file);
+        // the start of a record of a 32 bytes key whose signature is missing
+        byte[] torn = new byte[1 + 32 + 1];
+        torn[0] = 32;
+        Files.write(file, torn, StandardOpenOption.APPEND);
+
+        try (SignatureContainer container = SignatureContainer.open(file.toString())) {
+            check("torn record is ignored when mapped", container.size() == 1 && same(container.get(k1), s1));
+        }
+        int[] count = {0};
+        SignatureContainer.forEach(file.toString(), (key, signature) -> count[0]++);
+        check("torn record is ignored when streamed", count[0] == 1);
+
+        SignatureContainer.append(file.toString(), k2, s2);
+        try (SignatureContainer container = SignatureContainer.open(file.toString())) {
+            check("record after a torn one is read back", container.size() == 2
+                    && same(container.get(k1), s1) && same(container.get(k2), s2) && container.get(k3) == null);
+        }
+        check("torn record is dropped by the append",
+                Files.size(file) == complete + 1 + k2.length + Short.BYTES + s2.encodePacked().length);
+
+        Files.delete(file);
+    }
+
+    private void wrongFileIsRejected() throws IOException {
+        Path file = Files.write(dir.resolve("container4"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        try {
+            SignatureContainer.append(file.toString(), key(), new RainbowSignature(elements()));
+            check("append to another file is rejected", false);
+        } catch (IllegalArgumentException ex) {
+            check("append to another file is rejected", true);
+        }
+        check("other file is left untouched", Arrays.equals(Files.readAllBytes(file), new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+
+        Files.delete(file);
+    }
+
+    private static boolean same(RainbowSignature a, RainbowSignature b) {
+        return a != null && Arrays.equals(a.getElements(), b.getElements()) && a.getMode() == b.getMode()
+                && a.getParam() == b.getParam() && a.getLength() == b.getLength() && a.getHash() == b.getHash();
+    }
+
+    private byte[] key() {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+
+        return key;
+    }
+
+    private byte[] elements() {
+        byte[] elements = new byte[96];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = (byte) random.nextInt(16);
+        }
+
+        return elements;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package sc1819.rainbow;
+
+import sc1819.rainbow.hash.MessageHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trip tests of {@link StreamVerifier}: records written by {@link StreamVerifier#writeRecord} must be verified
+ * with the right result, delivered in the order of the stream whatever the threads and the batch size,
+ * and a truncated stream must fail after delivering the results of the records before it.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class StreamVerifierTest {
+
+    /**
+     * The number of records of the stream.
+     */
+    private static final int RECORDS = 500;
+
+    private final SecureRandom random = new SecureRandom();
+    private final RainbowKeyPair a, b;
+    private final Map<String, PublicMap> keys;
+
+    private final StreamVerifier.Result[] expected = new StreamVerifier.Result[RECORDS];
+    private final byte[] stream;
+
+    private int failures = 0;
+
+    private StreamVerifierTest() throws IOException {
+        RainbowParameters param = new RainbowParameters(4, 3, 5);
+        this.a = new RainbowKeyPair(param, random);
+        this.b = new RainbowKeyPair(param, random);
+        this.keys = Map.of("a", a.getPk(), "b", b.getPk());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < RECORDS; i++) {
+            writeRecord(out, i);
+        }
+        this.stream = out.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        StreamVerifierTest test = new StreamVerifierTest();
+
+        test.resultsAreInOrder(1, 1);
+        test.resultsAreInOrder(3, 7);
+        test.resultsAreInOrder(4, StreamVerifier.DEFAULT_BATCH_SIZE);
+        test.truncatedStreamFails();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes the i-th record, whose expected result depends on i.
+     */
+    private void writeRecord(ByteArrayOutputStream out, int i) throws IOException {
+        byte[] payload = new byte[random.nextInt(300)];
+        random.nextBytes(payload);
+        RainbowKeyPair keyPair = i % 2 == 0 ? a : b;
+        int hash = i % 3 == 0 ? MessageHash.SHAKE128 : MessageHash.SHA256;
+
+        MessageHash digest = MessageHash.getInstance(hash);
+        digest.update(payload);
+        byte[] elements = keyPair.getSk().sign(digest.expand(keyPair.getSk().getEqNum()), random);
+        RainbowSignature signature = new RainbowSignature(elements, RainbowSignature.PLAIN, 0, 0, hash);
+        String keyId = i % 2 == 0 ? "a" : "b";
+
+        switch (i % 10) {
+            case 3:
+                payload = Arrays.copyOf(payload, payload.length + 1);
+                expected[i] = StreamVerifier.Result.INVALID;
+                break;
+            case 5:
+                keyId = "c";
+                expected[i] = StreamVerifier.Result.UNKNOWN_KEY;
+                break;
+            case 7:
+                signature = new RainbowSignature(elements, RainbowSignature.MERKLE, MerkleHash.DEFAULT_CHUNK_BITS);
+                expected[i] = StreamVerifier.Result.MALFORMED;
+                break;
+            default:
+                expected[i] = StreamVerifier.Result.VALID;
+        }
+
+        if (i % 10 == 9) {
+            // a tagged signature with a byte which is not a field element
+            byte[] encoded = signature.encode();
+            encoded[encoded.length - 1] = 0x10;
+            writeRaw(out, keyId, payload, encoded);
+            expected[i] = StreamVerifier.Result.MALFORMED;
+        } else {
+            StreamVerifier.writeRecord(out, keyId, payload, signature);
+        }
+    }
+
+    /**
+     * Writes a record in the layout of {@link StreamVerifier#writeRecord}, with any bytes as signature.
+     */
+    private static void writeRaw(ByteArrayOutputStream out, String keyId, byte[] payload, byte[] signature) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        byte[] id = keyId.getBytes(StandardCharsets.UTF_8);
+
+        data.writeByte(id.length);
+        data.write(id);
+        data.writeInt(payload.length);
+        data.write(payload);
+        data.writeShort(signature.length);
+        data.write(signature);
+    }
+
+    private void resultsAreInOrder(int threads, int batchSize) throws IOException {
+        String name = threads + " threads, batches of " + batchSize;
+        List<StreamVerifier.Result> results = new ArrayList<>();
+        long[] next = {0};
+        boolean[] ordered = {true};
+
+        long count = new StreamVerifier(keys::get, threads, batchSize).verify(new ByteArrayInputStream(stream), (index, keyId, result) -> {
+            ordered[0] &= index == next[0]++;
+            results.add(result);
+        });
+
+        check(name + ": every record is verified", count == RECORDS && results.size() == RECORDS);
+        check(name + ": results are delivered in order", ordered[0]);
+        check(name + ": results are right", Arrays.equals(results.toArray(), expected));
+    }
+
+    private void truncatedStreamFails() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeRecord(out, 0);
+        writeRecord(out, 2);
+        int whole = out.size();
+        writeRecord(out, 4);
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), whole + 10);
+
+        List<StreamVerifier.Result> results = new ArrayList<>();
+        try {
+            new StreamVerifier(keys::get, 2, 1).verify(new ByteArrayInputStream(truncated), (index, keyId, result) -> results.add(result));
+            check("truncated stream fails", false);
+        } catch (EOFException ex) {
+            check("truncated stream fails", true);
+        }
+        check("records before the truncated one are delivered",
+                results.equals(List.of(StreamVerifier.Result.VALID, StreamVerifier.Result.VALID)));
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
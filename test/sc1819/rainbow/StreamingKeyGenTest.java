@@ -0,0 +1,102 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Regression tests of {@link StreamingKeyGen}: the packed public key written on file must be the public key of the
+ * secret key, whatever the block size, signatures of the secret key read back must verify with it,
+ * and no temporary file must be left next to the keys.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class StreamingKeyGenTest {
+
+    /**
+     * The number of points and signatures checked for each key.
+     */
+    private static final int SAMPLES = 20;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Path dir;
+
+    private int failures = 0;
+
+    private StreamingKeyGenTest() throws IOException {
+        this.dir = Files.createTempDirectory("streaming-keygen-test");
+    }
+
+    public static void main(String[] args) throws IOException {
+        StreamingKeyGenTest test = new StreamingKeyGenTest();
+
+        try {
+            // a block size dividing m, one which does not, and one larger than m
+            test.run(new RainbowParameters(4, 3, 5), 1, false, false);
+            test.run(new RainbowParameters(4, 3, 5), 3, true, false);
+            test.run(new RainbowParameters(4, 3, 5), 100, false, true);
+            test.run(new RainbowParameters(), StreamingKeyGen.DEFAULT_BLOCK_SIZE, false, true);
+        } finally {
+            test.clean();
+        }
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void run(RainbowParameters param, int blockSize, boolean standard, boolean seeded) throws IOException {
+        String name = param.getParamString() + ", blocks of " + blockSize + (standard ? ", standard" : "") + (seeded ? ", seeded" : "");
+        String pkPath = dir.resolve("pk").toString(), skPath = dir.resolve("sk").toString();
+
+        RainbowSecKey sk = new StreamingKeyGen(param, blockSize).generate(random, standard, seeded, pkPath, skPath);
+        MappedPubKey mapped = MappedPubKey.open(pkPath);
+        RainbowPubKey pk = new RainbowPubKey(sk);
+
+        boolean evaluated = true;
+        for (int s = 0; s < SAMPLES; s++) {
+            byte[] x = elements(sk.getVarNum());
+            evaluated &= Arrays.equals(mapped.eval(x), pk.eval(x));
+        }
+        check(name + ": written key is the public key", mapped.getVarNum() == pk.getVarNum()
+                && mapped.getEqNum() == pk.getEqNum() && evaluated);
+
+        RainbowSecKey read = RainbowSecKey.readKey(skPath, false);
+        boolean valid = true;
+        for (int s = 0; s < SAMPLES; s++) {
+            byte[] h = elements(sk.getEqNum());
+            valid &= mapped.verify(read.sign(h, random), h);
+        }
+        check(name + ": signatures of the written secret key verify", valid);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            check(name + ": no temporary file is left", files.allMatch(file -> file.endsWith("pk") || file.endsWith("sk")));
+        }
+    }
+
+    private byte[] elements(int length) {
+        byte[] x = new byte[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = (byte) random.nextInt(16);
+        }
+
+        return x;
+    }
+
+    private void clean() throws IOException {
+        Files.deleteIfExists(dir.resolve("pk"));
+        Files.deleteIfExists(dir.resolve("sk"));
+        Files.delete(dir);
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package sc1819.rainbow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Regression tests of {@link VerificationCache} backed by an index file: the entries must survive reopening the file,
+ * also after a torn entry was left at its end, and compaction must keep the most recent ones.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class VerificationCacheTest {
+
+    private final Random random = new Random(1);
+    private final Path dir;
+
+    private int failures = 0;
+
+    private VerificationCacheTest() throws IOException {
+        this.dir = Files.createTempDirectory("verification-cache-test");
+    }
+
+    public static void main(String[] args) throws IOException {
+        VerificationCacheTest test = new VerificationCacheTest();
+
+        test.entriesSurviveReopening();
+        test.tornEntryIsDropped();
+        test.compactionKeepsTheLastEntries();
+        test.wrongFileIsRejected();
+
+        Files.delete(test.dir);
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void entriesSurviveReopening() throws IOException {
+        Path file = dir.resolve("index1");
+        byte[] e1 = entry(), e2 = entry();
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            cache.add(e1);
+            cache.add(e2);
+            cache.add(e1);
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            check("entries survive reopening", cache.contains(e1) && cache.contains(e2) && cache.size() == 2);
+            check("unknown entry is not contained", !cache.contains(entry()));
+        }
+        check("entries are appended once", Files.size(file) == 8 + 2 * 32);
+
+        Files.delete(file);
+    }
+
+    private void tornEntryIsDropped() throws IOException {
+        Path file = dir.resolve("index2");
+        byte[] e1 = entry(), e2 = entry(), e3 = entry();
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            cache.add(e1);
+        }
+        Files.write(file, new byte[5], StandardOpenOption.APPEND);
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            check("torn entry is dropped on open", Files.size(file) == 8 + 32);
+            cache.add(e2);
+        }
+        Files.write(file, new byte[7], StandardOpenOption.APPEND);
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            Files.write(file, new byte[3], StandardOpenOption.APPEND);
+            cache.add(e3);
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), 16)) {
+            check("entries after a torn entry survive", cache.contains(e1) && cache.contains(e2) && cache.contains(e3));
+        }
+        check("file holds whole entries", Files.size(file) == 8 + 3 * 32);
+
+        Files.delete(file);
+    }
+
+    private void compactionKeepsTheLastEntries() throws IOException {
+        Path file = dir.resolve("index3");
+        int capacity = 2, count = VerificationCache.COMPACT_FACTOR * capacity + 1;
+        byte[][] entries = new byte[count][];
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), count)) {
+            for (int i = 0; i < count; i++) {
+                entries[i] = entry();
+                cache.add(entries[i]);
+            }
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file.toString(), capacity)) {
+            check("compaction keeps the last entries", cache.size() == capacity
+                    && cache.contains(entries[count - 1]) && cache.contains(entries[count - 2]) && !cache.contains(entries[0]));
+        }
+        check("compacted file holds the kept entries", Files.size(file) == 8 + capacity * 32);
+
+        Files.delete(file);
+    }
+
+    private void wrongFileIsRejected() throws IOException {
+        Path file = Files.write(dir.resolve("index4"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        try {
+            VerificationCache.open(file.toString(), 16).close();
+            check("wrong file is rejected", false);
+        } catch (IllegalArgumentException ex) {
+            check("wrong file is rejected", true);
+        }
+
+        Files.delete(file);
+    }
+
+    private byte[] entry() {
+        byte[] entry = new byte[32];
+        random.nextBytes(entry);
+
+        return entry;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package sc1819.rainbow.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Known answer tests of the pure Java hash functions: {@link Shake} against the SHAKE128 and SHAKE256 examples of NIST
+ * for FIPS 202, of 0 and 1600 bits, and {@link Blake2b} against the BLAKE2b-512 example of RFC 7693, "abc".
+ * The other answers were computed with the reference implementations.
+ * Each message is hashed at once, split into updates of uneven sizes, which cross the block boundaries at every offset
+ * of a lane, and from a direct buffer. The 200 bytes messages span more than a block of each function,
+ * and the 512 bytes outputs of SHAKE more than a squeezed block.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class KnownAnswerTest {
+
+    /**
+     * The sizes of the updates of a split message, used in turn.
+     */
+    private static final int[] SPLITS = {1, 7, 8, 13, 3, 64, 5, 136, 2, 168};
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * The message of 1600 bits of the NIST examples, 200 bytes 0xa3.
+     */
+    private static final byte[] A3 = filled(200);
+
+    private int failures = 0;
+
+    public static void main(String[] args) {
+        KnownAnswerTest test = new KnownAnswerTest();
+
+        test.shake128();
+        test.shake256();
+        test.blake2b();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void shake128() {
+        Supplier<MessageHash> hash = () -> new Shake(128);
+
+        check("SHAKE128 of the empty message", hash, new byte[0],
+                "7f9c2ba4e88f827d616045507605853ed73b8093f6efbc88eb1a6eacfa66ef26");
+        check("SHAKE128 of abc", hash, ascii("abc"),
+                "5881092dd818bf5cf8a3ddb793fbcba74097d5c526a6d35f97b83351940f2cc8");
+        checkLong("SHAKE128 of 200 bytes 0xa3", hash,
+                "131ab8d2b594946b9c81333f9bb6e0ce75c3b93104fa3469d3917457385da037",
+                "44c9fb359fd56ac0a9a75a743cff6862f17d7259ab075216c0699511643b6439");
+    }
+
+    private void shake256() {
+        Supplier<MessageHash> hash = () -> new Shake(256);
+
+        check("SHAKE256 of the empty message", hash, new byte[0],
+                "46b9dd2b0ba88d13233b3feb743eeb243fcd52ea62b81b82b50c27646ed5762f"
+                        + "d75dc4ddd8c0f200cb05019d67b592f6fc821c49479ab48640292eacb3b7c4be");
+        check("SHAKE256 of abc", hash, ascii("abc"),
+                "483366601360a8771c6863080cc4114d8db44530f8f1e1ee4f94ea37e78b5739"
+                        + "d5a15bef186a5386c75744c0527e1faa9f8726e462a12a4feb06bd8801e751e4");
+        checkLong("SHAKE256 of 200 bytes 0xa3", hash,
+                "cd8a920ed141aa0407a22d59288652e9d9f1a7ee0c1e7c1ca699424da84a904d",
+                "6a1a9d7846436e4dca5728b6f760eef0ca92bf0be5615e96959d767197a0beeb");
+    }
+
+    private void blake2b() {
+        Supplier<MessageHash> hash = Blake2b::new;
+
+        check("BLAKE2b of the empty message", hash, new byte[0],
+                "786a02f742015903c6c6fd852552d272912f4740e15847618a86e217f71f5419"
+                        + "d25e1031afee585313896444934eb04b903a685b1448b755d56f701afe9be2ce");
+        check("BLAKE2b of abc", hash, ascii("abc"),
+                "ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d1"
+                        + "7d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923");
+        // a message of exactly one or two blocks, whose last block is compressed only when the digest is taken
+        check("BLAKE2b of one block", hash, counting(128),
+                "2319e3789c47e2daa5fe807f61bec2a1a6537fa03f19ff32e87eecbfd64b7e0e"
+                        + "8ccff439ac333b040f19b0c4ddd11a61e24ac1fe0f10a039806c5dcc0da3d115");
+        check("BLAKE2b of two blocks", hash, counting(256),
+                "1ecc896f34d3f9cac484c73f75f6a5fb58ee6784be41b35f46067b9c65c63a67"
+                        + "94d3d744112c653f73dd7deb6666204c5a9bfa5b46081fc10fdbe7884fa5cbf8");
+        check("BLAKE2b of 300 bytes", hash, counting(300),
+                "d9cf5983dc6b34c0fa1f0226926855ad3eccd2bcdcd8f8053b9a80664d33b5af"
+                        + "cc32fd21c70ea14f4ef50ca97c3203c4d1803159f0e01bb6cb1d1c83db52b63c");
+        check("BLAKE2b of 200 bytes 0xa3", hash, A3,
+                "763688d800631280e9ffe005af43679c5958cceb80a42d20baac8858ecc25dbc"
+                        + "9870520c773e2b2d26fbc35f88f40987f88bcaa7af5eed654cb7c15675852f39");
+    }
+
+    /**
+     * Checks the output of a hash function on a message, as long as the expected one, hashed in the three ways.
+     */
+    private void check(String name, Supplier<MessageHash> hash, byte[] message, String expected) {
+        byte[] output = HEX.parseHex(expected);
+
+        check(name, Arrays.equals(whole(hash.get(), message, output.length), output));
+        check(name + ", split", Arrays.equals(split(hash.get(), message, output.length), output));
+        check(name + ", direct buffer", Arrays.equals(direct(hash.get(), message, output.length), output));
+    }
+
+    /**
+     * Checks the first and last 32 bytes of the 512 bytes output of a hash function on {@link #A3}.
+     */
+    private void checkLong(String name, Supplier<MessageHash> hash, String head, String tail) {
+        byte[][] outputs = {whole(hash.get(), A3, 512), split(hash.get(), A3, 512), direct(hash.get(), A3, 512)};
+        boolean ok = true;
+
+        for (byte[] output : outputs) {
+            ok &= Arrays.equals(Arrays.copyOfRange(output, 0, 32), HEX.parseHex(head))
+                    && Arrays.equals(Arrays.copyOfRange(output, 480, 512), HEX.parseHex(tail));
+        }
+        check(name, ok);
+    }
+
+    private static byte[] whole(MessageHash hash, byte[] message, int len) {
+        hash.update(message);
+
+        return hash.squeeze(len);
+    }
+
+    private static byte[] split(MessageHash hash, byte[] message, int len) {
+        for (int offset = 0, i = 0; offset < message.length; i++) {
+            int n = Math.min(SPLITS[i % SPLITS.length], message.length - offset);
+            hash.update(message, offset, n);
+            offset += n;
+        }
+
+        return hash.squeeze(len);
+    }
+
+    private static byte[] direct(MessageHash hash, byte[] message, int len) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+        buffer.put(message).flip();
+        hash.update(buffer);
+
+        return hash.squeeze(len);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] filled(int len) {
+        byte[] message = new byte[len];
+        Arrays.fill(message, (byte) 0xa3);
+
+        return message;
+    }
+
+    /**
+     * Returns the bytes 0, 1, 2, ..., modulo 256.
+     */
+    private static byte[] counting(int len) {
+        byte[] message = new byte[len];
+        for (int i = 0; i < len; i++) {
+            message[i] = (byte) i;
+        }
+
+        return message;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
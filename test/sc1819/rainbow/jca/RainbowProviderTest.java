@@ -0,0 +1,140 @@
+package sc1819.rainbow.jca;
+
+import sc1819.rainbow.RainbowParameters;
+import sc1819.rainbow.SeedSecKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Regression tests of {@link RainbowProvider}: keys and signatures must round-trip through the JCA,
+ * and the key factory, which decodes untrusted encodings, must reject malformed keys with an {@link InvalidKeySpecException}.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class RainbowProviderTest {
+
+    private static final byte[] MESSAGE = "message".getBytes(StandardCharsets.UTF_8);
+
+    private final Provider provider = new RainbowProvider();
+    private final KeyPair keyPair;
+
+    private int failures = 0;
+
+    private RainbowProviderTest() throws GeneralSecurityException {
+        this.keyPair = KeyPairGenerator.getInstance(RainbowProvider.ALGORITHM, provider).generateKeyPair();
+    }
+
+    public static void main(String[] args) throws GeneralSecurityException, IOException {
+        RainbowProviderTest test = new RainbowProviderTest();
+
+        test.signatureRoundTrip();
+        test.keysRoundTrip();
+        test.malformedKeysAreRejected();
+        test.destroyedKeyCannotSign();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void signatureRoundTrip() throws GeneralSecurityException {
+        byte[] signature = sign(keyPair.getPrivate());
+
+        check("signature verifies", verify(keyPair.getPublic().getEncoded(), MESSAGE, signature));
+        check("signature of another message fails", !verify(keyPair.getPublic().getEncoded(), "other".getBytes(), signature));
+    }
+
+    private void keysRoundTrip() throws GeneralSecurityException {
+        KeyFactory factory = KeyFactory.getInstance(RainbowProvider.ALGORITHM, provider);
+        PrivateKey sk = factory.generatePrivate(new PKCS8EncodedKeySpec(keyPair.getPrivate().getEncoded()));
+
+        check("decoded private key signs", verify(keyPair.getPublic().getEncoded(), MESSAGE, sign(sk)));
+    }
+
+    private void malformedKeysAreRejected() throws IOException {
+        byte[] seed = new byte[32];
+
+        check("empty parameters are rejected", rejected(serialize(new SeedSecKey(new RainbowParameters(0, 0, 0), seed, null, false))));
+        check("too many variables are rejected", rejected(serialize(new SeedSecKey(new RainbowParameters(60, 60, 60), seed, null, false))));
+        check("negative parameters are rejected", rejected(serialize(new SeedSecKey(new RainbowParameters(-1, 32, 32), seed, null, false))));
+        check("short seed is rejected", rejected(serialize(new SeedSecKey(new RainbowParameters(), new byte[4], null, false))));
+        check("huge array is rejected", rejected(serialize(new SeedSecKey(new RainbowParameters(), new byte[1 << 20], null, false))));
+        check("other classes are rejected", rejected(serialize("not a key")));
+        check("garbage is rejected", rejected(new byte[]{1, 2, 3}));
+    }
+
+    private void destroyedKeyCannotSign() throws GeneralSecurityException {
+        KeyFactory factory = KeyFactory.getInstance(RainbowProvider.ALGORITHM, provider);
+        PrivateKey sk = factory.generatePrivate(new PKCS8EncodedKeySpec(keyPair.getPrivate().getEncoded()));
+
+        Signature signer = Signature.getInstance("SHA256with" + RainbowProvider.ALGORITHM, provider);
+        signer.initSign(sk);
+        signer.update(MESSAGE);
+        ((RainbowPrivateKey) sk).destroy();
+
+        try {
+            signer.sign();
+            check("destroyed key cannot sign", false);
+        } catch (SignatureException ex) {
+            check("destroyed key cannot sign", true);
+        }
+    }
+
+    private byte[] sign(PrivateKey sk) throws GeneralSecurityException {
+        Signature signer = Signature.getInstance("SHA256with" + RainbowProvider.ALGORITHM, provider);
+        signer.initSign(sk);
+        signer.update(MESSAGE);
+
+        return signer.sign();
+    }
+
+    private boolean verify(byte[] pk, byte[] message, byte[] signature) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance("SHA256with" + RainbowProvider.ALGORITHM, provider);
+        verifier.initVerify(KeyFactory.getInstance(RainbowProvider.ALGORITHM, provider).generatePublic(new X509EncodedKeySpec(pk)));
+        verifier.update(message);
+
+        return verifier.verify(signature);
+    }
+
+    private boolean rejected(byte[] encoded) {
+        try {
+            KeyFactory.getInstance(RainbowProvider.ALGORITHM, provider).generatePrivate(new PKCS8EncodedKeySpec(encoded));
+            return false;
+        } catch (InvalidKeySpecException ex) {
+            return true;
+        } catch (GeneralSecurityException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(object);
+        }
+
+        return out.toByteArray();
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package sc1819.rainbow.util;
+
+import java.util.Random;
+
+/**
+ * Regression tests of {@link GF16}: the products looked up in the table must be the ones computed with the log and
+ * exp tables, values which are not field elements must be rejected, and the inverse of a matrix must be found
+ * whenever it exists.
+ * <p>
+ * The tests are run by {@link #main(String[])}, which exits with status 1 if any of them fails.
+ */
+public class GF16Test {
+
+    /**
+     * The number of random matrices inverted, and their size.
+     */
+    private static final int MATRICES = 50, SIZE = 20;
+
+    private final Random random = new Random(1);
+
+    private int failures = 0;
+
+    public static void main(String[] args) {
+        GF16Test test = new GF16Test();
+
+        test.productsMatchLogs();
+        test.notFieldElementsAreRejected();
+        test.matricesAreInverted();
+
+        System.out.println(test.failures == 0 ? "All tests passed" : test.failures + " tests failed");
+        if (test.failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    private void productsMatchLogs() {
+        boolean ok = true;
+        for (byte x = 0; x < 16; x++) {
+            for (byte y = 0; y < 16; y++) {
+                byte expected = x == 0 || y == 0 ? 0 : GF16.expsTable[(GF16.logsTable[x] + GF16.logsTable[y]) % 15];
+                ok &= GF16.mult(x, y) == expected;
+            }
+        }
+        check("products match the log and exp tables", ok);
+
+        ok = true;
+        for (byte x = 1; x < 16; x++) {
+            ok &= GF16.mult(x, GF16.inv(x)) == 1;
+        }
+        check("products with the inverse are one", ok);
+    }
+
+    private void notFieldElementsAreRejected() {
+        byte[] values = {16, 17, 0x7f, -1, (byte) 0x80};
+
+        boolean ok = true;
+        for (byte value : values) {
+            ok &= rejected(value, (byte) 3) && rejected((byte) 3, value) && rejected((byte) 0, value);
+        }
+        check("values which are not field elements are rejected", ok);
+    }
+
+    private static boolean rejected(byte x, byte y) {
+        try {
+            GF16.mult(x, y);
+            return false;
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    private void matricesAreInverted() {
+        boolean ok = true;
+        for (int i = 0; i < MATRICES; i++) {
+            // a product of random triangular matrices with ones on the diagonal is always invertible
+            byte[][] lower = new byte[SIZE][SIZE], upper = new byte[SIZE][SIZE];
+            for (int r = 0; r < SIZE; r++) {
+                lower[r][r] = upper[r][r] = 1;
+                for (int c = 0; c < r; c++) {
+                    lower[r][c] = (byte) random.nextInt(16);
+                    upper[c][r] = (byte) random.nextInt(16);
+                }
+            }
+            byte[][] mat = product(lower, upper);
+
+            byte[][] inv = GF16.matrixInverse(mat);
+            ok &= inv != null && isIdentity(product(mat, inv));
+        }
+        check("invertible matrices are inverted", ok);
+
+        byte[][] singular = new byte[SIZE][SIZE];
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                singular[r][c] = (byte) random.nextInt(16);
+            }
+        }
+        singular[SIZE - 1] = GF16.addVectors(singular[0], singular[1]);
+        check("singular matrix is not inverted", GF16.matrixInverse(singular) == null);
+    }
+
+    private static byte[][] product(byte[][] a, byte[][] b) {
+        byte[][] res = new byte[a.length][b[0].length];
+        for (int r = 0; r < a.length; r++) {
+            for (int c = 0; c < b[0].length; c++) {
+                for (int k = 0; k < b.length; k++) {
+                    res[r][c] ^= GF16.mult(a[r][k], b[k][c]);
+                }
+            }
+        }
+
+        return res;
+    }
+
+    private static boolean isIdentity(byte[][] mat) {
+        for (int r = 0; r < mat.length; r++) {
+            for (int c = 0; c < mat.length; c++) {
+                if (mat[r][c] != (r == c ? 1 : 0)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void check(String name, boolean ok) {
+        System.out.println((ok ? "PASS " : "FAIL ") + name);
+        if (!ok) {
+            failures++;
+        }
+    }
+}